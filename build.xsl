@@ -301,6 +301,7 @@
     <java classname="{$class}"
 	  fork="yes"
 	  failonerror="yes">
+      <xsl:copy-of select="arg"/>
       <arg value="{$runtestdir}/out.log"/>
       <arg value="{$runtestdir}"/>
       <xsl:if test="@output">
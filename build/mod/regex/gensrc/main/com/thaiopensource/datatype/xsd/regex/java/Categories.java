@@ -0,0 +1,141 @@
+// This file was automatically generated by com.thaiopensource.datatype.xsd.regex.java.gen.CategoriesGen
+package com.thaiopensource.datatype.xsd.regex.java;
+
+class Categories {
+
+  static final String CATEGORY_NAMES = "LlNoMnLoCfMcNdLuSmSoCoNl";
+
+  static final int[][] CATEGORY_RANGES = {
+    {
+      // Ll
+      0x10428, 0x1044d,
+      0x1d41a, 0x1d433,
+      0x1d44e, 0x1d454,
+      0x1d456, 0x1d467,
+      0x1d482, 0x1d49b,
+      0x1d4b6, 0x1d4b9,
+      0x1d4bb, 0x1d4bb,
+      0x1d4bd, 0x1d4c0,
+      0x1d4c2, 0x1d4c3,
+      0x1d4c5, 0x1d4cf,
+      0x1d4ea, 0x1d503,
+      0x1d51e, 0x1d537,
+      0x1d552, 0x1d56b,
+      0x1d586, 0x1d59f,
+      0x1d5ba, 0x1d5d3,
+      0x1d5ee, 0x1d607,
+      0x1d622, 0x1d63b,
+      0x1d656, 0x1d66f,
+      0x1d68a, 0x1d6a3,
+      0x1d6c2, 0x1d6da,
+      0x1d6dc, 0x1d6e1,
+      0x1d6fc, 0x1d714,
+      0x1d716, 0x1d71b,
+      0x1d736, 0x1d74e,
+      0x1d750, 0x1d755,
+      0x1d770, 0x1d788,
+      0x1d78a, 0x1d78f,
+      0x1d7aa, 0x1d7c2,
+      0x1d7c4, 0x1d7c9
+    },
+    {
+      // No
+      0x10320, 0x10323
+    },
+    {
+      // Mn
+      0x1d167, 0x1d169,
+      0x1d17b, 0x1d182,
+      0x1d185, 0x1d18b,
+      0x1d1aa, 0x1d1ad
+    },
+    {
+      // Lo
+      0x10300, 0x1031e,
+      0x10330, 0x10349,
+      0x20000, 0x2a6d6,
+      0x2f800, 0x2fa1d
+    },
+    {
+      // Cf
+      0x1d173, 0x1d17a,
+      0xe0001, 0xe0001,
+      0xe0020, 0xe007f
+    },
+    {
+      // Mc
+      0x1d165, 0x1d166,
+      0x1d16d, 0x1d172
+    },
+    {
+      // Nd
+      0x1d7ce, 0x1d7ff
+    },
+    {
+      // Lu
+      0x10400, 0x10425,
+      0x1d400, 0x1d419,
+      0x1d434, 0x1d44d,
+      0x1d468, 0x1d481,
+      0x1d49c, 0x1d49c,
+      0x1d49e, 0x1d49f,
+      0x1d4a2, 0x1d4a2,
+      0x1d4a5, 0x1d4a6,
+      0x1d4a9, 0x1d4ac,
+      0x1d4ae, 0x1d4b5,
+      0x1d4d0, 0x1d4e9,
+      0x1d504, 0x1d505,
+      0x1d507, 0x1d50a,
+      0x1d50d, 0x1d514,
+      0x1d516, 0x1d51c,
+      0x1d538, 0x1d539,
+      0x1d53b, 0x1d53e,
+      0x1d540, 0x1d544,
+      0x1d546, 0x1d546,
+      0x1d54a, 0x1d550,
+      0x1d56c, 0x1d585,
+      0x1d5a0, 0x1d5b9,
+      0x1d5d4, 0x1d5ed,
+      0x1d608, 0x1d621,
+      0x1d63c, 0x1d655,
+      0x1d670, 0x1d689,
+      0x1d6a8, 0x1d6c0,
+      0x1d6e2, 0x1d6fa,
+      0x1d71c, 0x1d734,
+      0x1d756, 0x1d76e,
+      0x1d790, 0x1d7a8
+    },
+    {
+      // Sm
+      0x1d6c1, 0x1d6c1,
+      0x1d6db, 0x1d6db,
+      0x1d6fb, 0x1d6fb,
+      0x1d715, 0x1d715,
+      0x1d735, 0x1d735,
+      0x1d74f, 0x1d74f,
+      0x1d76f, 0x1d76f,
+      0x1d789, 0x1d789,
+      0x1d7a9, 0x1d7a9,
+      0x1d7c3, 0x1d7c3
+    },
+    {
+      // So
+      0x1d000, 0x1d0f5,
+      0x1d100, 0x1d126,
+      0x1d12a, 0x1d164,
+      0x1d16a, 0x1d16c,
+      0x1d183, 0x1d184,
+      0x1d18c, 0x1d1a9,
+      0x1d1ae, 0x1d1dd
+    },
+    {
+      // Co
+      0xf0000, 0xffffd,
+      0x100000, 0x10fffd
+    },
+    {
+      // Nl
+      0x1034a, 0x1034a
+    }
+  };
+}
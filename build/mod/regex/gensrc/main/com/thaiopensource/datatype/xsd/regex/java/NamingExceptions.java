@@ -0,0 +1,70 @@
+// This file was automatically generated by com.thaiopensource.datatype.xsd.regex.java.gen.NamingExceptionsGen
+package com.thaiopensource.datatype.xsd.regex.java;
+
+class NamingExceptions {
+  static final String NMSTRT_INCLUDES =
+    "\u003A\u005F\u02BB\u02BC\u02BD\u02BE\u02BF\u02C0\u02C1\u0559" +
+    "\u06E5\u06E6\u212E";
+  static final String NMSTRT_EXCLUDE_RANGES =
+    "\u00AA\u00BA\u0132\u0133\u013F\u0140\u0149\u0149\u017F\u017F" +
+    "\u01C4\u01CC\u01F1\u01F3\u01F6\u01F9\u0218\u024F\u02A9\u02AF" +
+    "\u0370\u037F\u03CF\u03CF\u03D7\u03D9\u03DB\u03DB\u03DD\u03DD" +
+    "\u03DF\u03DF\u03E1\u03E1\u03F4\u0400\u040D\u040D\u0450\u0450" +
+    "\u045D\u045D\u048A\u048F\u04C5\u04C6\u04C9\u04CA\u04CD\u04CF" +
+    "\u04EC\u04ED\u04F6\u04F7\u04FA\u052F\u0560\u0560\u0587\u0588" +
+    "\u05EF\u05EF\u0620\u0620\u063B\u063F\u066E\u066F\u06B8\u06B9" +
+    "\u06BF\u06BF\u06CF\u06CF\u06EE\u0904\u0950\u0950\u0972\u0980" +
+    "\u09BD\u09CE\u09FC\u09FC\u0A8C\u0A8C\u0AD0\u0AD0\u0AE1\u0AF9" +
+    "\u0B35\u0B35\u0B71\u0B83\u0BB6\u0BB6\u0BD0\u0BD0\u0C34\u0C34" +
+    "\u0C3D\u0C5A\u0C80\u0C80\u0CBD\u0CBD\u0CF1\u0D04\u0D29\u0D29" +
+    "\u0D3A\u0D5F\u0D7A\u0DC6\u0E2F\u0E2F\u0E86\u0E86\u0E89\u0E89" +
+    "\u0E8C\u0E8C\u0E8E\u0E93\u0E98\u0E98\u0EA0\u0EA0\u0EA8\u0EA9" +
+    "\u0EAC\u0EAC\u0EAF\u0EAF\u0EDC\u0F00\u0F6A\u108E\u10C7\u10CD" +
+    "\u10F7\u10FF\u1101\u1101\u1104\u1104\u1108\u1108\u110A\u110A" +
+    "\u110D\u110D\u1113\u113B\u113D\u113D\u113F\u113F\u1141\u114B" +
+    "\u114D\u114D\u114F\u114F\u1151\u1153\u1156\u1158\u115A\u115E" +
+    "\u1162\u1162\u1164\u1164\u1166\u1166\u1168\u1168\u116A\u116C" +
+    "\u116F\u1171\u1174\u1174\u1176\u119D\u119F\u11A7\u11A9\u11AA" +
+    "\u11AC\u11AD\u11B0\u11B6\u11B9\u11B9\u11BB\u11BB\u11C3\u11EA" +
+    "\u11EC\u11EF\u11F1\u11F8\u11FA\u1D9A\u1E9C\u1E9F\u1EFA\u1EFF" +
+    "\u2102\u2124\u2128\u2128\u212C\u212D\u212F\u217F\u2183\u3006" +
+    "\u3038\u303C\u3095\u309F\u30FF\u30FF\u312D\u4DBF\u9FA6\uABE2" +
+    "\uD7B0\uFFDC";
+  static final String NMSTRT_CATEGORIES = "LlLuLoLtNl";
+  static final String NMCHAR_INCLUDES =
+    "\u002D\u002E\u003A\u005F\u00B7\u0387\u06DD\u06DE\u212E";
+  static final String NMCHAR_EXCLUDE_RANGES =
+    "\u00AA\u00B5\u00BA\u00BA\u0132\u0133\u013F\u0140\u0149\u0149" +
+    "\u017F\u017F\u01C4\u01CC\u01F1\u01F3\u01F6\u01F9\u0218\u024F" +
+    "\u02A9\u02BA\u02C6\u02CF\u02E0\u02EE\u0346\u035F\u0362\u037F" +
+    "\u03CF\u03CF\u03D7\u03D9\u03DB\u03DB\u03DD\u03DD\u03DF\u03DF" +
+    "\u03E1\u03E1\u03F4\u0400\u040D\u040D\u0450\u0450\u045D\u045D" +
+    "\u0487\u048F\u04C5\u04C6\u04C9\u04CA\u04CD\u04CF\u04EC\u04ED" +
+    "\u04F6\u04F7\u04FA\u052F\u0560\u0560\u0587\u0588\u05A2\u05A2" +
+    "\u05BA\u05BA\u05C5\u05C7\u05EF\u05EF\u0610\u0620\u063B\u063F" +
+    "\u0653\u065F\u066E\u066F\u06B8\u06B9\u06BF\u06BF\u06CF\u06CF" +
+    "\u06EE\u06EF\u06FA\u0900\u0904\u0904\u093A\u093B\u094E\u0950" +
+    "\u0955\u0957\u0971\u0980\u09BD\u09BD\u09CE\u09CE\u09FC\u0A01" +
+    "\u0A03\u0A03\u0A51\u0A51\u0A75\u0A75\u0A8C\u0A8C\u0AD0\u0AD0" +
+    "\u0AE1\u0AE3\u0AF9\u0AFF\u0B35\u0B35\u0B44\u0B44\u0B55\u0B55" +
+    "\u0B62\u0B63\u0B71\u0B71\u0BB6\u0BB6\u0BD0\u0BD0\u0BE6\u0BE6" +
+    "\u0C00\u0C00\u0C04\u0C04\u0C34\u0C34\u0C3D\u0C3D\u0C58\u0C5A" +
+    "\u0C62\u0C63\u0C80\u0C81\u0CBC\u0CBD\u0CE2\u0CE3\u0CF1\u0D01" +
+    "\u0D04\u0D04\u0D29\u0D29\u0D3A\u0D3D\u0D44\u0D44\u0D4E\u0D56" +
+    "\u0D5F\u0D5F\u0D62\u0D63\u0D7A\u0DF3\u0E2F\u0E2F\u0E86\u0E86" +
+    "\u0E89\u0E89\u0E8C\u0E8C\u0E8E\u0E93\u0E98\u0E98\u0EA0\u0EA0" +
+    "\u0EA8\u0EA9\u0EAC\u0EAC\u0EAF\u0EAF\u0EBA\u0EBA\u0EDC\u0F00" +
+    "\u0F6A\u0F6C\u0F8C\u0F8F\u0F96\u0F96\u0FAE\u0FB0\u0FB8\u0FB8" +
+    "\u0FBA\u109D\u10C7\u10CD\u10F7\u10FF\u1101\u1101\u1104\u1104" +
+    "\u1108\u1108\u110A\u110A\u110D\u110D\u1113\u113B\u113D\u113D" +
+    "\u113F\u113F\u1141\u114B\u114D\u114D\u114F\u114F\u1151\u1153" +
+    "\u1156\u1158\u115A\u115E\u1162\u1162\u1164\u1164\u1166\u1166" +
+    "\u1168\u1168\u116A\u116C\u116F\u1171\u1174\u1174\u1176\u119D" +
+    "\u119F\u11A7\u11A9\u11AA\u11AC\u11AD\u11B0\u11B6\u11B9\u11B9" +
+    "\u11BB\u11BB\u11C3\u11EA\u11EC\u11EF\u11F1\u11F8\u11FA\u1DFF" +
+    "\u1E9C\u1E9F\u1EFA\u1EFF\u2071\u209C\u20DD\u20E0\u20E2\u2124" +
+    "\u2128\u2128\u212C\u212D\u212F\u217F\u2183\u2E2F\u3006\u3006" +
+    "\u3038\u303C\u3095\u3096\u309F\u309F\u30FF\u30FF\u312D\u4DBF" +
+    "\u9FA6\uABF9\uD7B0\uFFDC";
+  static final String NMCHAR_CATEGORIES = "LlLuLoLtNlMcMeMnLmNd";
+}
@@ -0,0 +1,457 @@
+package com.thaiopensource.resolver.catalog;
+
+import org.apache.xml.resolver.Catalog;
+import org.apache.xml.resolver.CatalogEntry;
+import org.apache.xml.resolver.helpers.PublicId;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable index of the entries of a loaded OasisCatalog and of all
+ * the catalogs it refers to. Lookups give the same results as the corresponding
+ * methods of Catalog, but they don't lock anything and don't scan the entries:
+ * system, public and uri entries are in hash tables, and rewrite, suffix
+ * and delegate entries are in tables of sorted prefixes.
+ * The catalogs to which lookups may be delegated are all loaded when the index is built.
+ */
+class CatalogIndex implements CatalogResolver.Lookup {
+  static private final String URN_PUBLICID = "urn:publicid:";
+
+  /**
+   * A table of strings sorted so that the longest string in the table that is a prefix
+   * of a given string can be found with a binary search.
+   * Each string is linked to the longest other string in the table that is a prefix of it,
+   * so that all the strings in the table that are prefixes of a given string can be found.
+   */
+  static private class PrefixTable<T> {
+    private final String[] keys;
+    private final int[] parents;
+    private final T[] values;
+
+    @SuppressWarnings("unchecked")
+    PrefixTable(TreeMap<String, T> map) {
+      int n = map.size();
+      keys = map.keySet().toArray(new String[n]);
+      values = (T[])map.values().toArray();
+      parents = new int[n];
+      for (int i = 0; i < n; i++) {
+        int p = i - 1;
+        // keys that are prefixes of keys[i] are among the chain of prefixes of keys[i - 1]
+        while (p >= 0 && !keys[i].startsWith(keys[p]))
+          p = parents[p];
+        parents[i] = p;
+      }
+    }
+
+    boolean isEmpty() {
+      return keys.length == 0;
+    }
+
+    /**
+     * Returns the index of the longest key that is a prefix of s, or -1 if there is none.
+     */
+    int longestPrefix(String s) {
+      int i = Arrays.binarySearch(keys, s);
+      if (i < 0)
+        i = -i - 2;
+      while (i >= 0 && !s.startsWith(keys[i]))
+        i = parents[i];
+      return i;
+    }
+
+    /**
+     * Returns the index of the longest key that is a proper prefix of the key with index i,
+     * or -1 if there is none.
+     */
+    int parent(int i) {
+      return parents[i];
+    }
+
+    String getKey(int i) {
+      return keys[i];
+    }
+
+    T getValue(int i) {
+      return values[i];
+    }
+  }
+
+  /**
+   * A delegate entry.
+   */
+  static private class Delegate implements Comparable<Delegate> {
+    private final int position;
+    private final String catalogUri;
+    private final boolean preferPublic;
+
+    private Delegate(int position, String catalogUri, boolean preferPublic) {
+      this.position = position;
+      this.catalogUri = catalogUri;
+      this.preferPublic = preferPublic;
+    }
+
+    public int compareTo(Delegate other) {
+      return position < other.position ? -1 : (position == other.position ? 0 : 1);
+    }
+  }
+
+  /**
+   * The first entry for a public identifier or a name, and the first such
+   * entry in the scope of prefer="public".
+   */
+  static private class PublicEntry {
+    private final String uri;
+    private String preferPublicUri;
+
+    private PublicEntry(String uri) {
+      this.uri = uri;
+    }
+  }
+
+  /**
+   * The indexes of all the delegate catalogs, by catalog URI, shared by all the indexes
+   * built together. Values are CatalogIndex objects or the IOException thrown
+   * when loading the catalog.
+   */
+  private final Map<String, Object> delegateCatalogs;
+  private final OasisCatalog catalog;
+  private final boolean ignoreSystemCase;
+  private final Map<String, String> systemMap = new HashMap<String, String>();
+  private final Map<String, String> uriMap = new HashMap<String, String>();
+  private final Map<String, PublicEntry> publicMap = new HashMap<String, PublicEntry>();
+  private final Map<String, PublicEntry> entityMap = new HashMap<String, PublicEntry>();
+  private final Map<String, PublicEntry> doctypeMap = new HashMap<String, PublicEntry>();
+  private final PrefixTable<String> rewriteSystem;
+  private final PrefixTable<String> rewriteUri;
+  private final PrefixTable<String> systemSuffix;
+  private final PrefixTable<String> uriSuffix;
+  private final PrefixTable<List<Delegate>> delegateSystem;
+  private final PrefixTable<List<Delegate>> delegateUri;
+  private final PrefixTable<List<Delegate>> delegatePublic;
+  private final List<CatalogIndex> subordinates = new ArrayList<CatalogIndex>();
+
+  /**
+   * Builds an index of a loaded catalog and of all the catalogs it refers to.
+   */
+  static CatalogIndex build(OasisCatalog catalog) {
+    Map<String, Object> delegateCatalogs = new HashMap<String, Object>();
+    List<String> pending = new ArrayList<String>();
+    CatalogIndex index = new CatalogIndex(catalog, delegateCatalogs, pending);
+    // delegate catalogs are loaded after the catalogs that refer to them, as Catalog loads them lazily
+    for (int i = 0; i < pending.size(); i++) {
+      String uri = pending.get(i);
+      if (delegateCatalogs.containsKey(uri))
+        continue;
+      Object value;
+      try {
+        value = new CatalogIndex(catalog.loadDelegateCatalog(uri), delegateCatalogs, pending);
+      }
+      catch (IOException e) {
+        value = e;
+      }
+      delegateCatalogs.put(uri, value);
+    }
+    return index;
+  }
+
+  private CatalogIndex(OasisCatalog catalog, Map<String, Object> delegateCatalogs, List<String> pending) {
+    this.catalog = catalog;
+    this.delegateCatalogs = delegateCatalogs;
+    this.ignoreSystemCase = System.getProperty("os.name").indexOf("Windows") >= 0;
+    TreeMap<String, String> rewriteSystemMap = new TreeMap<String, String>();
+    TreeMap<String, String> rewriteUriMap = new TreeMap<String, String>();
+    TreeMap<String, String> systemSuffixMap = new TreeMap<String, String>();
+    TreeMap<String, String> uriSuffixMap = new TreeMap<String, String>();
+    TreeMap<String, List<Delegate>> delegateSystemMap = new TreeMap<String, List<Delegate>>();
+    TreeMap<String, List<Delegate>> delegateUriMap = new TreeMap<String, List<Delegate>>();
+    TreeMap<String, List<Delegate>> delegatePublicMap = new TreeMap<String, List<Delegate>>();
+    boolean preferPublic = catalog.getDefaultPreferPublic();
+    List<CatalogEntry> entries = catalog.getEntries();
+    for (int i = 0, len = entries.size(); i < len; i++) {
+      CatalogEntry e = entries.get(i);
+      int type = e.getEntryType();
+      if (type == Catalog.OVERRIDE)
+        preferPublic = e.getEntryArg(0).equalsIgnoreCase("YES");
+      else if (type == Catalog.SYSTEM)
+        putFirst(systemMap, ignoreSystemCase ? toLowerCase(e.getEntryArg(0)) : e.getEntryArg(0), e.getEntryArg(1));
+      else if (type == Catalog.URI)
+        putFirst(uriMap, e.getEntryArg(0), e.getEntryArg(1));
+      else if (type == Catalog.PUBLIC)
+        putPublic(publicMap, e, preferPublic);
+      else if (type == Catalog.ENTITY)
+        putPublic(entityMap, e, preferPublic);
+      else if (type == Catalog.DOCTYPE)
+        putPublic(doctypeMap, e, preferPublic);
+      else if (type == Catalog.REWRITE_SYSTEM)
+        putFirst(rewriteSystemMap, e.getEntryArg(0), e.getEntryArg(1));
+      else if (type == Catalog.REWRITE_URI)
+        putFirst(rewriteUriMap, e.getEntryArg(0), e.getEntryArg(1));
+      else if (type == Catalog.SYSTEM_SUFFIX)
+        putFirst(systemSuffixMap, reverse(e.getEntryArg(0)), e.getEntryArg(1));
+      else if (type == Catalog.URI_SUFFIX)
+        putFirst(uriSuffixMap, reverse(e.getEntryArg(0)), e.getEntryArg(1));
+      else if (type == Catalog.DELEGATE_SYSTEM)
+        putDelegate(delegateSystemMap, e, i, preferPublic, pending);
+      else if (type == Catalog.DELEGATE_URI)
+        putDelegate(delegateUriMap, e, i, preferPublic, pending);
+      else if (type == Catalog.DELEGATE_PUBLIC)
+        putDelegate(delegatePublicMap, e, i, preferPublic, pending);
+    }
+    rewriteSystem = new PrefixTable<String>(rewriteSystemMap);
+    rewriteUri = new PrefixTable<String>(rewriteUriMap);
+    systemSuffix = new PrefixTable<String>(systemSuffixMap);
+    uriSuffix = new PrefixTable<String>(uriSuffixMap);
+    delegateSystem = new PrefixTable<List<Delegate>>(delegateSystemMap);
+    delegateUri = new PrefixTable<List<Delegate>>(delegateUriMap);
+    delegatePublic = new PrefixTable<List<Delegate>>(delegatePublicMap);
+    for (OasisCatalog c : catalog.loadSubordinateCatalogs())
+      subordinates.add(new CatalogIndex(c, delegateCatalogs, pending));
+  }
+
+  private static <T> void putFirst(Map<String, T> map, String key, T value) {
+    if (!map.containsKey(key))
+      map.put(key, value);
+  }
+
+  private static void putPublic(Map<String, PublicEntry> map, CatalogEntry e, boolean preferPublic) {
+    String key = e.getEntryArg(0);
+    PublicEntry entry = map.get(key);
+    if (entry == null) {
+      entry = new PublicEntry(e.getEntryArg(1));
+      map.put(key, entry);
+    }
+    if (preferPublic && entry.preferPublicUri == null)
+      entry.preferPublicUri = e.getEntryArg(1);
+  }
+
+  private static void putDelegate(Map<String, List<Delegate>> map, CatalogEntry e, int position,
+                                  boolean preferPublic, List<String> pending) {
+    String key = e.getEntryArg(0);
+    List<Delegate> list = map.get(key);
+    if (list == null) {
+      list = new ArrayList<Delegate>();
+      map.put(key, list);
+    }
+    list.add(new Delegate(position, e.getEntryArg(1), preferPublic));
+    pending.add(e.getEntryArg(1));
+  }
+
+  public String resolveSystem(String systemId) throws IOException {
+    systemId = catalog.normalize(systemId);
+    if (systemId != null && systemId.startsWith(URN_PUBLICID))
+      return resolvePublic(PublicId.decodeURN(systemId), null);
+    if (systemId != null) {
+      String resolved = resolveLocalSystem(systemId);
+      if (resolved != null)
+        return resolved;
+    }
+    for (int i = 0, len = subordinates.size(); i < len; i++) {
+      String resolved = subordinates.get(i).resolveSystem(systemId);
+      if (resolved != null)
+        return resolved;
+    }
+    return null;
+  }
+
+  public String resolveURI(String uri) throws IOException {
+    uri = catalog.normalize(uri);
+    if (uri != null && uri.startsWith(URN_PUBLICID))
+      return resolvePublic(PublicId.decodeURN(uri), null);
+    if (uri != null) {
+      String resolved = resolveLocalURI(uri);
+      if (resolved != null)
+        return resolved;
+    }
+    for (int i = 0, len = subordinates.size(); i < len; i++) {
+      String resolved = subordinates.get(i).resolveURI(uri);
+      if (resolved != null)
+        return resolved;
+    }
+    return null;
+  }
+
+  public String resolvePublic(String publicId, String systemId) throws IOException {
+    return resolveExternal(Catalog.PUBLIC, null, publicId, systemId);
+  }
+
+  public String resolveEntity(String entityName, String publicId, String systemId) throws IOException {
+    return resolveExternal(Catalog.ENTITY, entityName, publicId, systemId);
+  }
+
+  public String resolveDoctype(String entityName, String publicId, String systemId) throws IOException {
+    return resolveExternal(Catalog.DOCTYPE, entityName, publicId, systemId);
+  }
+
+  private String resolveExternal(int type, String name, String publicId, String systemId) throws IOException {
+    systemId = catalog.normalize(systemId);
+    if (publicId != null && publicId.startsWith(URN_PUBLICID))
+      publicId = PublicId.decodeURN(publicId);
+    if (systemId != null && systemId.startsWith(URN_PUBLICID)) {
+      systemId = PublicId.decodeURN(systemId);
+      // if the public identifier differs, it is used
+      if (publicId == null)
+        publicId = systemId;
+      systemId = null;
+    }
+    if (systemId != null) {
+      String resolved = resolveLocalSystem(systemId);
+      if (resolved != null)
+        return resolved;
+    }
+    if (type == Catalog.PUBLIC || publicId != null) {
+      String resolved = resolveLocalPublic(publicId, systemId);
+      if (resolved != null)
+        return resolved;
+    }
+    if (type != Catalog.PUBLIC) {
+      String resolved = lookup(type == Catalog.ENTITY ? entityMap : doctypeMap, name, systemId);
+      if (resolved != null)
+        return resolved;
+    }
+    for (int i = 0, len = subordinates.size(); i < len; i++) {
+      String resolved = subordinates.get(i).resolveExternal(type, name, publicId, systemId);
+      if (resolved != null)
+        return resolved;
+    }
+    return null;
+  }
+
+  private String resolveLocalSystem(String systemId) throws IOException {
+    String resolved = systemMap.get(ignoreSystemCase ? toLowerCase(systemId) : systemId);
+    if (resolved != null)
+      return resolved;
+    resolved = rewrite(rewriteSystem, systemId);
+    if (resolved != null)
+      return resolved;
+    resolved = suffix(systemSuffix, systemId);
+    if (resolved != null)
+      return resolved;
+    List<CatalogIndex> delegates = delegates(delegateSystem, systemId, false);
+    if (delegates == null)
+      return null;
+    for (int i = 0, len = delegates.size(); i < len; i++) {
+      resolved = delegates.get(i).resolveSystem(systemId);
+      if (resolved != null)
+        return resolved;
+    }
+    return null;
+  }
+
+  private String resolveLocalURI(String uri) throws IOException {
+    String resolved = uriMap.get(uri);
+    if (resolved != null)
+      return resolved;
+    resolved = rewrite(rewriteUri, uri);
+    if (resolved != null)
+      return resolved;
+    resolved = suffix(uriSuffix, uri);
+    if (resolved != null)
+      return resolved;
+    List<CatalogIndex> delegates = delegates(delegateUri, uri, false);
+    if (delegates == null)
+      return null;
+    for (int i = 0, len = delegates.size(); i < len; i++) {
+      resolved = delegates.get(i).resolveURI(uri);
+      if (resolved != null)
+        return resolved;
+    }
+    return null;
+  }
+
+  private String resolveLocalPublic(String publicId, String systemId) throws IOException {
+    publicId = PublicId.normalize(publicId);
+    if (systemId != null) {
+      String resolved = resolveLocalSystem(systemId);
+      if (resolved != null)
+        return resolved;
+    }
+    String resolved = lookup(publicMap, publicId, systemId);
+    if (resolved != null)
+      return resolved;
+    List<CatalogIndex> delegates = delegates(delegatePublic, publicId, systemId != null);
+    if (delegates == null)
+      return null;
+    for (int i = 0, len = delegates.size(); i < len; i++) {
+      resolved = delegates.get(i).resolvePublic(publicId, null);
+      if (resolved != null)
+        return resolved;
+    }
+    return null;
+  }
+
+  private static String lookup(Map<String, PublicEntry> map, String key, String systemId) {
+    PublicEntry entry = map.get(key);
+    if (entry == null)
+      return null;
+    // a system identifier takes precedence over entries in the scope of prefer="system"
+    return systemId == null ? entry.uri : entry.preferPublicUri;
+  }
+
+  private static String rewrite(PrefixTable<String> table, String s) {
+    if (table.isEmpty())
+      return null;
+    int i = table.longestPrefix(s);
+    if (i < 0)
+      return null;
+    return table.getValue(i) + s.substring(table.getKey(i).length());
+  }
+
+  private static String suffix(PrefixTable<String> table, String s) {
+    if (table.isEmpty())
+      return null;
+    int i = table.longestPrefix(reverse(s));
+    if (i < 0)
+      return null;
+    return table.getValue(i);
+  }
+
+  /**
+   * Returns the indexes of the catalogs to which a lookup is delegated, in the order
+   * of the delegate entries, or null if it is not delegated.
+   */
+  private List<CatalogIndex> delegates(PrefixTable<List<Delegate>> table, String s,
+                                       boolean requirePreferPublic) throws IOException {
+    if (table.isEmpty())
+      return null;
+    List<Delegate> matches = null;
+    for (int i = table.longestPrefix(s); i >= 0; i = table.parent(i)) {
+      for (Delegate d : table.getValue(i)) {
+        if (requirePreferPublic && !d.preferPublic)
+          continue;
+        if (matches == null)
+          matches = new ArrayList<Delegate>();
+        matches.add(d);
+      }
+    }
+    if (matches == null)
+      return null;
+    Collections.sort(matches);
+    // a catalog used by more than one matching entry is only consulted once
+    Map<String, CatalogIndex> result = new LinkedHashMap<String, CatalogIndex>();
+    for (Delegate d : matches) {
+      Object value = delegateCatalogs.get(d.catalogUri);
+      if (value instanceof IOException)
+        throw (IOException)value;
+      if (!result.containsKey(d.catalogUri))
+        result.put(d.catalogUri, (CatalogIndex)value);
+    }
+    return new ArrayList<CatalogIndex>(result.values());
+  }
+
+  private static String reverse(String s) {
+    return new StringBuilder(s).reverse().toString();
+  }
+
+  private static String toLowerCase(String s) {
+    return s.toLowerCase(Locale.ENGLISH);
+  }
+}
@@ -19,9 +19,55 @@ import java.util.List;
  * A Resolver that uses OASIS XML catalogs.
  */
 public class CatalogResolver extends AbstractResolver {
+  /**
+   * The lookups used by resolve.
+   */
+  interface Lookup {
+    String resolveSystem(String systemId) throws IOException;
+    String resolveURI(String uri) throws IOException;
+    String resolvePublic(String publicId, String systemId) throws IOException;
+    String resolveEntity(String entityName, String publicId, String systemId) throws IOException;
+    String resolveDoctype(String doctypeName, String publicId, String systemId) throws IOException;
+  }
+
+  /**
+   * Lookups in a Catalog that is not an OasisCatalog and so cannot be indexed.
+   * Catalog is not thread-safe, so lookups are synchronized.
+   */
+  static private class CatalogLookup implements Lookup {
+    private final Catalog catalog;
+
+    CatalogLookup(Catalog catalog) {
+      this.catalog = catalog;
+    }
+
+    public synchronized String resolveSystem(String systemId) throws IOException {
+      return catalog.resolveSystem(systemId);
+    }
+
+    public synchronized String resolveURI(String uri) throws IOException {
+      return catalog.resolveURI(uri);
+    }
+
+    public synchronized String resolvePublic(String publicId, String systemId) throws IOException {
+      return catalog.resolvePublic(publicId, systemId);
+    }
+
+    public synchronized String resolveEntity(String entityName, String publicId, String systemId) throws IOException {
+      return catalog.resolveEntity(entityName, publicId, systemId);
+    }
+
+    public synchronized String resolveDoctype(String doctypeName, String publicId, String systemId) throws IOException {
+      return catalog.resolveDoctype(doctypeName, publicId, systemId);
+    }
+  }
+
   private final Catalog catalog;
-  private boolean catalogLoaded = false;
-  private boolean hadCatalogError = false;
+  /**
+   * Set once the catalogs have been loaded; after that resolve does not lock anything.
+   */
+  private volatile Lookup lookup = null;
+  private volatile boolean hadCatalogError = false;
 
   // Allow somebody to customize in a different way, but still use our resolve logic.
   public CatalogResolver(Catalog catalog) {
@@ -39,8 +85,8 @@ public class CatalogResolver extends AbstractResolver {
   public CatalogResolver(List<String> catalogUris) {
     this(catalogUris, new SAXResolver());
   }
-  
-  public synchronized void resolve(Identifier id, Input input) throws IOException, ResolverException {
+
+  public void resolve(Identifier id, Input input) throws IOException, ResolverException {
     if (input.isResolved())
       return;
     if (hadCatalogError)
@@ -57,26 +103,25 @@ public class CatalogResolver extends AbstractResolver {
     String resolved = null;
     boolean isExternalIdentifier = (id instanceof ExternalIdentifier);
     try {
-      if (!catalogLoaded) {
-        catalogLoaded = true;
-        catalog.loadSystemCatalogs();
-      }
+      Lookup lookup = getLookup();
+      if (lookup == null)
+        return;
       if (absoluteUri != null)
-        resolved = isExternalIdentifier ? catalog.resolveSystem(absoluteUri) : catalog.resolveURI(absoluteUri);
+        resolved = isExternalIdentifier ? lookup.resolveSystem(absoluteUri) : lookup.resolveURI(absoluteUri);
       if (resolved == null) {
         if (!isExternalIdentifier)
-          resolved = catalog.resolveURI(id.getUriReference());
+          resolved = lookup.resolveURI(id.getUriReference());
         else if (id instanceof ExternalEntityIdentifier) {
           ExternalEntityIdentifier xid = (ExternalEntityIdentifier)id;
-          resolved = catalog.resolveEntity(xid.getEntityName(), xid.getPublicId(), xid.getUriReference());
+          resolved = lookup.resolveEntity(xid.getEntityName(), xid.getPublicId(), xid.getUriReference());
         }
         else if (id instanceof ExternalDTDSubsetIdentifier) {
           ExternalDTDSubsetIdentifier xid = (ExternalDTDSubsetIdentifier)id;
-          resolved = catalog.resolveDoctype(xid.getDoctypeName(), xid.getPublicId(), xid.getUriReference());
+          resolved = lookup.resolveDoctype(xid.getDoctypeName(), xid.getPublicId(), xid.getUriReference());
         }
         else {
           ExternalIdentifier xid = (ExternalIdentifier)id;
-          resolved = catalog.resolvePublic(xid.getPublicId(), xid.getUriReference());
+          resolved = lookup.resolvePublic(xid.getPublicId(), xid.getUriReference());
         }
       }
     }
@@ -87,4 +132,38 @@ public class CatalogResolver extends AbstractResolver {
     if (resolved != null)
       input.setUri(resolved);
   }
+
+  /**
+   * Loads the catalogs the first time it is called. An OasisCatalog is loaded
+   * completely and indexed, so that lookups are fast and need no lock.
+   * Returns null if the catalogs could not be loaded.
+   */
+  private Lookup getLookup() throws IOException {
+    Lookup result = lookup;
+    if (result != null)
+      return result;
+    synchronized (this) {
+      if (lookup == null && !hadCatalogError) {
+        IOException failure = null;
+        try {
+          catalog.loadSystemCatalogs();
+        }
+        catch (ResolverIOException e) {
+          hadCatalogError = true;
+          throw e;
+        }
+        catch (IOException e) {
+          // the catalogs are not loaded again; later lookups use what was loaded
+          failure = e;
+        }
+        if (catalog instanceof OasisCatalog)
+          lookup = CatalogIndex.build((OasisCatalog)catalog);
+        else
+          lookup = new CatalogLookup(catalog);
+        if (failure != null)
+          throw failure;
+      }
+      return lookup;
+    }
+  }
 }
@@ -5,6 +5,7 @@ import com.thaiopensource.resolver.xml.XMLDocumentIdentifier;
 import com.thaiopensource.resolver.xml.sax.SAXResolver;
 import com.thaiopensource.xml.sax.DraconianErrorHandler;
 import org.apache.xml.resolver.Catalog;
+import org.apache.xml.resolver.CatalogEntry;
 import org.apache.xml.resolver.CatalogManager;
 import org.apache.xml.resolver.readers.OASISXMLCatalogReader;
 import org.xml.sax.SAXException;
@@ -13,6 +14,8 @@ import org.xml.sax.XMLReader;
 import javax.xml.transform.sax.SAXSource;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A catalog with customized parsing of catalog files. In particular, it only supports
@@ -20,6 +23,11 @@ import java.net.URL;
  */
 class OasisCatalog extends Catalog {
   private final SAXResolver saxResolver;
+  /**
+   * The catalogs loaded by loadSubordinateCatalogs, in the same order as in catalogs,
+   * which is a raw Vector of URIs and catalogs.
+   */
+  private final List<OasisCatalog> subordinateCatalogs = new ArrayList<OasisCatalog>();
   
   OasisCatalog(CatalogManager catalogManager, SAXResolver saxResolver) {
     super(catalogManager);
@@ -55,4 +63,58 @@ class OasisCatalog extends Catalog {
   protected Catalog newCatalog() {
     return new OasisCatalog(catalogManager, saxResolver);
   }
+
+  /**
+   * Returns the entries of this catalog, in the order in which they are used.
+   * Delegate entries come last.
+   */
+  List<CatalogEntry> getEntries() {
+    List<CatalogEntry> entries = new ArrayList<CatalogEntry>();
+    for (int i = 0, len = catalogEntries.size(); i < len; i++)
+      entries.add((CatalogEntry)catalogEntries.elementAt(i));
+    return entries;
+  }
+
+  boolean getDefaultPreferPublic() {
+    return default_override;
+  }
+
+  /**
+   * Returns the catalogs to be consulted after this one, loading those that
+   * have not yet been loaded. As in Catalog, a catalog that cannot be
+   * loaded is replaced by an empty catalog.
+   */
+  List<OasisCatalog> loadSubordinateCatalogs() {
+    // catalogs is only ever appended to
+    for (int i = subordinateCatalogs.size(), len = catalogs.size(); i < len; i++) {
+      Object obj = catalogs.elementAt(i);
+      OasisCatalog c;
+      if (obj instanceof OasisCatalog)
+        c = (OasisCatalog)obj;
+      else {
+        c = (OasisCatalog)newCatalog();
+        try {
+          c.parseCatalog((String)obj);
+        }
+        catch (IOException e) {
+          // ignore, like Catalog.resolveSubordinateCatalogs
+        }
+      }
+      subordinateCatalogs.add(c);
+    }
+    return new ArrayList<OasisCatalog>(subordinateCatalogs);
+  }
+
+  /**
+   * Loads a catalog to which lookups are delegated.
+   */
+  OasisCatalog loadDelegateCatalog(String uri) throws IOException {
+    OasisCatalog c = (OasisCatalog)newCatalog();
+    c.parseCatalog(uri);
+    return c;
+  }
+
+  String normalize(String uri) {
+    return normalizeURI(uri);
+  }
 }
@@ -4,6 +4,7 @@ import com.thaiopensource.resolver.Input;
 import com.thaiopensource.resolver.Resolver;
 import com.thaiopensource.resolver.ResolverException;
 import com.thaiopensource.resolver.xml.ExternalIdentifier;
+import com.thaiopensource.resolver.xml.XMLDocumentIdentifier;
 import com.thaiopensource.resolver.xml.sax.SAXResolver;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -27,6 +28,25 @@ public class CatalogResolverTest {
     Assert.assertEquals(input.getUri(), "http://www.example.com/bar.xml");
   }
 
+  @Test
+  public void testResolveIndexed() throws IOException, ResolverException {
+    List<String> catalogs = new ArrayList<String>();
+    catalogs.add(resourceUri("catalog3.xml"));
+    Resolver resolver = new CatalogResolver(catalogs, new SAXResolver(null));
+    Input input = new Input();
+    resolver.resolve(new ExternalIdentifier("http://www.example.com/dtd/foo.dtd", null, null), input);
+    Assert.assertEquals(input.getUri(), "http://dtd.example.org/foo.dtd");
+    input = new Input();
+    resolver.resolve(new ExternalIdentifier("http://www.example.com/doc/foo.dtd", null, null), input);
+    Assert.assertEquals(input.getUri(), "http://www.example.org/doc/foo.dtd");
+    input = new Input();
+    resolver.resolve(new XMLDocumentIdentifier("http://www.example.net/a/foo.rng", null, null), input);
+    Assert.assertEquals(input.getUri(), "http://www.example.com/schemas/foo.rng");
+    input = new Input();
+    resolver.resolve(new ExternalIdentifier("foo.xml", "http://www.example.net/index.html", "The Great Foo"), input);
+    Assert.assertEquals(input.getUri(), "http://www.example.com/bar.xml");
+  }
+
   static String resourceUri(String fileName) {
     String className = CatalogResolverTest.class.getName();
     int dotIndex = className.lastIndexOf('.');
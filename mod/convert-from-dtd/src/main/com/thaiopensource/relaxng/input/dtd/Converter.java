@@ -50,6 +50,7 @@ import com.thaiopensource.xml.dtd.om.TopLevelVisitor;
 import com.thaiopensource.xml.em.ExternalId;
 import com.thaiopensource.xml.util.WellKnownNamespaces;
 
+import java.io.File;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -70,6 +71,10 @@ public class Converter {
     String annotationPrefix;
     String defaultNamespace;
     final Map<String, String> prefixMap = new HashMap<String, String>();
+    /**
+     * the directory in which parsed DTDs are kept; null if they are kept only in memory
+     */
+    File cacheDirectory;
   }
 
   private final Dtd dtd;
@@ -15,7 +15,7 @@ import com.thaiopensource.relaxng.translate.util.ParamProcessor;
 import com.thaiopensource.resolver.Resolver;
 import com.thaiopensource.util.Localizer;
 import com.thaiopensource.xml.dtd.om.Dtd;
-import com.thaiopensource.xml.dtd.parse.DtdParserImpl;
+import com.thaiopensource.xml.dtd.parse.CachingDtdParser;
 import com.thaiopensource.xml.dtd.parse.ParseException;
 import com.thaiopensource.xml.em.EntityManager;
 import com.thaiopensource.xml.em.ResolverUriEntityManager;
@@ -25,10 +25,23 @@ import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 public class DtdInputFormat implements InputFormat {
+  /**
+   * The maximum number of parsed DTDs kept in memory by each CachingDtdParser.
+   */
+  static private final int MAX_CACHED_DTDS = 8;
+  /**
+   * Maps each directory specified with the dtd-cache parameter, or null, to the CachingDtdParser
+   * that keeps parsed DTDs in that directory, so that a DTD used by many conversions in the same
+   * process is parsed only once. Access must be synchronized on the map.
+   */
+  static private final Map<File, CachingDtdParser> dtdParsers = new HashMap<File, CachingDtdParser>();
+
   static private class NamespaceDeclParamFactory implements ParamFactory {
     private final Map<String, String> prefixMap;
 
@@ -140,11 +153,17 @@ public class DtdInputFormat implements InputFormat {
                    options.attlistDeclPattern = pattern;
                  }
                });
+    pp.declare("dtd-cache",
+               new AbstractParam() {
+                 public void set(String value) {
+                   options.cacheDirectory = new File(value).getAbsoluteFile();
+                 }
+               });
     pp.setParamFactory(new NamespaceDeclParamFactory(options.prefixMap));
     pp.process(params, eh);
     try {
       EntityManager em = resolver != null? new ResolverUriEntityManager(resolver): new UriEntityManager();
-      Dtd dtd = new DtdParserImpl().parse(uri, em);
+      Dtd dtd = getDtdParser(options.cacheDirectory).parse(uri, em);
       try {
         return new Converter(dtd, er, options).convert();
       }
@@ -157,4 +176,17 @@ public class DtdInputFormat implements InputFormat {
     }
   }
 
+  static private CachingDtdParser getDtdParser(File directory) {
+    synchronized (dtdParsers) {
+      CachingDtdParser parser = dtdParsers.get(directory);
+      if (parser == null) {
+        if (directory != null)
+          directory.mkdirs();
+        parser = new CachingDtdParser(MAX_CACHED_DTDS, directory);
+        dtdParsers.put(directory, parser);
+      }
+      return parser;
+    }
+  }
+
 }
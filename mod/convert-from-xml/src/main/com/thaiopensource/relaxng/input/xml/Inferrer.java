@@ -37,9 +37,17 @@ import com.thaiopensource.xml.util.Name;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLReader;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -48,6 +56,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 class Inferrer {
   private final Schema schema;
@@ -59,10 +73,50 @@ class Inferrer {
   private String prefixSeparator;
 
   private static final String SEPARATORS = ".-_";
+  /**
+   * The number of shards into which the documents are divided for each thread,
+   * so that threads given small documents do not sit idle.
+   */
+  private static final int SHARDS_PER_THREAD = 4;
 
   static class Options {
     String encoding;
     Resolver resolver;
+    int threads = 1;
+    /**
+     * The file from which the state of an earlier inference is loaded.
+     */
+    String loadState;
+    /**
+     * The file to which the state of the inference is saved.
+     */
+    String saveState;
+    /**
+     * The number of documents that are used in full before sampling starts.
+     */
+    int fullDocuments = 1;
+    /**
+     * The percentage of the documents after the first fullDocuments that are used.
+     */
+    int documentPercent = 100;
+    /**
+     * The percentage of the instances of each element that are used in the documents
+     * after the first fullDocuments.
+     */
+    int elementPercent = 100;
+    int maxStableValues = 0;
+
+    /**
+     * Returns true if the document with the specified index is to be used.
+     * The documents used are spread evenly, so that this does not depend on how
+     * the documents are divided between threads.
+     */
+    boolean isSampled(int i) {
+      if (i < fullDocuments || documentPercent == 100)
+        return true;
+      long n = i - fullDocuments;
+      return (n + 1)*documentPercent/100 != n*documentPercent/100;
+    }
   }
 
   private static class PatternComparator implements Comparator<Pattern> {
@@ -215,21 +269,154 @@ class Inferrer {
   }
 
   static SchemaCollection infer(String[] args, Options options, ErrorHandler eh) throws SAXException, IOException {
-    InferHandler handler = new InferHandler(new DatatypeLibraryLoader());
+    InferHandler handler = null;
+    if (options.loadState != null)
+      handler = loadState(options.loadState);
+    if (options.threads > 1 && args.length > 1)
+      handler = inferConcurrently(handler, args, options, eh);
+    else
+      handler = infer(handler, args, 0, args.length, options, eh);
+    if (options.saveState != null)
+      saveState(handler, options.saveState);
+    SchemaCollection sc = new SchemaCollection();
+    sc.setMainUri(args[0]);
+    SchemaDocument sd = new SchemaDocument(new Inferrer(handler.getSchema()).grammar);
+    sc.getSchemaDocumentMap().put(sc.getMainUri(), sd);
+    return sc;
+  }
+
+  /**
+   * Infers from the specified documents using the specified handler,
+   * or a new handler if the specified handler is null.
+   */
+  private static InferHandler infer(InferHandler handler, String[] args, int start, int end,
+                                    Options options, ErrorHandler eh)
+          throws SAXException, IOException {
+    if (handler == null)
+      handler = new InferHandler(new DatatypeLibraryLoader());
+    handler.setMaxStableValues(options.maxStableValues);
     XMLReader xr = new SAXResolver(options.resolver).createXMLReader();
     xr.setErrorHandler(eh);
     xr.setContentHandler(handler);
-    for (int i = 0; i < args.length; i++) {
+    for (int i = start; i < end; i++) {
+      if (!options.isSampled(i))
+        continue;
+      handler.setSampleFraction(i < options.fullDocuments ? 1 : options.elementPercent/100.0);
       InputSource in = new InputSource(args[i]);
       if (options.encoding != null)
         in.setEncoding(options.encoding);
       xr.parse(in);
     }
-    SchemaCollection sc = new SchemaCollection();
-    sc.setMainUri(args[0]);
-    SchemaDocument sd = new SchemaDocument(new Inferrer(handler.getSchema()).grammar);
-    sc.getSchemaDocumentMap().put(sc.getMainUri(), sd);
-    return sc;
+    return handler;
+  }
+
+  /**
+   * Divides the documents into contiguous shards, infers a partial schema from each shard
+   * in a pool of threads, and merges the partial schemas in the order of the shards,
+   * which gives the same schema as inferring from the documents one after another.
+   * The partial schemas are merged into the specified handler, unless it is null.
+   */
+  private static InferHandler inferConcurrently(InferHandler handler, final String[] args,
+                                                final Options options, ErrorHandler eh)
+          throws SAXException, IOException {
+    final ErrorHandler sharedEh = new SynchronizedErrorHandler(eh);
+    int nThreads = Math.min(options.threads, args.length);
+    int nShards = Math.min(nThreads * SHARDS_PER_THREAD, args.length);
+    ExecutorService executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "trang-infer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      List<Future<InferHandler>> futures = new ArrayList<Future<InferHandler>>();
+      for (int i = 0; i < nShards; i++) {
+        final int start = (int)((long)args.length * i / nShards);
+        final int end = (int)((long)args.length * (i + 1) / nShards);
+        futures.add(executor.submit(new Callable<InferHandler>() {
+          public InferHandler call() throws SAXException, IOException {
+            return infer(null, args, start, end, options, sharedEh);
+          }
+        }));
+      }
+      for (Future<InferHandler> future : futures) {
+        InferHandler shardHandler = getResult(future);
+        if (handler == null)
+          handler = shardHandler;
+        else
+          handler.merge(shardHandler);
+      }
+      return handler;
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static InferHandler loadState(String file) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      return InferHandler.readState(in, new DatatypeLibraryLoader());
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  private static void saveState(InferHandler handler, String file) throws IOException {
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      handler.writeState(out);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  private static InferHandler getResult(Future<InferHandler> future) throws SAXException, IOException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SAXException(e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SAXException)
+        throw (SAXException)cause;
+      if (cause instanceof IOException)
+        throw (IOException)cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      if (cause instanceof Error)
+        throw (Error)cause;
+      throw new SAXException((Exception)cause);
+    }
+  }
+
+  /**
+   * Reports errors from several threads to a single ErrorHandler one at a time.
+   */
+  private static class SynchronizedErrorHandler implements ErrorHandler {
+    private final ErrorHandler eh;
+
+    SynchronizedErrorHandler(ErrorHandler eh) {
+      this.eh = eh;
+    }
+
+    public synchronized void warning(SAXParseException exception) throws SAXException {
+      eh.warning(exception);
+    }
+
+    public synchronized void error(SAXParseException exception) throws SAXException {
+      eh.error(exception);
+    }
+
+    public synchronized void fatalError(SAXParseException exception) throws SAXException {
+      eh.fatalError(exception);
+    }
   }
 
   private Inferrer(Schema schema) {
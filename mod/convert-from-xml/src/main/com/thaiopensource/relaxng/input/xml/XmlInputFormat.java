@@ -3,7 +3,9 @@ package com.thaiopensource.relaxng.input.xml;
 import com.thaiopensource.relaxng.edit.SchemaCollection;
 import com.thaiopensource.relaxng.input.AbstractMultiInputFormat;
 import com.thaiopensource.relaxng.input.InputFailedException;
+import com.thaiopensource.relaxng.translate.util.AbstractParam;
 import com.thaiopensource.relaxng.translate.util.EncodingParam;
+import com.thaiopensource.relaxng.translate.util.IntegerParam;
 import com.thaiopensource.relaxng.translate.util.InvalidParamsException;
 import com.thaiopensource.relaxng.translate.util.ParamProcessor;
 import com.thaiopensource.resolver.Resolver;
@@ -13,6 +15,8 @@ import org.xml.sax.SAXException;
 import java.io.IOException;
 
 public class XmlInputFormat extends AbstractMultiInputFormat {
+  private static final int MAX_THREADS = 256;
+
   public SchemaCollection load(String[] uris, String[] params, String outputFormat, ErrorHandler eh, Resolver resolver)
           throws InputFailedException, InvalidParamsException, IOException, SAXException {
     ParamProcessor pp = new ParamProcessor();
@@ -24,6 +28,48 @@ public class XmlInputFormat extends AbstractMultiInputFormat {
                    options.encoding = encoding;
                  }
                });
+    pp.declare("threads",
+               new IntegerParam(1, MAX_THREADS) {
+                 protected void setInteger(int value) {
+                   options.threads = value;
+                 }
+               });
+    pp.declare("full-documents",
+               new IntegerParam(1, Integer.MAX_VALUE) {
+                 protected void setInteger(int value) {
+                   options.fullDocuments = value;
+                 }
+               });
+    pp.declare("sample-documents",
+               new IntegerParam(1, 100) {
+                 protected void setInteger(int value) {
+                   options.documentPercent = value;
+                 }
+               });
+    pp.declare("sample-elements",
+               new IntegerParam(1, 100) {
+                 protected void setInteger(int value) {
+                   options.elementPercent = value;
+                 }
+               });
+    pp.declare("max-stable-values",
+               new IntegerParam(1, Integer.MAX_VALUE) {
+                 protected void setInteger(int value) {
+                   options.maxStableValues = value;
+                 }
+               });
+    pp.declare("load-state",
+               new AbstractParam() {
+                 public void set(String value) {
+                   options.loadState = value;
+                 }
+               });
+    pp.declare("save-state",
+               new AbstractParam() {
+                 public void set(String value) {
+                   options.saveState = value;
+                 }
+               });
     pp.process(params, eh);
     return Inferrer.infer(uris, options, eh);
   }
@@ -0,0 +1,377 @@
+package com.thaiopensource.xml.dtd.parse;
+
+import com.thaiopensource.xml.dtd.om.Dtd;
+import com.thaiopensource.xml.dtd.om.DtdParser;
+import com.thaiopensource.xml.em.EntityManager;
+import com.thaiopensource.xml.em.ExternalId;
+import com.thaiopensource.xml.em.OpenEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A DtdParser that keeps the Dtd object models that it has parsed, so that a DTD that
+ * is parsed many times is only tokenized and analyzed once.
+ * The object models are kept in memory, and optionally in a directory, keyed by the base URI
+ * of the DTD. Each object model is kept together with a hash of the content of the DTD
+ * and of each external entity that was opened when parsing it.
+ * An object model is only used again if the same external entities are opened using the
+ * EntityManager and have the same content; otherwise the DTD is parsed again.
+ * The number of object models kept in memory is bounded; the least recently used is discarded first.
+ * <p>
+ * Object models are never modified after they have been parsed, so the same object model
+ * may be returned more than once. This DtdParser can be used by multiple threads concurrently.
+ */
+public class CachingDtdParser implements DtdParser {
+  static private final String DIGEST_ALGORITHM = "SHA-1";
+  static private final int DIGEST_LENGTH = 20;
+  static private final String FILE_SUFFIX = ".dtd.cache";
+
+  /**
+   * An external entity that was opened when parsing a DTD.
+   */
+  static private class Dependency {
+    final ExternalId xid;
+    final boolean isParameterEntity;
+    final String entityName;
+    /**
+     * null if the EntityManager returned null
+     */
+    final byte[] hash;
+
+    Dependency(ExternalId xid, boolean isParameterEntity, String entityName, byte[] hash) {
+      this.xid = xid;
+      this.isParameterEntity = isParameterEntity;
+      this.entityName = entityName;
+      this.hash = hash;
+    }
+  }
+
+  static private class Entry {
+    final String baseUri;
+    final byte[] hash;
+    final Dependency[] dependencies;
+    final Dtd dtd;
+
+    Entry(String baseUri, byte[] hash, Dependency[] dependencies, Dtd dtd) {
+      this.baseUri = baseUri;
+      this.hash = hash;
+      this.dependencies = dependencies;
+      this.dtd = dtd;
+    }
+  }
+
+  /**
+   * An EntityManager that reads each entity that it opens and records the entity and
+   * a hash of its content.
+   */
+  static private class RecordingEntityManager extends EntityManager {
+    private final EntityManager em;
+    private final List<Dependency> dependencies = new ArrayList<Dependency>();
+
+    RecordingEntityManager(EntityManager em) {
+      this.em = em;
+    }
+
+    public OpenEntity open(ExternalId xid, boolean isParameterEntity, String entityName) throws IOException {
+      OpenEntity entity = em.open(xid, isParameterEntity, entityName);
+      if (entity == null) {
+        dependencies.add(new Dependency(xid, isParameterEntity, entityName, null));
+        return null;
+      }
+      String content = readAll(entity);
+      dependencies.add(new Dependency(xid, isParameterEntity, entityName, hash(entity, content)));
+      return copy(entity, content);
+    }
+
+    public OpenEntity open(String systemId) throws IOException {
+      return em.open(systemId);
+    }
+
+    Dependency[] getDependencies() {
+      return dependencies.toArray(new Dependency[dependencies.size()]);
+    }
+  }
+
+  private final DtdParser parser = new DtdParserImpl();
+  private final int maxEntries;
+  private final File directory;
+  /**
+   * Access must be synchronized on this map.
+   */
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+  /**
+   * Creates a CachingDtdParser that keeps object models only in memory.
+   * @param maxEntries the maximum number of object models kept in memory
+   */
+  public CachingDtdParser(int maxEntries) {
+    this(maxEntries, null);
+  }
+
+  /**
+   * Creates a CachingDtdParser that keeps object models in memory and in a directory.
+   * Object models that are discarded from memory remain in the directory.
+   * @param maxEntries the maximum number of object models kept in memory
+   * @param directory the directory in which to keep object models; may be null
+   */
+  public CachingDtdParser(int maxEntries, File directory) {
+    this.maxEntries = maxEntries;
+    this.directory = directory;
+  }
+
+  public Dtd parse(String systemId, EntityManager em) throws IOException {
+    return parse(em.open(systemId), em);
+  }
+
+  public Dtd parse(OpenEntity entity, EntityManager em) throws IOException {
+    String baseUri = entity.getBaseUri();
+    if (baseUri == null)
+      return parser.parse(entity, em);
+    String content = readAll(entity);
+    byte[] hash = hash(entity, content);
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(baseUri);
+    }
+    if (entry == null || !Arrays.equals(entry.hash, hash)) {
+      entry = read(baseUri);
+      if (entry != null && Arrays.equals(entry.hash, hash))
+        addToMemory(entry);
+      else
+        entry = null;
+    }
+    if (entry != null && isValid(entry, em))
+      return entry.dtd;
+    RecordingEntityManager rem = new RecordingEntityManager(em);
+    Dtd dtd = parser.parse(copy(entity, content), rem);
+    entry = new Entry(baseUri, hash, rem.getDependencies(), dtd);
+    addToMemory(entry);
+    write(entry);
+    return dtd;
+  }
+
+  /**
+   * Discards all object models kept in memory and in the directory.
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+    if (directory != null) {
+      File[] files = directory.listFiles();
+      if (files != null) {
+        for (int i = 0; i < files.length; i++)
+          if (files[i].getName().endsWith(FILE_SUFFIX))
+            files[i].delete();
+      }
+    }
+  }
+
+  /**
+   * Tests whether each external entity that was opened when parsing the DTD
+   * still has the same content.
+   */
+  private static boolean isValid(Entry entry, EntityManager em) {
+    try {
+      for (int i = 0; i < entry.dependencies.length; i++) {
+        Dependency dep = entry.dependencies[i];
+        OpenEntity entity = em.open(dep.xid, dep.isParameterEntity, dep.entityName);
+        if (entity == null) {
+          if (dep.hash != null)
+            return false;
+        }
+        else if (dep.hash == null || !Arrays.equals(dep.hash, hash(entity, readAll(entity))))
+          return false;
+      }
+    }
+    catch (IOException e) {
+      // parsing the DTD will report the error
+      return false;
+    }
+    return true;
+  }
+
+  private void addToMemory(Entry entry) {
+    if (maxEntries <= 0)
+      return;
+    synchronized (entries) {
+      entries.put(entry.baseUri, entry);
+      for (Iterator<Entry> iter = entries.values().iterator(); entries.size() > maxEntries && iter.hasNext();) {
+        iter.next();
+        iter.remove();
+      }
+    }
+  }
+
+  private Entry read(String baseUri) {
+    if (directory == null)
+      return null;
+    File file = cacheFile(baseUri);
+    if (!file.exists())
+      return null;
+    try {
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      // a file that was truncated or corrupted could otherwise be read as a different object model
+      int length = bytes.length - DIGEST_LENGTH;
+      if (length < 0
+          || !Arrays.equals(digest(Arrays.copyOf(bytes, length)), Arrays.copyOfRange(bytes, length, bytes.length)))
+        return null;
+      DtdModelInput in = new DtdModelInput(new ByteArrayInputStream(bytes, 0, length));
+      try {
+        if (in.readInt() != DtdModelOutput.MAGIC || !baseUri.equals(in.readString()))
+          return null;
+        byte[] hash = readHash(in);
+        Dependency[] dependencies = new Dependency[in.readCount()];
+        for (int i = 0; i < dependencies.length; i++) {
+          ExternalId xid = in.readExternalId();
+          boolean isParameterEntity = in.readBoolean();
+          String entityName = in.readString();
+          dependencies[i] = new Dependency(xid, isParameterEntity, entityName, in.readBoolean() ? readHash(in) : null);
+        }
+        return new Entry(baseUri, hash, dependencies, in.readDtd());
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      // the directory is only a cache: treat an unreadable file as missing
+      return null;
+    }
+  }
+
+  private void write(Entry entry) {
+    if (directory == null)
+      return;
+    File file = cacheFile(entry.baseUri);
+    try {
+      // write to a temporary file first, so that other readers never see a partial file
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DtdModelOutput out = new DtdModelOutput(bytes);
+      try {
+        out.writeInt(DtdModelOutput.MAGIC);
+        out.writeString(entry.baseUri);
+        writeHash(out, entry.hash);
+        out.writeInt(entry.dependencies.length);
+        for (int i = 0; i < entry.dependencies.length; i++) {
+          Dependency dep = entry.dependencies[i];
+          out.writeExternalId(dep.xid);
+          out.writeBoolean(dep.isParameterEntity);
+          out.writeString(dep.entityName);
+          out.writeBoolean(dep.hash != null);
+          if (dep.hash != null)
+            writeHash(out, dep.hash);
+        }
+        out.writeDtd(entry.dtd);
+      }
+      finally {
+        out.close();
+      }
+      File tem = File.createTempFile("dtd", ".tmp", directory);
+      OutputStream fileOut = new FileOutputStream(tem);
+      try {
+        bytes.writeTo(fileOut);
+        fileOut.write(digest(bytes.toByteArray()));
+      }
+      finally {
+        fileOut.close();
+      }
+      file.delete();
+      if (!tem.renameTo(file))
+        tem.delete();
+    }
+    catch (IOException e) {
+      // the directory is only a cache: just don't keep the object model there
+    }
+  }
+
+  private static byte[] readHash(DtdModelInput in) throws IOException {
+    byte[] hash = new byte[in.readCount()];
+    in.readFully(hash);
+    return hash;
+  }
+
+  private static void writeHash(DtdModelOutput out, byte[] hash) throws IOException {
+    out.writeInt(hash.length);
+    out.write(hash);
+  }
+
+  private File cacheFile(String baseUri) {
+    return new File(directory, toHex(digest(utf8(baseUri))) + FILE_SUFFIX);
+  }
+
+  private static String readAll(OpenEntity entity) throws IOException {
+    Reader reader = entity.getReader();
+    if (entity.getText() != null) {
+      reader.close();
+      return new String(entity.getText());
+    }
+    try {
+      StringBuilder buf = new StringBuilder();
+      char[] cbuf = new char[8192];
+      int n;
+      while ((n = reader.read(cbuf)) > 0)
+        buf.append(cbuf, 0, n);
+      return buf.toString();
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  private static OpenEntity copy(OpenEntity entity, String content) {
+    return new OpenEntity(content.toCharArray(), entity.getLocation(), entity.getBaseUri(), entity.getEncoding());
+  }
+
+  /**
+   * Returns a hash of the content of an entity together with its base URI and encoding,
+   * which also affect the object model.
+   */
+  private static byte[] hash(OpenEntity entity, String content) {
+    String encoding = entity.getEncoding();
+    return digest(utf8(entity.getBaseUri() + '\u0000' + (encoding == null ? "" : encoding) + '\u0000' + content));
+  }
+
+  private static byte[] utf8(String str) {
+    try {
+      return str.getBytes("UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException("UTF-8 not supported");
+    }
+  }
+
+  private static byte[] digest(byte[] bytes) {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(bytes);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(DIGEST_ALGORITHM + " not supported");
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < bytes.length; i++) {
+      buf.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+      buf.append(Character.forDigit(bytes[i] & 0xF, 16));
+    }
+    return buf.toString();
+  }
+}
@@ -0,0 +1,528 @@
+package com.thaiopensource.xml.dtd.parse;
+
+import com.thaiopensource.xml.dtd.om.Any;
+import com.thaiopensource.xml.dtd.om.AttlistDecl;
+import com.thaiopensource.xml.dtd.om.Attribute;
+import com.thaiopensource.xml.dtd.om.AttributeDefault;
+import com.thaiopensource.xml.dtd.om.AttributeDefaultDef;
+import com.thaiopensource.xml.dtd.om.AttributeDefaultRef;
+import com.thaiopensource.xml.dtd.om.AttributeGroup;
+import com.thaiopensource.xml.dtd.om.AttributeGroupDef;
+import com.thaiopensource.xml.dtd.om.AttributeGroupMember;
+import com.thaiopensource.xml.dtd.om.AttributeGroupRef;
+import com.thaiopensource.xml.dtd.om.CdataDatatype;
+import com.thaiopensource.xml.dtd.om.Choice;
+import com.thaiopensource.xml.dtd.om.Comment;
+import com.thaiopensource.xml.dtd.om.Datatype;
+import com.thaiopensource.xml.dtd.om.DatatypeDef;
+import com.thaiopensource.xml.dtd.om.DatatypeRef;
+import com.thaiopensource.xml.dtd.om.DefaultValue;
+import com.thaiopensource.xml.dtd.om.Def;
+import com.thaiopensource.xml.dtd.om.Dtd;
+import com.thaiopensource.xml.dtd.om.ElementDecl;
+import com.thaiopensource.xml.dtd.om.ElementRef;
+import com.thaiopensource.xml.dtd.om.EnumDatatype;
+import com.thaiopensource.xml.dtd.om.EnumGroup;
+import com.thaiopensource.xml.dtd.om.EnumGroupDef;
+import com.thaiopensource.xml.dtd.om.EnumGroupMember;
+import com.thaiopensource.xml.dtd.om.EnumGroupRef;
+import com.thaiopensource.xml.dtd.om.EnumValue;
+import com.thaiopensource.xml.dtd.om.ExternalEntityDecl;
+import com.thaiopensource.xml.dtd.om.ExternalIdDef;
+import com.thaiopensource.xml.dtd.om.ExternalIdRef;
+import com.thaiopensource.xml.dtd.om.FixedValue;
+import com.thaiopensource.xml.dtd.om.Flag;
+import com.thaiopensource.xml.dtd.om.FlagDef;
+import com.thaiopensource.xml.dtd.om.FlagRef;
+import com.thaiopensource.xml.dtd.om.Ignore;
+import com.thaiopensource.xml.dtd.om.IgnoredSection;
+import com.thaiopensource.xml.dtd.om.ImpliedValue;
+import com.thaiopensource.xml.dtd.om.Include;
+import com.thaiopensource.xml.dtd.om.IncludedSection;
+import com.thaiopensource.xml.dtd.om.InternalEntityDecl;
+import com.thaiopensource.xml.dtd.om.ModelGroup;
+import com.thaiopensource.xml.dtd.om.ModelGroupDef;
+import com.thaiopensource.xml.dtd.om.ModelGroupRef;
+import com.thaiopensource.xml.dtd.om.Name;
+import com.thaiopensource.xml.dtd.om.NameSpec;
+import com.thaiopensource.xml.dtd.om.NameSpecDef;
+import com.thaiopensource.xml.dtd.om.NameSpecRef;
+import com.thaiopensource.xml.dtd.om.NotationDatatype;
+import com.thaiopensource.xml.dtd.om.NotationDecl;
+import com.thaiopensource.xml.dtd.om.OneOrMore;
+import com.thaiopensource.xml.dtd.om.Optional;
+import com.thaiopensource.xml.dtd.om.OverriddenDef;
+import com.thaiopensource.xml.dtd.om.ParamDef;
+import com.thaiopensource.xml.dtd.om.Pcdata;
+import com.thaiopensource.xml.dtd.om.ProcessingInstruction;
+import com.thaiopensource.xml.dtd.om.RequiredValue;
+import com.thaiopensource.xml.dtd.om.Sequence;
+import com.thaiopensource.xml.dtd.om.TokenizedDatatype;
+import com.thaiopensource.xml.dtd.om.TopLevel;
+import com.thaiopensource.xml.dtd.om.ZeroOrMore;
+import com.thaiopensource.xml.em.ExternalId;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * A stream from which a Dtd object model written by DtdModelOutput is read.
+ */
+class DtdModelInput extends DataInputStream {
+  private final List<String> strings = new ArrayList<String>();
+  private final List<Object> objects = new ArrayList<Object>();
+
+  DtdModelInput(InputStream in) {
+    super(in);
+  }
+
+  Dtd readDtd() throws IOException {
+    String uri = readString();
+    String encoding = readString();
+    Vector<TopLevel> topLevel = new Vector<TopLevel>();
+    TopLevel[] contents = readTopLevels();
+    for (int i = 0; i < contents.length; i++)
+      topLevel.addElement(contents[i]);
+    return new DtdImpl(topLevel, uri, encoding);
+  }
+
+  String readString() throws IOException {
+    int index = readInt();
+    if (index == DtdModelOutput.NULL)
+      return null;
+    if (index == DtdModelOutput.NEW) {
+      char[] buf = new char[readCount()];
+      for (int i = 0; i < buf.length; i++)
+        buf[i] = readChar();
+      String str = new String(buf);
+      strings.add(str);
+      return str;
+    }
+    if (index < 0 || index >= strings.size())
+      throw invalidModel();
+    return strings.get(index);
+  }
+
+  int readCount() throws IOException {
+    int n = readInt();
+    if (n < 0)
+      throw invalidModel();
+    return n;
+  }
+
+  /**
+   * Returns the object with the specified index that has already been read.
+   */
+  private <T> T lookup(int index, Class<T> cls) throws IOException {
+    if (index == DtdModelOutput.NULL)
+      return null;
+    if (index < 0 || index >= objects.size() || !cls.isInstance(objects.get(index)))
+      throw invalidModel();
+    return cls.cast(objects.get(index));
+  }
+
+  /**
+   * Reserves the index of an object that follows, so that indexes are assigned
+   * in the same order as by DtdModelOutput, in which an object is indexed before its components.
+   */
+  private int reserveIndex() {
+    objects.add(null);
+    return objects.size() - 1;
+  }
+
+  private <T> T define(int index, T obj) {
+    objects.set(index, obj);
+    return obj;
+  }
+
+  private TopLevel[] readTopLevels() throws IOException {
+    TopLevel[] contents = new TopLevel[readCount()];
+    for (int i = 0; i < contents.length; i++)
+      contents[i] = readTopLevel();
+    return contents;
+  }
+
+  private TopLevel readTopLevel() throws IOException {
+    int ref = readInt();
+    if (ref != DtdModelOutput.NEW)
+      return lookup(ref, TopLevel.class);
+    TopLevel t;
+    int index = reserveIndex();
+    switch (readByte()) {
+    case TopLevel.ELEMENT_DECL:
+      {
+        NameSpec nameSpec = readNameSpec();
+        t = new ElementDecl(nameSpec, readModelGroup());
+      }
+      break;
+    case TopLevel.ATTLIST_DECL:
+      {
+        NameSpec nameSpec = readNameSpec();
+        t = new AttlistDecl(nameSpec, readAttributeGroup());
+      }
+      break;
+    case TopLevel.PROCESSING_INSTRUCTION:
+      {
+        String target = readString();
+        t = new ProcessingInstruction(target, readString());
+      }
+      break;
+    case TopLevel.COMMENT:
+      t = new Comment(readString());
+      break;
+    case TopLevel.NOTATION_DECL:
+      {
+        String name = readString();
+        t = new NotationDecl(name, readExternalId());
+      }
+      break;
+    case TopLevel.MODEL_GROUP_DEF:
+      {
+        String name = readString();
+        t = new ModelGroupDef(name, readModelGroup());
+      }
+      break;
+    case TopLevel.ATTRIBUTE_GROUP_DEF:
+      {
+        String name = readString();
+        t = new AttributeGroupDef(name, readAttributeGroup());
+      }
+      break;
+    case TopLevel.DATATYPE_DEF:
+      {
+        String name = readString();
+        t = new DatatypeDef(name, readDatatype());
+      }
+      break;
+    case TopLevel.ENUM_GROUP_DEF:
+      {
+        String name = readString();
+        t = new EnumGroupDef(name, readEnumGroup());
+      }
+      break;
+    case TopLevel.FLAG_DEF:
+      {
+        String name = readString();
+        t = new FlagDef(name, readFlag());
+      }
+      break;
+    case TopLevel.INCLUDED_SECTION:
+      {
+        Flag flag = readFlag();
+        t = new IncludedSection(flag, readTopLevels());
+      }
+      break;
+    case TopLevel.IGNORED_SECTION:
+      {
+        Flag flag = readFlag();
+        t = new IgnoredSection(flag, readString());
+      }
+      break;
+    case TopLevel.INTERNAL_ENTITY_DECL:
+      {
+        String name = readString();
+        t = new InternalEntityDecl(name, readString());
+      }
+      break;
+    case TopLevel.EXTERNAL_ENTITY_DECL:
+      {
+        String name = readString();
+        t = new ExternalEntityDecl(name, readExternalId());
+      }
+      break;
+    case TopLevel.NAME_SPEC_DEF:
+      {
+        String name = readString();
+        t = new NameSpecDef(name, readNameSpec());
+      }
+      break;
+    case TopLevel.OVERRIDDEN_DEF:
+      {
+        TopLevel def = readTopLevel();
+        if (!(def instanceof Def))
+          throw invalidModel();
+        t = new OverriddenDef((Def)def, readBoolean());
+      }
+      break;
+    case TopLevel.EXTERNAL_ID_DEF:
+      {
+        String name = readString();
+        t = new ExternalIdDef(name, readExternalId());
+      }
+      break;
+    case TopLevel.EXTERNAL_ID_REF:
+      {
+        String name = readString();
+        ExternalId xid = readExternalId();
+        String uri = readString();
+        String encoding = readString();
+        t = new ExternalIdRef(name, xid, uri, encoding, readTopLevels());
+      }
+      break;
+    case TopLevel.PARAM_DEF:
+      {
+        String name = readString();
+        t = new ParamDef(name, readString());
+      }
+      break;
+    case TopLevel.ATTRIBUTE_DEFAULT_DEF:
+      {
+        String name = readString();
+        t = new AttributeDefaultDef(name, readAttributeDefault());
+      }
+      break;
+    default:
+      throw invalidModel();
+    }
+    return define(index, t);
+  }
+
+  private ModelGroup[] readModelGroups() throws IOException {
+    ModelGroup[] members = new ModelGroup[readCount()];
+    for (int i = 0; i < members.length; i++)
+      members[i] = readModelGroup();
+    return members;
+  }
+
+  private ModelGroup readModelGroup() throws IOException {
+    int ref = readInt();
+    if (ref != DtdModelOutput.NEW)
+      return lookup(ref, ModelGroup.class);
+    ModelGroup mg;
+    int index = reserveIndex();
+    switch (readByte()) {
+    case ModelGroup.CHOICE:
+      mg = new Choice(readModelGroups());
+      break;
+    case ModelGroup.SEQUENCE:
+      mg = new Sequence(readModelGroups());
+      break;
+    case ModelGroup.ONE_OR_MORE:
+      mg = new OneOrMore(readModelGroup());
+      break;
+    case ModelGroup.ZERO_OR_MORE:
+      mg = new ZeroOrMore(readModelGroup());
+      break;
+    case ModelGroup.OPTIONAL:
+      mg = new Optional(readModelGroup());
+      break;
+    case ModelGroup.MODEL_GROUP_REF:
+      {
+        String name = readString();
+        mg = new ModelGroupRef(name, readModelGroup());
+      }
+      break;
+    case ModelGroup.ELEMENT_REF:
+      mg = new ElementRef(readNameSpec());
+      break;
+    case ModelGroup.PCDATA:
+      mg = new Pcdata();
+      break;
+    case ModelGroup.ANY:
+      mg = new Any();
+      break;
+    default:
+      throw invalidModel();
+    }
+    return define(index, mg);
+  }
+
+  private AttributeGroup readAttributeGroup() throws IOException {
+    int ref = readInt();
+    if (ref != DtdModelOutput.NEW)
+      return lookup(ref, AttributeGroup.class);
+    AttributeGroup ag;
+    int index = reserveIndex();
+    AttributeGroupMember[] members = new AttributeGroupMember[readCount()];
+    for (int i = 0; i < members.length; i++)
+      members[i] = readAttributeGroupMember();
+    return define(index, new AttributeGroup(members));
+  }
+
+  private AttributeGroupMember readAttributeGroupMember() throws IOException {
+    int ref = readInt();
+    if (ref != DtdModelOutput.NEW)
+      return lookup(ref, AttributeGroupMember.class);
+    AttributeGroupMember member;
+    int index = reserveIndex();
+    switch (readByte()) {
+    case AttributeGroupMember.ATTRIBUTE:
+      {
+        NameSpec nameSpec = readNameSpec();
+        Datatype datatype = readDatatype();
+        member = new Attribute(nameSpec, datatype, readAttributeDefault());
+      }
+      break;
+    case AttributeGroupMember.ATTRIBUTE_GROUP_REF:
+      {
+        String name = readString();
+        member = new AttributeGroupRef(name, readAttributeGroup());
+      }
+      break;
+    default:
+      throw invalidModel();
+    }
+    return define(index, member);
+  }
+
+  private Datatype readDatatype() throws IOException {
+    int ref = readInt();
+    if (ref != DtdModelOutput.NEW)
+      return lookup(ref, Datatype.class);
+    Datatype dt;
+    int index = reserveIndex();
+    switch (readByte()) {
+    case Datatype.CDATA:
+      dt = new CdataDatatype();
+      break;
+    case Datatype.TOKENIZED:
+      dt = new TokenizedDatatype(readString());
+      break;
+    case Datatype.ENUM:
+      dt = new EnumDatatype(readEnumGroup());
+      break;
+    case Datatype.NOTATION:
+      dt = new NotationDatatype(readEnumGroup());
+      break;
+    case Datatype.DATATYPE_REF:
+      {
+        String name = readString();
+        dt = new DatatypeRef(name, readDatatype());
+      }
+      break;
+    default:
+      throw invalidModel();
+    }
+    return define(index, dt);
+  }
+
+  private EnumGroup readEnumGroup() throws IOException {
+    int ref = readInt();
+    if (ref != DtdModelOutput.NEW)
+      return lookup(ref, EnumGroup.class);
+    EnumGroup eg;
+    int index = reserveIndex();
+    EnumGroupMember[] members = new EnumGroupMember[readCount()];
+    for (int i = 0; i < members.length; i++)
+      members[i] = readEnumGroupMember();
+    return define(index, new EnumGroup(members));
+  }
+
+  private EnumGroupMember readEnumGroupMember() throws IOException {
+    int ref = readInt();
+    if (ref != DtdModelOutput.NEW)
+      return lookup(ref, EnumGroupMember.class);
+    EnumGroupMember member;
+    int index = reserveIndex();
+    switch (readByte()) {
+    case EnumGroupMember.ENUM_VALUE:
+      member = new EnumValue(readString());
+      break;
+    case EnumGroupMember.ENUM_GROUP_REF:
+      {
+        String name = readString();
+        member = new EnumGroupRef(name, readEnumGroup());
+      }
+      break;
+    default:
+      throw invalidModel();
+    }
+    return define(index, member);
+  }
+
+  private Flag readFlag() throws IOException {
+    int ref = readInt();
+    if (ref != DtdModelOutput.NEW)
+      return lookup(ref, Flag.class);
+    Flag flag;
+    int index = reserveIndex();
+    switch (readByte()) {
+    case DtdModelOutput.INCLUDE:
+      flag = new Include();
+      break;
+    case DtdModelOutput.IGNORE:
+      flag = new Ignore();
+      break;
+    case DtdModelOutput.FLAG_REF:
+      {
+        String name = readString();
+        flag = new FlagRef(name, readFlag());
+      }
+      break;
+    default:
+      throw invalidModel();
+    }
+    return define(index, flag);
+  }
+
+  private NameSpec readNameSpec() throws IOException {
+    int ref = readInt();
+    if (ref != DtdModelOutput.NEW)
+      return lookup(ref, NameSpec.class);
+    NameSpec nameSpec;
+    int index = reserveIndex();
+    switch (readByte()) {
+    case NameSpec.NAME:
+      nameSpec = new Name(readString());
+      break;
+    case NameSpec.NAME_SPEC_REF:
+      {
+        String name = readString();
+        nameSpec = new NameSpecRef(name, readNameSpec());
+      }
+      break;
+    default:
+      throw invalidModel();
+    }
+    return define(index, nameSpec);
+  }
+
+  private AttributeDefault readAttributeDefault() throws IOException {
+    int ref = readInt();
+    if (ref != DtdModelOutput.NEW)
+      return lookup(ref, AttributeDefault.class);
+    AttributeDefault ad;
+    int index = reserveIndex();
+    switch (readByte()) {
+    case AttributeDefault.DEFAULT_VALUE:
+      ad = new DefaultValue(readString());
+      break;
+    case AttributeDefault.FIXED_VALUE:
+      ad = new FixedValue(readString());
+      break;
+    case AttributeDefault.IMPLIED_VALUE:
+      ad = new ImpliedValue();
+      break;
+    case AttributeDefault.REQUIRED_VALUE:
+      ad = new RequiredValue();
+      break;
+    case AttributeDefault.ATTRIBUTE_DEFAULT_REF:
+      {
+        String name = readString();
+        ad = new AttributeDefaultRef(name, readAttributeDefault());
+      }
+      break;
+    default:
+      throw invalidModel();
+    }
+    return define(index, ad);
+  }
+
+  ExternalId readExternalId() throws IOException {
+    int ref = readInt();
+    if (ref != DtdModelOutput.NEW)
+      return lookup(ref, ExternalId.class);
+    int index = reserveIndex();
+    String systemId = readString();
+    String publicId = readString();
+    return define(index, new ExternalId(systemId, publicId, readString()));
+  }
+
+  static IOException invalidModel() {
+    return new IOException("invalid DTD model");
+  }
+}
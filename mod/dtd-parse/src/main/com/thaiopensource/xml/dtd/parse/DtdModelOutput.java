@@ -0,0 +1,412 @@
+package com.thaiopensource.xml.dtd.parse;
+
+import com.thaiopensource.xml.dtd.om.AttlistDecl;
+import com.thaiopensource.xml.dtd.om.Attribute;
+import com.thaiopensource.xml.dtd.om.AttributeDefault;
+import com.thaiopensource.xml.dtd.om.AttributeDefaultDef;
+import com.thaiopensource.xml.dtd.om.AttributeDefaultRef;
+import com.thaiopensource.xml.dtd.om.AttributeGroup;
+import com.thaiopensource.xml.dtd.om.AttributeGroupDef;
+import com.thaiopensource.xml.dtd.om.AttributeGroupMember;
+import com.thaiopensource.xml.dtd.om.AttributeGroupRef;
+import com.thaiopensource.xml.dtd.om.Choice;
+import com.thaiopensource.xml.dtd.om.Comment;
+import com.thaiopensource.xml.dtd.om.Datatype;
+import com.thaiopensource.xml.dtd.om.DatatypeDef;
+import com.thaiopensource.xml.dtd.om.DatatypeRef;
+import com.thaiopensource.xml.dtd.om.DefaultValue;
+import com.thaiopensource.xml.dtd.om.Dtd;
+import com.thaiopensource.xml.dtd.om.ElementDecl;
+import com.thaiopensource.xml.dtd.om.ElementRef;
+import com.thaiopensource.xml.dtd.om.EnumDatatype;
+import com.thaiopensource.xml.dtd.om.EnumGroup;
+import com.thaiopensource.xml.dtd.om.EnumGroupDef;
+import com.thaiopensource.xml.dtd.om.EnumGroupMember;
+import com.thaiopensource.xml.dtd.om.EnumGroupRef;
+import com.thaiopensource.xml.dtd.om.EnumValue;
+import com.thaiopensource.xml.dtd.om.ExternalEntityDecl;
+import com.thaiopensource.xml.dtd.om.ExternalIdDef;
+import com.thaiopensource.xml.dtd.om.ExternalIdRef;
+import com.thaiopensource.xml.dtd.om.FixedValue;
+import com.thaiopensource.xml.dtd.om.Flag;
+import com.thaiopensource.xml.dtd.om.FlagDef;
+import com.thaiopensource.xml.dtd.om.FlagRef;
+import com.thaiopensource.xml.dtd.om.Ignore;
+import com.thaiopensource.xml.dtd.om.IgnoredSection;
+import com.thaiopensource.xml.dtd.om.Include;
+import com.thaiopensource.xml.dtd.om.IncludedSection;
+import com.thaiopensource.xml.dtd.om.InternalEntityDecl;
+import com.thaiopensource.xml.dtd.om.ModelGroup;
+import com.thaiopensource.xml.dtd.om.ModelGroupDef;
+import com.thaiopensource.xml.dtd.om.ModelGroupRef;
+import com.thaiopensource.xml.dtd.om.Name;
+import com.thaiopensource.xml.dtd.om.NameSpec;
+import com.thaiopensource.xml.dtd.om.NameSpecDef;
+import com.thaiopensource.xml.dtd.om.NameSpecRef;
+import com.thaiopensource.xml.dtd.om.NotationDecl;
+import com.thaiopensource.xml.dtd.om.OneOrMore;
+import com.thaiopensource.xml.dtd.om.Optional;
+import com.thaiopensource.xml.dtd.om.OverriddenDef;
+import com.thaiopensource.xml.dtd.om.ParamDef;
+import com.thaiopensource.xml.dtd.om.ProcessingInstruction;
+import com.thaiopensource.xml.dtd.om.Sequence;
+import com.thaiopensource.xml.dtd.om.TokenizedDatatype;
+import com.thaiopensource.xml.dtd.om.TopLevel;
+import com.thaiopensource.xml.dtd.om.ZeroOrMore;
+import com.thaiopensource.xml.em.ExternalId;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A stream to which a Dtd object model is written in a binary format.
+ * An object that is referenced more than once, such as the model group of a parameter entity,
+ * is written in full the first time it occurs; after that, only its index is written,
+ * so that the object model that is read back shares objects in the same way.
+ * Strings are written in the same way.
+ * Each object is written as the value returned by its <code>getType</code> method
+ * followed by its components.
+ */
+class DtdModelOutput extends DataOutputStream {
+  static final int MAGIC = 0x44746431;
+  static final int NEW = -1;
+  static final int NULL = -2;
+  static final int INCLUDE = 0;
+  static final int IGNORE = 1;
+  static final int FLAG_REF = 2;
+  private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+  private final Map<Object, Integer> objectIndexes = new IdentityHashMap<Object, Integer>();
+
+  DtdModelOutput(OutputStream out) {
+    super(out);
+  }
+
+  void writeDtd(Dtd dtd) throws IOException {
+    writeString(dtd.getUri());
+    writeString(dtd.getEncoding());
+    writeTopLevels(dtd.getAllTopLevel());
+  }
+
+  void writeString(String str) throws IOException {
+    if (str == null) {
+      writeInt(NULL);
+      return;
+    }
+    Integer index = stringIndexes.get(str);
+    if (index != null)
+      writeInt(index);
+    else {
+      writeInt(NEW);
+      writeInt(str.length());
+      writeChars(str);
+      stringIndexes.put(str, stringIndexes.size());
+    }
+  }
+
+  /**
+   * Writes the index of an object that has already been written, or indicates
+   * that the object is null, and returns true; or indicates that the object follows and returns false.
+   */
+  private boolean writeReference(Object obj) throws IOException {
+    if (obj == null) {
+      writeInt(NULL);
+      return true;
+    }
+    Integer index = objectIndexes.get(obj);
+    if (index != null) {
+      writeInt(index);
+      return true;
+    }
+    writeInt(NEW);
+    objectIndexes.put(obj, objectIndexes.size());
+    return false;
+  }
+
+  private void writeTopLevels(TopLevel[] contents) throws IOException {
+    writeInt(contents.length);
+    for (int i = 0; i < contents.length; i++)
+      writeTopLevel(contents[i]);
+  }
+
+  private void writeTopLevel(TopLevel t) throws IOException {
+    if (writeReference(t))
+      return;
+    writeByte(t.getType());
+    switch (t.getType()) {
+    case TopLevel.ELEMENT_DECL:
+      writeNameSpec(((ElementDecl)t).getNameSpec());
+      writeModelGroup(((ElementDecl)t).getModelGroup());
+      break;
+    case TopLevel.ATTLIST_DECL:
+      writeNameSpec(((AttlistDecl)t).getElementNameSpec());
+      writeAttributeGroup(((AttlistDecl)t).getAttributeGroup());
+      break;
+    case TopLevel.PROCESSING_INSTRUCTION:
+      writeString(((ProcessingInstruction)t).getTarget());
+      writeString(((ProcessingInstruction)t).getValue());
+      break;
+    case TopLevel.COMMENT:
+      writeString(((Comment)t).getValue());
+      break;
+    case TopLevel.NOTATION_DECL:
+      writeString(((NotationDecl)t).getName());
+      writeExternalId(((NotationDecl)t).getExternalId());
+      break;
+    case TopLevel.MODEL_GROUP_DEF:
+      writeString(((ModelGroupDef)t).getName());
+      writeModelGroup(((ModelGroupDef)t).getModelGroup());
+      break;
+    case TopLevel.ATTRIBUTE_GROUP_DEF:
+      writeString(((AttributeGroupDef)t).getName());
+      writeAttributeGroup(((AttributeGroupDef)t).getAttributeGroup());
+      break;
+    case TopLevel.DATATYPE_DEF:
+      writeString(((DatatypeDef)t).getName());
+      writeDatatype(((DatatypeDef)t).getDatatype());
+      break;
+    case TopLevel.ENUM_GROUP_DEF:
+      writeString(((EnumGroupDef)t).getName());
+      writeEnumGroup(((EnumGroupDef)t).getEnumGroup());
+      break;
+    case TopLevel.FLAG_DEF:
+      writeString(((FlagDef)t).getName());
+      writeFlag(((FlagDef)t).getFlag());
+      break;
+    case TopLevel.INCLUDED_SECTION:
+      writeFlag(((IncludedSection)t).getFlag());
+      writeTopLevels(((IncludedSection)t).getContents());
+      break;
+    case TopLevel.IGNORED_SECTION:
+      writeFlag(((IgnoredSection)t).getFlag());
+      writeString(((IgnoredSection)t).getContents());
+      break;
+    case TopLevel.INTERNAL_ENTITY_DECL:
+      writeString(((InternalEntityDecl)t).getName());
+      writeString(((InternalEntityDecl)t).getValue());
+      break;
+    case TopLevel.EXTERNAL_ENTITY_DECL:
+      writeString(((ExternalEntityDecl)t).getName());
+      writeExternalId(((ExternalEntityDecl)t).getExternalId());
+      break;
+    case TopLevel.NAME_SPEC_DEF:
+      writeString(((NameSpecDef)t).getName());
+      writeNameSpec(((NameSpecDef)t).getNameSpec());
+      break;
+    case TopLevel.OVERRIDDEN_DEF:
+      writeTopLevel(((OverriddenDef)t).getDef());
+      writeBoolean(((OverriddenDef)t).isDuplicate());
+      break;
+    case TopLevel.EXTERNAL_ID_DEF:
+      writeString(((ExternalIdDef)t).getName());
+      writeExternalId(((ExternalIdDef)t).getExternalId());
+      break;
+    case TopLevel.EXTERNAL_ID_REF:
+      {
+        ExternalIdRef ref = (ExternalIdRef)t;
+        writeString(ref.getName());
+        writeExternalId(ref.getExternalId());
+        writeString(ref.getUri());
+        writeString(ref.getEncoding());
+        writeTopLevels(ref.getContents());
+      }
+      break;
+    case TopLevel.PARAM_DEF:
+      writeString(((ParamDef)t).getName());
+      writeString(((ParamDef)t).getValue());
+      break;
+    case TopLevel.ATTRIBUTE_DEFAULT_DEF:
+      writeString(((AttributeDefaultDef)t).getName());
+      writeAttributeDefault(((AttributeDefaultDef)t).getAttributeDefault());
+      break;
+    default:
+      throw new IOException("unknown type of top-level DTD component: " + t.getClass().getName());
+    }
+  }
+
+  private void writeModelGroups(ModelGroup[] members) throws IOException {
+    writeInt(members.length);
+    for (int i = 0; i < members.length; i++)
+      writeModelGroup(members[i]);
+  }
+
+  private void writeModelGroup(ModelGroup mg) throws IOException {
+    if (writeReference(mg))
+      return;
+    writeByte(mg.getType());
+    switch (mg.getType()) {
+    case ModelGroup.CHOICE:
+      writeModelGroups(((Choice)mg).getMembers());
+      break;
+    case ModelGroup.SEQUENCE:
+      writeModelGroups(((Sequence)mg).getMembers());
+      break;
+    case ModelGroup.ONE_OR_MORE:
+      writeModelGroup(((OneOrMore)mg).getMember());
+      break;
+    case ModelGroup.ZERO_OR_MORE:
+      writeModelGroup(((ZeroOrMore)mg).getMember());
+      break;
+    case ModelGroup.OPTIONAL:
+      writeModelGroup(((Optional)mg).getMember());
+      break;
+    case ModelGroup.MODEL_GROUP_REF:
+      writeString(((ModelGroupRef)mg).getName());
+      writeModelGroup(((ModelGroupRef)mg).getModelGroup());
+      break;
+    case ModelGroup.ELEMENT_REF:
+      writeNameSpec(((ElementRef)mg).getNameSpec());
+      break;
+    case ModelGroup.PCDATA:
+    case ModelGroup.ANY:
+      break;
+    default:
+      throw new IOException("unknown type of model group: " + mg.getClass().getName());
+    }
+  }
+
+  private void writeAttributeGroup(AttributeGroup ag) throws IOException {
+    if (writeReference(ag))
+      return;
+    AttributeGroupMember[] members = ag.getMembers();
+    writeInt(members.length);
+    for (int i = 0; i < members.length; i++)
+      writeAttributeGroupMember(members[i]);
+  }
+
+  private void writeAttributeGroupMember(AttributeGroupMember member) throws IOException {
+    if (writeReference(member))
+      return;
+    writeByte(member.getType());
+    switch (member.getType()) {
+    case AttributeGroupMember.ATTRIBUTE:
+      writeNameSpec(((Attribute)member).getNameSpec());
+      writeDatatype(((Attribute)member).getDatatype());
+      writeAttributeDefault(((Attribute)member).getAttributeDefault());
+      break;
+    case AttributeGroupMember.ATTRIBUTE_GROUP_REF:
+      writeString(((AttributeGroupRef)member).getName());
+      writeAttributeGroup(((AttributeGroupRef)member).getAttributeGroup());
+      break;
+    default:
+      throw new IOException("unknown type of attribute group member: " + member.getClass().getName());
+    }
+  }
+
+  private void writeDatatype(Datatype dt) throws IOException {
+    if (writeReference(dt))
+      return;
+    writeByte(dt.getType());
+    switch (dt.getType()) {
+    case Datatype.CDATA:
+      break;
+    case Datatype.TOKENIZED:
+      writeString(((TokenizedDatatype)dt).getTypeName());
+      break;
+    case Datatype.ENUM:
+    case Datatype.NOTATION:
+      writeEnumGroup(((EnumDatatype)dt).getEnumGroup());
+      break;
+    case Datatype.DATATYPE_REF:
+      writeString(((DatatypeRef)dt).getName());
+      writeDatatype(((DatatypeRef)dt).getDatatype());
+      break;
+    default:
+      throw new IOException("unknown type of datatype: " + dt.getClass().getName());
+    }
+  }
+
+  private void writeEnumGroup(EnumGroup eg) throws IOException {
+    if (writeReference(eg))
+      return;
+    EnumGroupMember[] members = eg.getMembers();
+    writeInt(members.length);
+    for (int i = 0; i < members.length; i++)
+      writeEnumGroupMember(members[i]);
+  }
+
+  private void writeEnumGroupMember(EnumGroupMember member) throws IOException {
+    if (writeReference(member))
+      return;
+    writeByte(member.getType());
+    switch (member.getType()) {
+    case EnumGroupMember.ENUM_VALUE:
+      writeString(((EnumValue)member).getValue());
+      break;
+    case EnumGroupMember.ENUM_GROUP_REF:
+      writeString(((EnumGroupRef)member).getName());
+      writeEnumGroup(((EnumGroupRef)member).getEnumGroup());
+      break;
+    default:
+      throw new IOException("unknown type of enum group member: " + member.getClass().getName());
+    }
+  }
+
+  private void writeFlag(Flag flag) throws IOException {
+    if (writeReference(flag))
+      return;
+    // the getType method of every Flag returns the same value
+    if (flag instanceof Include)
+      writeByte(INCLUDE);
+    else if (flag instanceof Ignore)
+      writeByte(IGNORE);
+    else if (flag instanceof FlagRef) {
+      writeByte(FLAG_REF);
+      writeString(((FlagRef)flag).getName());
+      writeFlag(((FlagRef)flag).getFlag());
+    }
+    else
+      throw new IOException("unknown type of flag: " + flag.getClass().getName());
+  }
+
+  private void writeNameSpec(NameSpec nameSpec) throws IOException {
+    if (writeReference(nameSpec))
+      return;
+    writeByte(nameSpec.getType());
+    switch (nameSpec.getType()) {
+    case NameSpec.NAME:
+      writeString(((Name)nameSpec).getValue());
+      break;
+    case NameSpec.NAME_SPEC_REF:
+      writeString(((NameSpecRef)nameSpec).getName());
+      writeNameSpec(((NameSpecRef)nameSpec).getNameSpec());
+      break;
+    default:
+      throw new IOException("unknown type of name specification: " + nameSpec.getClass().getName());
+    }
+  }
+
+  private void writeAttributeDefault(AttributeDefault ad) throws IOException {
+    if (writeReference(ad))
+      return;
+    writeByte(ad.getType());
+    switch (ad.getType()) {
+    case AttributeDefault.DEFAULT_VALUE:
+      writeString(((DefaultValue)ad).getValue());
+      break;
+    case AttributeDefault.FIXED_VALUE:
+      writeString(((FixedValue)ad).getValue());
+      break;
+    case AttributeDefault.IMPLIED_VALUE:
+    case AttributeDefault.REQUIRED_VALUE:
+      break;
+    case AttributeDefault.ATTRIBUTE_DEFAULT_REF:
+      writeString(((AttributeDefaultRef)ad).getName());
+      writeAttributeDefault(((AttributeDefaultRef)ad).getAttributeDefault());
+      break;
+    default:
+      throw new IOException("unknown type of attribute default: " + ad.getClass().getName());
+    }
+  }
+
+  void writeExternalId(ExternalId xid) throws IOException {
+    if (writeReference(xid))
+      return;
+    writeString(xid.getSystemId());
+    writeString(xid.getPublicId());
+    writeString(xid.getBaseUri());
+  }
+}
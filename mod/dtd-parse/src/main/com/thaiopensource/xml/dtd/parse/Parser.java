@@ -52,13 +52,11 @@ class Parser extends Token {
   }
 
   Parser(OpenEntity entity, EntityManager entityManager) {
-    this.in = entity.getReader();
     this.baseUri = entity.getBaseUri();
     this.location = entity.getLocation();
     this.entityManager = entityManager;
-    this.buf = new char[READSIZE * 2];
     this.valueBuf = new ReplacementTextBuffer();
-    this.bufEnd = 0;
+    open(entity);
     this.db = new DtdBuilder(atoms);
     this.isInternal = false;
     this.elementTable = new Hashtable();
@@ -66,14 +64,12 @@ class Parser extends Token {
   }
 
   private Parser(OpenEntity entity, Parser parent) {
-    this.in = entity.getReader();
     this.baseUri = entity.getBaseUri();
     this.location = entity.getLocation();
     this.entityManager = parent.entityManager;
     this.parent = parent;
-    this.buf = new char[READSIZE * 2];
     this.valueBuf = new ReplacementTextBuffer();
-    this.bufEnd = 0;
+    open(entity);
     this.db = parent.db;
     this.isInternal = false;
     this.elementTable = parent.elementTable;
@@ -95,6 +91,25 @@ class Parser extends Token {
     this.atomTable = parent.atomTable;
   }
 
+  /**
+   * Sets up the buffer for an external entity. If the text of the entity has already
+   * been decoded, it is scanned directly and nothing is read.
+   */
+  private void open(OpenEntity entity) {
+    char[] text = entity.getText();
+    if (text != null) {
+      this.in = null;
+      this.buf = text;
+      this.bufEnd = text.length;
+      this.bufEndStreamOffset = text.length;
+    }
+    else {
+      this.in = entity.getReader();
+      this.buf = new char[READSIZE * 2];
+      this.bufEnd = 0;
+    }
+  }
+
   DtdBuilder parse() throws IOException {
     skipTextDecl();
     parseDecls(false);
@@ -2,6 +2,7 @@ package com.thaiopensource.xml.em;
 
 import com.thaiopensource.xml.tok.InvalidTokenException;
 import com.thaiopensource.xml.tok.TextDecl;
+import com.thaiopensource.xml.tok.XmlDecl;
 
 import java.io.CharConversionException;
 import java.io.IOException;
@@ -45,6 +46,18 @@ public class EncodingDetectInputStream extends InputStream {
    */
   private static final String OPEN = "<?xml";
   public String detectEncoding() throws IOException {
+    return detectEncoding(false);
+  }
+
+  /**
+   * Detects the encoding of a document entity, which starts with an XML
+   * declaration rather than a text declaration.
+   */
+  public String detectDocumentEncoding() throws IOException {
+    return detectEncoding(true);
+  }
+
+  private String detectEncoding(boolean isDocumentEntity) throws IOException {
     makeAvailable(4);
 
     int bytesPerChar = 1;
@@ -107,11 +120,13 @@ public class EncodingDetectInputStream extends InputStream {
 	b[i] = convertByte(buf[start + bomLength + i*bytesPerChar + loByteIndex],
 			   encType);
       try {
-	TextDecl decl = new TextDecl(b, 0, b.length);
+	TextDecl decl = isDocumentEntity ? new XmlDecl(b, 0, b.length) : new TextDecl(b, 0, b.length);
 	enc = decl.getEncoding();
       }
       catch (InvalidTokenException e) {
-	throw new CharConversionException("invalid text declaration");
+	throw new CharConversionException(isDocumentEntity
+					  ? "invalid XML declaration"
+					  : "invalid text declaration");
       }
     }
     // Skip the BOM for UTF-8
@@ -131,6 +146,14 @@ public class EncodingDetectInputStream extends InputStream {
     return enc;
   }
 
+  /**
+   * Returns the number of bytes that have been read from the underlying stream
+   * but not yet from this stream.
+   */
+  int getBufferedCount() {
+    return avail;
+  }
+
   static final String EBCDIC_ENCODING = "Cp037";
 
   static private char convertByte(byte b, int encType) throws IOException {
@@ -2,15 +2,33 @@ package com.thaiopensource.xml.em;
 
 import com.thaiopensource.xml.util.EncodingMap;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 
 /**
  * This class is used by the parser to access external entities.
  */
 public abstract class EntityManager {
+  /**
+   * Files at least this big are mapped into memory rather than read.
+   */
+  private static final int MAP_THRESHOLD = 64*1024;
+  /**
+   * Files bigger than this are read through a Reader rather than decoded all at once.
+   */
+  private static final long MAX_DECODE_SIZE = 64*1024*1024;
+
   /**
    * Opens an external entity with the specified external identifier.
    */
@@ -33,4 +51,85 @@ public abstract class EntityManager {
 			  systemId,
 			  enc);
   }
+
+  /**
+   * Opens a local file. Unless the file is very big, its content is decoded all at once,
+   * so that the parser can scan the text directly rather than copying it from a Reader;
+   * big files are mapped into memory for decoding rather than read.
+   */
+  protected OpenEntity openFile(File file, String systemId) throws IOException {
+    FileInputStream input = new FileInputStream(file);
+    ByteBuffer bytes;
+    try {
+      FileChannel channel = input.getChannel();
+      long size = channel.size();
+      if (size > MAX_DECODE_SIZE) {
+        OpenEntity entity = detectEncoding(input, systemId);
+        input = null;
+        return entity;
+      }
+      if (size >= MAP_THRESHOLD)
+        bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      else {
+        bytes = ByteBuffer.allocate((int)size);
+        while (bytes.hasRemaining() && channel.read(bytes) >= 0)
+          ;
+        bytes.flip();
+      }
+    }
+    finally {
+      if (input != null)
+        input.close();
+    }
+    return decode(bytes, systemId);
+  }
+
+  private static OpenEntity decode(ByteBuffer bytes, String systemId) throws IOException {
+    EncodingDetectInputStream in = new EncodingDetectInputStream(new ByteBufferInputStream(bytes));
+    String enc = in.detectEncoding();
+    // start decoding after anything that was skipped by the encoding detection, such as a byte order mark
+    bytes.position(bytes.position() - in.getBufferedCount());
+    String javaEnc = EncodingMap.getJavaName(enc);
+    CharsetDecoder decoder;
+    try {
+      decoder = Charset.forName(javaEnc).newDecoder();
+    }
+    catch (IllegalArgumentException e) {
+      throw new UnsupportedEncodingException(javaEnc);
+    }
+    // behave like InputStreamReader
+    decoder.onMalformedInput(CodingErrorAction.REPLACE);
+    decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+    CharBuffer chars = decoder.decode(bytes);
+    char[] text = chars.array();
+    if (chars.arrayOffset() != 0 || chars.remaining() != text.length) {
+      text = new char[chars.remaining()];
+      chars.get(text);
+    }
+    return new OpenEntity(text, systemId, systemId, enc);
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer bytes;
+
+    ByteBufferInputStream(ByteBuffer bytes) {
+      this.bytes = bytes;
+    }
+
+    public int read() {
+      if (!bytes.hasRemaining())
+        return -1;
+      return bytes.get() & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) {
+      if (len == 0)
+        return 0;
+      if (!bytes.hasRemaining())
+        return -1;
+      len = Math.min(len, bytes.remaining());
+      bytes.get(b, off, len);
+      return len;
+    }
+  }
 }
@@ -1,7 +1,6 @@
 package com.thaiopensource.xml.em;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 public class FileEntityManager extends EntityManager {
@@ -24,7 +23,7 @@ public class FileEntityManager extends EntityManager {
   }
 
   private OpenEntity openFile(File file) throws IOException {
-    return detectEncoding(new FileInputStream(file), file.toString());
+    return openFile(file, file.toString());
   }
 
 
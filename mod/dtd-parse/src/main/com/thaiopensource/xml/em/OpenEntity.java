@@ -1,5 +1,6 @@
 package com.thaiopensource.xml.em;
 
+import java.io.CharArrayReader;
 import java.io.Reader;
 
 /**
@@ -13,6 +14,7 @@ public class OpenEntity {
   private final String baseUri;
   private final String location;
   private final String encoding;
+  private final char[] text;
 
   /**
    * Creates and initializes an <code>OpenEntity</code>. which uses
@@ -22,6 +24,19 @@ public class OpenEntity {
     this.location = location;
     this.baseUri = baseUri;
     this.encoding = encoding;
+    this.text = null;
+  }
+
+  /**
+   * Creates and initializes an <code>OpenEntity</code> whose text
+   * has already been decoded. The array must not be modified afterwards.
+   */
+  public OpenEntity(char[] text, String location, String baseUri, String encoding) {
+    this.reader = new CharArrayReader(text);
+    this.location = location;
+    this.baseUri = baseUri;
+    this.encoding = encoding;
+    this.text = text;
   }
 
   /**
@@ -57,4 +72,13 @@ public class OpenEntity {
     return encoding;
   }
 
+  /**
+   * Returns the complete text of the entity, if it was decoded when the entity
+   * was opened, or null otherwise. The returned array must not be modified.
+   * A parser may use the text instead of the Reader.
+   */
+  public final char[] getText() {
+    return text;
+  }
+
 }
@@ -1,6 +1,8 @@
 package com.thaiopensource.xml.em;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.net.URL;
 
 public class UriEntityManager extends EntityManager {
@@ -20,6 +22,26 @@ public class UriEntityManager extends EntityManager {
   }
 
   private OpenEntity open(URL u) throws IOException {
+    File file = toFile(u);
+    if (file != null)
+      return openFile(file, u.toString());
     return detectEncoding(u.openStream(), u.toString());
   }
+
+  /**
+   * Returns the local file identified by a URL, or null if the URL does not identify a local file.
+   */
+  private static File toFile(URL u) {
+    if (!u.getProtocol().equals("file") || u.getQuery() != null || u.getRef() != null)
+      return null;
+    try {
+      return new File(u.toURI());
+    }
+    catch (URISyntaxException e) {
+      return null;
+    }
+    catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
 }
@@ -0,0 +1,28 @@
+package com.thaiopensource.xml.tok;
+
+/**
+ * An XML declaration.
+ */
+public class XmlDecl extends TextDecl {
+  private final boolean standalone;
+
+  /**
+   * Creates an <code>XmlDecl</code> from the specified char subarray.
+   * The char subarray should be a <code>TOK_XML_DECL</code> token
+   * returned from Tokenizer.tokenizeProlog,
+   * starting with <code>&lt;?</code> and ending with <code>?&gt;</code>.
+   * @exception InvalidTokenException if the specified char subarray
+   * is not a legal XML declaration.
+   */
+  public XmlDecl(char[] buf, int off, int end)
+       throws InvalidTokenException {
+    standalone = init(true, buf, off, end);
+  }
+
+  /**
+   * Returns true if the declaration specified <code>standalone="yes"</code>.
+   */
+  public boolean isStandalone() {
+    return standalone;
+  }
+}
@@ -0,0 +1,139 @@
+package com.thaiopensource.xml.tok.sax;
+
+/**
+ * A table of the names that occur in documents, looked up directly from
+ * a char subarray, so that a name is only turned into a String the first
+ * time it is seen. The same Name object is returned every time the
+ * same name is looked up, so names, prefixes and local names can be
+ * compared using <code>==</code>.
+ */
+class SymbolTable {
+  private static final int INIT_SIZE = 256;
+
+  /**
+   * A name, split into prefix and local name.
+   */
+  static class Name {
+    final String qName;
+    /**
+     * null if the name does not have a prefix
+     */
+    final String prefix;
+    final String localName;
+    /**
+     * false if the name is not a legal QName: it has more than one colon
+     * or it starts or ends with a colon
+     */
+    final boolean isQName;
+    private final int hash;
+
+    Name(String qName, String prefix, String localName, boolean isQName, int hash) {
+      this.qName = qName;
+      this.prefix = prefix;
+      this.localName = localName;
+      this.isQName = isQName;
+      this.hash = hash;
+    }
+  }
+
+  private Name[] names = new Name[INIT_SIZE];
+  private int used = 0;
+
+  /**
+   * Creates a symbol table that contains the specified strings.
+   * Looking up one of these strings will give a Name whose qName
+   * is the same String object.
+   */
+  SymbolTable(String[] strings) {
+    for (int i = 0; i < strings.length; i++) {
+      String s = strings[i];
+      insert(new Name(s, null, s, true, s.hashCode()));
+    }
+  }
+
+  /**
+   * Returns the number of names in the table.
+   */
+  int size() {
+    return used;
+  }
+
+  /**
+   * Looks up a name.
+   * @param buf the char array containing the name
+   * @param start the index of the first char of the name
+   * @param end the index following the last char of the name
+   * @return the Name
+   */
+  Name get(char[] buf, int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; i++)
+      h = 31*h + buf[i];
+    int mask = names.length - 1;
+    for (int i = h & mask;; i = (i + 1) & mask) {
+      Name name = names[i];
+      if (name == null)
+        break;
+      if (name.hash == h && matches(name.qName, buf, start, end))
+        return name;
+    }
+    return insert(create(buf, start, end, h));
+  }
+
+  private Name create(char[] buf, int start, int end, int h) {
+    String qName = new String(buf, start, end - start);
+    int colon = -1;
+    boolean isQName = true;
+    for (int i = start; i < end; i++) {
+      if (buf[i] == ':') {
+        if (colon >= 0)
+          isQName = false;
+        else
+          colon = i;
+      }
+    }
+    if (colon < 0)
+      return new Name(qName, null, qName, true, h);
+    if (colon == start || colon == end - 1)
+      return new Name(qName, null, qName, false, h);
+    // the prefix and local name are themselves looked up, so that they can be compared with ==
+    String prefix = get(buf, start, colon).qName;
+    String localName = get(buf, colon + 1, end).qName;
+    return new Name(qName, prefix, localName, isQName, h);
+  }
+
+  private Name insert(Name name) {
+    if ((used + 1)*4 > names.length*3)
+      rehash();
+    int mask = names.length - 1;
+    int i = name.hash & mask;
+    while (names[i] != null)
+      i = (i + 1) & mask;
+    names[i] = name;
+    used++;
+    return name;
+  }
+
+  private void rehash() {
+    Name[] old = names;
+    names = new Name[old.length << 1];
+    int mask = names.length - 1;
+    for (int j = 0; j < old.length; j++) {
+      if (old[j] != null) {
+        int i = old[j].hash & mask;
+        while (names[i] != null)
+          i = (i + 1) & mask;
+        names[i] = old[j];
+      }
+    }
+  }
+
+  private static boolean matches(String s, char[] buf, int start, int end) {
+    if (s.length() != end - start)
+      return false;
+    for (int i = 0; start < end; i++, start++)
+      if (s.charAt(i) != buf[start])
+        return false;
+    return true;
+  }
+}
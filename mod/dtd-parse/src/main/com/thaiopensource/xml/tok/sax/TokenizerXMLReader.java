@@ -0,0 +1,858 @@
+package com.thaiopensource.xml.tok.sax;
+
+import com.thaiopensource.util.Localizer;
+import com.thaiopensource.xml.em.EncodingDetectInputStream;
+import com.thaiopensource.xml.tok.ContentToken;
+import com.thaiopensource.xml.tok.EmptyTokenException;
+import com.thaiopensource.xml.tok.EndOfPrologException;
+import com.thaiopensource.xml.tok.ExtensibleTokenException;
+import com.thaiopensource.xml.tok.InvalidTokenException;
+import com.thaiopensource.xml.tok.PartialTokenException;
+import com.thaiopensource.xml.tok.Position;
+import com.thaiopensource.xml.tok.Token;
+import com.thaiopensource.xml.tok.Tokenizer;
+import com.thaiopensource.xml.tok.XmlDecl;
+import com.thaiopensource.xml.util.EncodingMap;
+import com.thaiopensource.xml.util.WellKnownNamespaces;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * A non-validating, namespace-aware XML parser built directly on
+ * <code>Tokenizer</code>. It is intended as a fast front end for validation:
+ * names are looked up in a symbol table straight from the char buffer, the
+ * same <code>Attributes</code> object is used for every start-tag, and
+ * character data is passed to the <code>ContentHandler</code> without being copied.
+ * <p>
+ * The parser checks that the document is namespace well-formed, but it does
+ * not process markup declarations. A document type declaration is allowed,
+ * but the external subset is not read, and an internal subset may contain
+ * only comments and processing instructions; a reference to an entity other
+ * than the predefined entities is a fatal error. Documents that depend on
+ * their DTD should be parsed with a full XML parser.
+ * <p>
+ * The parser always behaves as if the <code>namespaces</code> feature is
+ * true and the <code>namespace-prefixes</code> feature is false.
+ * An instance of this class is not safe for concurrent access by multiple threads,
+ * but it can be used to parse any number of documents one after another.
+ *
+ * @see TokenizerXMLReaderCreator
+ */
+public class TokenizerXMLReader implements XMLReader, Locator {
+  private static final String FEATURE_PREFIX = "http://xml.org/sax/features/";
+  private static final String XML_PREFIX = "xml";
+  private static final String XMLNS_PREFIX = "xmlns";
+  private static final String XMLNS_URI = "http://www.w3.org/2000/xmlns/";
+  private static final String CDATA = "CDATA";
+  private static final int READSIZE = 1024*8;
+  /**
+   * The symbol table is discarded before a parse if it has grown beyond this size.
+   */
+  private static final int MAX_SYMBOLS = 1024*16;
+
+  private static final int PROLOG = 0;
+  private static final int CONTENT = 1;
+  private static final int CDATA_SECTION = 2;
+
+  private static final int TOK_EOF = -1;
+  private static final int TOK_END_OF_PROLOG = -2;
+
+  private static final char[] NEWLINE = { '\n' };
+
+  private static final Localizer localizer = new Localizer(TokenizerXMLReader.class);
+
+  private ContentHandler contentHandler;
+  private DTDHandler dtdHandler;
+  private EntityResolver entityResolver;
+  private ErrorHandler errorHandler;
+  /**
+   * The ContentHandler used for the current parse.
+   */
+  private ContentHandler handler;
+
+  private SymbolTable symbols = newSymbolTable();
+  private final ContentToken token = new ContentToken();
+  private final AttributesImpl attributes = new AttributesImpl();
+  private final StringBuilder valueBuf = new StringBuilder();
+  private final Token valueToken = new Token();
+  private final char[] refBuf = new char[2];
+  private SymbolTable.Name[] attNames = new SymbolTable.Name[8];
+
+  private Reader in;
+  private char[] buf = new char[READSIZE*2];
+  private int bufStart;
+  private int bufEnd;
+  private int tokenStart;
+  /**
+   * pos gives the position of the char at index posOff in buf
+   */
+  private Position pos;
+  private int posOff;
+  private String systemId;
+  private String publicId;
+
+  /**
+   * The prefixes and URIs of the namespace declarations in scope.
+   * The default namespace is declared with a prefix of "".
+   */
+  private String[] nsPrefixes = new String[16];
+  private String[] nsUris = new String[16];
+  private int nsCount;
+
+  /**
+   * For each open element, the name and the number of namespace
+   * declarations in scope before its start-tag.
+   */
+  private SymbolTable.Name[] elementNames = new SymbolTable.Name[16];
+  private String[] elementUris = new String[16];
+  private int[] elementNsCounts = new int[16];
+  private int depth;
+
+  public ContentHandler getContentHandler() {
+    return contentHandler;
+  }
+
+  public void setContentHandler(ContentHandler contentHandler) {
+    this.contentHandler = contentHandler;
+  }
+
+  public DTDHandler getDTDHandler() {
+    return dtdHandler;
+  }
+
+  public void setDTDHandler(DTDHandler dtdHandler) {
+    this.dtdHandler = dtdHandler;
+  }
+
+  public EntityResolver getEntityResolver() {
+    return entityResolver;
+  }
+
+  /**
+   * Sets the EntityResolver. The EntityResolver is never called,
+   * since the parser does not read any external entities.
+   */
+  public void setEntityResolver(EntityResolver entityResolver) {
+    this.entityResolver = entityResolver;
+  }
+
+  public ErrorHandler getErrorHandler() {
+    return errorHandler;
+  }
+
+  public void setErrorHandler(ErrorHandler errorHandler) {
+    this.errorHandler = errorHandler;
+  }
+
+  public boolean getFeature(String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+    if (name.equals(FEATURE_PREFIX + "namespaces"))
+      return true;
+    if (name.equals(FEATURE_PREFIX + "namespace-prefixes")
+        || name.equals(FEATURE_PREFIX + "validation")
+        || name.equals(FEATURE_PREFIX + "external-general-entities")
+        || name.equals(FEATURE_PREFIX + "external-parameter-entities"))
+      return false;
+    throw new SAXNotRecognizedException(name);
+  }
+
+  public void setFeature(String name, boolean value) throws SAXNotRecognizedException, SAXNotSupportedException {
+    if (getFeature(name) != value)
+      throw new SAXNotSupportedException(name);
+  }
+
+  public Object getProperty(String name) throws SAXNotRecognizedException, SAXNotSupportedException {
+    throw new SAXNotRecognizedException(name);
+  }
+
+  public void setProperty(String name, Object value) throws SAXNotRecognizedException, SAXNotSupportedException {
+    throw new SAXNotRecognizedException(name);
+  }
+
+  public String getPublicId() {
+    return publicId;
+  }
+
+  public String getSystemId() {
+    return systemId;
+  }
+
+  public int getLineNumber() {
+    return pos == null ? -1 : pos.getLineNumber();
+  }
+
+  public int getColumnNumber() {
+    return pos == null ? -1 : pos.getColumnNumber() + 1;
+  }
+
+  public void parse(String systemId) throws IOException, SAXException {
+    parse(new InputSource(systemId));
+  }
+
+  public void parse(InputSource input) throws IOException, SAXException {
+    handler = contentHandler == null ? new DefaultHandler() : contentHandler;
+    if (symbols.size() > MAX_SYMBOLS)
+      symbols = newSymbolTable();
+    systemId = input.getSystemId();
+    publicId = input.getPublicId();
+    pos = new Position();
+    posOff = bufStart = bufEnd = tokenStart = 0;
+    nsCount = 0;
+    depth = 0;
+    pushNamespace(XML_PREFIX, WellKnownNamespaces.XML);
+    pushNamespace("", "");
+    in = openReader(input);
+    try {
+      handler.setDocumentLocator(this);
+      handler.startDocument();
+      if (fill() && buf[0] == '\uFEFF')
+        posOff = bufStart = 1;
+      parseProlog();
+      parseContent();
+      parseEpilog();
+      handler.endDocument();
+    }
+    finally {
+      if (in != null) {
+        in.close();
+        in = null;
+      }
+      // don't keep the buffer of an unusually large token
+      if (buf.length > READSIZE*2)
+        buf = new char[READSIZE*2];
+      attributes.clear();
+    }
+  }
+
+  private static SymbolTable newSymbolTable() {
+    return new SymbolTable(new String[] { XML_PREFIX, XMLNS_PREFIX, "" });
+  }
+
+  private Reader openReader(InputSource input) throws IOException, SAXException {
+    Reader reader = input.getCharacterStream();
+    if (reader != null)
+      return reader;
+    InputStream stream = input.getByteStream();
+    if (stream == null) {
+      if (systemId == null)
+        throw new SAXException(localizer.message("NO_INPUT"));
+      stream = new URL(systemId).openStream();
+    }
+    String encoding = input.getEncoding();
+    if (encoding == null) {
+      EncodingDetectInputStream detect = new EncodingDetectInputStream(stream);
+      encoding = detect.detectDocumentEncoding();
+      stream = detect;
+    }
+    Charset charset;
+    try {
+      charset = Charset.forName(EncodingMap.getJavaName(encoding));
+    }
+    catch (IllegalCharsetNameException e) {
+      charset = null;
+    }
+    catch (UnsupportedCharsetException e) {
+      charset = null;
+    }
+    if (charset == null) {
+      stream.close();
+      fatal("UNSUPPORTED_ENCODING", encoding);
+    }
+    // use a decoder, so that malformed input is reported rather than replaced
+    return new InputStreamReader(stream, charset.newDecoder());
+  }
+
+  private void parseProlog() throws IOException, SAXException {
+    boolean hadDoctype = false;
+    for (;;) {
+      int tok = tokenize(PROLOG);
+      switch (tok) {
+      case TOK_END_OF_PROLOG:
+        return;
+      case TOK_EOF:
+        fatal("NO_DOCUMENT_ELEMENT");
+        break;
+      case Tokenizer.TOK_XML_DECL:
+        advancePosition(tokenStart);
+        if (pos.getLineNumber() != 1 || pos.getColumnNumber() != 0)
+          fatal("MISPLACED_XML_DECL");
+        try {
+          new XmlDecl(buf, tokenStart, bufStart);
+        }
+        catch (InvalidTokenException e) {
+          fatalAt(e.getOffset(), "INVALID_XML_DECL");
+        }
+        break;
+      case Tokenizer.TOK_PI:
+        processingInstruction();
+        break;
+      case Tokenizer.TOK_COMMENT:
+      case Tokenizer.TOK_PROLOG_S:
+        break;
+      case Tokenizer.TOK_DECL_OPEN:
+        if (hadDoctype || !Tokenizer.matchesXMLString(buf, tokenStart + 2, bufStart, "DOCTYPE"))
+          fatal("SYNTAX_ERROR");
+        hadDoctype = true;
+        parseDoctype();
+        break;
+      default:
+        fatal("SYNTAX_ERROR");
+        break;
+      }
+    }
+  }
+
+  /**
+   * Checks the document type declaration and skips over it.
+   */
+  private void parseDoctype() throws IOException, SAXException {
+    // the tokens we expect next
+    final int NAME = 0, EXTERNAL_ID = 1, PUBLIC_LITERAL = 2, SYSTEM_LITERAL = 3, SUBSET = 4, CLOSE = 5;
+    int state = NAME;
+    for (;;) {
+      int tok = tokenize(PROLOG);
+      if (tok == Tokenizer.TOK_PROLOG_S)
+        continue;
+      switch (state) {
+      case NAME:
+        if (tok != Tokenizer.TOK_NAME && tok != Tokenizer.TOK_PREFIXED_NAME)
+          fatal("SYNTAX_ERROR");
+        state = EXTERNAL_ID;
+        continue;
+      case EXTERNAL_ID:
+        if (tok == Tokenizer.TOK_NAME) {
+          if (Tokenizer.matchesXMLString(buf, tokenStart, bufStart, "SYSTEM"))
+            state = SYSTEM_LITERAL;
+          else if (Tokenizer.matchesXMLString(buf, tokenStart, bufStart, "PUBLIC"))
+            state = PUBLIC_LITERAL;
+          else
+            fatal("SYNTAX_ERROR");
+          continue;
+        }
+        break;
+      case PUBLIC_LITERAL:
+        if (tok != Tokenizer.TOK_LITERAL)
+          fatal("SYNTAX_ERROR");
+        try {
+          Tokenizer.getPublicId(buf, tokenStart, bufStart);
+        }
+        catch (InvalidTokenException e) {
+          fatalAt(e.getOffset(), "INVALID_PUBLIC_ID");
+        }
+        state = SYSTEM_LITERAL;
+        continue;
+      case SYSTEM_LITERAL:
+        if (tok != Tokenizer.TOK_LITERAL)
+          fatal("SYNTAX_ERROR");
+        state = SUBSET;
+        continue;
+      case CLOSE:
+        if (tok != Tokenizer.TOK_DECL_CLOSE)
+          fatal("SYNTAX_ERROR");
+        return;
+      }
+      // state is EXTERNAL_ID or SUBSET
+      switch (tok) {
+      case Tokenizer.TOK_DECL_CLOSE:
+        return;
+      case Tokenizer.TOK_OPEN_BRACKET:
+        skipInternalSubset();
+        state = CLOSE;
+        break;
+      default:
+        fatal("SYNTAX_ERROR");
+        break;
+      }
+    }
+  }
+
+  private void skipInternalSubset() throws IOException, SAXException {
+    for (;;) {
+      switch (tokenize(PROLOG)) {
+      case Tokenizer.TOK_CLOSE_BRACKET:
+        return;
+      case Tokenizer.TOK_PROLOG_S:
+      case Tokenizer.TOK_COMMENT:
+        break;
+      case Tokenizer.TOK_PI:
+        processingInstruction();
+        break;
+      case Tokenizer.TOK_DECL_OPEN:
+      case Tokenizer.TOK_PARAM_ENTITY_REF:
+        fatal("DECL_NOT_SUPPORTED");
+        break;
+      case TOK_EOF:
+        fatal("UNCLOSED_DOCTYPE");
+        break;
+      default:
+        fatal("SYNTAX_ERROR");
+        break;
+      }
+    }
+  }
+
+  private void parseContent() throws IOException, SAXException {
+    do {
+      int tok = tokenize(CONTENT);
+      switch (tok) {
+      case Tokenizer.TOK_DATA_CHARS:
+        advancePosition(bufStart);
+        handler.characters(buf, tokenStart, bufStart - tokenStart);
+        break;
+      case Tokenizer.TOK_DATA_NEWLINE:
+        advancePosition(bufStart);
+        handler.characters(NEWLINE, 0, 1);
+        break;
+      case Tokenizer.TOK_START_TAG_NO_ATTS:
+        startElement(false);
+        break;
+      case Tokenizer.TOK_START_TAG_WITH_ATTS:
+        startElement(true);
+        break;
+      case Tokenizer.TOK_EMPTY_ELEMENT_NO_ATTS:
+        startElement(false);
+        endElement();
+        break;
+      case Tokenizer.TOK_EMPTY_ELEMENT_WITH_ATTS:
+        startElement(true);
+        endElement();
+        break;
+      case Tokenizer.TOK_END_TAG:
+        if (symbols.get(buf, tokenStart + 2, token.getNameEnd()) != elementNames[depth - 1])
+          fatal("MISMATCHED_END_TAG", elementNames[depth - 1].qName);
+        advancePosition(bufStart);
+        endElement();
+        break;
+      case Tokenizer.TOK_MAGIC_ENTITY_REF:
+      case Tokenizer.TOK_CHAR_REF:
+        advancePosition(bufStart);
+        refBuf[0] = token.getRefChar();
+        handler.characters(refBuf, 0, 1);
+        break;
+      case Tokenizer.TOK_CHAR_PAIR_REF:
+        advancePosition(bufStart);
+        token.getRefCharPair(refBuf, 0);
+        handler.characters(refBuf, 0, 2);
+        break;
+      case Tokenizer.TOK_ENTITY_REF:
+        fatal("UNDEF_REF", new String(buf, tokenStart + 1, token.getNameEnd() - tokenStart - 1));
+        break;
+      case Tokenizer.TOK_CDATA_SECT_OPEN:
+        parseCdataSection();
+        break;
+      case Tokenizer.TOK_PI:
+        processingInstruction();
+        break;
+      case Tokenizer.TOK_COMMENT:
+        break;
+      case Tokenizer.TOK_XML_DECL:
+        fatal("MISPLACED_XML_DECL");
+        break;
+      case TOK_EOF:
+        fatal("UNCLOSED_ELEMENT", elementNames[depth - 1].qName);
+        break;
+      default:
+        fatal("SYNTAX_ERROR");
+        break;
+      }
+    } while (depth > 0);
+  }
+
+  private void parseCdataSection() throws IOException, SAXException {
+    for (;;) {
+      switch (tokenize(CDATA_SECTION)) {
+      case Tokenizer.TOK_DATA_CHARS:
+        advancePosition(bufStart);
+        handler.characters(buf, tokenStart, bufStart - tokenStart);
+        break;
+      case Tokenizer.TOK_DATA_NEWLINE:
+        advancePosition(bufStart);
+        handler.characters(NEWLINE, 0, 1);
+        break;
+      case Tokenizer.TOK_CDATA_SECT_CLOSE:
+        return;
+      case TOK_EOF:
+        fatal("UNCLOSED_CDATA_SECTION");
+        break;
+      default:
+        fatal("SYNTAX_ERROR");
+        break;
+      }
+    }
+  }
+
+  private void parseEpilog() throws IOException, SAXException {
+    for (;;) {
+      switch (tokenize(PROLOG)) {
+      case TOK_EOF:
+        return;
+      case Tokenizer.TOK_PI:
+        processingInstruction();
+        break;
+      case Tokenizer.TOK_COMMENT:
+      case Tokenizer.TOK_PROLOG_S:
+        break;
+      case TOK_END_OF_PROLOG:
+        fatal("ELEMENT_AFTER_DOCUMENT_ELEMENT");
+        break;
+      default:
+        fatal("SYNTAX_ERROR");
+        break;
+      }
+    }
+  }
+
+  private void startElement(boolean hasAtts) throws IOException, SAXException {
+    SymbolTable.Name name = symbols.get(buf, tokenStart + 1, token.getNameEnd());
+    if (!name.isQName)
+      fatal("INVALID_QNAME", name.qName);
+    if (depth == elementNames.length)
+      growElements();
+    elementNames[depth] = name;
+    elementNsCounts[depth] = nsCount;
+    attributes.clear();
+    int nAtts = hasAtts ? token.getAttributeSpecifiedCount() : 0;
+    if (nAtts > attNames.length)
+      attNames = new SymbolTable.Name[nAtts*2];
+    boolean hadPrefixedAtt = false;
+    // namespace declarations must be processed before any names are resolved
+    for (int i = 0; i < nAtts; i++) {
+      SymbolTable.Name attName = symbols.get(buf, token.getAttributeNameStart(i), token.getAttributeNameEnd(i));
+      if (!attName.isQName)
+        fatal("INVALID_QNAME", attName.qName);
+      attNames[i] = attName;
+      if (attName.prefix == XMLNS_PREFIX)
+        declareNamespace(attName.localName, attributeValue(i));
+      else if (attName.prefix == null && attName.qName == XMLNS_PREFIX)
+        declareNamespace("", attributeValue(i));
+      else if (attName.prefix != null)
+        hadPrefixedAtt = true;
+    }
+    String uri = name.prefix == null ? lookupNamespace("") : resolvePrefix(name.prefix);
+    elementUris[depth] = uri;
+    for (int i = 0; i < nAtts; i++) {
+      SymbolTable.Name attName = attNames[i];
+      if (attName.prefix == XMLNS_PREFIX || (attName.prefix == null && attName.qName == XMLNS_PREFIX))
+        continue;
+      String attUri = attName.prefix == null ? "" : resolvePrefix(attName.prefix);
+      attributes.addAttribute(attUri, attName.localName, attName.qName, CDATA, attributeValue(i));
+    }
+    if (hadPrefixedAtt)
+      checkAttributeUniqueness();
+    depth++;
+    advancePosition(bufStart);
+    handler.startElement(uri, name.localName, name.qName, attributes);
+  }
+
+  private void endElement() throws SAXException {
+    --depth;
+    SymbolTable.Name name = elementNames[depth];
+    handler.endElement(elementUris[depth], name.localName, name.qName);
+    int n = elementNsCounts[depth];
+    for (int i = n; i < nsCount; i++)
+      handler.endPrefixMapping(nsPrefixes[i]);
+    nsCount = n;
+  }
+
+  private void declareNamespace(String prefix, String uri) throws SAXException {
+    if (prefix == XMLNS_PREFIX)
+      fatal("XMLNS_PREFIX_DECLARED");
+    if (prefix == XML_PREFIX) {
+      if (!uri.equals(WellKnownNamespaces.XML))
+        fatal("XML_PREFIX_MISDECLARED");
+      // a redundant declaration of the xml prefix is allowed, but not reported
+      return;
+    }
+    if (uri.equals(WellKnownNamespaces.XML) || uri.equals(XMLNS_URI))
+      fatal("RESERVED_NAMESPACE_DECLARED", uri);
+    if (uri.length() == 0 && prefix.length() != 0)
+      fatal("PREFIX_UNDECLARED", prefix);
+    pushNamespace(prefix, uri);
+    handler.startPrefixMapping(prefix, uri);
+  }
+
+  private void pushNamespace(String prefix, String uri) {
+    if (nsCount == nsPrefixes.length) {
+      String[] tem = nsPrefixes;
+      nsPrefixes = new String[tem.length << 1];
+      System.arraycopy(tem, 0, nsPrefixes, 0, nsCount);
+      tem = nsUris;
+      nsUris = new String[tem.length << 1];
+      System.arraycopy(tem, 0, nsUris, 0, nsCount);
+    }
+    nsPrefixes[nsCount] = prefix;
+    nsUris[nsCount] = uri;
+    nsCount++;
+  }
+
+  private String lookupNamespace(String prefix) {
+    for (int i = nsCount; --i >= 0;)
+      if (nsPrefixes[i] == prefix)
+        return nsUris[i];
+    return null;
+  }
+
+  private String resolvePrefix(String prefix) throws SAXException {
+    String uri = lookupNamespace(prefix);
+    if (uri == null)
+      fatal("UNBOUND_PREFIX", prefix);
+    return uri;
+  }
+
+  private void growElements() {
+    int n = elementNames.length << 1;
+    SymbolTable.Name[] names = new SymbolTable.Name[n];
+    System.arraycopy(elementNames, 0, names, 0, depth);
+    elementNames = names;
+    String[] uris = new String[n];
+    System.arraycopy(elementUris, 0, uris, 0, depth);
+    elementUris = uris;
+    int[] counts = new int[n];
+    System.arraycopy(elementNsCounts, 0, counts, 0, depth);
+    elementNsCounts = counts;
+  }
+
+  /**
+   * Checks that no two attributes have the same namespace URI and local name.
+   * The tokenizer has already checked that no two attributes have the same
+   * qualified name.
+   */
+  private void checkAttributeUniqueness() throws SAXException {
+    int n = attributes.getLength();
+    for (int i = 1; i < n; i++) {
+      String localName = attributes.getLocalName(i);
+      String uri = attributes.getURI(i);
+      for (int j = 0; j < i; j++)
+        // local names come from the symbol table, so == can be used
+        if (attributes.getLocalName(j) == localName && attributes.getURI(j).equals(uri))
+          fatal("DUPLICATE_ATTRIBUTE", attributes.getQName(i));
+    }
+  }
+
+  /**
+   * Returns the normalized value of attribute index <code>i</code> of the current token.
+   */
+  private String attributeValue(int i) throws SAXException {
+    int start = token.getAttributeValueStart(i);
+    int end = token.getAttributeValueEnd(i);
+    if (token.isAttributeNormalized(i))
+      return new String(buf, start, end - start);
+    valueBuf.setLength(0);
+    Token t = valueToken;
+    while (start < end) {
+      int tok;
+      int tokEnd;
+      try {
+        tok = Tokenizer.tokenizeAttributeValue(buf, start, end, t);
+        tokEnd = t.getTokenEnd();
+      }
+      catch (ExtensibleTokenException e) {
+        tok = e.getTokenType();
+        tokEnd = end;
+      }
+      catch (EmptyTokenException e) {
+        break;
+      }
+      catch (PartialTokenException e) {
+        // the tokenizer has already checked the attribute value
+        throw new Error("attribute value botch");
+      }
+      catch (InvalidTokenException e) {
+        throw new Error("attribute value botch");
+      }
+      switch (tok) {
+      case Tokenizer.TOK_DATA_CHARS:
+        valueBuf.append(buf, start, tokEnd - start);
+        break;
+      case Tokenizer.TOK_DATA_NEWLINE:
+      case Tokenizer.TOK_ATTRIBUTE_VALUE_S:
+        valueBuf.append(' ');
+        break;
+      case Tokenizer.TOK_MAGIC_ENTITY_REF:
+      case Tokenizer.TOK_CHAR_REF:
+        valueBuf.append(t.getRefChar());
+        break;
+      case Tokenizer.TOK_CHAR_PAIR_REF:
+        t.getRefCharPair(refBuf, 0);
+        valueBuf.append(refBuf, 0, 2);
+        break;
+      case Tokenizer.TOK_ENTITY_REF:
+        fatalAt(start, "UNDEF_REF", new String(buf, start + 1, t.getNameEnd() - start - 1));
+        break;
+      default:
+        throw new Error("attribute value botch");
+      }
+      start = tokEnd;
+    }
+    return valueBuf.toString();
+  }
+
+  private void processingInstruction() throws SAXException {
+    int targetEnd = token.getNameEnd();
+    String target = new String(buf, tokenStart + 2, targetEnd - tokenStart - 2);
+    int dataEnd = bufStart - 2;
+    int dataStart = targetEnd < dataEnd ? Tokenizer.skipS(buf, targetEnd, dataEnd) : dataEnd;
+    String data = normalizeNewlines(new String(buf, dataStart, dataEnd - dataStart));
+    advancePosition(bufStart);
+    handler.processingInstruction(target, data);
+  }
+
+  private static String normalizeNewlines(String str) {
+    if (str.indexOf('\r') < 0)
+      return str;
+    StringBuilder sb = new StringBuilder(str.length());
+    for (int i = 0, len = str.length(); i < len; i++) {
+      char c = str.charAt(i);
+      if (c == '\r') {
+        sb.append('\n');
+        if (i + 1 < len && str.charAt(i + 1) == '\n')
+          i++;
+      }
+      else
+        sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the type of the next token using the tokenizer for the specified
+   * mode, reading more input as necessary. On return, the token starts at
+   * tokenStart and ends at bufStart.
+   */
+  private int tokenize(int mode) throws IOException, SAXException {
+    for (;;) {
+      try {
+        int tok;
+        switch (mode) {
+        case CONTENT:
+          tok = Tokenizer.tokenizeContent(buf, bufStart, bufEnd, token);
+          break;
+        case CDATA_SECTION:
+          tok = Tokenizer.tokenizeCdataSection(buf, bufStart, bufEnd, token);
+          break;
+        default:
+          tok = Tokenizer.tokenizeProlog(buf, bufStart, bufEnd, token);
+          break;
+        }
+        tokenStart = bufStart;
+        bufStart = token.getTokenEnd();
+        return tok;
+      }
+      catch (EndOfPrologException e) {
+        tokenStart = bufStart;
+        return TOK_END_OF_PROLOG;
+      }
+      catch (EmptyTokenException e) {
+        if (!fill()) {
+          tokenStart = bufStart;
+          return TOK_EOF;
+        }
+      }
+      catch (PartialTokenException e) {
+        if (!fill()) {
+          tokenStart = bufStart;
+          fatal("UNCLOSED_TOKEN");
+        }
+      }
+      catch (ExtensibleTokenException e) {
+        if (!fill()) {
+          tokenStart = bufStart;
+          bufStart = bufEnd;
+          return e.getTokenType();
+        }
+      }
+      catch (InvalidTokenException e) {
+        tokenStart = bufStart;
+        if (e.getType() == InvalidTokenException.XML_TARGET)
+          fatalAt(e.getOffset(), "XML_TARGET");
+        else if (e.getType() == InvalidTokenException.DUPLICATE_ATTRIBUTE)
+          fatalAt(e.getOffset(), "DUPLICATE_ATTRIBUTE",
+                  new String(buf, e.getOffset(), nameLength(e.getOffset())));
+        else
+          fatalAt(e.getOffset(), "ILLEGAL_CHAR");
+      }
+    }
+  }
+
+  private int nameLength(int off) {
+    int end = off;
+    while (end < bufEnd && buf[end] != '=' && buf[end] > ' ')
+      end++;
+    return end - off;
+  }
+
+  /**
+   * Reads more input into the buffer, keeping the chars from bufStart on.
+   * Returns false if there is no more input.
+   */
+  private boolean fill() throws IOException {
+    if (in == null)
+      return false;
+    if (bufEnd == buf.length) {
+      advancePosition(bufStart);
+      int keep = bufEnd - bufStart;
+      char[] newBuf = buf;
+      // make sure there is room for a whole read
+      if (keep + READSIZE > buf.length)
+        newBuf = new char[buf.length << 1];
+      System.arraycopy(buf, bufStart, newBuf, 0, keep);
+      buf = newBuf;
+      bufEnd = keep;
+      tokenStart = posOff = bufStart = 0;
+    }
+    int nChars = in.read(buf, bufEnd, buf.length - bufEnd);
+    if (nChars < 0) {
+      in.close();
+      in = null;
+      return false;
+    }
+    bufEnd += nChars;
+    return true;
+  }
+
+  private void advancePosition(int off) {
+    if (off > posOff) {
+      Tokenizer.movePosition(buf, posOff, off, pos);
+      posOff = off;
+    }
+  }
+
+  private void fatal(String key) throws SAXException {
+    fatalAt(tokenStart, key, null);
+  }
+
+  private void fatal(String key, String arg) throws SAXException {
+    fatalAt(tokenStart, key, arg);
+  }
+
+  private void fatalAt(int off, String key) throws SAXException {
+    fatalAt(off, key, null);
+  }
+
+  private void fatalAt(int off, String key, String arg) throws SAXException {
+    advancePosition(off);
+    SAXParseException e = new SAXParseException(localizer.message(key, arg), this);
+    if (errorHandler != null)
+      errorHandler.fatalError(e);
+    throw e;
+  }
+}
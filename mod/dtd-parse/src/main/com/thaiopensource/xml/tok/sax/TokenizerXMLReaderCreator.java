@@ -0,0 +1,16 @@
+package com.thaiopensource.xml.tok.sax;
+
+import com.thaiopensource.xml.sax.XMLReaderCreator;
+import org.xml.sax.XMLReader;
+
+/**
+ * An <code>XMLReaderCreator</code> that creates <code>TokenizerXMLReader</code>s.
+ * An instance of this class is safe for concurrent access by multiple threads.
+ *
+ * @see TokenizerXMLReader
+ */
+public class TokenizerXMLReaderCreator implements XMLReaderCreator {
+  public XMLReader createXMLReader() {
+    return new TokenizerXMLReader();
+  }
+}
@@ -0,0 +1,361 @@
+package com.thaiopensource.xml.tok.sax;
+
+import com.thaiopensource.util.Localizer;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests TokenizerXMLReader, mostly by comparing the events it reports with those
+ * reported by the XML parser of the platform.
+ */
+public class TokenizerXMLReaderTest {
+  static private final Localizer localizer = new Localizer(TokenizerXMLReader.class);
+  /**
+   * Larger than the number of chars that TokenizerXMLReader reads at a time.
+   */
+  static private final int LARGE = 30000;
+
+  /**
+   * Records the events reported by a parser. Adjacent calls of <code>characters</code>
+   * are recorded as a single event, since parsers are free to split character data differently.
+   */
+  static private class Recorder implements ContentHandler, ErrorHandler {
+    final List<String> events = new ArrayList<String>();
+    final List<SAXParseException> fatalErrors = new ArrayList<SAXParseException>();
+    private final StringBuilder text = new StringBuilder();
+    private final boolean recordLocations;
+    private Locator locator;
+
+    Recorder(boolean recordLocations) {
+      this.recordLocations = recordLocations;
+    }
+
+    private void add(String event) {
+      flushText();
+      if (recordLocations)
+        event += " @" + locator.getLineNumber() + ":" + locator.getColumnNumber();
+      events.add(event);
+    }
+
+    private void flushText() {
+      if (text.length() > 0) {
+        events.add("text " + text);
+        text.setLength(0);
+      }
+    }
+
+    public void setDocumentLocator(Locator locator) {
+      this.locator = locator;
+    }
+
+    public void startDocument() {
+      events.add("startDocument");
+    }
+
+    public void endDocument() {
+      flushText();
+      events.add("endDocument");
+    }
+
+    public void startPrefixMapping(String prefix, String uri) {
+      flushText();
+      events.add("startPrefixMapping " + prefix + "=" + uri);
+    }
+
+    public void endPrefixMapping(String prefix) {
+      flushText();
+      events.add("endPrefixMapping " + prefix);
+    }
+
+    public void startElement(String uri, String localName, String qName, Attributes atts) {
+      StringBuilder sb = new StringBuilder("startElement {").append(uri).append('}')
+        .append(localName).append(' ').append(qName);
+      for (int i = 0; i < atts.getLength(); i++)
+        sb.append(' ').append('{').append(atts.getURI(i)).append('}').append(atts.getLocalName(i))
+          .append(' ').append(atts.getQName(i)).append("=\"").append(atts.getValue(i)).append('"')
+          .append(' ').append(atts.getType(i));
+      add(sb.toString());
+    }
+
+    public void endElement(String uri, String localName, String qName) {
+      add("endElement {" + uri + "}" + localName + " " + qName);
+    }
+
+    public void characters(char[] ch, int start, int length) {
+      text.append(ch, start, length);
+    }
+
+    public void ignorableWhitespace(char[] ch, int start, int length) {
+      text.append(ch, start, length);
+    }
+
+    public void processingInstruction(String target, String data) {
+      add("processingInstruction " + target + " " + data);
+    }
+
+    public void skippedEntity(String name) {
+      add("skippedEntity " + name);
+    }
+
+    public void warning(SAXParseException exception) {
+    }
+
+    public void error(SAXParseException exception) {
+    }
+
+    public void fatalError(SAXParseException exception) {
+      fatalErrors.add(exception);
+    }
+  }
+
+  /**
+   * A Reader that returns at most a few chars from each read, so that the parser has to refill
+   * its buffer in the middle of every token.
+   */
+  static private class TrickleReader extends Reader {
+    private final Reader reader;
+
+    TrickleReader(Reader reader) {
+      this.reader = reader;
+    }
+
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      return reader.read(cbuf, off, Math.min(len, 7));
+    }
+
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  static private List<String> parse(XMLReader xr, InputSource in, boolean recordLocations)
+          throws IOException, SAXException {
+    Recorder recorder = new Recorder(recordLocations);
+    xr.setContentHandler(recorder);
+    xr.setErrorHandler(recorder);
+    xr.parse(in);
+    return recorder.events;
+  }
+
+  static private List<String> parseReference(String doc, boolean recordLocations) throws Exception {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return parse(factory.newSAXParser().getXMLReader(), new InputSource(new StringReader(doc)), recordLocations);
+  }
+
+  /**
+   * Checks that TokenizerXMLReader reports the same events as the reference parser,
+   * both when the whole document can be read at once and when it arrives a few chars at a time.
+   */
+  static private void assertSameEvents(String doc, boolean recordLocations) throws Exception {
+    List<String> expected = parseReference(doc, recordLocations);
+    Assert.assertEquals(parse(new TokenizerXMLReader(), new InputSource(new StringReader(doc)), recordLocations),
+                        expected);
+    Assert.assertEquals(parse(new TokenizerXMLReader(),
+                              new InputSource(new TrickleReader(new StringReader(doc))),
+                              recordLocations),
+                        expected);
+  }
+
+  /**
+   * Parses a document that is not namespace well-formed and returns the fatal error that was reported.
+   */
+  static private SAXParseException parseError(String doc) throws IOException {
+    Recorder recorder = new Recorder(false);
+    XMLReader xr = new TokenizerXMLReader();
+    xr.setContentHandler(recorder);
+    xr.setErrorHandler(recorder);
+    try {
+      xr.parse(new InputSource(new StringReader(doc)));
+      Assert.fail("no error reported for " + doc);
+    }
+    catch (SAXParseException e) {
+      Assert.assertEquals(recorder.fatalErrors.size(), 1);
+      Assert.assertSame(recorder.fatalErrors.get(0), e);
+      return e;
+    }
+    catch (SAXException e) {
+      Assert.fail("not a SAXParseException", e);
+    }
+    return null;
+  }
+
+  static private String repeat(String str, int n) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < n; i++)
+      sb.append(str);
+    return sb.toString();
+  }
+
+  @DataProvider(name = "errors")
+  public Object[][] errors() {
+    return new Object[][] {
+      { "<p:a/>", "UNBOUND_PREFIX", "p", 1, 1 },
+      { "<a p:b='1'/>", "UNBOUND_PREFIX", "p", 1, 1 },
+      { "<a xmlns:xmlns='urn:x'/>", "XMLNS_PREFIX_DECLARED", null, 1, 1 },
+      { "<a xmlns:xml='urn:x'/>", "XML_PREFIX_MISDECLARED", null, 1, 1 },
+      { "<a xmlns:p='urn:x'\n   xmlns:q='urn:x' p:b='1' q:b='2'/>", "DUPLICATE_ATTRIBUTE", "q:b", 1, 1 },
+      { "<a b='1' b='2'/>", "DUPLICATE_ATTRIBUTE", "b", 1, 10 },
+      { "<a>\n  <b>\n  </a>", "MISMATCHED_END_TAG", "b", 3, 3 },
+      { "<a>\n x &foo; </a>", "UNDEF_REF", "foo", 2, 4 },
+      { "<a\n b='x &foo;'/>", "UNDEF_REF", "foo", 2, 7 },
+    };
+  }
+
+  @Test(dataProvider = "errors")
+  public void testError(String doc, String key, String arg, int line, int column) throws Exception {
+    SAXParseException e = parseError(doc);
+    Assert.assertEquals(e.getMessage(), localizer.message(key, arg));
+    Assert.assertEquals(e.getLineNumber(), line);
+    Assert.assertEquals(e.getColumnNumber(), column);
+  }
+
+  @Test
+  public void testErrorAfterRefill() throws Exception {
+    String doc = "<a>\n" + repeat("<b>text</b>\n", 2000) + "<c></b></a>";
+    SAXParseException e = parseError(doc);
+    Assert.assertEquals(e.getMessage(), localizer.message("MISMATCHED_END_TAG", "c"));
+    Assert.assertEquals(e.getLineNumber(), 2002);
+    Assert.assertEquals(e.getColumnNumber(), 4);
+  }
+
+  @Test
+  public void testNamespaces() throws Exception {
+    assertSameEvents("<a xmlns='urn:a' xmlns:p='urn:p' p:x='1' y='2'>"
+                     + "<p:b xmlns:p='urn:q' p:x='3'/><c xmlns=''/>"
+                     + "<d xml:lang='en' xmlns:xml='http://www.w3.org/XML/1998/namespace'/></a>",
+                     false);
+  }
+
+  @Test
+  public void testSameLocalNameDifferentPrefixes() throws Exception {
+    assertSameEvents("<a xmlns:p='urn:p' xmlns:q='urn:q' p:b='1' q:b='2' b='3'/>", false);
+  }
+
+  @Test
+  public void testAttributeNormalization() throws Exception {
+    String doc = "<a b='x&#10;y\n z\tw&#9;&amp;&lt;&#x10000;' c=\"  s\r\n  t \" d='&quot;&apos;'/>";
+    assertSameEvents(doc, false);
+    List<String> events = parse(new TokenizerXMLReader(), new InputSource(new StringReader(doc)), false);
+    Assert.assertEquals(events.get(1),
+                        "startElement {}a a {}b b=\"x\ny  z w\t&<\uD800\uDC00\" CDATA"
+                        + " {}c c=\"  s   t \" CDATA {}d d=\"\"'\" CDATA");
+  }
+
+  @Test
+  public void testContent() throws Exception {
+    assertSameEvents("<?xml version='1.0'?>\n<!DOCTYPE a [ <!-- comment --> ]>\n"
+                     + "<?pi data?>\n<a>x\r\ny\rz&amp;&#x41;&#x10000;<![CDATA[<&\r\n]]><!-- c --><?t d?></a>\n"
+                     + "<!-- end --><?end?>",
+                     false);
+  }
+
+  @Test
+  public void testLargeTokens() throws Exception {
+    assertSameEvents("<!--" + repeat("c", LARGE) + "-->\n<a b='" + repeat("v", LARGE) + "'>"
+                     + repeat("t", LARGE) + "<![CDATA[" + repeat("d", LARGE) + "]]>"
+                     + "<?pi " + repeat("p", LARGE) + "?></a>",
+                     false);
+  }
+
+  @Test
+  public void testLargeName() throws Exception {
+    // the parser of the platform limits the length of names
+    String name = repeat("n", LARGE);
+    List<String> events = parse(new TokenizerXMLReader(),
+                                new InputSource(new TrickleReader(new StringReader("<a><" + name + "/></a>"))),
+                                false);
+    Assert.assertEquals(events.get(2), "startElement {}" + name + " " + name);
+    Assert.assertEquals(events.get(3), "endElement {}" + name + " " + name);
+  }
+
+  @Test
+  public void testLocations() throws Exception {
+    StringBuilder doc = new StringBuilder("<a>\n");
+    for (int i = 0; i < 3000; i++) {
+      doc.append(repeat(" ", i % 13)).append("<b x='").append(repeat("v", i % 50)).append("'>");
+      if (i % 100 == 0)
+        doc.append(repeat("long line ", 2000));
+      doc.append("text\n\ttext</b>\n");
+    }
+    doc.append("</a>\n");
+    assertSameEvents(doc.toString(), true);
+  }
+
+  @Test
+  public void testByteOrderMark() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    bytes.write(new byte[] { (byte)0xEF, (byte)0xBB, (byte)0xBF });
+    bytes.write("<a>\u00E9\u4E00</a>".getBytes("UTF-8"));
+    List<String> events = parse(new TokenizerXMLReader(),
+                                new InputSource(new ByteArrayInputStream(bytes.toByteArray())), true);
+    Assert.assertEquals(events.get(2), "text \u00E9\u4E00");
+    // the byte order mark is not counted as a column
+    Assert.assertEquals(events.get(1), "startElement {}a a @1:4");
+    // a byte order mark in a character stream is skipped too
+    events = parse(new TokenizerXMLReader(), new InputSource(new StringReader("\uFEFF<a>x</a>")), true);
+    Assert.assertEquals(events.get(1), "startElement {}a a @1:4");
+  }
+
+  @Test
+  public void testUtf16() throws Exception {
+    byte[] bytes = "<?xml version='1.0' encoding='UTF-16'?><a>\u00E9\u4E00</a>".getBytes("UTF-16");
+    List<String> events = parse(new TokenizerXMLReader(), new InputSource(new ByteArrayInputStream(bytes)), false);
+    Assert.assertEquals(events.get(2), "text \u00E9\u4E00");
+  }
+
+  @Test
+  public void testDeclaredEncoding() throws Exception {
+    byte[] bytes = "<?xml version='1.0' encoding='ISO-8859-1'?><a b='\u00E9'>\u00E9\u00FF</a>".getBytes("ISO-8859-1");
+    List<String> events = parse(new TokenizerXMLReader(), new InputSource(new ByteArrayInputStream(bytes)), false);
+    Assert.assertEquals(events.get(1), "startElement {}a a {}b b=\"\u00E9\" CDATA");
+    Assert.assertEquals(events.get(2), "text \u00E9\u00FF");
+  }
+
+  @Test
+  public void testUnsupportedEncoding() throws Exception {
+    byte[] bytes = "<?xml version='1.0' encoding='x-no-such-encoding'?><a/>".getBytes("US-ASCII");
+    XMLReader xr = new TokenizerXMLReader();
+    try {
+      xr.parse(new InputSource(new ByteArrayInputStream(bytes)));
+      Assert.fail();
+    }
+    catch (SAXParseException e) {
+      Assert.assertEquals(e.getMessage(), localizer.message("UNSUPPORTED_ENCODING", "x-no-such-encoding"));
+    }
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+    XMLReader xr = new TokenizerXMLReader();
+    String large = "<a b='" + repeat("v", LARGE) + "'>x</a>";
+    List<String> expected = parseReference(large, true);
+    Assert.assertEquals(parse(xr, new InputSource(new StringReader(large)), true), expected);
+    try {
+      parse(xr, new InputSource(new StringReader("<a><b></a>")), false);
+      Assert.fail();
+    }
+    catch (SAXParseException e) {
+      // expected
+    }
+    Assert.assertEquals(parse(xr, new InputSource(new StringReader(large)), true), expected);
+  }
+}
@@ -1,13 +1,17 @@
 package com.thaiopensource.xml.dtd.app;
 
 import com.thaiopensource.util.Localizer;
+import com.thaiopensource.util.OptionParser;
 import com.thaiopensource.util.UriOrFile;
 import com.thaiopensource.util.Version;
 import com.thaiopensource.xml.dtd.om.Dtd;
+import com.thaiopensource.xml.dtd.om.DtdParser;
+import com.thaiopensource.xml.dtd.parse.CachingDtdParser;
 import com.thaiopensource.xml.dtd.parse.DtdParserImpl;
 import com.thaiopensource.xml.out.XmlWriter;
 import com.thaiopensource.xml.em.UriEntityManager;
 
+import java.io.File;
 import java.io.IOException;
 
 public class Driver {
@@ -26,6 +30,30 @@ public class Driver {
   }
 
   public static boolean doMain(String args[]) throws IOException {
+    DtdParser dtdParser = new DtdParserImpl();
+    OptionParser op = new OptionParser("c:", args);
+    try {
+      while (op.moveToNextOption()) {
+        switch (op.getOptionChar()) {
+        case 'c':
+          File cacheDirectory = new File(op.getOptionArg());
+          cacheDirectory.mkdirs();
+          dtdParser = new CachingDtdParser(0, cacheDirectory);
+          break;
+        }
+      }
+    }
+    catch (OptionParser.InvalidOptionException e) {
+      error(localizer.message("INVALID_OPTION", op.getOptionCharString()));
+      usage();
+      return false;
+    }
+    catch (OptionParser.MissingArgumentException e) {
+      error(localizer.message("OPTION_MISSING_ARGUMENT", op.getOptionCharString()));
+      usage();
+      return false;
+    }
+    args = op.getRemainingArgs();
     if (args.length == 0) {
       error(localizer.message("MISSING_ARGUMENT"));
       usage();
@@ -37,7 +65,7 @@ public class Driver {
       return false;
     }
     String uri = UriOrFile.toUri(args[0]);
-    Dtd dtd = new DtdParserImpl().parse(uri, new UriEntityManager());
+    Dtd dtd = dtdParser.parse(uri, new UriEntityManager());
     XmlWriter w = new XmlOutputStreamWriter(System.out, dtd.getEncoding());
     new SchemaWriter(w).writeDtd(dtd);
     w.close();
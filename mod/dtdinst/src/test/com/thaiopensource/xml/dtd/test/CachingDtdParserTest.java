@@ -0,0 +1,127 @@
+package com.thaiopensource.xml.dtd.test;
+
+import com.thaiopensource.xml.dtd.app.SchemaWriter;
+import com.thaiopensource.xml.dtd.app.XmlOutputStreamWriter;
+import com.thaiopensource.xml.dtd.om.Dtd;
+import com.thaiopensource.xml.dtd.om.DtdParser;
+import com.thaiopensource.xml.dtd.parse.CachingDtdParser;
+import com.thaiopensource.xml.dtd.parse.DtdParserImpl;
+import com.thaiopensource.xml.em.FileEntityManager;
+import com.thaiopensource.xml.out.XmlWriter;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test that the object models kept in a directory by CachingDtdParser give the same dtdinst output
+ * as parsing, and that a damaged file in the directory is ignored.
+ */
+public class CachingDtdParserTest {
+  private File cacheDir;
+
+  /**
+   * Returns the directory containing the dtdinst test DTDs. It is found relative to the source of this class,
+   * since the source directory is on the class path.
+   */
+  static private File testDirectory() throws URISyntaxException {
+    File dir = new File(CachingDtdParserTest.class.getResource("CachingDtdParserTest.java").toURI());
+    // up from src/test/com/thaiopensource/xml/dtd/test/CachingDtdParserTest.java to the module directory
+    for (int i = 0; i < 8; i++)
+      dir = dir.getParentFile();
+    return new File(dir, "test");
+  }
+
+  @BeforeMethod
+  public void createDirectory() throws IOException {
+    cacheDir = File.createTempFile("dtd-cache", "");
+    Assert.assertTrue(cacheDir.delete() && cacheDir.mkdir());
+  }
+
+  @AfterMethod
+  public void deleteDirectory() {
+    for (File file : cacheDir.listFiles())
+      file.delete();
+    cacheDir.delete();
+  }
+
+  static private byte[] dtdinst(File dtdFile, DtdParser parser) throws IOException {
+    Dtd dtd = parser.parse(dtdFile.toString(), new FileEntityManager());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    XmlWriter w = new XmlOutputStreamWriter(out, dtd.getEncoding());
+    new SchemaWriter(w).writeDtd(dtd);
+    w.close();
+    return out.toByteArray();
+  }
+
+  private File cacheFile() {
+    File[] files = cacheDir.listFiles();
+    Assert.assertEquals(files.length, 1);
+    return files[0];
+  }
+
+  @DataProvider(name = "dtds")
+  Object[][] dtds() throws URISyntaxException {
+    File dir = testDirectory();
+    List<Object[]> dtds = new ArrayList<Object[]>();
+    String[] names = dir.list();
+    Arrays.sort(names);
+    for (String name : names) {
+      if (name.endsWith(".dtd") && new File(dir, name.substring(0, name.length() - 4) + ".xml").exists())
+        dtds.add(new Object[] { new File(dir, name) });
+    }
+    Assert.assertFalse(dtds.isEmpty());
+    return dtds.toArray(new Object[dtds.size()][]);
+  }
+
+  @Test(dataProvider = "dtds")
+  public void testRoundTrip(File dtdFile) throws IOException {
+    byte[] expected = dtdinst(dtdFile, new DtdParserImpl());
+    Assert.assertEquals(dtdinst(dtdFile, new CachingDtdParser(0, cacheDir)), expected);
+    File cacheFile = cacheFile();
+    // a file that is read is not written again
+    Assert.assertTrue(cacheFile.setLastModified(0));
+    Assert.assertEquals(dtdinst(dtdFile, new CachingDtdParser(0, cacheDir)), expected);
+    Assert.assertEquals(cacheFile.lastModified(), 0);
+  }
+
+  /**
+   * Damages the file in the directory in various ways, and checks each time that the DTD is parsed again.
+   */
+  @Test
+  public void testDamagedFileIgnored() throws Exception {
+    File dtdFile = new File(testDirectory(), "xmlspec-v21.dtd");
+    byte[] expected = dtdinst(dtdFile, new DtdParserImpl());
+    dtdinst(dtdFile, new CachingDtdParser(0, cacheDir));
+    byte[] bytes = Files.readAllBytes(cacheFile().toPath());
+    List<byte[]> damaged = new ArrayList<byte[]>();
+    // truncated
+    for (int length : new int[] { 0, 1, 4, bytes.length / 2, bytes.length - 20, bytes.length - 1 })
+      damaged.add(Arrays.copyOf(bytes, length));
+    // corrupted, both in the object model and in its digest
+    for (int i : new int[] { 0, 5, bytes.length / 3, bytes.length / 2, bytes.length - 21, bytes.length - 1 }) {
+      byte[] corrupted = bytes.clone();
+      corrupted[i] ^= 0x5A;
+      damaged.add(corrupted);
+    }
+    for (byte[] content : damaged) {
+      File cacheFile = cacheFile();
+      Files.write(cacheFile.toPath(), content);
+      Assert.assertTrue(cacheFile.setLastModified(0));
+      Assert.assertEquals(dtdinst(dtdFile, new CachingDtdParser(0, cacheDir)), expected);
+      // parsed again, and the file replaced
+      Assert.assertTrue(cacheFile().lastModified() != 0);
+      Assert.assertEquals(Files.readAllBytes(cacheFile().toPath()), bytes);
+    }
+  }
+}
@@ -11,6 +11,7 @@ import java.util.Hashtable;
 import com.thaiopensource.xml.out.XmlWriter;
 import com.thaiopensource.xml.dtd.om.DtdParser;
 import com.thaiopensource.xml.dtd.om.Dtd;
+import com.thaiopensource.xml.dtd.parse.CachingDtdParser;
 import com.thaiopensource.xml.dtd.parse.DtdParserImpl;
 import com.thaiopensource.xml.dtd.app.SchemaWriter;
 import com.thaiopensource.xml.dtd.app.XmlOutputStreamWriter;
@@ -25,6 +26,8 @@ public class Driver {
     for (int i = 0; i < files.length; i++)
       fileTable.put(files[i], files[i]);
     String failures = null;
+    File cacheDir = new File(failDir, "dtd-cache");
+    cacheDir.mkdirs();
     for (int i = 0; i < files.length; i++)
       if (files[i].endsWith(".dtd")) {
 	String inFile = files[i];
@@ -32,7 +35,10 @@ public class Driver {
 	if (fileTable.get(outFile) != null) {
 	  try {
 	    System.err.println("Running test " + inFile);
-	    runCompareTest(new File(dir, inFile), new File(dir, outFile));
+	    runCompareTest(new File(dir, inFile), new File(dir, outFile), new DtdParserImpl());
+	    // the first parser stores the object model in the directory; the second reads it back
+	    runCompareTest(new File(dir, inFile), new File(dir, outFile), new CachingDtdParser(0, cacheDir));
+	    runCompareTest(new File(dir, inFile), new File(dir, outFile), new CachingDtdParser(0, cacheDir));
 	  }
 	  catch (CompareFailException e) {
 	    System.err.println(inFile + " failed at byte " + e.getByteIndex());
@@ -48,18 +54,18 @@ public class Driver {
       throw new TestFailException(failures);
   }
 
-  public static void runCompareTest(File inFile, File outFile) throws IOException {
+  public static void runCompareTest(File inFile, File outFile, DtdParser dtdParser) throws IOException {
     runTest(inFile,
-	    new CompareOutputStream(new BufferedInputStream(new FileInputStream(outFile))));
+	    new CompareOutputStream(new BufferedInputStream(new FileInputStream(outFile))),
+	    dtdParser);
 
   }
 
   public static void runOutputTest(File inFile, File outFile) throws IOException {
-    runTest(inFile, new FileOutputStream(outFile));
+    runTest(inFile, new FileOutputStream(outFile), new DtdParserImpl());
   }
 
-  private static void runTest(File inFile, OutputStream out) throws IOException {
-    DtdParser dtdParser = new DtdParserImpl();
+  private static void runTest(File inFile, OutputStream out, DtdParser dtdParser) throws IOException {
     Dtd dtd = dtdParser.parse(inFile.toString(), new FileEntityManager());
     XmlWriter w = new XmlOutputStreamWriter(out, dtd.getEncoding());
     new SchemaWriter(w).writeDtd(dtd);
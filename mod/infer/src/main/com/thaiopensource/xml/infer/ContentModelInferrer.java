@@ -2,6 +2,7 @@ package com.thaiopensource.xml.infer;
 
 import com.thaiopensource.xml.util.Name;
 
+import java.io.IOException;
 import java.util.Set;
 
 public abstract class ContentModelInferrer {
@@ -13,7 +14,24 @@ public abstract class ContentModelInferrer {
 
   public abstract Set<Name> getElementNames();
 
+  /**
+   * Merges the sequences seen by another inferrer into this inferrer.
+   * Neither inferrer must be in the middle of a sequence.
+   * The other inferrer must not be used afterwards.
+   */
+  public abstract void merge(ContentModelInferrer other);
+
+  /**
+   * Writes the sequences seen by this inferrer, so that they can be read by <code>readState</code>.
+   * This inferrer must not be in the middle of a sequence.
+   */
+  abstract void writeState(InferStateOutput out) throws IOException;
+
   public static ContentModelInferrer createContentModelInferrer() {
     return new ContentModelInferrerImpl();
   }
+
+  static ContentModelInferrer readState(InferStateInput in) throws IOException {
+    return ContentModelInferrerImpl.readState(in);
+  }
 }
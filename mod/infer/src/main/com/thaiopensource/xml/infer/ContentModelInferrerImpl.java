@@ -2,6 +2,7 @@ package com.thaiopensource.xml.infer;
 
 import com.thaiopensource.xml.util.Name;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -31,6 +32,12 @@ class ContentModelInferrerImpl extends ContentModelInferrer {
       this.name = name;
       this.index = index;
     }
+
+    // Use the index rather than the identity hash code, so that the order in which
+    // followingNodes is iterated, and thus the inferred particle, depends only on the graph.
+    public int hashCode() {
+      return index;
+    }
   }
 
   private static class ParticleNode {
@@ -43,6 +50,10 @@ class ContentModelInferrerImpl extends ContentModelInferrer {
       this.index = index;
     }
 
+    public int hashCode() {
+      return index;
+    }
+
     void addFollowing(ParticleNode p) {
       if (p != this) {
         if (!followingNodes.contains(p)) {
@@ -223,6 +234,75 @@ class ContentModelInferrerImpl extends ContentModelInferrer {
     prevNode = startNode;
   }
 
+  public void merge(ContentModelInferrer other) {
+    ContentModelInferrerImpl impl = (ContentModelInferrerImpl)other;
+    if (prevNode != startNode || impl.prevNode != impl.startNode)
+      throw new IllegalStateException();
+    // look up the nodes in the order they were created, so that they get the same indices
+    // as they would have got if the other sequences had been added to this inferrer
+    SingleNode[] otherNodes = impl.getNodes();
+    for (SingleNode otherNode : otherNodes)
+      lookup(otherNode.name);
+    for (SingleNode otherNode : otherNodes) {
+      SingleNode node = lookup(otherNode.name);
+      if (otherNode.repeated)
+        node.repeated = true;
+      for (SingleNode follower : otherNode.followingNodes)
+        node.followingNodes.add(lookup(follower.name));
+    }
+  }
+
+  void writeState(InferStateOutput out) throws IOException {
+    if (prevNode != startNode)
+      throw new IllegalStateException();
+    SingleNode[] nodes = getNodes();
+    out.writeInt(nodes.length);
+    // the start and end nodes are always the first two nodes
+    for (int i = 2; i < nodes.length; i++)
+      out.writeName(nodes[i].name);
+    for (SingleNode node : nodes) {
+      out.writeBoolean(node.repeated);
+      out.writeInt(node.followingNodes.size());
+      for (SingleNode follower : node.followingNodes)
+        out.writeInt(follower.index);
+    }
+  }
+
+  static ContentModelInferrer readState(InferStateInput in) throws IOException {
+    ContentModelInferrerImpl inferrer = new ContentModelInferrerImpl();
+    int nNodes = in.readCount();
+    if (nNodes < 2)
+      throw InferStateInput.invalidState();
+    SingleNode[] nodes = new SingleNode[nNodes];
+    nodes[0] = inferrer.startNode;
+    nodes[1] = inferrer.endNode;
+    for (int i = 2; i < nNodes; i++) {
+      nodes[i] = inferrer.lookup(in.readName());
+      if (nodes[i].index != i)
+        throw InferStateInput.invalidState();
+    }
+    for (SingleNode node : nodes) {
+      node.repeated = in.readBoolean();
+      for (int n = in.readCount(); n > 0; n--) {
+        int index = in.readInt();
+        if (index < 0 || index >= nNodes)
+          throw InferStateInput.invalidState();
+        node.followingNodes.add(nodes[index]);
+      }
+    }
+    return inferrer;
+  }
+
+  /**
+   * Returns the nodes in the order in which they were created.
+   */
+  private SingleNode[] getNodes() {
+    SingleNode[] nodes = new SingleNode[nameMap.size()];
+    for (SingleNode node : nameMap.values())
+      nodes[node.index] = node;
+    return nodes;
+  }
+
   private SingleNode lookup(Name name) {
     SingleNode node = nameMap.get(name);
     if (node == null) {
@@ -2,26 +2,65 @@ package com.thaiopensource.xml.infer;
 
 import com.thaiopensource.xml.util.Name;
 
+import java.io.IOException;
+
 class DatatypeInferrer {
+  private final DatatypeRepertoire datatypes;
   private final DatatypeRepertoire.Type[] possibleTypes;
   private int nTypes;
   private int typicalMask = 0;
   private final String uri;
   private boolean allWhiteSpace = true;
+  /**
+   * The number of consecutive values that have not changed possibleTypes or typicalMask.
+   */
+  private int nStableValues = 0;
 
   DatatypeInferrer(DatatypeRepertoire datatypes, String value) {
+    this(datatypes, ~0);
+    addValue(value);
+  }
+
+  private DatatypeInferrer(DatatypeRepertoire datatypes, int possibleMask) {
+    this.datatypes = datatypes;
     uri = DatatypeRepertoire.getUri();
     possibleTypes = new DatatypeRepertoire.Type[datatypes.size()];
-    for (int i = 0; i < possibleTypes.length; i++)
-      possibleTypes[i] = datatypes.get(i);
-    nTypes = possibleTypes.length;
-    addValue(value);
+    nTypes = 0;
+    for (int i = 0; i < possibleTypes.length; i++) {
+      DatatypeRepertoire.Type type = datatypes.get(i);
+      if (((1 << type.getIndex()) & possibleMask) != 0)
+        possibleTypes[nTypes++] = type;
+    }
+  }
+
+  void writeState(InferStateOutput out) throws IOException {
+    int possibleMask = 0;
+    for (int i = 0; i < nTypes; i++)
+      possibleMask |= 1 << possibleTypes[i].getIndex();
+    out.writeInt(possibleMask);
+    out.writeInt(typicalMask);
+    out.writeBoolean(allWhiteSpace);
+  }
+
+  static DatatypeInferrer readState(InferStateInput in, DatatypeRepertoire datatypes) throws IOException {
+    DatatypeInferrer inferrer = new DatatypeInferrer(datatypes, in.readInt());
+    inferrer.typicalMask = in.readInt();
+    inferrer.allWhiteSpace = in.readBoolean();
+    return inferrer;
   }
 
   public void addValue(String value) {
+    if (allWhiteSpace && !isWhiteSpace(value))
+      allWhiteSpace = false;
+    int maxStableValues = datatypes.getMaxStableValues();
+    if (maxStableValues > 0 && nStableValues >= maxStableValues)
+      return;
+    int prevNTypes = nTypes;
+    int prevTypicalMask = typicalMask;
+    int mask = nTypes == 0 ? 0 : DatatypeRepertoire.possibleTypeMask(value);
     int nDeleted = 0;
     for (int i = 0; i < nTypes; i++) {
-      if (!possibleTypes[i].matches(value))
+      if (((1 << possibleTypes[i].getIndex()) & mask) == 0 || !possibleTypes[i].matches(value))
         nDeleted++;
       else {
         if (possibleTypes[i].isTypical(value))
@@ -33,8 +72,42 @@ class DatatypeInferrer {
       }
     }
     nTypes -= nDeleted;
-    if (!isWhiteSpace(value))
+    if (nTypes == prevNTypes && typicalMask == prevTypicalMask)
+      nStableValues++;
+    else
+      nStableValues = 0;
+  }
+
+  /**
+   * Merges the values seen by another inferrer into this inferrer.
+   * Afterwards, this inferrer is in the same state as if it had been given
+   * the values given to both.
+   */
+  void merge(DatatypeInferrer other) {
+    int otherMask = 0;
+    for (int i = 0; i < other.nTypes; i++)
+      otherMask |= 1 << other.possibleTypes[i].getIndex();
+    int prevTypicalMask = typicalMask;
+    int mask = 0;
+    int nDeleted = 0;
+    for (int i = 0; i < nTypes; i++) {
+      mask |= 1 << possibleTypes[i].getIndex();
+      if (((1 << possibleTypes[i].getIndex()) & otherMask) == 0)
+        nDeleted++;
+      else if (nDeleted > 0) {
+        possibleTypes[i - nDeleted] = possibleTypes[i];
+        possibleTypes[i] = null;
+      }
+    }
+    nTypes -= nDeleted;
+    // a value only makes a type typical if the type matched all the preceding values
+    typicalMask |= other.typicalMask & mask;
+    if (!other.allWhiteSpace)
       allWhiteSpace = false;
+    if (nDeleted > 0 || typicalMask != prevTypicalMask)
+      nStableValues = 0;
+    else
+      nStableValues = Math.min(nStableValues, other.nStableValues);
   }
 
   static boolean isWhiteSpace(String value) {
@@ -28,6 +28,62 @@ public class DatatypeRepertoire {
     "anyURI"
   };
 
+  static private final String DIGITS = "0123456789";
+  static private final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+  static private final String NAME_CHARS = LETTERS + DIGITS + ".-_";
+
+  /**
+   * The ASCII characters other than white space that can occur in a value of each type,
+   * in the same order as typeNames; null if any character can occur.
+   */
+  static private final String[] typeChars = {
+    "truefals01",
+    DIGITS + "+-",
+    DIGITS + "+-.",
+    DIGITS + "+-.eEINFa",
+    NAME_CHARS,
+    DIGITS + ":.+-Z",
+    DIGITS + ":+-Z",
+    DIGITS + ":.+-ZT",
+    DIGITS + ".-PYMDTHS",
+    DIGITS + "abcdefABCDEF",
+    NAME_CHARS + ":",
+    LETTERS + DIGITS + "+/=",
+    null
+  };
+
+  /**
+   * Maps an ASCII character to a mask of the types whose values can contain the character.
+   */
+  static private final int[] asciiMasks = new int[128];
+  static private final int ALL_MASK = (1 << typeNames.length) - 1;
+  static private final int NON_ASCII_MASK = typeMask("NCName") | typeMask("NMTOKEN") | typeMask("anyURI");
+  static private final int NAME_START_MASK = ALL_MASK & ~typeMask("NCName");
+  static private final int EMBEDDED_WHITESPACE_MASK = typeMask("base64Binary") | typeMask("anyURI");
+  static private final int EMPTY_MASK = typeMask("hexBinary") | typeMask("base64Binary") | typeMask("anyURI");
+  static private final int BOOLEAN_MASK = typeMask("boolean");
+  static private final int BOOLEAN_MAX_LENGTH = 5;
+
+  static {
+    for (int i = 0; i < typeChars.length; i++) {
+      if (typeChars[i] == null) {
+        for (int c = 0; c < asciiMasks.length; c++)
+          asciiMasks[c] |= 1 << i;
+      }
+      else {
+        for (int j = 0; j < typeChars[i].length(); j++)
+          asciiMasks[typeChars[i].charAt(j)] |= 1 << i;
+      }
+    }
+  }
+
+  static private int typeMask(String typeName) {
+    for (int i = 0; i < typeNames.length; i++)
+      if (typeNames[i].equals(typeName))
+        return 1 << i;
+    throw new IllegalArgumentException(typeName);
+  }
+
   static public class Type {
     private final Datatype dt;
     private final String name;
@@ -122,6 +178,7 @@ public class DatatypeRepertoire {
 
   private final Type[] types = new Type[typeNames.length];
   private int nTypes = 0;
+  private int maxStableValues = 0;
 
   DatatypeRepertoire(DatatypeLibraryFactory factory) {
     DatatypeLibrary lib = factory.createDatatypeLibrary(WellKnownNamespaces.XML_SCHEMA_DATATYPES);
@@ -139,6 +196,64 @@ public class DatatypeRepertoire {
     }
   }
 
+  /**
+   * Works out, in a single pass over the characters of a value, which types may allow the value.
+   * A type whose bit is clear in the result does not allow the value; a type whose bit is set
+   * may or may not allow it, so this must be confirmed using <code>Type.matches</code>.
+   * Checking the characters is much cheaper than asking each datatype whether the value is valid.
+   * @param value the value
+   * @return a mask with the bit <code>1 &lt;&lt; type.getIndex()</code> set for each type
+   * that may allow the value
+   */
+  static int possibleTypeMask(String value) {
+    int len = value.length();
+    int start = 0;
+    while (start < len && isWhiteSpace(value.charAt(start)))
+      start++;
+    if (start == len)
+      return EMPTY_MASK;
+    int end = len;
+    while (isWhiteSpace(value.charAt(end - 1)))
+      end--;
+    int mask = ALL_MASK;
+    char c = value.charAt(start);
+    if (c == '.' || c == '-' || (c >= '0' && c <= '9'))
+      mask &= NAME_START_MASK;
+    if (end - start > BOOLEAN_MAX_LENGTH)
+      mask &= ~BOOLEAN_MASK;
+    for (int i = start; i < end && mask != 0; i++) {
+      c = value.charAt(i);
+      if (c < 128) {
+        if (isWhiteSpace(c))
+          mask &= EMBEDDED_WHITESPACE_MASK;
+        else
+          mask &= asciiMasks[c];
+      }
+      else
+        mask &= NON_ASCII_MASK;
+    }
+    return mask;
+  }
+
+  static private boolean isWhiteSpace(char c) {
+    switch (c) {
+    case ' ':
+    case '\t':
+    case '\n':
+    case '\r':
+      return true;
+    }
+    return false;
+  }
+
+  int getMaxStableValues() {
+    return maxStableValues;
+  }
+
+  void setMaxStableValues(int maxStableValues) {
+    this.maxStableValues = maxStableValues;
+  }
+
   public int size() {
     return nTypes;
   }
@@ -2,6 +2,8 @@ package com.thaiopensource.xml.infer;
 
 import com.thaiopensource.xml.util.Name;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -9,12 +11,18 @@ import java.util.Map;
 import java.util.Set;
 
 class ElementDeclInferrer {
+  private static final byte NO_CONTENT = 0;
+  private static final byte VALUE_CONTENT = 1;
+  private static final byte ELEMENT_CONTENT = 2;
+  private static final byte MIXED_CONTENT = 3;
+
   private final DatatypeRepertoire datatypes;
   private ContentModelInferrer contentModelInferrer;
   private final Map<Name, DatatypeInferrer> attributeTypeMap = new HashMap<Name, DatatypeInferrer>();
   private DatatypeInferrer valueInferrer;
   private final Set<Name> requiredAttributeNames = new HashSet<Name>();
   private Set<Name> mixedContentNames = null;
+  private double sampleCredit = 0;
 
   ElementDeclInferrer(DatatypeRepertoire datatypes, List<Name> attributeNames) {
     this.datatypes = datatypes;
@@ -53,6 +61,18 @@ class ElementDeclInferrer {
     return new OneOrMoreParticle(p);
   }
 
+  /**
+   * Returns true if the next instance should be used, when only the specified fraction
+   * of the instances is to be used.
+   */
+  boolean sample(double fraction) {
+    sampleCredit += fraction;
+    if (sampleCredit < 1)
+      return false;
+    sampleCredit -= 1;
+    return true;
+  }
+
   boolean wantValue() {
     return contentModelInferrer == null && mixedContentNames == null;
   }
@@ -106,6 +126,104 @@ class ElementDeclInferrer {
     }
   }
 
+  /**
+   * Merges the elements seen by another inferrer into this inferrer.
+   * Afterwards, this inferrer is in the same state as if it had been given
+   * the elements given to both. Neither inferrer must be in the middle of an element.
+   * The other inferrer must not be used afterwards.
+   */
+  void merge(ElementDeclInferrer other) {
+    requiredAttributeNames.retainAll(other.requiredAttributeNames);
+    for (Map.Entry<Name, DatatypeInferrer> entry : other.attributeTypeMap.entrySet()) {
+      DatatypeInferrer dt = attributeTypeMap.get(entry.getKey());
+      if (dt == null)
+        attributeTypeMap.put(entry.getKey(), entry.getValue());
+      else
+        dt.merge(entry.getValue());
+    }
+    if (mixedContentNames != null
+        || other.mixedContentNames != null
+        || (hasText() && other.contentModelInferrer != null)
+        || (contentModelInferrer != null && other.hasText())) {
+      useMixedContent();
+      if (other.mixedContentNames != null)
+        mixedContentNames.addAll(other.mixedContentNames);
+      else if (other.contentModelInferrer != null)
+        mixedContentNames.addAll(other.contentModelInferrer.getElementNames());
+    }
+    else if (other.contentModelInferrer != null) {
+      if (contentModelInferrer == null) {
+        contentModelInferrer = ContentModelInferrer.createContentModelInferrer();
+        // Previously had all elements contained only white space.
+        if (valueInferrer != null)
+          contentModelInferrer.endSequence();
+        valueInferrer = null;
+      }
+      contentModelInferrer.merge(other.contentModelInferrer);
+    }
+    else if (other.valueInferrer != null) {
+      if (contentModelInferrer != null)
+        contentModelInferrer.endSequence();
+      else if (valueInferrer != null)
+        valueInferrer.merge(other.valueInferrer);
+      else
+        valueInferrer = other.valueInferrer;
+    }
+  }
+
+  void writeState(InferStateOutput out) throws IOException {
+    out.writeNames(requiredAttributeNames);
+    out.writeInt(attributeTypeMap.size());
+    for (Map.Entry<Name, DatatypeInferrer> entry : attributeTypeMap.entrySet()) {
+      out.writeName(entry.getKey());
+      entry.getValue().writeState(out);
+    }
+    if (contentModelInferrer != null) {
+      out.writeByte(ELEMENT_CONTENT);
+      contentModelInferrer.writeState(out);
+    }
+    else if (mixedContentNames != null) {
+      out.writeByte(MIXED_CONTENT);
+      out.writeNames(mixedContentNames);
+    }
+    else if (valueInferrer != null) {
+      out.writeByte(VALUE_CONTENT);
+      valueInferrer.writeState(out);
+    }
+    else
+      out.writeByte(NO_CONTENT);
+  }
+
+  static ElementDeclInferrer readState(InferStateInput in, DatatypeRepertoire datatypes) throws IOException {
+    ElementDeclInferrer inferrer = new ElementDeclInferrer(datatypes, Collections.<Name>emptyList());
+    in.readNames(inferrer.requiredAttributeNames);
+    for (int n = in.readCount(); n > 0; n--) {
+      Name name = in.readName();
+      inferrer.attributeTypeMap.put(name, DatatypeInferrer.readState(in, datatypes));
+    }
+    switch (in.readByte()) {
+    case NO_CONTENT:
+      break;
+    case VALUE_CONTENT:
+      inferrer.valueInferrer = DatatypeInferrer.readState(in, datatypes);
+      break;
+    case ELEMENT_CONTENT:
+      inferrer.contentModelInferrer = ContentModelInferrer.readState(in);
+      break;
+    case MIXED_CONTENT:
+      inferrer.mixedContentNames = new HashSet<Name>();
+      in.readNames(inferrer.mixedContentNames);
+      break;
+    default:
+      throw InferStateInput.invalidState();
+    }
+    return inferrer;
+  }
+
+  private boolean hasText() {
+    return valueInferrer != null && !valueInferrer.isAllWhiteSpace();
+  }
+
   void addAttributeNames(List<Name> attributeNames) {
     requiredAttributeNames.retainAll(attributeNames);
   }
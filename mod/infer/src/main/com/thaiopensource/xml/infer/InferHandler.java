@@ -6,8 +6,12 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -23,6 +27,15 @@ public class InferHandler extends DefaultHandler {
   private final Set<String> usedNamespaceUris = new HashSet<String>();
   private final Schema schema = new Schema();
   private final Set<String> assignedPrefixes = new HashSet<String>();
+  /**
+   * The distinct prefix declarations seen, in the order first seen.
+   */
+  private final Set<PrefixMapping> prefixMappings = new LinkedHashSet<PrefixMapping>();
+  private double sampleFraction = 1;
+  /**
+   * The depth of nesting within an element instance that is not being sampled; 0 if not within one.
+   */
+  private int skipDepth = 0;
 
   private static class OpenElement {
     final OpenElement parent;
@@ -34,9 +47,34 @@ public class InferHandler extends DefaultHandler {
     }
   }
 
+  private static class PrefixMapping {
+    final String prefix;
+    final String uri;
+
+    PrefixMapping(String prefix, String uri) {
+      this.prefix = prefix;
+      this.uri = uri;
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof PrefixMapping))
+        return false;
+      PrefixMapping other = (PrefixMapping)obj;
+      return prefix.equals(other.prefix) && uri.equals(other.uri);
+    }
+
+    public int hashCode() {
+      return prefix.hashCode() ^ uri.hashCode();
+    }
+  }
+
   public void startElement(String uri, String localName,
                            String qName, Attributes attributes)
           throws SAXException {
+    if (skipDepth > 0) {
+      skipDepth++;
+      return;
+    }
     Name name = makeName(uri, localName);
     if (openElement == null)
       startSet.add(name);
@@ -48,9 +86,13 @@ public class InferHandler extends DefaultHandler {
       }
       openElement.inferrer.addElement(name);
     }
+    ElementDeclInferrer inferrer = inferrerMap.get(name);
+    if (inferrer != null && sampleFraction < 1 && !inferrer.sample(sampleFraction)) {
+      skipDepth = 1;
+      return;
+    }
     for (int i = 0, len = attributes.getLength(); i < len; i++)
       attributeNames.add(makeName(attributes.getURI(i), attributes.getLocalName(i)));
-    ElementDeclInferrer inferrer = inferrerMap.get(name);
     if (inferrer == null) {
       inferrer = new ElementDeclInferrer(datatypes, attributeNames);
       inferrerMap.put(name, inferrer);
@@ -67,7 +109,12 @@ public class InferHandler extends DefaultHandler {
           throws SAXException {
     if (prefix != null
         && !prefix.equals("")
-        && schema.getPrefixMap().get(uri) == null
+        && prefixMappings.add(new PrefixMapping(prefix, uri)))
+      assignPrefix(prefix, uri);
+  }
+
+  private void assignPrefix(String prefix, String uri) {
+    if (schema.getPrefixMap().get(uri) == null
         && !assignedPrefixes.contains(prefix)) {
       assignedPrefixes.add(prefix);
       schema.getPrefixMap().put(uri, prefix);
@@ -82,6 +129,8 @@ public class InferHandler extends DefaultHandler {
 
   public void characters(char ch[], int start, int length)
           throws SAXException {
+    if (skipDepth > 0)
+      return;
     if (openElement.inferrer.wantValue())
       textBuffer.append(ch, start, length);
     else {
@@ -101,6 +150,10 @@ public class InferHandler extends DefaultHandler {
 
   public void endElement(String uri, String localName, String qName)
           throws SAXException {
+    if (skipDepth > 0) {
+      skipDepth--;
+      return;
+    }
     if (openElement.inferrer.wantValue()) {
       openElement.inferrer.addValue(textBuffer.toString());
       textBuffer.setLength(0);
@@ -110,6 +163,122 @@ public class InferHandler extends DefaultHandler {
     openElement = openElement.parent;
   }
 
+  /**
+   * Sets the fraction of the instances of each element that are used for inference.
+   * The first instance of each element is always used, and the instances after that
+   * are selected evenly. An instance that is not used still contributes to the content
+   * of its parent, but its attributes and content, including any descendants, are ignored.
+   * Thus the inferred schema may not allow all the documents.
+   * This can be changed between documents; it is initially 1.
+   * @param fraction a number greater than 0 and not greater than 1
+   */
+  public void setSampleFraction(double fraction) {
+    if (fraction <= 0 || fraction > 1)
+      throw new IllegalArgumentException();
+    sampleFraction = fraction;
+  }
+
+  /**
+   * Sets the maximum number of consecutive values of an attribute or of an element's content
+   * that will be checked against the candidate datatypes without changing the candidates;
+   * after that, further values are not checked.
+   * Checking values is usually the most expensive part of inference;
+   * limiting it means that the inferred schema may not allow all the documents.
+   * @param n the maximum number of consecutive values, or 0 for no maximum
+   */
+  public void setMaxStableValues(int n) {
+    if (n < 0)
+      throw new IllegalArgumentException();
+    datatypes.setMaxStableValues(n);
+  }
+
+  /**
+   * Merges the state of another handler into this handler.
+   * Afterwards, this handler is in the same state as if it had been given
+   * the documents given to the other handler after the documents given to it.
+   * This allows the documents to be divided between several handlers,
+   * for example, so that they can be parsed concurrently.
+   * Neither handler must be in the middle of a document and
+   * <code>getSchema</code> must not have been called on either handler.
+   * The other handler must not be used afterwards.
+   * @param other the handler whose state is to be merged into this handler
+   */
+  public void merge(InferHandler other) {
+    if (openElement != null || other.openElement != null)
+      throw new IllegalStateException();
+    for (Map.Entry<Name, ElementDeclInferrer> entry : other.inferrerMap.entrySet()) {
+      ElementDeclInferrer inferrer = inferrerMap.get(entry.getKey());
+      if (inferrer == null)
+        inferrerMap.put(entry.getKey(), entry.getValue());
+      else
+        inferrer.merge(entry.getValue());
+    }
+    startSet.addAll(other.startSet);
+    usedNamespaceUris.addAll(other.usedNamespaceUris);
+    for (PrefixMapping mapping : other.prefixMappings)
+      if (prefixMappings.add(mapping))
+        assignPrefix(mapping.prefix, mapping.uri);
+  }
+
+  /**
+   * Writes the state of this handler to a stream in a compact binary form.
+   * A handler created from the state by <code>readState</code> can be given further documents;
+   * the schema it infers will be the same as if this handler had been given them.
+   * This handler must not be in the middle of a document and
+   * <code>getSchema</code> must not have been called on it.
+   * @param out the stream to which the state is written; this is flushed but not closed
+   * @throws IOException if an I/O error occurs
+   */
+  public void writeState(OutputStream out) throws IOException {
+    if (openElement != null)
+      throw new IllegalStateException();
+    InferStateOutput sout = new InferStateOutput(out);
+    sout.writeInt(InferStateOutput.MAGIC);
+    sout.writeInt(prefixMappings.size());
+    for (PrefixMapping mapping : prefixMappings) {
+      sout.writeUTF(mapping.prefix);
+      sout.writeUTF(mapping.uri);
+    }
+    sout.writeInt(usedNamespaceUris.size());
+    for (String uri : usedNamespaceUris)
+      sout.writeUTF(uri);
+    sout.writeNames(startSet);
+    sout.writeInt(inferrerMap.size());
+    for (Map.Entry<Name, ElementDeclInferrer> entry : inferrerMap.entrySet()) {
+      sout.writeName(entry.getKey());
+      entry.getValue().writeState(sout);
+    }
+    sout.flush();
+  }
+
+  /**
+   * Creates a handler from state written by <code>writeState</code>.
+   * @param in the stream from which the state is read; this is not closed
+   * @param factory the factory used to create the datatype library that is used to infer datatypes
+   * @return the handler
+   * @throws IOException if an I/O error occurs or the stream does not contain valid state
+   */
+  public static InferHandler readState(InputStream in, DatatypeLibraryFactory factory) throws IOException {
+    InferHandler handler = new InferHandler(factory);
+    InferStateInput sin = new InferStateInput(in);
+    if (sin.readInt() != InferStateOutput.MAGIC)
+      throw InferStateInput.invalidState();
+    for (int n = sin.readCount(); n > 0; n--) {
+      String prefix = sin.readUTF();
+      String uri = sin.readUTF();
+      handler.prefixMappings.add(new PrefixMapping(prefix, uri));
+      handler.assignPrefix(prefix, uri);
+    }
+    for (int n = sin.readCount(); n > 0; n--)
+      handler.usedNamespaceUris.add(sin.readUTF());
+    sin.readNames(handler.startSet);
+    for (int n = sin.readCount(); n > 0; n--) {
+      Name name = sin.readName();
+      handler.inferrerMap.put(name, ElementDeclInferrer.readState(sin, handler.datatypes));
+    }
+    return handler;
+  }
+
   public Schema getSchema() {
     for (Map.Entry<Name, ElementDeclInferrer> entry : inferrerMap.entrySet()) {
       ElementDecl decl = (entry.getValue()).infer();
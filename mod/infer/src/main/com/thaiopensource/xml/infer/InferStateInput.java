@@ -0,0 +1,50 @@
+package com.thaiopensource.xml.infer;
+
+import com.thaiopensource.xml.util.Name;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A stream from which the state of an InferHandler written by InferStateOutput is read.
+ */
+class InferStateInput extends DataInputStream {
+  private final List<Name> names = new ArrayList<Name>();
+
+  InferStateInput(InputStream in) {
+    super(in);
+  }
+
+  Name readName() throws IOException {
+    int index = readInt();
+    if (index == -1) {
+      String namespaceUri = readUTF();
+      Name name = new Name(namespaceUri, readUTF());
+      names.add(name);
+      return name;
+    }
+    if (index < 0 || index >= names.size())
+      throw invalidState();
+    return names.get(index);
+  }
+
+  void readNames(Collection<Name> names) throws IOException {
+    for (int n = readCount(); n > 0; n--)
+      names.add(readName());
+  }
+
+  int readCount() throws IOException {
+    int n = readInt();
+    if (n < 0)
+      throw invalidState();
+    return n;
+  }
+
+  static IOException invalidState() {
+    return new IOException("invalid inference state");
+  }
+}
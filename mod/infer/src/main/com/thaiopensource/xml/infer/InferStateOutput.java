@@ -0,0 +1,41 @@
+package com.thaiopensource.xml.infer;
+
+import com.thaiopensource.xml.util.Name;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A stream to which the state of an InferHandler is written.
+ * A name is written in full the first time it occurs; after that, only its index is written.
+ */
+class InferStateOutput extends DataOutputStream {
+  static final int MAGIC = 0x496e6631;
+  private final Map<Name, Integer> nameIndexes = new HashMap<Name, Integer>();
+
+  InferStateOutput(OutputStream out) {
+    super(out);
+  }
+
+  void writeName(Name name) throws IOException {
+    Integer index = nameIndexes.get(name);
+    if (index != null)
+      writeInt(index);
+    else {
+      writeInt(-1);
+      writeUTF(name.getNamespaceUri());
+      writeUTF(name.getLocalName());
+      nameIndexes.put(name, nameIndexes.size());
+    }
+  }
+
+  void writeNames(Collection<Name> names) throws IOException {
+    writeInt(names.size());
+    for (Name name : names)
+      writeName(name);
+  }
+}
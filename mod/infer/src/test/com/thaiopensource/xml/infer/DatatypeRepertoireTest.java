@@ -0,0 +1,125 @@
+package com.thaiopensource.xml.infer;
+
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.thaiopensource.datatype.xsd.DatatypeLibraryFactoryImpl;
+import com.thaiopensource.datatype.xsd.regex.java.RegexEngineImpl;
+
+/**
+ * Test that DatatypeRepertoire.possibleTypeMask never excludes a type that allows a value.
+ */
+public class DatatypeRepertoireTest {
+  private DatatypeRepertoire repertoire;
+
+  @BeforeClass
+  public void createRepertoire() {
+    repertoire = new DatatypeRepertoire(new DatatypeLibraryFactoryImpl(new RegexEngineImpl()));
+    Assert.assertTrue(repertoire.size() > 0);
+  }
+
+  private DatatypeRepertoire.Type getType(String name) {
+    for (int i = 0; i < repertoire.size(); i++)
+      if (repertoire.get(i).getName().equals(name))
+        return repertoire.get(i);
+    throw new IllegalArgumentException(name);
+  }
+
+  private void checkMask(String value) {
+    int mask = DatatypeRepertoire.possibleTypeMask(value);
+    for (int i = 0; i < repertoire.size(); i++) {
+      DatatypeRepertoire.Type type = repertoire.get(i);
+      if (type.matches(value))
+        Assert.assertTrue((mask & (1 << type.getIndex())) != 0,
+                          type.getName() + " excluded for \"" + value + "\"");
+    }
+  }
+
+  /**
+   * Values at the edges of the lexical space of a type, each with a type that allows it.
+   */
+  @DataProvider(name = "boundaryValues")
+  public Object[][] createBoundaryValues() {
+    return new Object[][] {
+      { "true", "boolean" },
+      { " false\n", "boolean" },
+      { "0", "boolean" },
+      { "+0", "integer" },
+      { "-0012", "integer" },
+      { "\t42 ", "integer" },
+      { ".5", "decimal" },
+      { "-5.", "decimal" },
+      { "+.0", "decimal" },
+      { "-INF", "double" },
+      { "INF", "double" },
+      { "NaN", "double" },
+      { "-1.5E-3", "double" },
+      { "1e+10", "double" },
+      { "_x", "NCName" },
+      { "x.-_9", "NCName" },
+      { "\u00e9l\u00e9ment", "NCName" },
+      { "\u65e5\u672c\u8a9e", "NCName" },
+      { "\u0391\u03b1", "NCName" },
+      { "12:00:00Z", "time" },
+      { "23:59:59.999-09:30", "time" },
+      { "2001-01-01+05:30", "date" },
+      { "-0001-12-31", "date" },
+      { "2001-01-01T00:00:00-08:00", "dateTime" },
+      { "2001-01-01T12:30:00.5Z", "dateTime" },
+      { "-P1D", "duration" },
+      { "-P1Y2M3DT4H5M6.7S", "duration" },
+      { "PT0.5S", "duration" },
+      { "", "hexBinary" },
+      { "   ", "hexBinary" },
+      { "\t\r\n", "base64Binary" },
+      { "0aFF", "hexBinary" },
+      { "AA==", "base64Binary" },
+      { "AAAA BBBB", "base64Binary" },
+      { " A A = = ", "base64Binary" },
+      { "AAAA\nBBBB\n", "base64Binary" },
+      { "a/b+cw==", "base64Binary" },
+      { "-", "NMTOKEN" },
+      { "9:a", "NMTOKEN" },
+      { "\u0660\u00b7", "NMTOKEN" },
+      { "http://example.com/\u00e9?a=b#c", "anyURI" },
+      { " a b ", "anyURI" },
+      { "", "anyURI" },
+    };
+  }
+
+  @Test(dataProvider = "boundaryValues")
+  public void testBoundaryValue(String value, String typeName) {
+    DatatypeRepertoire.Type type = getType(typeName);
+    Assert.assertTrue(type.matches(value), typeName + " does not allow \"" + value + "\"");
+    Assert.assertTrue((DatatypeRepertoire.possibleTypeMask(value) & (1 << type.getIndex())) != 0);
+    checkMask(value);
+  }
+
+  @Test
+  public void testExcluded() {
+    Assert.assertEquals(DatatypeRepertoire.possibleTypeMask("1a") & (1 << getType("integer").getIndex()), 0);
+    Assert.assertEquals(DatatypeRepertoire.possibleTypeMask("1a") & (1 << getType("NCName").getIndex()), 0);
+    Assert.assertEquals(DatatypeRepertoire.possibleTypeMask("a b") & (1 << getType("NMTOKEN").getIndex()), 0);
+    Assert.assertEquals(DatatypeRepertoire.possibleTypeMask("truetrue") & (1 << getType("boolean").getIndex()), 0,
+                        "boolean not excluded for a value that is too long");
+  }
+
+  /**
+   * Checks random strings made from characters that are significant to some type.
+   */
+  @Test
+  public void testRandomValues() {
+    final String chars = "  \t\n01239aefsEFINPTYMDHSZ+-.:_/=x\u00e9\u0660\u00b7\u65e5";
+    Random random = new Random(33);
+    for (int i = 0; i < 50000; i++) {
+      StringBuilder buf = new StringBuilder();
+      for (int len = random.nextInt(12); len > 0; len--)
+        buf.append(chars.charAt(random.nextInt(chars.length())));
+      checkMask(buf.toString());
+    }
+  }
+}
@@ -1,8 +1,12 @@
 package com.thaiopensource.xml.infer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.Collections;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
@@ -162,4 +166,153 @@ public class TestInferHandler {
       }
     }
   }
-}
\ No newline at end of file
+
+  @DataProvider(name = "mergeSamples")
+  public Object[][] createMergeSamples() {
+    return new Object[][] {
+        {
+          new String[] {
+            "<doc><a x='1'/><b>2</b></doc>",
+            "<doc><a x='y' z='1'/><b>2.5</b><b/></doc>"
+          }
+        },
+        {
+          new String[] {
+            "<doc><p>  </p><q>1</q></doc>",
+            "<doc><p><q>2</q><q>3</q></p><r/></doc>",
+            "<r xmlns:n='urn:n'><n:s/></r>"
+          }
+        },
+        {
+          new String[] {
+            "<doc><p>text</p></doc>",
+            "<doc><p><q/></p></doc>",
+            "<doc><p/><q>true</q></doc>"
+          }
+        },
+        {
+          new String[] {
+            "<doc xmlns:a='urn:x'><a:e/></doc>",
+            "<doc xmlns:b='urn:x' xmlns:a='urn:y'><b:e/><a:e/></doc>"
+          }
+        }
+    };
+  }
+
+  @Test(dataProvider = "mergeSamples")
+  public void testMerge(String[] documents) throws SAXException, IOException {
+    InferHandler sequential = createHandler();
+    for (String document : documents)
+      parse(sequential, document);
+    InferHandler merged = null;
+    for (String document : documents) {
+      InferHandler handler = createHandler();
+      parse(handler, document);
+      if (merged == null)
+        merged = handler;
+      else
+        merged.merge(handler);
+    }
+    Assert.assertEquals(toString(merged.getSchema()), toString(sequential.getSchema()));
+  }
+
+  @Test(dataProvider = "mergeSamples")
+  public void testReadState(String[] documents) throws SAXException, IOException {
+    InferHandler sequential = createHandler();
+    for (String document : documents)
+      parse(sequential, document);
+    InferHandler resumed = createHandler();
+    for (String document : documents) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      resumed.writeState(out);
+      resumed = InferHandler.readState(new ByteArrayInputStream(out.toByteArray()),
+                                       new DatatypeLibraryFactoryImpl(new RegexEngineImpl()));
+      parse(resumed, document);
+    }
+    Assert.assertEquals(toString(resumed.getSchema()), toString(sequential.getSchema()));
+  }
+
+  @Test
+  public void testSampleElements() throws SAXException, IOException {
+    InferHandler handler = createHandler();
+    handler.setSampleFraction(0.5);
+    parse(handler, "<doc><e a='1'/><e><f/></e><e a='2'/><e b='x'/></doc>");
+    Schema schema = handler.getSchema();
+    // the second and fourth instances of e are not used
+    Assert.assertNull(schema.getElementDecl(new Name("", "f")));
+    ElementDecl decl = schema.getElementDecl(new Name("", "e"));
+    Assert.assertEquals(decl.getAttributeDecls().keySet(), Collections.singleton(new Name("", "a")));
+    Assert.assertFalse(decl.getAttributeDecls().get(new Name("", "a")).isOptional());
+    Assert.assertTrue(decl.getContentModel() instanceof EmptyParticle);
+    Assert.assertEquals(toString(schema.getElementDecl(new Name("", "doc")).getContentModel()), "{}e+");
+  }
+
+  private static InferHandler createHandler() {
+    return new InferHandler(new DatatypeLibraryFactoryImpl(new RegexEngineImpl()));
+  }
+
+  private static void parse(InferHandler handler, String document) throws SAXException, IOException {
+    XMLReader xr = new SAXResolver().createXMLReader();
+    xr.setContentHandler(handler);
+    xr.parse(new InputSource(new StringReader(document)));
+  }
+
+  private static String toString(Schema schema) {
+    ParticleWriter writer = new ParticleWriter();
+    StringBuilder buf = new StringBuilder();
+    buf.append("start=").append(schema.getStart().accept(writer)).append(' ');
+    buf.append(new TreeMap<String, String>(schema.getPrefixMap()));
+    Map<String, ElementDecl> decls = new TreeMap<String, ElementDecl>();
+    for (Map.Entry<Name, ElementDecl> entry : schema.getElementDecls().entrySet())
+      decls.put(toString(entry.getKey()), entry.getValue());
+    for (Map.Entry<String, ElementDecl> entry : decls.entrySet()) {
+      ElementDecl decl = entry.getValue();
+      buf.append('\n').append(entry.getKey()).append(' ');
+      Map<String, String> atts = new TreeMap<String, String>();
+      for (Map.Entry<Name, AttributeDecl> attEntry : decl.getAttributeDecls().entrySet()) {
+        AttributeDecl att = attEntry.getValue();
+        atts.put(toString(attEntry.getKey()), toString(att.getDatatype()) + (att.isOptional() ? "?" : ""));
+      }
+      buf.append(atts).append(' ');
+      if (decl.getContentModel() != null)
+        buf.append(decl.getContentModel().accept(writer));
+      else
+        buf.append(toString(decl.getDatatype()));
+    }
+    return buf.toString();
+  }
+
+  private static String toString(Particle particle) {
+    return (String)particle.accept(new ParticleWriter());
+  }
+
+  private static String toString(Name name) {
+    return name == null ? "text" : "{" + name.getNamespaceUri() + "}" + name.getLocalName();
+  }
+
+  private static class ParticleWriter implements ParticleVisitor {
+    public Object visitElement(ElementParticle p) {
+      return TestInferHandler.toString(p.getName());
+    }
+
+    public Object visitChoice(ChoiceParticle p) {
+      return "(" + p.getChild1().accept(this) + "|" + p.getChild2().accept(this) + ")";
+    }
+
+    public Object visitSequence(SequenceParticle p) {
+      return "(" + p.getChild1().accept(this) + "," + p.getChild2().accept(this) + ")";
+    }
+
+    public Object visitEmpty(EmptyParticle p) {
+      return "empty";
+    }
+
+    public Object visitText(TextParticle p) {
+      return "text";
+    }
+
+    public Object visitOneOrMore(OneOrMoreParticle p) {
+      return p.getChild().accept(this) + "+";
+    }
+  }
+}
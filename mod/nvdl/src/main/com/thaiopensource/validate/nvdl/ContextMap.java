@@ -2,9 +2,11 @@ package com.thaiopensource.validate.nvdl;
 
 import com.thaiopensource.util.Equal;
 
-import java.util.Vector;
-import java.util.Hashtable;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 /**
@@ -43,7 +45,7 @@ class ContextMap {
    * Stores a hash map with with the key the last local name and 
    * as values other ContextMap objects.
    */
-  private final Hashtable nameTable = new Hashtable();
+  private final Map<Object, ContextMap> nameTable = new HashMap<Object, ContextMap>();
 
   /**
    * Get the mode matching a list of local names.
@@ -55,7 +57,7 @@ class ContextMap {
    * (path from root local element names from the same namespace).
    * @return A mode or null.
    */  
-  Object get(Vector context) {
+  Object get(List context) {
     return get(context, context.size());
   }
   
@@ -66,7 +68,7 @@ class ContextMap {
    * @param value The mode.
    * @return true if there is no duplicate path, false otherwise.
    */
-  boolean put(boolean isRoot, Vector names, Object value) {
+  boolean put(boolean isRoot, List names, Object value) {
     return put(isRoot, names, names.size(), value);
   }
 
@@ -81,9 +83,9 @@ class ContextMap {
    * @param len The length we should take from the list.
    * @return A mode or null.
    */
-  private Object get(Vector context, int len) {
+  private Object get(List context, int len) {
     if (len > 0) {
-      ContextMap nestedMap = (ContextMap)nameTable.get(context.elementAt(len - 1));
+      ContextMap nestedMap = nameTable.get(context.get(len - 1));
       if (nestedMap != null) {
         Object value = nestedMap.get(context, len - 1);
         if (value != null)
@@ -103,7 +105,7 @@ class ContextMap {
    * @param value The mode.
    * @return true if there is no duplicate path, false otherwise.
    */
-  private boolean put(boolean isRoot, Vector names, int len, Object value) {
+  private boolean put(boolean isRoot, List names, int len, Object value) {
     if (len == 0) {
       // if we have only /
       if (isRoot) {
@@ -122,9 +124,9 @@ class ContextMap {
     }
     else {
       // get the last local name from the path
-      Object name = names.elementAt(len - 1);
+      Object name = names.get(len - 1);
       // Get the context map mapped in nameTable to that name.
-      ContextMap nestedMap = (ContextMap)nameTable.get(name);
+      ContextMap nestedMap = nameTable.get(name);
       // Not preset then create it.
       if (nestedMap == null) {
         nestedMap = new ContextMap();
@@ -146,15 +148,7 @@ class ContextMap {
     if (!Equal.equal(this.rootValue, other.rootValue)
         || !Equal.equal(this.otherValue, other.otherValue))
       return false;
-    // We want jing to work with JDK 1.1 so we cannot use Hashtable.equals
-    if (this.nameTable.size() != other.nameTable.size())
-      return false;
-    for (Enumeration e = nameTable.keys(); e.hasMoreElements();) {
-      Object key = e.nextElement();
-      if (!nameTable.get(key).equals(other.nameTable.get(key)))
-        return false;
-    }
-    return true;
+    return this.nameTable.equals(other.nameTable);
   }
 
   /**
@@ -166,10 +160,10 @@ class ContextMap {
       hc ^= rootValue.hashCode();
     if (otherValue != null)
       hc ^= otherValue.hashCode();
-    for (Enumeration e = nameTable.keys(); e.hasMoreElements();) {
-      Object key = e.nextElement();
-      hc ^= key.hashCode();
-      hc ^= nameTable.get(key).hashCode();
+    for (Iterator<Map.Entry<Object, ContextMap>> iter = nameTable.entrySet().iterator(); iter.hasNext();) {
+      Map.Entry<Object, ContextMap> entry = iter.next();
+      hc ^= entry.getKey().hashCode();
+      hc ^= entry.getValue().hashCode();
     }
     return hc;
   }
@@ -197,12 +191,12 @@ class ContextMap {
     /**
      * Stores the ContextMap objects from the nameTable.
      */
-    private final Enumeration subMaps;
+    private final Iterator<ContextMap> subMaps;
 
     private Enumerator(ContextMap map) {
       rootValue = map.rootValue;
       otherValue = map.otherValue;
-      subMaps = map.nameTable.elements();
+      subMaps = map.nameTable.values().iterator();
     }
 
     /**
@@ -211,8 +205,8 @@ class ContextMap {
      * in subMap enumeration, if needed.
      */
     private void prep() {
-      while ((subMapValues == null || !subMapValues.hasMoreElements()) && subMaps.hasMoreElements())
-        subMapValues = ((ContextMap)subMaps.nextElement()).values();
+      while ((subMapValues == null || !subMapValues.hasMoreElements()) && subMaps.hasNext())
+        subMapValues = subMaps.next().values();
     }
 
     /**
@@ -0,0 +1,152 @@
+package com.thaiopensource.validate.nvdl;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An error handler that records errors instead of reporting them.
+ * Each error is tagged with the sequence number of the event that
+ * caused it so that errors recorded by several handlers can later
+ * be reported in document order.
+ */
+class DeferredErrorHandler implements ErrorHandler {
+  private static final int WARNING = 0;
+  private static final int ERROR = 1;
+  private static final int FATAL_ERROR = 2;
+
+  /**
+   * A recorded error.
+   */
+  static class DeferredError {
+    final int sequence;
+    final int ordinal;
+    final int severity;
+    final SAXParseException exception;
+
+    DeferredError(int sequence, int ordinal, int severity, SAXParseException exception) {
+      this.sequence = sequence;
+      this.ordinal = ordinal;
+      this.severity = severity;
+      this.exception = exception;
+      // the message may depend on the validator that reported the error, which will be reused
+      exception.getMessage();
+    }
+  }
+
+  /**
+   * Orders errors by event sequence number and then by the ordinal of
+   * the handler that recorded them.
+   */
+  private static final Comparator<DeferredError> documentOrder = new Comparator<DeferredError>() {
+    public int compare(DeferredError e1, DeferredError e2) {
+      if (e1.sequence != e2.sequence)
+        return e1.sequence < e2.sequence ? -1 : 1;
+      if (e1.ordinal != e2.ordinal)
+        return e1.ordinal < e2.ordinal ? -1 : 1;
+      return 0;
+    }
+  };
+
+  /**
+   * The recorded errors.
+   */
+  private final List<DeferredError> errors = new ArrayList<DeferredError>();
+
+  /**
+   * The sequence number of the current event.
+   */
+  private int sequence;
+
+  /**
+   * The ordinal of this handler, used to order errors recorded
+   * for the same event.
+   */
+  private int ordinal;
+
+  /**
+   * Sets the sequence number of the current event.
+   * @param sequence The sequence number.
+   */
+  void setSequence(int sequence) {
+    this.sequence = sequence;
+  }
+
+  /**
+   * Gets the sequence number of the current event.
+   * @return The sequence number.
+   */
+  int getSequence() {
+    return sequence;
+  }
+
+  /**
+   * Sets the ordinal of this handler.
+   * @param ordinal The ordinal.
+   */
+  void setOrdinal(int ordinal) {
+    this.ordinal = ordinal;
+  }
+
+  public void warning(SAXParseException exception) {
+    errors.add(new DeferredError(sequence, ordinal, WARNING, exception));
+  }
+
+  public void error(SAXParseException exception) {
+    errors.add(new DeferredError(sequence, ordinal, ERROR, exception));
+  }
+
+  public void fatalError(SAXParseException exception) {
+    errors.add(new DeferredError(sequence, ordinal, FATAL_ERROR, exception));
+  }
+
+  /**
+   * Moves the recorded errors to a list.
+   * @param list The list the errors are added to.
+   */
+  void drainTo(List<DeferredError> list) {
+    list.addAll(errors);
+    errors.clear();
+  }
+
+  /**
+   * Removes all recorded errors and resets the sequence number.
+   */
+  void clear() {
+    errors.clear();
+    sequence = 0;
+  }
+
+  /**
+   * Reports errors previously drained from deferred error handlers
+   * in document order.
+   * @param list The list of errors.
+   * @param eh The error handler to report to, may be null.
+   * @throws SAXException If the error handler throws an exception.
+   */
+  static void report(List<DeferredError> list, ErrorHandler eh) throws SAXException {
+    List<DeferredError> sorted = new ArrayList<DeferredError>(list);
+    list.clear();
+    if (eh == null)
+      return;
+    Collections.sort(sorted, documentOrder);
+    for (DeferredError e : sorted) {
+      switch (e.severity) {
+      case WARNING:
+        eh.warning(e.exception);
+        break;
+      case ERROR:
+        eh.error(e.exception);
+        break;
+      default:
+        eh.fatalError(e.exception);
+        break;
+      }
+    }
+  }
+}
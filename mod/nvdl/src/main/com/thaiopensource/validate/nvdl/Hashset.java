@@ -1,17 +1,19 @@
 package com.thaiopensource.validate.nvdl;
 
-import java.util.Hashtable;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Utility class, stores a set of objects. 
- * It uses a Hashtable for internal storage.
+ * It uses a HashSet for internal storage.
  */
 class Hashset {
   /**
-   * The internal storage, a hashtable.
+   * The internal storage, a hash set.
    */
-  private final Hashtable table = new Hashtable();
+  private final Set<Object> table = new HashSet<Object>();
 
   /**
    * Test if an object belongs to this set or not.
@@ -19,7 +21,7 @@ class Hashset {
    * @return true if the object is contained in this set.
    */
   boolean contains(Object key) {
-    return table.get(key) != null;
+    return table.contains(key);
   }
 
   /**
@@ -27,7 +29,7 @@ class Hashset {
    * @param key The object to be added.
    */
   void add(Object key) {
-    table.put(key, key);
+    table.add(key);
   }
 
   /**
@@ -35,8 +37,7 @@ class Hashset {
    * @param set The other set.
    */
   void addAll(Hashset set) {
-    for (Enumeration e = set.table.keys(); e.hasMoreElements();)
-      add(e.nextElement());
+    table.addAll(set.table);
   }
 
   /**
@@ -51,6 +52,6 @@ class Hashset {
    * @return an enumeration with all the objects from this set.
    */
   Enumeration members() {
-    return table.keys();
+    return Collections.enumeration(table);
   }
 }
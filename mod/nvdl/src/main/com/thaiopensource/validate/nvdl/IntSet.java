@@ -24,8 +24,9 @@ class IntSet {
    * @param n The value to be added.
    */
   void add(int n) {
-    if (v == null) {
-      v = new int[INIT_SIZE];
+    if (len == 0) {
+      if (v == null)
+        v = new int[INIT_SIZE];
       v[0] = n;
       len = 1;
       return;
@@ -47,7 +48,7 @@ class IntSet {
         break;
       }
     }
-    for (int j = len; j >= i; j--)
+    for (int j = len - 1; j >= i; j--)
       v[j + 1] = v[j];
     v[i] = n;
     ++len;
@@ -80,6 +81,38 @@ class IntSet {
     len = k;
   }
 
+  /**
+   * Removes all the values from this set, keeping the storage for reuse.
+   */
+  void clear() {
+    len = 0;
+  }
+
+  /**
+   * Checks if another set has the same values as this set.
+   */
+  public boolean equals(Object obj) {
+    if (!(obj instanceof IntSet))
+      return false;
+    IntSet other = (IntSet)obj;
+    if (len != other.len)
+      return false;
+    for (int i = 0; i < len; i++)
+      if (v[i] != other.v[i])
+        return false;
+    return true;
+  }
+
+  /**
+   * Gets a hash code for this set.
+   */
+  public int hashCode() {
+    int hc = len;
+    for (int i = 0; i < len; i++)
+      hc = hc*31 + v[i];
+    return hc;
+  }
+
   /**
    * Get the number of values in this set.
    * @return
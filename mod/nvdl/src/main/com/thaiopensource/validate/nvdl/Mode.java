@@ -3,11 +3,12 @@ package com.thaiopensource.validate.nvdl;
 import org.xml.sax.Locator;
 import org.xml.sax.helpers.LocatorImpl;
 
-import java.util.Hashtable;
-import java.util.Enumeration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 
 class Mode {
@@ -27,6 +28,18 @@ class Mode {
    */
   private static final String ANONYMOUS_MODE_NAME_PREFIX = "#anonymous#";
   
+  /**
+   * Maximum number of namespaces in the tables of element and attribute
+   * actions of a mode. Actions for further namespaces are computed each time.
+   */
+  private static final int MAX_ACTIONS_TABLE_SIZE = 256;
+
+  /**
+   * Lock held while computing the actions for a namespace, as that may
+   * update the maps of this mode and of its base and included modes.
+   */
+  private static final Object computeLock = new Object();
+
   /**
    * Inline anonymous modes counter.
    */
@@ -63,24 +76,40 @@ class Mode {
    * 'Mode "xxx" not defined'.
    */
   private Locator whereUsed;
-  private final Hashtable elementMap = new Hashtable();
-  private final Hashtable attributeMap = new Hashtable();
+  private final Map<String, ActionSet> elementMap = new HashMap<String, ActionSet>();
+  private final Map<String, AttributeActionSet> attributeMap = new HashMap<String, AttributeActionSet>();
   private int attributeProcessing = -1;
 
   /**
    * Namespace specification elements map.
    */
-  private final Hashtable nssElementMap = new Hashtable();
+  private final Map<NamespaceSpecification, ActionSet> nssElementMap
+          = new HashMap<NamespaceSpecification, ActionSet>();
 
   /**
    * Namespace specification attributes map.
    */
-  private final Hashtable nssAttributeMap = new Hashtable();
+  private final Map<NamespaceSpecification, AttributeActionSet> nssAttributeMap
+          = new HashMap<NamespaceSpecification, AttributeActionSet>();
+
+  /**
+   * The element actions for the namespaces looked up during validation,
+   * including the namespaces that get the actions for any namespace.
+   * A map in this field is never modified; adding a namespace replaces it
+   * with a new map, so lookups need no synchronization.
+   */
+  private volatile Map<String, ActionSet> elementActionsTable = Collections.emptyMap();
+
+  /**
+   * The attribute actions for the namespaces looked up during validation,
+   * maintained in the same way as elementActionsTable.
+   */
+  private volatile Map<String, AttributeActionSet> attributeActionsTable = Collections.emptyMap();
   
   /**
    * List with included modes.
    */
-  private List includedModes = new ArrayList();
+  private final List<Mode> includedModes = new ArrayList<Mode>();
   
   void addIncludedMode(Mode mode) {
     includedModes.add(mode);
@@ -137,11 +166,24 @@ class Mode {
    * @return A set of element actions.
    */
   ActionSet getElementActions(String ns) {
-    ActionSet actions = getElementActionsExplicit(ns);
-    if (actions == null) {
-      actions = getElementActionsExplicit(NamespaceSpecification.ANY_NAMESPACE);
-      // this is not correct: it breaks a derived mode that use anyNamespace
-      // elementMap.put(ns, actions);
+    Map<String, ActionSet> table = elementActionsTable;
+    ActionSet actions = table.get(ns);
+    if (actions != null || table.containsKey(ns))
+      return actions;
+    synchronized (computeLock) {
+      actions = getElementActionsExplicit(ns);
+      if (actions == null) {
+        actions = getElementActionsExplicit(NamespaceSpecification.ANY_NAMESPACE);
+        // this is not correct: it breaks a derived mode that use anyNamespace
+        // elementMap.put(ns, actions);
+        // elementActionsTable is not used by derived modes, so the result can go there
+      }
+      table = elementActionsTable;
+      if (table.size() < MAX_ACTIONS_TABLE_SIZE) {
+        table = new HashMap<String, ActionSet>(table);
+        table.put(ns, actions);
+        elementActionsTable = table;
+      }
     }
     return actions;
   }
@@ -157,14 +199,15 @@ class Mode {
    * @return A set of element actions.
    */
   private ActionSet getElementActionsExplicit(String ns) {
-    ActionSet actions = (ActionSet)elementMap.get(ns);
+    ActionSet actions = elementMap.get(ns);
     if (actions==null) {
       // iterate namespace specifications.
-      for (Enumeration e = nssElementMap.keys(); e.hasMoreElements() && actions==null;) {
-        NamespaceSpecification nssI = (NamespaceSpecification)e.nextElement();
+      for (Iterator<Map.Entry<NamespaceSpecification, ActionSet>> iter = nssElementMap.entrySet().iterator();
+           iter.hasNext() && actions==null;) {
+        Map.Entry<NamespaceSpecification, ActionSet> entry = iter.next();
         // If a namespace specification covers the current namespace URI then we get those actions.
-        if (nssI.covers(ns)) {
-          actions = (ActionSet)nssElementMap.get(nssI);
+        if (entry.getKey().covers(ns)) {
+          actions = entry.getValue();
         }
       }
       // Store them in the element Map for faster access next time.
@@ -173,12 +216,9 @@ class Mode {
       }
     }
     // Look into the included modes
-    if (actions == null && includedModes != null) {
-      Iterator i = includedModes.iterator();
-      while (actions == null && i.hasNext()) {
-        Mode includedMode = (Mode)i.next();
-        actions = includedMode.getElementActionsExplicit(ns);
-      }
+    if (actions == null) {
+      for (Iterator<Mode> i = includedModes.iterator(); actions == null && i.hasNext();)
+        actions = i.next().getElementActionsExplicit(ns);
       if (actions != null) {
         actions = actions.changeCurrentMode(this);                    
         elementMap.put(ns, actions);
@@ -209,11 +249,23 @@ class Mode {
    * @return A set of attribute actions.
    */
   AttributeActionSet getAttributeActions(String ns) {
-    AttributeActionSet actions = getAttributeActionsExplicit(ns);
-    if (actions == null) {
-      actions = getAttributeActionsExplicit(NamespaceSpecification.ANY_NAMESPACE);
-      // this is not correct: it breaks a derived mode that use anyNamespace
-      // attributeMap.put(ns, actions);
+    Map<String, AttributeActionSet> table = attributeActionsTable;
+    AttributeActionSet actions = table.get(ns);
+    if (actions != null || table.containsKey(ns))
+      return actions;
+    synchronized (computeLock) {
+      actions = getAttributeActionsExplicit(ns);
+      if (actions == null) {
+        actions = getAttributeActionsExplicit(NamespaceSpecification.ANY_NAMESPACE);
+        // this is not correct: it breaks a derived mode that use anyNamespace
+        // attributeMap.put(ns, actions);
+      }
+      table = attributeActionsTable;
+      if (table.size() < MAX_ACTIONS_TABLE_SIZE) {
+        table = new HashMap<String, AttributeActionSet>(table);
+        table.put(ns, actions);
+        attributeActionsTable = table;
+      }
     }
     return actions;
   }
@@ -229,14 +281,15 @@ class Mode {
    * @return A set of attribute actions.
    */
    private AttributeActionSet getAttributeActionsExplicit(String ns) {
-    AttributeActionSet actions = (AttributeActionSet)attributeMap.get(ns);
+    AttributeActionSet actions = attributeMap.get(ns);
     if (actions==null) {
       // iterate namespace specifications.
-      for (Enumeration e = nssAttributeMap.keys(); e.hasMoreElements() && actions==null;) {
-        NamespaceSpecification nssI = (NamespaceSpecification)e.nextElement();
+      for (Iterator<Map.Entry<NamespaceSpecification, AttributeActionSet>> iter = nssAttributeMap.entrySet().iterator();
+           iter.hasNext() && actions==null;) {
+        Map.Entry<NamespaceSpecification, AttributeActionSet> entry = iter.next();
         // If a namespace specification covers the current namespace URI then we get those actions.
-        if (nssI.covers(ns)) {
-          actions = (AttributeActionSet)nssAttributeMap.get(nssI);
+        if (entry.getKey().covers(ns)) {
+          actions = entry.getValue();
         }
       }
       // Store them in the element Map for faster access next time.
@@ -245,12 +298,9 @@ class Mode {
       }
     }
     // Look into the included modes
-    if (actions == null && includedModes != null) {
-      Iterator i = includedModes.iterator();
-      while (actions == null && i.hasNext()) {
-        Mode includedMode = (Mode)i.next();
-        actions = includedMode.getAttributeActionsExplicit(ns);
-      }
+    if (actions == null) {
+      for (Iterator<Mode> i = includedModes.iterator(); actions == null && i.hasNext();)
+        actions = i.next().getAttributeActionsExplicit(ns);
       if (actions != null) {
         attributeMap.put(ns, actions);
       }
@@ -284,9 +334,11 @@ class Mode {
         attributeProcessing = baseMode.getAttributeProcessing();
       else
         attributeProcessing = ATTRIBUTE_PROCESSING_NONE;
-      for (Enumeration e = nssAttributeMap.keys(); e.hasMoreElements() && attributeProcessing != ATTRIBUTE_PROCESSING_FULL;) {
-        NamespaceSpecification nss = (NamespaceSpecification)e.nextElement();
-        AttributeActionSet actions = (AttributeActionSet)nssAttributeMap.get(nss);
+      for (Iterator<Map.Entry<NamespaceSpecification, AttributeActionSet>> iter = nssAttributeMap.entrySet().iterator();
+           iter.hasNext() && attributeProcessing != ATTRIBUTE_PROCESSING_FULL;) {
+        Map.Entry<NamespaceSpecification, AttributeActionSet> entry = iter.next();
+        NamespaceSpecification nss = entry.getKey();
+        AttributeActionSet actions = entry.getValue();
         if (!actions.getAttach()
             || actions.getReject()
             || actions.getSchemas().length > 0)
@@ -365,8 +417,8 @@ class Mode {
     NamespaceSpecification nss = new NamespaceSpecification(ns, wildcard);
     if (nssElementMap.get(nss) != null)
       return false;
-    for (Enumeration e = nssElementMap.keys(); e.hasMoreElements();) {
-      NamespaceSpecification nssI = (NamespaceSpecification)e.nextElement();
+    for (Iterator<NamespaceSpecification> iter = nssElementMap.keySet().iterator(); iter.hasNext();) {
+      NamespaceSpecification nssI = iter.next();
       if (nss.compete(nssI)) {
         return false;
       }
@@ -390,8 +442,8 @@ class Mode {
     NamespaceSpecification nss = new NamespaceSpecification(ns, wildcard);
     if (nssAttributeMap.get(nss) != null)
       return false;
-    for (Enumeration e = nssAttributeMap.keys(); e.hasMoreElements();) {
-      NamespaceSpecification nssI = (NamespaceSpecification)e.nextElement();
+    for (Iterator<NamespaceSpecification> iter = nssAttributeMap.keySet().iterator(); iter.hasNext();) {
+      NamespaceSpecification nssI = iter.next();
       if (nss.compete(nssI)) {
         return false;
       }
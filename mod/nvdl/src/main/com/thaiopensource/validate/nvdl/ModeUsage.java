@@ -2,8 +2,8 @@ package com.thaiopensource.validate.nvdl;
 
 import com.thaiopensource.util.Equal;
 
-import java.util.Vector;
 import java.util.Enumeration;
+import java.util.List;
 
 /**
  * Stores mode usage information.
@@ -132,7 +132,7 @@ class ModeUsage {
    * @param context The current context.
    * @return A mode.
    */
-  Mode getMode(Vector context) {
+  Mode getMode(List context) {
     // first look in the modeMap if exists.
     if (modeMap != null) {
       Mode m = (Mode)modeMap.get(context);
@@ -151,7 +151,7 @@ class ModeUsage {
    * @param mode The mode for this path.
    * @return true if we do not have a duplicate path.
    */
-  boolean addContext(boolean isRoot, Vector names, Mode mode) {
+  boolean addContext(boolean isRoot, List names, Mode mode) {
     if (modeMap == null)
       modeMap = new ContextMap();
     return modeMap.put(isRoot, names, mode);
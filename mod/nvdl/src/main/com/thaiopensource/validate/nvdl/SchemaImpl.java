@@ -71,6 +71,18 @@ class SchemaImpl extends AbstractSchema {
    * Element names are stored concatenated in a string, each name preceded by #.
    */
   private final List triggers = new ArrayList();
+
+  /**
+   * The triggers indexed by namespace and local name.
+   * Built when the schema is complete.
+   */
+  private TriggerTable triggerTable;
+
+  /**
+   * The validators for the schemas used by the script, shared by all the
+   * validators created from this schema.
+   */
+  private final ValidatorPool validatorPool = new ValidatorPool();
     
   /**
    * The start mode.
@@ -371,6 +383,7 @@ class SchemaImpl extends AbstractSchema {
       }
       if (hadError)
         throw new IncorrectSchemaException();
+      triggerTable = new TriggerTable(triggers);
       return SchemaImpl.this;
     }
 
@@ -1220,7 +1233,7 @@ class SchemaImpl extends AbstractSchema {
    * @param properties properties.
    */
   public Validator createValidator(PropertyMap properties) {
-    return new ValidatorImpl(startMode, triggers, properties);
+    return new ValidatorImpl(startMode, triggerTable, validatorPool, properties);
   }
 
   /**
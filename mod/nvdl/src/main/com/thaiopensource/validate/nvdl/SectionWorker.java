@@ -0,0 +1,530 @@
+package com.thaiopensource.validate.nvdl;
+
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.Schema;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.validate.Validator;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A content handler that runs a validator on a worker thread.
+ * The events received are copied together with the location at which they occurred
+ * and are delivered in batches to the content handler of the validator.
+ * Errors reported by the validator are recorded in a DeferredErrorHandler,
+ * tagged with the sequence number of the event that caused them.
+ */
+class SectionWorker implements ContentHandler, Runnable {
+  /**
+   * The number of events in a batch.
+   */
+  private static final int BATCH_SIZE = 256;
+
+  /**
+   * The maximum number of batches waiting to be processed. When this is
+   * reached the thread delivering events blocks until the worker catches up.
+   */
+  private static final int QUEUE_CAPACITY = 16;
+
+  /**
+   * Batch used to signal that no more events will be delivered.
+   */
+  private static final List<Event> END = new ArrayList<Event>();
+
+  /**
+   * Shared by all start tags without attributes.
+   */
+  private static final Attributes NO_ATTRIBUTES = new AttributesImpl();
+
+  /**
+   * Threads running the workers.
+   */
+  private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "nvdl-section-worker");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /**
+   * A content handler event together with the location where it occurred.
+   */
+  static private abstract class Event {
+    int sequence;
+    String publicId;
+    String systemId;
+    int lineNumber = -1;
+    int columnNumber = -1;
+
+    abstract void deliver(SectionWorker worker, ContentHandler handler) throws SAXException;
+  }
+
+  static private class SetDocumentLocatorEvent extends Event {
+    void deliver(SectionWorker worker, ContentHandler handler) {
+      handler.setDocumentLocator(worker.eventLocator);
+    }
+  }
+
+  static private class StartDocumentEvent extends Event {
+    void deliver(SectionWorker worker, ContentHandler handler) throws SAXException {
+      handler.startDocument();
+    }
+  }
+
+  static private class EndDocumentEvent extends Event {
+    void deliver(SectionWorker worker, ContentHandler handler) throws SAXException {
+      handler.endDocument();
+    }
+  }
+
+  static private class StartPrefixMappingEvent extends Event {
+    private final String prefix;
+    private final String uri;
+
+    StartPrefixMappingEvent(String prefix, String uri) {
+      this.prefix = prefix;
+      this.uri = uri;
+    }
+
+    void deliver(SectionWorker worker, ContentHandler handler) throws SAXException {
+      handler.startPrefixMapping(prefix, uri);
+    }
+  }
+
+  static private class EndPrefixMappingEvent extends Event {
+    private final String prefix;
+
+    EndPrefixMappingEvent(String prefix) {
+      this.prefix = prefix;
+    }
+
+    void deliver(SectionWorker worker, ContentHandler handler) throws SAXException {
+      handler.endPrefixMapping(prefix);
+    }
+  }
+
+  static private class StartElementEvent extends Event {
+    private final String uri;
+    private final String localName;
+    private final String qName;
+    private final Attributes attributes;
+
+    StartElementEvent(String uri, String localName, String qName, Attributes attributes) {
+      this.uri = uri;
+      this.localName = localName;
+      this.qName = qName;
+      this.attributes = attributes;
+    }
+
+    void deliver(SectionWorker worker, ContentHandler handler) throws SAXException {
+      handler.startElement(uri, localName, qName, attributes);
+    }
+  }
+
+  static private class EndElementEvent extends Event {
+    private final String uri;
+    private final String localName;
+    private final String qName;
+
+    EndElementEvent(String uri, String localName, String qName) {
+      this.uri = uri;
+      this.localName = localName;
+      this.qName = qName;
+    }
+
+    void deliver(SectionWorker worker, ContentHandler handler) throws SAXException {
+      handler.endElement(uri, localName, qName);
+    }
+  }
+
+  static private class CharactersEvent extends Event {
+    private final char[] ch;
+    private final boolean ignorable;
+
+    CharactersEvent(char[] ch, boolean ignorable) {
+      this.ch = ch;
+      this.ignorable = ignorable;
+    }
+
+    void deliver(SectionWorker worker, ContentHandler handler) throws SAXException {
+      if (ignorable)
+        handler.ignorableWhitespace(ch, 0, ch.length);
+      else
+        handler.characters(ch, 0, ch.length);
+    }
+  }
+
+  static private class ProcessingInstructionEvent extends Event {
+    private final String target;
+    private final String data;
+
+    ProcessingInstructionEvent(String target, String data) {
+      this.target = target;
+      this.data = data;
+    }
+
+    void deliver(SectionWorker worker, ContentHandler handler) throws SAXException {
+      handler.processingInstruction(target, data);
+    }
+  }
+
+  static private class SkippedEntityEvent extends Event {
+    private final String name;
+
+    SkippedEntityEvent(String name) {
+      this.name = name;
+    }
+
+    void deliver(SectionWorker worker, ContentHandler handler) throws SAXException {
+      handler.skippedEntity(name);
+    }
+  }
+
+  /**
+   * A locator that gives the location of the event being delivered.
+   * Used only from the worker thread.
+   */
+  private class EventLocator implements Locator {
+    public String getPublicId() {
+      return currentEvent.publicId;
+    }
+
+    public String getSystemId() {
+      return currentEvent.systemId;
+    }
+
+    public int getLineNumber() {
+      return currentEvent.lineNumber;
+    }
+
+    public int getColumnNumber() {
+      return currentEvent.columnNumber;
+    }
+  }
+
+  /**
+   * The schema of the validator.
+   */
+  private final Schema schema;
+
+  /**
+   * The pool the validator is borrowed from.
+   */
+  private final ValidatorPool pool;
+
+  /**
+   * The properties used to borrow the validator.
+   */
+  private final PropertyMap properties;
+
+  /**
+   * Identifies the properties in the pool.
+   */
+  private final ValidatorPool.PropertiesKey propertiesKey;
+
+  /**
+   * The validator run by this worker, borrowed from the pool when the worker
+   * is started and given back when it is reset.
+   */
+  private Validator validator;
+
+  /**
+   * Records the errors reported by the validator.
+   */
+  private final DeferredErrorHandler errors = new DeferredErrorHandler();
+
+  /**
+   * The locator given to the validator.
+   */
+  private final Locator eventLocator = new EventLocator();
+
+  /**
+   * Batches waiting to be delivered.
+   */
+  private final BlockingQueue<List<Event>> queue = new ArrayBlockingQueue<List<Event>>(QUEUE_CAPACITY);
+
+  /**
+   * The events not yet queued.
+   */
+  private List<Event> batch = new ArrayList<Event>(BATCH_SIZE);
+
+  /**
+   * The locator of the document, used on the thread delivering events.
+   */
+  private Locator locator;
+
+  /**
+   * Gives the sequence number of the current event, used on the thread delivering events.
+   */
+  private DeferredErrorHandler sequence;
+
+  /**
+   * The result of running this worker.
+   */
+  private Future<?> future;
+
+  /**
+   * The event being delivered, used from the worker thread.
+   */
+  private Event currentEvent;
+
+  /**
+   * The exception thrown by the validator, if any: a SAXException, RuntimeException or Error.
+   * Set on the worker thread and read on the thread delivering events.
+   */
+  private volatile Throwable failure;
+
+  /**
+   * Flag indicating that the remaining events should be discarded.
+   */
+  private volatile boolean aborted;
+
+  /**
+   * Creates a worker for a schema.
+   * @param schema The schema.
+   * @param pool The pool to borrow validators from.
+   * @param properties The properties used to borrow the validator;
+   * the error handler is replaced by a DeferredErrorHandler.
+   * @param propertiesKey Identifies the properties in the pool.
+   */
+  SectionWorker(Schema schema, ValidatorPool pool, PropertyMap properties,
+                ValidatorPool.PropertiesKey propertiesKey) {
+    this.schema = schema;
+    this.pool = pool;
+    PropertyMapBuilder builder = new PropertyMapBuilder(properties);
+    builder.put(ValidateProperty.ERROR_HANDLER, errors);
+    this.properties = builder.toPropertyMap();
+    this.propertiesKey = propertiesKey;
+  }
+
+  /**
+   * Get the schema of the validator run by this worker.
+   * @return The schema.
+   */
+  Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Starts this worker.
+   * @param ordinal The ordinal used to order errors reported for the same event.
+   * @param sequence Gives the sequence number of the current event.
+   */
+  void start(int ordinal, DeferredErrorHandler sequence) {
+    this.sequence = sequence;
+    errors.setOrdinal(ordinal);
+    validator = pool.borrow(schema, properties, propertiesKey);
+    future = executor.submit(this);
+  }
+
+  /**
+   * Signals that no more events will be delivered to this worker.
+   * @throws SAXException If the thread is interrupted while waiting for space in the queue.
+   */
+  void finish() throws SAXException {
+    flush();
+    enqueue(END);
+  }
+
+  /**
+   * Signals that the remaining events should be discarded.
+   */
+  void abort() {
+    aborted = true;
+    batch.clear();
+    try {
+      enqueue(END);
+    }
+    catch (SAXException e) {
+      // the worker discards everything once aborted is set
+    }
+  }
+
+  /**
+   * Checks if this worker has processed all the events delivered to it.
+   * @return true if await will not block.
+   */
+  boolean isDone() {
+    return future == null || future.isDone();
+  }
+
+  /**
+   * Waits for this worker to process all the events delivered to it
+   * and moves the errors it recorded to a list.
+   * @param list The list the errors are added to.
+   * @return The exception thrown by the validator, which is a SAXException, RuntimeException
+   * or Error; or null.
+   */
+  Throwable await(List<DeferredErrorHandler.DeferredError> list) {
+    if (future == null)
+      return null;
+    try {
+      future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException e) {
+      if (failure == null)
+        failure = e.getCause();
+    }
+    future = null;
+    errors.drainTo(list);
+    return failure;
+  }
+
+  /**
+   * Gives the validator back to the pool so this worker can be reused.
+   */
+  void reset() {
+    if (validator != null) {
+      pool.release(validator);
+      validator = null;
+    }
+    errors.clear();
+    batch.clear();
+    queue.clear();
+    locator = null;
+    sequence = null;
+    currentEvent = null;
+    failure = null;
+    aborted = false;
+  }
+
+  /**
+   * Delivers the queued batches to the validator until the end of the
+   * events is signaled. Once the validator has thrown an exception, the remaining
+   * batches are taken and discarded, so that the thread delivering events does not block.
+   */
+  public void run() {
+    ContentHandler handler = validator.getContentHandler();
+    try {
+      for (;;) {
+        List<Event> events = queue.take();
+        if (events == END)
+          break;
+        if (aborted || failure != null)
+          continue;
+        for (int i = 0, len = events.size(); i < len; i++) {
+          Event event = events.get(i);
+          currentEvent = event;
+          errors.setSequence(event.sequence);
+          try {
+            event.deliver(this, handler);
+          }
+          catch (SAXException e) {
+            failure = e;
+            break;
+          }
+          catch (RuntimeException e) {
+            failure = e;
+            break;
+          }
+          catch (Error e) {
+            failure = e;
+            break;
+          }
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void add(Event event) throws SAXException {
+    event.sequence = sequence.getSequence();
+    if (locator != null) {
+      event.publicId = locator.getPublicId();
+      event.systemId = locator.getSystemId();
+      event.lineNumber = locator.getLineNumber();
+      event.columnNumber = locator.getColumnNumber();
+    }
+    batch.add(event);
+    if (batch.size() == BATCH_SIZE)
+      flush();
+  }
+
+  private void flush() throws SAXException {
+    if (batch.isEmpty())
+      return;
+    enqueue(batch);
+    batch = new ArrayList<Event>(BATCH_SIZE);
+  }
+
+  private void enqueue(List<Event> events) throws SAXException {
+    try {
+      queue.put(events);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SAXException(e);
+    }
+  }
+
+  public void setDocumentLocator(Locator locator) {
+    this.locator = locator;
+    batch.add(new SetDocumentLocatorEvent());
+  }
+
+  public void startDocument() throws SAXException {
+    add(new StartDocumentEvent());
+  }
+
+  public void endDocument() throws SAXException {
+    add(new EndDocumentEvent());
+  }
+
+  public void startPrefixMapping(String prefix, String uri) throws SAXException {
+    add(new StartPrefixMappingEvent(prefix, uri));
+  }
+
+  public void endPrefixMapping(String prefix) throws SAXException {
+    add(new EndPrefixMappingEvent(prefix));
+  }
+
+  public void startElement(String uri, String localName, String qName, Attributes atts)
+          throws SAXException {
+    add(new StartElementEvent(uri, localName, qName,
+                              atts.getLength() == 0 ? NO_ATTRIBUTES : new AttributesImpl(atts)));
+  }
+
+  public void endElement(String uri, String localName, String qName) throws SAXException {
+    add(new EndElementEvent(uri, localName, qName));
+  }
+
+  public void characters(char ch[], int start, int length) throws SAXException {
+    char[] copy = new char[length];
+    System.arraycopy(ch, start, copy, 0, length);
+    add(new CharactersEvent(copy, false));
+  }
+
+  public void ignorableWhitespace(char ch[], int start, int length) throws SAXException {
+    char[] copy = new char[length];
+    System.arraycopy(ch, start, copy, 0, length);
+    add(new CharactersEvent(copy, true));
+  }
+
+  public void processingInstruction(String target, String data) throws SAXException {
+    add(new ProcessingInstructionEvent(target, data));
+  }
+
+  public void skippedEntity(String name) throws SAXException {
+    add(new SkippedEntityEvent(name));
+  }
+}
@@ -0,0 +1,74 @@
+package com.thaiopensource.validate.nvdl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the triggers of an NVDL script by namespace and local name.
+ * Checking whether an element starts a new section then takes a couple of
+ * hash lookups instead of a scan of all the triggers.
+ * The table is not modified after it has been built, so it can be shared
+ * by validators running in different threads.
+ */
+class TriggerTable {
+  /**
+   * Maps a namespace to a map from a local name to the array of the
+   * triggers for that namespace that include that local name.
+   */
+  private final Map<String, Map<String, Trigger[]>> table = new HashMap<String, Map<String, Trigger[]>>();
+
+  /**
+   * Builds the table from a list of triggers.
+   * @param triggers The list of Trigger objects.
+   */
+  TriggerTable(List triggers) {
+    for (Iterator iter = triggers.iterator(); iter.hasNext();) {
+      Trigger t = (Trigger)iter.next();
+      Map<String, Trigger[]> names = table.get(t.namespace);
+      if (names == null) {
+        names = new HashMap<String, Trigger[]>();
+        table.put(t.namespace, names);
+      }
+      for (Iterator nameIter = t.elementNames.iterator(); nameIter.hasNext();) {
+        String name = (String)nameIter.next();
+        Trigger[] ts = names.get(name);
+        if (ts == null)
+          ts = new Trigger[] { t };
+        else {
+          Trigger[] tem = new Trigger[ts.length + 1];
+          System.arraycopy(ts, 0, tem, 0, ts.length);
+          tem[ts.length] = t;
+          ts = tem;
+        }
+        names.put(name, ts);
+      }
+    }
+  }
+
+  /**
+   * Checks if a trigger matches.
+   * A trigger matches an element if the element namespace is the trigger namespace
+   * and the trigger names include the local name of the element but not the local
+   * name of its parent.
+   * @param namespace The namespace.
+   * @param name The local name.
+   * @param parent The local name of the parent.
+   * @return true if we have a trigger set, otherwise false.
+   */
+  boolean matches(String namespace, String name, String parent) {
+    if (table.isEmpty())
+      return false;
+    Map<String, Trigger[]> names = table.get(namespace);
+    if (names == null)
+      return false;
+    Trigger[] ts = names.get(name);
+    if (ts == null)
+      return false;
+    for (int i = 0; i < ts.length; i++)
+      if (!ts[i].elementNames.contains(parent))
+        return true;
+    return false;
+  }
+}
@@ -2,9 +2,11 @@ package com.thaiopensource.validate.nvdl;
 
 import com.thaiopensource.util.Localizer;
 import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.util.PropertyMapBuilder;
 import com.thaiopensource.validate.Schema;
 import com.thaiopensource.validate.ValidateProperty;
 import com.thaiopensource.validate.Validator;
+import com.thaiopensource.validate.prop.nvdl.NvdlProperty;
 import com.thaiopensource.xml.util.Name;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
@@ -16,12 +18,10 @@ import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.DefaultHandler;
 
-import java.util.Enumeration;
-import java.util.Hashtable;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Stack;
-import java.util.Vector;
+import java.util.Map;
 
 /**
  * Implementation of a validator of XML documents against NVDL scripts.
@@ -45,16 +45,69 @@ class ValidatorImpl extends DefaultHandler implements Validator {
    */
   private final ErrorHandler eh;
   
+  /**
+   * The error handler to which errors are finally reported.
+   * Differs from eh only when sections are validated in parallel.
+   */
+  private final ErrorHandler reportErrorHandler;
+
   /**
    * Properties.
    */
   private final PropertyMap properties;
 
+  /**
+   * Flag indicating that the validators of each section run on
+   * separate worker threads.
+   */
+  private final boolean parallelSections;
+
+  /**
+   * When sections are validated in parallel, records the errors
+   * reported while dispatching events and keeps the sequence number
+   * of the current event; otherwise null.
+   */
+  private final DeferredErrorHandler deferredErrors;
+
+  /**
+   * The sequence number of the last event received.
+   * Used only when sections are validated in parallel.
+   */
+  private int eventSequence = 0;
+
+  /**
+   * The ordinal of the last section worker started.
+   * Used only when sections are validated in parallel.
+   */
+  private int workerOrdinal = 0;
+
+  /**
+   * A map that keeps a stack of section workers for schemas.
+   */
+  private final Map<Schema, List<SectionWorker>> sectionWorkerCache = new HashMap<Schema, List<SectionWorker>>();
+
+  /**
+   * Section workers for ended sections that may still be running.
+   */
+  private final List<SectionWorker> finishedWorkers = new ArrayList<SectionWorker>();
+
+  /**
+   * Errors collected from workers that completed, not yet reported.
+   */
+  private final List<DeferredErrorHandler.DeferredError> deferredWorkerErrors
+    = new ArrayList<DeferredErrorHandler.DeferredError>();
+
+  /**
+   * The first exception thrown by the validator of a worker that completed:
+   * a SAXException, RuntimeException or Error.
+   */
+  private Throwable deferredFailure = null;
+
   /**
    * Triggers.
    * Specifies elements that start a new section.
    */
-  private final List triggers;
+  private final TriggerTable triggers;
   
   /**
    * Source locator.
@@ -73,9 +126,14 @@ class ValidatorImpl extends DefaultHandler implements Validator {
   private PrefixMapping prefixMapping = null;
   
   /**
-   * A hashtable that keeps a stack of validators for schemas. 
+   * The pool of validators shared by the validators of the NVDL schema.
+   */
+  private final ValidatorPool validatorPool;
+
+  /**
+   * Identifies the properties in the validator pool.
    */
-  private final Hashtable validatorHandlerCache = new Hashtable();
+  private final ValidatorPool.PropertiesKey propertiesKey;
   
   /**
    * Message localizer to report error messages from keys.
@@ -90,14 +148,22 @@ class ValidatorImpl extends DefaultHandler implements Validator {
   
   /**
    * Stores index sets for attributed for each namespace.
+   * The index sets are kept and cleared for each element.
    */
-  private final Hashtable attributeNamespaceIndexSets = new Hashtable();
+  private final Map<String, IntSet> attributeNamespaceIndexSets = new HashMap<String, IntSet>();
+
+  /**
+   * The namespaces of the attributes of the current element,
+   * in the order of their first occurrence.
+   */
+  private final List<String> attributeNamespaces = new ArrayList<String>();
   
   /**
    * Sores the index sets for attributes for each active handler.
    * The index set specifies what attributes should be given to what handlers.
+   * The index sets are reused from one element to the next.
    */
-  private final Vector activeHandlersAttributeIndexSets = new Vector();
+  private final List<IntSet> activeHandlersAttributeIndexSets = new ArrayList<IntSet>();
   
   /**
    * Attribute schemas for a namespace.
@@ -126,9 +192,8 @@ class ValidatorImpl extends DefaultHandler implements Validator {
 
   /**
    * Stores the element local names. Used for triggers.
-   * This is a Stack<String>.
    */
-  private final Stack elementsLocalNameStack;
+  private final List<String> elementsLocalNameStack;
   
   /**
    * Namespace context. Alinked list of proxy namespace
@@ -180,23 +245,27 @@ class ValidatorImpl extends DefaultHandler implements Validator {
     /**
      * List of the Validators rooted in this section
      */
-    final Vector validators = new Vector();
-    final Vector schemas = new Vector();
+    final List<Validator> validators = new ArrayList<Validator>();
+    /**
+     * List of the SectionWorkers rooted in this section,
+     * used instead of validators when sections are validated in parallel.
+     */
+    final List<SectionWorker> workers = new ArrayList<SectionWorker>();
     /**
      * List of the ContentHandlers that want to see the elements in this section
      */
-    final Vector activeHandlers = new Vector();
-    final Vector activeHandlersAttributeModeUsage = new Vector();
-    final Vector attributeValidationModeUsages = new Vector();
+    final List<ContentHandler> activeHandlers = new ArrayList<ContentHandler>();
+    final List<ModeUsage> activeHandlersAttributeModeUsage = new ArrayList<ModeUsage>();
+    final List<ModeUsage> attributeValidationModeUsages = new ArrayList<ModeUsage>();
     /**
      * List of Programs saying what to do with child sections
      */
-    final Vector childPrograms = new Vector();
+    final List<Program> childPrograms = new ArrayList<Program>();
     
     /**
      * Keep the context stack if we have a context dependent section.
      */
-    final Stack context = new Stack();
+    final List<String> context = new ArrayList<String>();
     /**
      * Flag indicating is this section depends on context or not.
      */
@@ -211,11 +280,11 @@ class ValidatorImpl extends DefaultHandler implements Validator {
     /**
      * Stores the attach placeholder handlers.
      */
-    final Vector placeholderHandlers = new Vector();
+    final List<ContentHandler> placeholderHandlers = new ArrayList<ContentHandler>();
     /**
      * Stores the attach place holder mode usages.
      */
-    final Vector placeholderModeUsages = new Vector();
+    final List<ModeUsage> placeholderModeUsages = new ArrayList<ModeUsage>();
         
     /**
      * Creates a section for a given namespace and links to to its parent section.
@@ -233,7 +302,7 @@ class ValidatorImpl extends DefaultHandler implements Validator {
      * @param handler The content handler that receives notifications.
      */
     public void addChildMode(ModeUsage modeUsage, ContentHandler handler) {
-      childPrograms.addElement(new Program(modeUsage, handler));
+      childPrograms.add(new Program(modeUsage, handler));
       if (modeUsage.isContextDependent())
         contextDependent = true;
     }
@@ -244,21 +313,30 @@ class ValidatorImpl extends DefaultHandler implements Validator {
      * @param modeUsage The mode usage for this validate action.
      */
     public void addValidator(Schema schema, ModeUsage modeUsage) {
-      // adds the schema to this section schemas
-      schemas.addElement(schema);
-      // creates the validator
-      Validator validator = createValidator(schema);
-      // adds the validator to this section validators
-      validators.addElement(validator);
+      ContentHandler handler;
+      if (parallelSections) {
+        // creates a worker that runs a validator for the schema
+        SectionWorker worker = createSectionWorker(schema);
+        // adds the worker to this section workers
+        workers.add(worker);
+        handler = worker;
+      }
+      else {
+        // creates the validator
+        Validator validator = createValidator(schema);
+        // adds the validator to this section validators
+        validators.add(validator);
+        handler = validator.getContentHandler();
+      }
       // add the validator handler to the list of active handlers
-      activeHandlers.addElement(validator.getContentHandler());
+      activeHandlers.add(handler);
       // add the mode usage to the active handlers attribute mode usage list
-      activeHandlersAttributeModeUsage.addElement(modeUsage);
+      activeHandlersAttributeModeUsage.add(modeUsage);
       // compute the attribute processing
       attributeProcessing = Math.max(attributeProcessing,
                                      modeUsage.getAttributeProcessing());
       // add a child mode with this mode usage and the validator content handler
-      childPrograms.addElement(new Program(modeUsage, validator.getContentHandler()));
+      childPrograms.add(new Program(modeUsage, handler));
       if (modeUsage.isContextDependent())
         contextDependent = true;
     }
@@ -269,8 +347,8 @@ class ValidatorImpl extends DefaultHandler implements Validator {
      * @param attributeModeUsage The mode usage.
      */
     public void addActiveHandler(ContentHandler handler, ModeUsage attributeModeUsage) {
-      activeHandlers.addElement(handler);
-      activeHandlersAttributeModeUsage.addElement(attributeModeUsage);
+      activeHandlers.add(handler);
+      activeHandlersAttributeModeUsage.add(attributeModeUsage);
       attributeProcessing = Math.max(attributeProcessing,
                                      attributeModeUsage.getAttributeProcessing());
       if (attributeModeUsage.isContextDependent())
@@ -284,7 +362,7 @@ class ValidatorImpl extends DefaultHandler implements Validator {
     public void addAttributeValidationModeUsage(ModeUsage modeUsage) {
       int ap = modeUsage.getAttributeProcessing();
       if (ap != Mode.ATTRIBUTE_PROCESSING_NONE) {
-        attributeValidationModeUsages.addElement(modeUsage);
+        attributeValidationModeUsages.add(modeUsage);
         attributeProcessing = Math.max(ap, attributeProcessing);
         if (modeUsage.isContextDependent())
           contextDependent = true;
@@ -338,14 +416,30 @@ class ValidatorImpl extends DefaultHandler implements Validator {
    * Initializes the current section.
    * @param mode The start mode.
    * param triggers The triggers specified by the NVDL script.
+   * @param validatorPool The pool of validators for the schemas used by the NVDL script.
    * @param properties Validation properties.
    */
-  ValidatorImpl(Mode mode, List triggers, PropertyMap properties) {
-    this.properties = properties;
+  ValidatorImpl(Mode mode, TriggerTable triggers, ValidatorPool validatorPool, PropertyMap properties) {
     this.triggers = triggers;
-    this.eh = properties.get(ValidateProperty.ERROR_HANDLER);
+    this.validatorPool = validatorPool;
+    this.propertiesKey = ValidatorPool.getPropertiesKey(properties);
+    this.reportErrorHandler = properties.get(ValidateProperty.ERROR_HANDLER);
+    this.parallelSections = properties.contains(NvdlProperty.PARALLEL_SECTIONS);
+    if (parallelSections) {
+      // errors are recorded and reported in document order at the end of the document
+      this.deferredErrors = new DeferredErrorHandler();
+      PropertyMapBuilder builder = new PropertyMapBuilder(properties);
+      builder.put(ValidateProperty.ERROR_HANDLER, deferredErrors);
+      this.properties = builder.toPropertyMap();
+      this.eh = deferredErrors;
+    }
+    else {
+      this.deferredErrors = null;
+      this.properties = properties;
+      this.eh = reportErrorHandler;
+    }
     this.startMode = mode;
-    this.elementsLocalNameStack = new Stack();
+    this.elementsLocalNameStack = new ArrayList<String>();
     initCurrentSection();
   }
 
@@ -375,8 +469,10 @@ class ValidatorImpl extends DefaultHandler implements Validator {
    */
   public void characters(char ch[], int start, int length)
           throws SAXException {
+    if (parallelSections)
+      nextEvent();
     for (int i = 0, len = currentSection.activeHandlers.size(); i < len; i++)
-      ((ContentHandler)(currentSection.activeHandlers.elementAt(i))).characters(ch, start, length);
+      currentSection.activeHandlers.get(i).characters(ch, start, length);
 
   }
 
@@ -386,8 +482,10 @@ class ValidatorImpl extends DefaultHandler implements Validator {
    */
   public void ignorableWhitespace(char ch[], int start, int length)
           throws SAXException {
+    if (parallelSections)
+      nextEvent();
     for (int i = 0, len = currentSection.activeHandlers.size(); i < len; i++)
-      ((ContentHandler)(currentSection.activeHandlers.elementAt(i))).ignorableWhitespace(ch, start, length);
+      currentSection.activeHandlers.get(i).ignorableWhitespace(ch, start, length);
   }
 
   /**
@@ -401,42 +499,50 @@ class ValidatorImpl extends DefaultHandler implements Validator {
   public void startElement(String uri, String localName,
                            String qName, Attributes attributes)
           throws SAXException {
-    
+    if (parallelSections)
+      nextEvent();
     // if we have a different namespace than the current section namespace
     // or there's an applicable trigger
     // then we start a new section on the new namespace.
     if (!uri.equals(currentSection.ns)
-        || trigger(uri, localName, (String)elementsLocalNameStack.peek()))
+        || triggers.matches(uri, localName, elementsLocalNameStack.get(elementsLocalNameStack.size() - 1)))
       startSection(uri);
     
-    elementsLocalNameStack.push(localName);
+    elementsLocalNameStack.add(localName);
     // increase the depth in the current section as we have a new element
     currentSection.depth++;
     // if the current section contains context dependent mode usages then
     // we record the local elements in a stack as they form the current path
     // that determines the context
     if (currentSection.contextDependent)
-      currentSection.context.push(localName);
+      currentSection.context.add(localName);
     // check if we need to filter attributes or not
     // and process attributes, eventually validating attribute sections
     boolean transformAttributes = processAttributes(attributes);
+    // the filtered attributes given to the previous handler and the index set they were computed from
+    Attributes handlerAttributes = attributes;
+    IntSet handlerIndexSet = null;
     // iterate the active session handlers and call start element on them
     for (int i = 0, len = currentSection.activeHandlers.size(); i < len; i++) {
-      ContentHandler handler = (ContentHandler)(currentSection.activeHandlers.elementAt(i));
-      handler.startElement(uri, localName, qName,
-                           transformAttributes
-                           // if we need to filter attributes keep the ones the handler is interested in.
-                           ? filterAttributes((IntSet)activeHandlersAttributeIndexSets.elementAt(i),
-                                              attributes)
-                           // otherwise just pass all the attributes
-                           : attributes);
+      ContentHandler handler = currentSection.activeHandlers.get(i);
+      // if we need to filter attributes keep the ones the handler is interested in,
+      // reusing the filtered attributes of the previous handler if it wanted the same ones,
+      // otherwise just pass all the attributes
+      if (transformAttributes) {
+        IntSet indexSet = activeHandlersAttributeIndexSets.get(i);
+        if (handlerIndexSet == null || !handlerIndexSet.equals(indexSet)) {
+          handlerAttributes = filterAttributes(indexSet, attributes);
+          handlerIndexSet = indexSet;
+        }
+      }
+      handler.startElement(uri, localName, qName, handlerAttributes);
     }
     if (currentSection.depth == 1 && currentSection.placeholderHandlers.size() > 0) {
       AttributesImpl atts = new AttributesImpl();
       atts.addAttribute("", "ns", "ns", "", uri);
       atts.addAttribute("", "localName", "localName", "", localName);
       for (int i = 0, len = currentSection.placeholderHandlers.size(); i < len; i++) {
-        ContentHandler handler = (ContentHandler)(currentSection.placeholderHandlers.elementAt(i));
+        ContentHandler handler = currentSection.placeholderHandlers.get(i);
         handler.startPrefixMapping("", "http://purl.oclc.org/dsdl/nvdl/ns/instance/1.0");
         handler.startElement("http://purl.oclc.org/dsdl/nvdl/ns/instance/1.0", "placeholder", "placeholder", atts);
       }
@@ -444,24 +550,13 @@ class ValidatorImpl extends DefaultHandler implements Validator {
   }
 
   /**
-   * Checks if a trigger matches.
-   * @param namespace The namespace.
-   * @param name The local name.
-   * @param parent The local name of the parent.
-   * @return true if we have a trigger set, otherwise false.
+   * Advances the sequence number used to report errors in document order
+   * when sections are validated in parallel.
    */
-  private boolean trigger(String namespace, String name, String parent) {
-    // iterate triggers
-    Iterator i = triggers.iterator();
-    while (i.hasNext()) {
-      Trigger t = (Trigger)i.next();
-      if ((t.namespace.equals(namespace) && t.elementNames.contains(name) && !t.elementNames.contains(parent))) {
-        return true;
-      }
-    }
-    return false;
-  }  
-  
+  private void nextEvent() {
+    deferredErrors.setSequence(++eventSequence);
+  }
+
   /**
    * Get the filtered attributes.
    * It checks if we want all the attributes and in that case returns the initial attributes,
@@ -491,42 +586,47 @@ class ValidatorImpl extends DefaultHandler implements Validator {
         || attributes.getLength() == 0)
       return false;
     
-    // clear the attributeNamespaceIndexSets hashtable.
-    attributeNamespaceIndexSets.clear();
+    // clear the index sets of the previous element.
+    for (int i = 0, len = attributeNamespaces.size(); i < len; i++)
+      attributeNamespaceIndexSets.get(attributeNamespaces.get(i)).clear();
+    attributeNamespaces.clear();
     // creates index sets based on namespace for the attributes
-    // and places them in the attributeNamespaceIndexSets hashtable 
+    // and places them in the attributeNamespaceIndexSets map
     for (int i = 0, len = attributes.getLength(); i < len; i++) {
       String ns = attributes.getURI(i);
-      IntSet indexSet = (IntSet)attributeNamespaceIndexSets.get(ns);
+      IntSet indexSet = attributeNamespaceIndexSets.get(ns);
       if (indexSet == null) {
         indexSet = new IntSet();
         attributeNamespaceIndexSets.put(ns, indexSet);
       }
+      if (indexSet.size() == 0)
+        attributeNamespaces.add(ns);
       indexSet.add(i);
     }
     // if we need to process only qualified attributes and we have attributes 
     // only in no namespace then return false, no need to filter the attributes
     if (currentSection.attributeProcessing == Mode.ATTRIBUTE_PROCESSING_QUALIFIED
-        && attributeNamespaceIndexSets.size() == 1
-        && attributeNamespaceIndexSets.get("") != null)
+        && attributeNamespaces.size() == 1
+        && attributeNamespaces.get(0).equals(""))
       return false;
     // Computes the index sets for each handler
     // get the attribute modes for handlers
-    Vector handlerModes = currentSection.activeHandlersAttributeModeUsage;
-    // resize the index set list to the number of handlers
-    activeHandlersAttributeIndexSets.setSize(handlerModes.size());
-    // creates empty index sets for all handlers - initialization
+    List<ModeUsage> handlerModes = currentSection.activeHandlersAttributeModeUsage;
+    // make sure we have an index set for each handler
+    while (activeHandlersAttributeIndexSets.size() < handlerModes.size())
+      activeHandlersAttributeIndexSets.add(new IntSet());
+    // empties the index sets for all handlers - initialization
     for (int i = 0, len = handlerModes.size(); i < len; i++)
-      activeHandlersAttributeIndexSets.setElementAt(new IntSet(), i);
+      activeHandlersAttributeIndexSets.get(i).clear();
     // we hope we will not need attribute filtering, so we start with transform false.
     boolean transform = false;
     // get the list of attribute validation mode usages
-    Vector validationModes = currentSection.attributeValidationModeUsages;
+    List<ModeUsage> validationModes = currentSection.attributeValidationModeUsages;
     // iterate on all attribute namespaces
-    for (Enumeration e = attributeNamespaceIndexSets.keys(); e.hasMoreElements();) {
-      String ns = (String)e.nextElement();
+    for (int n = 0, nsLen = attributeNamespaces.size(); n < nsLen; n++) {
+      String ns = attributeNamespaces.get(n);
       // get the index set that represent the attributes in the ns namespace
-      IntSet indexSet = (IntSet)attributeNamespaceIndexSets.get(ns);
+      IntSet indexSet = attributeNamespaceIndexSets.get(ns);
       // clear attribute schemas for this namespace
       // it is used to avoid validating twice the set of attributes 
       // from this namespace with the same schema.
@@ -540,14 +640,14 @@ class ValidatorImpl extends DefaultHandler implements Validator {
       attributeNamespaceRejected = false;
       // iterates all the handler modes and compute the index sets for all handlers
       for (int i = 0, len = handlerModes.size(); i < len; i++) {
-        ModeUsage modeUsage = (ModeUsage)handlerModes.elementAt(i);
+        ModeUsage modeUsage = handlerModes.get(i);
         // get the attribute actions for this mode usage, ns namespace 
         // and for the attributes in this namespace
         AttributeActionSet actions = processAttributeSection(modeUsage, ns, indexSet, attributes);
         // if we need to attach the attributes we mark that they should be passed
         // to the handler by adding them to the index set for the handler
         if (actions.getAttach())
-          ((IntSet)activeHandlersAttributeIndexSets.get(i)).addAll(indexSet);
+          activeHandlersAttributeIndexSets.get(i).addAll(indexSet);
         else
         // if that attributes are not attached then we set the transform flag to 
         // true as that means we need to filter out these attributes for the current handler
@@ -557,7 +657,7 @@ class ValidatorImpl extends DefaultHandler implements Validator {
       // and process the attribute section with the attributes
       // from the current namespace
       for (int i = 0, len = validationModes.size(); i < len; i++) {
-        ModeUsage modeUsage = (ModeUsage)validationModes.elementAt(i);
+        ModeUsage modeUsage = validationModes.get(i);
         // validation means no result actions, so we are not 
         // interested in the attribute action set returned by
         // the processAttributeSection method
@@ -631,7 +731,7 @@ class ValidatorImpl extends DefaultHandler implements Validator {
     // removes namespaces and signals end document to the handler
     cleanupHandler(ch);
     // release the validator so further validate actions with this schema can reuse it
-    releaseValidator(schema, validator);
+    releaseValidator(validator);
   }
 
   /**
@@ -647,12 +747,12 @@ class ValidatorImpl extends DefaultHandler implements Validator {
     // creates a new section having the current section as parent section
     Section section = new Section(uri, currentSection);
     // get the programs of the current section
-    Vector childPrograms = currentSection.childPrograms;
+    List<Program> childPrograms = currentSection.childPrograms;
     // clear the current no result (validation) actions
     noResultActions.clear();
     // iterates current section programs
     for (int i = 0, len = childPrograms.size(); i < len; i++) {
-      Program program = (Program)childPrograms.elementAt(i);
+      Program program = childPrograms.get(i);
       // get the mode usage for the program
       // and determine the use mode from the mode usage based on the current section context
       // and then get the element actions from that determined mode
@@ -679,7 +779,13 @@ class ValidatorImpl extends DefaultHandler implements Validator {
     // handler to receive notifications and set the locator,
     // call start document, and bind the current namespace context. 
     for (int i = 0, len = section.validators.size(); i < len; i++)
-      initHandler(((Validator)section.validators.elementAt(i)).getContentHandler());
+      initHandler(section.validators.get(i).getContentHandler());
+    // start the workers on the new section and initialize them in the same way
+    for (int i = 0, len = section.workers.size(); i < len; i++) {
+      SectionWorker worker = section.workers.get(i);
+      worker.start(++workerOrdinal, deferredErrors);
+      initHandler(worker);
+    }
     // store the new section as the current section
     currentSection = section;
   }
@@ -711,22 +817,23 @@ class ValidatorImpl extends DefaultHandler implements Validator {
    */
   public void endElement(String uri, String localName, String qName)
           throws SAXException {
-	  
-    elementsLocalNameStack.pop();
+    if (parallelSections)
+      nextEvent();
+    elementsLocalNameStack.remove(elementsLocalNameStack.size() - 1);
     // iterate the active handlers from the current section and call
     // endElement on them
     for (int i = 0, len = currentSection.activeHandlers.size(); i < len; i++)
-      ((ContentHandler)(currentSection.activeHandlers.elementAt(i))).endElement(uri, localName, qName);
+      currentSection.activeHandlers.get(i).endElement(uri, localName, qName);
     // decrease the current section depth
     currentSection.depth--;
     // if we keep context information (if the section is context dependent)
     // then remove that information
     if (currentSection.contextDependent)
-      currentSection.context.pop();
+      currentSection.context.remove(currentSection.context.size() - 1);
     // if we have zero depth then the current section was ended, so we call endSection
     if (currentSection.depth == 0) {
       for (int i = 0, len = currentSection.placeholderHandlers.size(); i < len; i++) {
-        ContentHandler handler = (ContentHandler)(currentSection.placeholderHandlers.elementAt(i));
+        ContentHandler handler = currentSection.placeholderHandlers.get(i);
         handler.endPrefixMapping("");
         handler.endElement("http://purl.oclc.org/dsdl/nvdl/ns/instance/1.0", "placeholder", "placeholder");
       }    
@@ -741,15 +848,27 @@ class ValidatorImpl extends DefaultHandler implements Validator {
   private void endSection() throws SAXException {
     // iterate validators
     for (int i = 0, len = currentSection.validators.size(); i < len; i++) {
-      Validator validator = (Validator)currentSection.validators.elementAt(i);
+      Validator validator = currentSection.validators.get(i);
       // remove namespaces and call end document on each handler
       cleanupHandler(validator.getContentHandler());
       // release the validators to the cache be reused further on other sections
-      releaseValidator((Schema)currentSection.schemas.elementAt(i), validator);
+      releaseValidator(validator);
       // endDocument() on one of the validators may throw an exception
       // in this case we don't want to release the validator twice
-      currentSection.validators.setElementAt(null, i);
+      currentSection.validators.set(i, null);
+    }
+    // iterate workers
+    for (int i = 0, len = currentSection.workers.size(); i < len; i++) {
+      SectionWorker worker = currentSection.workers.get(i);
+      cleanupHandler(worker);
+      // the worker is released when its errors are reported
+      worker.finish();
+      finishedWorkers.add(worker);
+      currentSection.workers.set(i, null);
     }
+    // reuse the workers that already completed
+    if (parallelSections)
+      collectCompletedWorkers();
     // set the parent section as the current section
     currentSection = currentSection.parent;
   }
@@ -769,10 +888,62 @@ class ValidatorImpl extends DefaultHandler implements Validator {
 
   /**
    * endDocument callback
-   * We should be in the initial section now so no op is required.
+   * We should be in the initial section now. If sections are validated
+   * in parallel then we wait for the workers and report their errors.
    */
   public void endDocument()
           throws SAXException {
+    if (parallelSections)
+      reportDeferredErrors();
+  }
+
+  /**
+   * Waits for the workers of the ended sections, reports the errors
+   * recorded by them and while dispatching in document order and
+   * releases the workers.
+   * @throws SAXException If the error handler or a worker validator threw an exception.
+   */
+  private void reportDeferredErrors() throws SAXException {
+    for (int i = 0, len = finishedWorkers.size(); i < len; i++)
+      collectWorker(finishedWorkers.get(i));
+    finishedWorkers.clear();
+    deferredErrors.drainTo(deferredWorkerErrors);
+    Throwable failure = deferredFailure;
+    deferredFailure = null;
+    DeferredErrorHandler.report(deferredWorkerErrors, reportErrorHandler);
+    if (failure instanceof SAXException)
+      throw (SAXException)failure;
+    if (failure instanceof RuntimeException)
+      throw (RuntimeException)failure;
+    if (failure instanceof Error)
+      throw (Error)failure;
+  }
+
+  /**
+   * Collects the errors of the finished workers that have completed
+   * and releases them, so that they can be used for further sections.
+   */
+  private void collectCompletedWorkers() {
+    int j = 0;
+    for (int i = 0, len = finishedWorkers.size(); i < len; i++) {
+      SectionWorker worker = finishedWorkers.get(i);
+      if (worker.isDone())
+        collectWorker(worker);
+      else
+        finishedWorkers.set(j++, worker);
+    }
+    finishedWorkers.subList(j, finishedWorkers.size()).clear();
+  }
+
+  /**
+   * Waits for a worker, keeps its errors to be reported later and releases it.
+   * @param worker The worker.
+   */
+  private void collectWorker(SectionWorker worker) {
+    Throwable e = worker.await(deferredWorkerErrors);
+    if (deferredFailure == null)
+      deferredFailure = e;
+    releaseSectionWorker(worker);
   }
 
   /**
@@ -795,35 +966,53 @@ class ValidatorImpl extends DefaultHandler implements Validator {
 
   /**
    * Get a validator for a schema.
-   * If we already have a validator for this schema available in cache 
-   * then we will use it and remove it from cache. At the end it will be
-   * added back to the cache through releaseValidator.
+   * If the validator pool has a validator for this schema available
+   * then we will use it and remove it from the pool. At the end it will be
+   * given back to the pool through releaseValidator.
    * @param schema The schema we need a validaor for.
    * @return A Validator for the given schema.
    */
   private Validator createValidator(Schema schema) {
-    Stack stack = (Stack)validatorHandlerCache.get(schema);
-    if (stack == null) {
-      stack = new Stack();
-      validatorHandlerCache.put(schema, stack);
-    }
-    if (stack.empty())
-      return schema.createValidator(properties);
-    return (Validator)stack.pop();
+    return validatorPool.borrow(schema, properties, propertiesKey);
   }
 
   /**
-   * Releases a validator for a given schema. Put that validator in the 
-   * cache so that further actions to validate against this schema will 
-   * be able to use this validator instead of creating a new one.
-   * @param schema The schema the validator validates against
+   * Releases a validator. Gives that validator back to the pool
+   * so that further actions to validate against its schema, from this
+   * or another validator of the NVDL schema, will be able to use this
+   * validator instead of creating a new one.
    * @param vh The validator.
    */
-  private void releaseValidator(Schema schema, Validator vh) {
+  private void releaseValidator(Validator vh) {
     if (vh == null)
       return;
-    vh.reset();
-    ((Stack)validatorHandlerCache.get(schema)).push(vh);
+    validatorPool.release(vh);
+  }
+
+  /**
+   * Get a section worker for a schema.
+   * Workers are cached in the same way as validators.
+   * @param schema The schema we need a worker for.
+   * @return A SectionWorker running a validator for the given schema.
+   */
+  private SectionWorker createSectionWorker(Schema schema) {
+    List<SectionWorker> stack = sectionWorkerCache.get(schema);
+    if (stack == null) {
+      stack = new ArrayList<SectionWorker>();
+      sectionWorkerCache.put(schema, stack);
+    }
+    if (stack.isEmpty())
+      return new SectionWorker(schema, validatorPool, properties, propertiesKey);
+    return stack.remove(stack.size() - 1);
+  }
+
+  /**
+   * Releases a section worker, putting it in the cache so that it can be reused.
+   * @param worker The worker, must not be running.
+   */
+  private void releaseSectionWorker(SectionWorker worker) {
+    worker.reset();
+    sectionWorkerCache.get(worker.getSchema()).add(worker);
   }
 
   /**
@@ -836,8 +1025,27 @@ class ValidatorImpl extends DefaultHandler implements Validator {
       // if we have validators in this section iterate them
       for (int i = 0, len = currentSection.validators.size(); i < len; i++)
         // release the validator
-        releaseValidator((Schema)currentSection.schemas.elementAt(i),
-                         (Validator)currentSection.validators.elementAt(i));
+        releaseValidator(currentSection.validators.get(i));
+      // stop the workers of sections that were not ended
+      for (int i = 0, len = currentSection.workers.size(); i < len; i++) {
+        SectionWorker worker = currentSection.workers.get(i);
+        if (worker != null) {
+          worker.abort();
+          finishedWorkers.add(worker);
+        }
+      }
+    }
+    if (parallelSections) {
+      // validation may have been abandoned before the end of the document;
+      // the errors not yet reported are discarded, but the workers must still be released
+      for (int i = 0, len = finishedWorkers.size(); i < len; i++)
+        collectWorker(finishedWorkers.get(i));
+      finishedWorkers.clear();
+      deferredWorkerErrors.clear();
+      deferredFailure = null;
+      deferredErrors.clear();
+      eventSequence = 0;
+      workerOrdinal = 0;
     }
     // create the initial section in the start mode.
     initCurrentSection();
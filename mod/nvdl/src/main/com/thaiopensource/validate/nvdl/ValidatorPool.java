@@ -0,0 +1,207 @@
+package com.thaiopensource.validate.nvdl;
+
+import com.thaiopensource.util.PropertyId;
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.Schema;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.validate.Validator;
+import com.thaiopensource.xml.sax.CountingErrorHandler;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of validators for the schemas used by an NVDL script.
+ * The pool belongs to the NVDL schema and is shared by all the NVDL validators
+ * created from it, so that validators for the child schemas survive from one
+ * document to the next and can move between threads.
+ * Each thread first gets validators from a small pool of its own, so
+ * that a thread tends to get back the validators it used before; the
+ * rest are kept in a pool shared by all threads. The number of idle
+ * validators kept for each schema is limited.
+ * A validator can only be given to NVDL validators created with the same
+ * properties, apart from the error handler: the errors of a pooled
+ * validator go through a CountingErrorHandler that is switched to the
+ * error handler of the NVDL validator that borrows it.
+ */
+class ValidatorPool {
+  /**
+   * The maximum number of idle validators kept by a thread for
+   * a schema and set of properties.
+   */
+  private static final int THREAD_CAPACITY = 2;
+
+  /**
+   * The maximum number of idle validators shared by all threads for
+   * a schema and set of properties.
+   */
+  private static final int SHARED_CAPACITY = 16;
+
+  /**
+   * The properties of an NVDL validator that determine whether validators are interchangeable,
+   * that is all the properties but the error handler.
+   */
+  static final class PropertiesKey {
+    private final Map<PropertyId<?>, Object> properties;
+
+    private PropertiesKey(Map<PropertyId<?>, Object> properties) {
+      this.properties = properties;
+    }
+
+    public boolean equals(Object obj) {
+      return obj instanceof PropertiesKey && properties.equals(((PropertiesKey)obj).properties);
+    }
+
+    public int hashCode() {
+      return properties.hashCode();
+    }
+  }
+
+  /**
+   * Identifies the validators that are interchangeable: those
+   * for the same schema created with the same properties.
+   */
+  static private class Key {
+    private final Schema schema;
+    private final PropertiesKey properties;
+
+    Key(Schema schema, PropertiesKey properties) {
+      this.schema = schema;
+      this.properties = properties;
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key))
+        return false;
+      Key other = (Key)obj;
+      return schema == other.schema && properties.equals(other.properties);
+    }
+
+    public int hashCode() {
+      return schema.hashCode() ^ properties.hashCode();
+    }
+  }
+
+  /**
+   * A validator from the pool.
+   */
+  static private class PooledValidator implements Validator {
+    private final Key key;
+    private final Validator validator;
+    private final CountingErrorHandler eh;
+
+    PooledValidator(Key key, Validator validator, CountingErrorHandler eh) {
+      this.key = key;
+      this.validator = validator;
+      this.eh = eh;
+    }
+
+    public ContentHandler getContentHandler() {
+      return validator.getContentHandler();
+    }
+
+    public DTDHandler getDTDHandler() {
+      return validator.getDTDHandler();
+    }
+
+    public void reset() {
+      validator.reset();
+    }
+  }
+
+  /**
+   * The idle validators of each thread.
+   */
+  private final ThreadLocal<Map<Key, List<PooledValidator>>> threadValidators
+          = new ThreadLocal<Map<Key, List<PooledValidator>>>() {
+    protected Map<Key, List<PooledValidator>> initialValue() {
+      return new HashMap<Key, List<PooledValidator>>();
+    }
+  };
+
+  /**
+   * The idle validators shared by all threads. Access must be synchronized on this map.
+   */
+  private final Map<Key, List<PooledValidator>> sharedValidators = new HashMap<Key, List<PooledValidator>>();
+
+  /**
+   * Gets the part of a property map that determines whether validators
+   * are interchangeable, that is all the properties but the error handler.
+   * This is computed once for each NVDL validator and passed to borrow.
+   * @param properties The properties.
+   * @return The key to pass to borrow together with the properties.
+   */
+  static PropertiesKey getPropertiesKey(PropertyMap properties) {
+    Map<PropertyId<?>, Object> map = new HashMap<PropertyId<?>, Object>();
+    for (int i = 0, len = properties.size(); i < len; i++) {
+      PropertyId<?> pid = properties.getKey(i);
+      if (pid != ValidateProperty.ERROR_HANDLER)
+        map.put(pid, properties.get(pid));
+    }
+    return new PropertiesKey(map);
+  }
+
+  /**
+   * Gets a validator for a schema, from the pool if possible.
+   * @param schema The schema.
+   * @param properties The properties, including the error handler the validator should report to.
+   * @param propertiesKey The result of getPropertiesKey for the properties.
+   * @return A validator, which must be given back with release.
+   */
+  Validator borrow(Schema schema, PropertyMap properties, PropertiesKey propertiesKey) {
+    Key key = new Key(schema, propertiesKey);
+    PooledValidator pv = remove(threadValidators.get().get(key));
+    if (pv == null) {
+      synchronized (sharedValidators) {
+        pv = remove(sharedValidators.get(key));
+      }
+    }
+    if (pv == null) {
+      CountingErrorHandler eh = new CountingErrorHandler();
+      PropertyMapBuilder builder = new PropertyMapBuilder(properties);
+      builder.put(ValidateProperty.ERROR_HANDLER, eh);
+      pv = new PooledValidator(key, schema.createValidator(builder.toPropertyMap()), eh);
+    }
+    pv.eh.setErrorHandler(properties.get(ValidateProperty.ERROR_HANDLER));
+    return pv;
+  }
+
+  /**
+   * Resets a validator obtained from borrow and gives it back to the pool.
+   * @param validator The validator.
+   */
+  void release(Validator validator) {
+    PooledValidator pv = (PooledValidator)validator;
+    pv.reset();
+    pv.eh.setErrorHandler(null);
+    pv.eh.reset();
+    if (add(threadValidators.get(), pv, THREAD_CAPACITY))
+      return;
+    synchronized (sharedValidators) {
+      add(sharedValidators, pv, SHARED_CAPACITY);
+    }
+  }
+
+  private static PooledValidator remove(List<PooledValidator> list) {
+    if (list == null || list.isEmpty())
+      return null;
+    return list.remove(list.size() - 1);
+  }
+
+  private static boolean add(Map<Key, List<PooledValidator>> map, PooledValidator pv, int capacity) {
+    List<PooledValidator> list = map.get(pv.key);
+    if (list == null) {
+      list = new ArrayList<PooledValidator>();
+      map.put(pv.key, list);
+    }
+    if (list.size() >= capacity)
+      return false;
+    list.add(pv);
+    return true;
+  }
+}
@@ -0,0 +1,105 @@
+package com.thaiopensource.validate.nvdl;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Test IntSet.
+ */
+public class IntSetTest {
+  static private void assertSameValues(IntSet set, SortedSet<Integer> expected) {
+    Assert.assertEquals(set.size(), expected.size());
+    int i = 0;
+    for (int n : expected)
+      Assert.assertEquals(set.get(i++), n);
+  }
+
+  /**
+   * Inserting a value before all the others when all but one element of the array is used
+   * used to copy one element too many, past the end of the array.
+   */
+  @Test
+  public void testInsertBeforeWhenNearlyFull() {
+    for (int size = 1; size <= 20; size++) {
+      IntSet set = new IntSet();
+      SortedSet<Integer> expected = new TreeSet<Integer>();
+      for (int n = size; n > 0; n--) {
+        set.add(n * 10);
+        expected.add(n * 10);
+        assertSameValues(set, expected);
+      }
+      set.add(5);
+      expected.add(5);
+      assertSameValues(set, expected);
+    }
+  }
+
+  @Test
+  public void testInsertInMiddle() {
+    IntSet set = new IntSet();
+    set.add(10);
+    set.add(30);
+    set.add(20);
+    set.add(20);
+    SortedSet<Integer> expected = new TreeSet<Integer>();
+    expected.add(10);
+    expected.add(20);
+    expected.add(30);
+    assertSameValues(set, expected);
+  }
+
+  @Test
+  public void testRandom() {
+    Random random = new Random(42);
+    for (int k = 0; k < 100; k++) {
+      IntSet set = new IntSet();
+      SortedSet<Integer> expected = new TreeSet<Integer>();
+      for (int i = 0, count = random.nextInt(50); i < count; i++) {
+        int n = random.nextInt(40);
+        set.add(n);
+        expected.add(n);
+      }
+      assertSameValues(set, expected);
+    }
+  }
+
+  @Test
+  public void testClearKeepsWorking() {
+    IntSet set = new IntSet();
+    for (int n = 0; n < 7; n++)
+      set.add(n);
+    set.clear();
+    Assert.assertEquals(set.size(), 0);
+    set.add(3);
+    set.add(1);
+    set.add(2);
+    SortedSet<Integer> expected = new TreeSet<Integer>();
+    expected.add(1);
+    expected.add(2);
+    expected.add(3);
+    assertSameValues(set, expected);
+  }
+
+  @Test
+  public void testAddAllAndEquals() {
+    IntSet set1 = new IntSet();
+    set1.add(1);
+    set1.add(3);
+    IntSet set2 = new IntSet();
+    set2.add(3);
+    set2.add(2);
+    set1.addAll(set2);
+    IntSet set3 = new IntSet();
+    set3.add(2);
+    set3.add(1);
+    set3.add(3);
+    Assert.assertEquals(set1, set3);
+    Assert.assertEquals(set1.hashCode(), set3.hashCode());
+    set3.clear();
+    Assert.assertFalse(set1.equals(set3));
+  }
+}
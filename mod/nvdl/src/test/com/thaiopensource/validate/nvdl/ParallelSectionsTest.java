@@ -0,0 +1,202 @@
+package com.thaiopensource.validate.nvdl;
+
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.Option;
+import com.thaiopensource.validate.Schema;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.validate.Validator;
+import com.thaiopensource.validate.auto.AutoSchemaReader;
+import com.thaiopensource.validate.auto.SchemaReceiver;
+import com.thaiopensource.validate.auto.SchemaReceiverFactory;
+import com.thaiopensource.validate.prop.nvdl.NvdlProperty;
+import com.thaiopensource.validate.rng.SAXSchemaReceiverFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test that validating the sections of a document on worker threads reports the same errors
+ * in the same order as validating them serially.
+ */
+public class ParallelSectionsTest {
+  static private final String NVDL
+    = "<rules xmlns='http://purl.oclc.org/dsdl/nvdl/ns/structure/1.0'>"
+    + "<namespace ns='urn:a'><validate schema='a.rng'/></namespace>"
+    + "<namespace ns='urn:b'><validate schema='b.rng'/></namespace>"
+    + "</rules>";
+  static private final String A_RNG
+    = "<element name='doc' ns='urn:a' xmlns='http://relaxng.org/ns/structure/1.0'>"
+    + "<zeroOrMore><element name='item'><empty/></element></zeroOrMore>"
+    + "</element>";
+  static private final String B_RNG
+    = "<element name='rec' ns='urn:b' xmlns='http://relaxng.org/ns/structure/1.0'>"
+    + "<oneOrMore><element name='name'><empty/></element></oneOrMore>"
+    + "<element name='value'><empty/></element>"
+    + "</element>";
+  static private final int SECTIONS = 60;
+
+  private File dir;
+  private Schema schema;
+
+  /**
+   * Creates SchemaReceivers for NVDL and RELAX NG.
+   */
+  static private class TestSchemaReceiverFactory implements SchemaReceiverFactory {
+    private final SchemaReceiverFactory[] factories = {
+      new NvdlSchemaReceiverFactory(), new SAXSchemaReceiverFactory()
+    };
+
+    public SchemaReceiver createSchemaReceiver(String namespaceUri, PropertyMap properties) {
+      for (SchemaReceiverFactory factory : factories) {
+        SchemaReceiver receiver = factory.createSchemaReceiver(namespaceUri, properties);
+        if (receiver != null)
+          return receiver;
+      }
+      return null;
+    }
+
+    public Option getOption(String uri) {
+      for (SchemaReceiverFactory factory : factories) {
+        Option option = factory.getOption(uri);
+        if (option != null)
+          return option;
+      }
+      return null;
+    }
+  }
+
+  static private class RecordingErrorHandler implements ErrorHandler {
+    final List<String> errors = new ArrayList<String>();
+
+    public void warning(SAXParseException exception) {
+      record("warning", exception);
+    }
+
+    public void error(SAXParseException exception) {
+      record("error", exception);
+    }
+
+    public void fatalError(SAXParseException exception) {
+      record("fatal", exception);
+    }
+
+    private void record(String severity, SAXParseException exception) {
+      errors.add(exception.getLineNumber() + ":" + exception.getColumnNumber() + ": "
+                 + severity + ": " + exception.getMessage());
+    }
+  }
+
+  @BeforeClass
+  public void loadSchema() throws Exception {
+    dir = File.createTempFile("nvdl", "");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+    write("a.rng", A_RNG);
+    write("b.rng", B_RNG);
+    File nvdl = write("test.nvdl", NVDL);
+    SchemaReceiverFactory factory = new TestSchemaReceiverFactory();
+    PropertyMapBuilder builder = new PropertyMapBuilder();
+    builder.put(SchemaReceiverFactory.PROPERTY, factory);
+    RecordingErrorHandler eh = new RecordingErrorHandler();
+    builder.put(ValidateProperty.ERROR_HANDLER, eh);
+    try {
+      schema = new AutoSchemaReader(factory).createSchema(new InputSource(nvdl.toURI().toString()),
+                                                          builder.toPropertyMap());
+    }
+    finally {
+      Assert.assertTrue(eh.errors.isEmpty(), eh.errors.toString());
+    }
+  }
+
+  @AfterClass
+  public void deleteFiles() {
+    for (File file : dir.listFiles())
+      file.delete();
+    dir.delete();
+  }
+
+  private File write(String name, String content) throws IOException {
+    File file = new File(dir, name);
+    Writer w = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      w.write(content);
+    }
+    finally {
+      w.close();
+    }
+    return file;
+  }
+
+  /**
+   * Returns a document with many sections, one of them larger than a batch of events,
+   * and errors both in the sections and between them.
+   */
+  static private String document() {
+    StringBuilder doc = new StringBuilder();
+    doc.append("<doc xmlns='urn:a'>\n");
+    for (int i = 0; i < SECTIONS; i++) {
+      if (i % 5 == 0)
+        doc.append("<bad/>\n");
+      doc.append("<item/>\n");
+      doc.append("<rec xmlns='urn:b'>\n");
+      int names = i == SECTIONS/2 ? 1000 : 1 + i % 4;
+      for (int j = 0; j < names; j++)
+        doc.append("<name/>\n");
+      if (i % 3 != 0)
+        doc.append("<value/>\n");
+      if (i % 7 == 0)
+        doc.append("<extra/>\n");
+      doc.append("</rec>\n");
+    }
+    doc.append("</doc>\n");
+    return doc.toString();
+  }
+
+  static private void validate(Validator validator, String document) throws Exception {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    XMLReader xr = factory.newSAXParser().getXMLReader();
+    xr.setContentHandler(validator.getContentHandler());
+    xr.parse(new InputSource(new StringReader(document)));
+  }
+
+  private List<String> errors(boolean parallel) throws Exception {
+    RecordingErrorHandler eh = new RecordingErrorHandler();
+    PropertyMapBuilder builder = new PropertyMapBuilder();
+    builder.put(ValidateProperty.ERROR_HANDLER, eh);
+    if (parallel)
+      NvdlProperty.PARALLEL_SECTIONS.add(builder);
+    Validator validator = schema.createValidator(builder.toPropertyMap());
+    String document = document();
+    validate(validator, document);
+    List<String> errors = new ArrayList<String>(eh.errors);
+    // a validator that has been reset gives the same errors again
+    eh.errors.clear();
+    validator.reset();
+    validate(validator, document);
+    Assert.assertEquals(eh.errors, errors);
+    return errors;
+  }
+
+  @Test
+  public void testSameErrors() throws Exception {
+    List<String> serial = errors(false);
+    Assert.assertTrue(serial.size() > SECTIONS / 2);
+    Assert.assertEquals(errors(true), serial);
+  }
+}
@@ -0,0 +1,158 @@
+package com.thaiopensource.validate.nvdl;
+
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.AbstractSchema;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.validate.Validator;
+import com.thaiopensource.validate.prop.nvdl.NvdlProperty;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test that ValidatorPool gives back validators that have been reset and that report
+ * to the error handler of the borrower.
+ */
+public class ValidatorPoolTest {
+  static private class TestValidator extends DefaultHandler implements Validator {
+    private final ErrorHandler eh;
+    int resetCount = 0;
+    boolean started = false;
+
+    TestValidator(ErrorHandler eh) {
+      this.eh = eh;
+    }
+
+    public void startDocument() throws SAXException {
+      Assert.assertFalse(started, "not reset");
+      started = true;
+      eh.error(new SAXParseException("error", null));
+    }
+
+    public ContentHandler getContentHandler() {
+      return this;
+    }
+
+    public DTDHandler getDTDHandler() {
+      return this;
+    }
+
+    public void reset() {
+      resetCount++;
+      started = false;
+    }
+  }
+
+  static private class TestSchema extends AbstractSchema {
+    final List<TestValidator> created = new ArrayList<TestValidator>();
+
+    public synchronized Validator createValidator(PropertyMap properties) {
+      TestValidator validator = new TestValidator(properties.get(ValidateProperty.ERROR_HANDLER));
+      created.add(validator);
+      return validator;
+    }
+  }
+
+  static private class RecordingErrorHandler implements ErrorHandler {
+    int errorCount = 0;
+
+    public void warning(SAXParseException exception) {
+    }
+
+    public void error(SAXParseException exception) {
+      errorCount++;
+    }
+
+    public void fatalError(SAXParseException exception) {
+    }
+  }
+
+  static private PropertyMap properties(ErrorHandler eh, boolean parallel) {
+    PropertyMapBuilder builder = new PropertyMapBuilder();
+    builder.put(ValidateProperty.ERROR_HANDLER, eh);
+    if (parallel)
+      NvdlProperty.PARALLEL_SECTIONS.add(builder);
+    return builder.toPropertyMap();
+  }
+
+  static private Validator borrow(ValidatorPool pool, TestSchema schema, PropertyMap properties) {
+    return pool.borrow(schema, properties, ValidatorPool.getPropertiesKey(properties));
+  }
+
+  @Test
+  public void testReleasedValidatorReused() throws SAXException {
+    ValidatorPool pool = new ValidatorPool();
+    TestSchema schema = new TestSchema();
+    RecordingErrorHandler eh1 = new RecordingErrorHandler();
+    Validator v1 = borrow(pool, schema, properties(eh1, false));
+    v1.getContentHandler().startDocument();
+    Assert.assertEquals(eh1.errorCount, 1);
+    pool.release(v1);
+    Assert.assertEquals(schema.created.size(), 1);
+    Assert.assertEquals(schema.created.get(0).resetCount, 1);
+    // a borrower with another error handler gets the same validator, reporting to its own error handler
+    RecordingErrorHandler eh2 = new RecordingErrorHandler();
+    Validator v2 = borrow(pool, schema, properties(eh2, false));
+    v2.getContentHandler().startDocument();
+    Assert.assertEquals(schema.created.size(), 1);
+    Assert.assertEquals(eh1.errorCount, 1);
+    Assert.assertEquals(eh2.errorCount, 1);
+    pool.release(v2);
+    Assert.assertEquals(schema.created.get(0).resetCount, 2);
+  }
+
+  @Test
+  public void testOtherPropertiesNotReused() {
+    ValidatorPool pool = new ValidatorPool();
+    TestSchema schema = new TestSchema();
+    RecordingErrorHandler eh = new RecordingErrorHandler();
+    pool.release(borrow(pool, schema, properties(eh, false)));
+    borrow(pool, schema, properties(eh, true));
+    Assert.assertEquals(schema.created.size(), 2);
+    // nor for another schema
+    TestSchema other = new TestSchema();
+    borrow(pool, other, properties(eh, false));
+    Assert.assertEquals(other.created.size(), 1);
+    Assert.assertEquals(schema.created.size(), 2);
+  }
+
+  @Test
+  public void testValidatorMovesBetweenThreads() throws Exception {
+    final ValidatorPool pool = new ValidatorPool();
+    final TestSchema schema = new TestSchema();
+    final RecordingErrorHandler eh1 = new RecordingErrorHandler();
+    // more validators than a thread keeps for itself, so that some are shared
+    final int count = 5;
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        List<Validator> validators = new ArrayList<Validator>();
+        for (int i = 0; i < count; i++)
+          validators.add(borrow(pool, schema, properties(eh1, false)));
+        for (Validator validator : validators)
+          pool.release(validator);
+      }
+    });
+    thread.start();
+    thread.join();
+    Assert.assertEquals(schema.created.size(), count);
+    RecordingErrorHandler eh2 = new RecordingErrorHandler();
+    Validator validator = borrow(pool, schema, properties(eh2, false));
+    Assert.assertEquals(schema.created.size(), count);
+    validator.getContentHandler().startDocument();
+    Assert.assertEquals(eh2.errorCount, 1);
+    Assert.assertEquals(eh1.errorCount, 0);
+    int resetCount = 0;
+    for (TestValidator v : schema.created)
+      resetCount += v.resetCount;
+    Assert.assertEquals(resetCount, count);
+  }
+}
@@ -0,0 +1,364 @@
+package com.thaiopensource.relaxng.match;
+
+import com.thaiopensource.xml.util.Name;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validates a document that is being edited, so that after each edit only the part of the
+ * document that can be affected by the edit is matched again.
+ * <p>
+ * The document is represented as a list of events, as described for <code>Matcher</code>,
+ * except that there are no StartDocument or EndDocument events and that an attribute is a single
+ * event; the list must correspond to a well-formed document element, or to a prefix of one
+ * while it is being edited. Events are created using the static methods of this class and are
+ * added to the document using <code>replace</code>; an event must not be added more than once.
+ * Each event records the errors that were reported when it was matched.
+ * <p>
+ * Before a start-tag or after an end-tag, a copy of the <code>Matcher</code> is kept as a checkpoint,
+ * at intervals of a number of events. When events are replaced, matching starts again from the last
+ * checkpoint before the replaced events, and stops at the first checkpoint after them at which the
+ * <code>Matcher</code> is equal to the checkpoint: from there on, matching would continue
+ * exactly as before.
+ * <p>
+ * An IncrementalValidator is not safe for concurrent access from multiple threads.
+ */
+public class IncrementalValidator {
+  private static final int DEFAULT_CHECKPOINT_INTERVAL = 32;
+
+  /**
+   * An event in a document.
+   */
+  public static abstract class Event {
+    /**
+     * The state of the Matcher before this event, or null.
+     */
+    private Matcher checkpoint;
+    /**
+     * null if there were no errors
+     */
+    private List<String> errors;
+
+    Event() { }
+
+    /**
+     * Returns the errors that were reported when this event was matched.
+     * The errors for a Text event are reported when the following event is matched.
+     * @return a list of error messages, which is empty if there were no errors
+     */
+    public List<String> getErrors() {
+      if (errors == null)
+        return Collections.emptyList();
+      return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Matches this event.
+     * @param text the preceding Text event, if it has not yet been matched; otherwise null
+     * @return this event if it is a Text event, which is matched with the following event; otherwise null
+     */
+    abstract Text match(IncrementalValidator v, Matcher matcher, Text text);
+
+    boolean isStartTagOpen() {
+      return false;
+    }
+
+    boolean isEndTag() {
+      return false;
+    }
+
+    void check(IncrementalValidator v, Matcher matcher, boolean ok) {
+      if (!ok) {
+        if (errors == null)
+          errors = new ArrayList<String>();
+        errors.add(matcher.getErrorMessage());
+        v.errorCount++;
+      }
+    }
+
+    /**
+     * Discards the errors; returns the number discarded.
+     */
+    int clearErrors() {
+      if (errors == null)
+        return 0;
+      int n = errors.size();
+      errors = null;
+      return n;
+    }
+  }
+
+  private static class StartTagOpen extends Event {
+    private final Name name;
+    private final String qName;
+    private final MatchContext context;
+
+    StartTagOpen(Name name, String qName, MatchContext context) {
+      this.name = name;
+      this.qName = qName;
+      this.context = context;
+    }
+
+    Text match(IncrementalValidator v, Matcher matcher, Text text) {
+      if (text != null)
+        text.check(v, matcher, matcher.matchTextBeforeStartTag(text.text, text.context));
+      check(v, matcher, matcher.matchStartTagOpen(name, qName, context));
+      return null;
+    }
+
+    boolean isStartTagOpen() {
+      return true;
+    }
+  }
+
+  private static class Attribute extends Event {
+    private final Name name;
+    private final String qName;
+    private final String value;
+    private final MatchContext context;
+
+    Attribute(Name name, String qName, String value, MatchContext context) {
+      this.name = name;
+      this.qName = qName;
+      this.value = value;
+      this.context = context;
+    }
+
+    Text match(IncrementalValidator v, Matcher matcher, Text text) {
+      check(v, matcher, matcher.matchAttributeName(name, qName, context));
+      check(v, matcher, matcher.matchAttributeValue(value, name, qName, context));
+      return null;
+    }
+  }
+
+  private static class StartTagClose extends Event {
+    private final Name name;
+    private final String qName;
+    private final MatchContext context;
+
+    StartTagClose(Name name, String qName, MatchContext context) {
+      this.name = name;
+      this.qName = qName;
+      this.context = context;
+    }
+
+    Text match(IncrementalValidator v, Matcher matcher, Text text) {
+      check(v, matcher, matcher.matchStartTagClose(name, qName, context));
+      return null;
+    }
+  }
+
+  private static class Text extends Event {
+    private final String text;
+    private final MatchContext context;
+
+    Text(String text, MatchContext context) {
+      this.text = text;
+      this.context = context;
+    }
+
+    Text match(IncrementalValidator v, Matcher matcher, Text text) {
+      return this;
+    }
+  }
+
+  private static class EndTag extends Event {
+    private final Name name;
+    private final String qName;
+    private final MatchContext context;
+
+    EndTag(Name name, String qName, MatchContext context) {
+      this.name = name;
+      this.qName = qName;
+      this.context = context;
+    }
+
+    Text match(IncrementalValidator v, Matcher matcher, Text text) {
+      if (text != null)
+        text.check(v, matcher, matcher.matchTextBeforeEndTag(text.text, name, qName, context));
+      check(v, matcher, matcher.matchEndTag(name, qName, context));
+      return null;
+    }
+
+    boolean isEndTag() {
+      return true;
+    }
+  }
+
+  /**
+   * Creates a StartTagOpen event.
+   */
+  public static Event startTagOpen(Name name, String qName, MatchContext context) {
+    return new StartTagOpen(name, qName, context);
+  }
+
+  /**
+   * Creates an event for an attribute, which is matched as an AttributeName event followed by an
+   * AttributeValue event.
+   */
+  public static Event attribute(Name name, String qName, String value, MatchContext context) {
+    return new Attribute(name, qName, value, context);
+  }
+
+  /**
+   * Creates a StartTagClose event.
+   */
+  public static Event startTagClose(Name name, String qName, MatchContext context) {
+    return new StartTagClose(name, qName, context);
+  }
+
+  /**
+   * Creates a Text event. Two consecutive Text events are not allowed.
+   */
+  public static Event text(String text, MatchContext context) {
+    return new Text(text, context);
+  }
+
+  /**
+   * Creates an EndTag event.
+   */
+  public static Event endTag(Name name, String qName, MatchContext context) {
+    return new EndTag(name, qName, context);
+  }
+
+  /**
+   * The state of the Matcher after the StartDocument event.
+   */
+  private final Matcher start;
+  private final int checkpointInterval;
+  private final List<Event> events = new ArrayList<Event>();
+  private final List<Event> eventsView = Collections.unmodifiableList(events);
+  private String startDocumentError;
+  private String endDocumentError;
+  private int errorCount;
+
+  /**
+   * Creates an IncrementalValidator for an empty document.
+   * @param matcher a Matcher for the pattern against which the document is to be validated;
+   * it is not changed
+   */
+  public IncrementalValidator(Matcher matcher) {
+    this(matcher, DEFAULT_CHECKPOINT_INTERVAL);
+  }
+
+  /**
+   * Creates an IncrementalValidator for an empty document.
+   * @param matcher a Matcher for the pattern against which the document is to be validated;
+   * it is not changed
+   * @param checkpointInterval the minimum number of events between checkpoints; more frequent
+   * checkpoints use more memory, but reduce the number of events that are matched again after an edit
+   */
+  public IncrementalValidator(Matcher matcher, int checkpointInterval) {
+    if (checkpointInterval < 1)
+      throw new IllegalArgumentException("checkpoint interval must be at least 1");
+    this.checkpointInterval = checkpointInterval;
+    start = matcher.start();
+    if (!start.matchStartDocument()) {
+      startDocumentError = start.getErrorMessage();
+      errorCount++;
+    }
+    revalidate(0, 0);
+  }
+
+  /**
+   * Returns the events of the document.
+   * @return an unmodifiable list of events
+   */
+  public List<Event> getEvents() {
+    return eventsView;
+  }
+
+  /**
+   * Returns the errors that are not associated with an event, such as the errors that
+   * were reported when matching the StartDocument and EndDocument events.
+   * @return a list of error messages, which is empty if there were no errors
+   */
+  public List<String> getDocumentErrors() {
+    List<String> errors = new ArrayList<String>();
+    if (startDocumentError != null)
+      errors.add(startDocumentError);
+    if (endDocumentError != null)
+      errors.add(endDocumentError);
+    return errors;
+  }
+
+  /**
+   * Returns the total number of errors in the document, including the errors that are not
+   * associated with an event.
+   */
+  public int getErrorCount() {
+    return errorCount;
+  }
+
+  /**
+   * Replaces events in the document and validates the document again. To validate a new document,
+   * call <code>replace(0, 0, events)</code>.
+   * @param start the index of the first event to be replaced
+   * @param end the index after the last event to be replaced
+   * @param replacement the events that are to replace the events from <code>start</code> up to
+   * <code>end</code>; the events must not already have been added to a document
+   * @return the number of events that were matched
+   * @throws IndexOutOfBoundsException if <code>start</code> or <code>end</code> is out of range
+   */
+  public int replace(int start, int end, List<? extends Event> replacement) {
+    if (start < 0 || end > events.size() || start > end)
+      throw new IndexOutOfBoundsException();
+    List<Event> removed = events.subList(start, end);
+    for (Event event : removed) {
+      errorCount -= event.clearErrors();
+      event.checkpoint = null;
+    }
+    removed.clear();
+    events.addAll(start, replacement);
+    return revalidate(start, start + replacement.size());
+  }
+
+  /**
+   * Matches the document again after the events from start up to editEnd have been replaced.
+   */
+  private int revalidate(int start, int editEnd) {
+    // the checkpoint for the first event after the replaced events, if any, is not usable:
+    // it is the state after the events that were replaced
+    int restart = start;
+    while (restart > 0 && (restart == start || events.get(restart).checkpoint == null))
+      restart--;
+    Matcher matcher = (restart == 0 ? this.start : events.get(restart).checkpoint).copy();
+    Text text = null;
+    int sinceCheckpoint = 0;
+    int i;
+    for (i = restart; i < events.size(); i++) {
+      Event event = events.get(i);
+      if (i > restart) {
+        if (text != null)
+          event.checkpoint = null;
+        else if (event.checkpoint != null) {
+          if (i >= editEnd) {
+            if (matcher.equals(event.checkpoint))
+              return i - restart;
+            event.checkpoint = matcher.copy();
+          }
+          sinceCheckpoint = 0;
+        }
+        else if (sinceCheckpoint >= checkpointInterval
+                 && (event.isStartTagOpen() || events.get(i - 1).isEndTag())) {
+          event.checkpoint = matcher.copy();
+          sinceCheckpoint = 0;
+        }
+      }
+      errorCount -= event.clearErrors();
+      text = event.match(this, matcher, text);
+      sinceCheckpoint++;
+    }
+    if (endDocumentError != null) {
+      endDocumentError = null;
+      errorCount--;
+    }
+    if (!matcher.matchEndDocument()) {
+      endDocumentError = matcher.getErrorMessage();
+      errorCount++;
+    }
+    return i - restart;
+  }
+}
@@ -68,7 +68,10 @@ public interface Matcher {
   Matcher start();
 
   /**
-   * Test whether obj is an equivalent <code>Matcher</code>.
+   * Test whether obj is an equivalent <code>Matcher</code>. Two <code>Matcher</code>s
+   * are equivalent if they will match any sequence of future events in the same way,
+   * reporting the same errors. What was matched before, as returned by
+   * <code>getErrorMessage</code> and <code>isValidSoFar</code>, is not taken into account.
    * @return true if they are obj is known to be equivalent, false otherwise
    */
   boolean equals(Object obj);
@@ -209,6 +212,9 @@ public interface Matcher {
    * Return the current error message.
    * The current error message is changed by any <code>match<var>E</var></code> method
    * that returns false.  Initially, the current error message is null.
+   * The message may be constructed only when this is called, using the <code>MatchContext</code>
+   * that was passed to the method that returned false, so this should be called before
+   * that context changes.
    *
    * @return a string with the current error message, or null if there has not yet
    *         been an error.
@@ -1,28 +1,148 @@
 package com.thaiopensource.relaxng.pattern;
 
+import com.thaiopensource.xml.util.Name;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The name classes of the elements in an operand of an interleave.
+ * The single names are kept in a hash set, so that checking two alphabets for overlap
+ * takes time proportional to the sum rather than the product of their sizes.
+ */
 class Alphabet {
+  /**
+   * The choice of the name classes that have been added, in the order in which they were added.
+   */
   private NameClass nameClass;
+  /**
+   * The names of the SimpleNameClasses in nameClass.
+   */
+  private Set<Name> names = new HashSet<Name>();
+  /**
+   * The name classes in nameClass that are neither a ChoiceNameClass nor a SimpleNameClass.
+   */
+  private List<NameClass> wildcards = new ArrayList<NameClass>();
 
   boolean isEmpty() {
     return nameClass == null;
   }
 
   void addElement(NameClass nc) {
+    if (nc == null)
+      return;
     if (nameClass == null)
       nameClass = nc;
-    else if (nc != null)
+    else
       nameClass = new ChoiceNameClass(nameClass, nc);
+    index(nc);
   }
 
+  /**
+   * Adds the name classes of another alphabet, which must not be used afterwards.
+   */
   void addAlphabet(Alphabet a) {
-    addElement(a.nameClass);
+    if (a.nameClass == null)
+      return;
+    if (nameClass == null)
+      nameClass = a.nameClass;
+    else
+      nameClass = new ChoiceNameClass(nameClass, a.nameClass);
+    // add the smaller to the larger, so that nested interleaves take linear time
+    if (a.names.size() > names.size()) {
+      Set<Name> tem = names;
+      names = a.names;
+      a.names = tem;
+    }
+    names.addAll(a.names);
+    if (a.wildcards.size() > wildcards.size()) {
+      List<NameClass> tem = wildcards;
+      wildcards = a.wildcards;
+      a.wildcards = tem;
+    }
+    wildcards.addAll(a.wildcards);
   }
 
+  /**
+   * Throws the same exception as OverlapDetector.checkOverlap(nameClass, a.nameClass, ...).
+   */
   void checkOverlap(Alphabet a) throws RestrictionViolationException {
-    if (nameClass != null && a.nameClass != null)
-      OverlapDetector.checkOverlap(nameClass, a.nameClass,
-                                   "interleave_element_overlap_name",
-                                   "interleave_element_overlap_ns",
-                                   "interleave_element_overlap");
+    if (nameClass == null || a.nameClass == null)
+      return;
+    if (a.nameClass instanceof SimpleNameClass) {
+      Name name = ((SimpleNameClass)a.nameClass).getName();
+      if (contains(name))
+        throw new RestrictionViolationException("interleave_element_overlap_name", name);
+    }
+    else if (nameClass instanceof SimpleNameClass) {
+      Name name = ((SimpleNameClass)nameClass).getName();
+      if (a.contains(name))
+        throw new RestrictionViolationException("interleave_element_overlap_name", name);
+    }
+    else {
+      // OverlapDetector reports the last overlapping probe
+      Name overlapExample = findOverlap(nameClass, a);
+      Name name = findOverlap(a.nameClass, a);
+      if (name != null)
+        overlapExample = name;
+      if (overlapExample != null)
+        throw OverlapDetector.overlapException(overlapExample,
+                                               "interleave_element_overlap_name",
+                                               "interleave_element_overlap_ns",
+                                               "interleave_element_overlap");
+    }
+  }
+
+  /**
+   * Returns the last of the probes for nc that is contained in both this and a, or null if there is none.
+   */
+  private Name findOverlap(NameClass nc, Alphabet a) {
+    Name overlapExample = null;
+    // nameClass is a deep left-branching tree, so use an explicit stack rather than a visitor
+    Deque<NameClass> stack = new ArrayDeque<NameClass>();
+    stack.push(nc);
+    while (!stack.isEmpty()) {
+      NameClass top = stack.pop();
+      if (top instanceof ChoiceNameClass) {
+        ChoiceNameClass choice = (ChoiceNameClass)top;
+        stack.push(choice.getNameClass2());
+        stack.push(choice.getNameClass1());
+      }
+      else if (top instanceof SimpleNameClass) {
+        Name name = ((SimpleNameClass)top).getName();
+        if (contains(name) && a.contains(name))
+          overlapExample = name;
+      }
+      else {
+        for (Name name : OverlapDetector.probes(top))
+          if (contains(name) && a.contains(name))
+            overlapExample = name;
+      }
+    }
+    return overlapExample;
+  }
+
+  private boolean contains(Name name) {
+    if (names.contains(name))
+      return true;
+    for (NameClass nc : wildcards)
+      if (nc.contains(name))
+        return true;
+    return false;
+  }
+
+  private void index(NameClass nc) {
+    if (nc instanceof ChoiceNameClass) {
+      index(((ChoiceNameClass)nc).getNameClass1());
+      index(((ChoiceNameClass)nc).getNameClass2());
+    }
+    else if (nc instanceof SimpleNameClass)
+      names.add(((SimpleNameClass)nc).getName());
+    else
+      wildcards.add(nc);
   }
 }
@@ -1,10 +1,12 @@
 package com.thaiopensource.relaxng.pattern;
 
+import com.thaiopensource.xml.util.Name;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 
 class AttributePattern extends Pattern {
   private final NameClass nameClass;
+  private final CompiledNameClass compiledNameClass;
   private final Pattern p;
   private final Locator loc;
   private final String defaultValue;
@@ -16,6 +18,7 @@ class AttributePattern extends Pattern {
 			  nameClass.hashCode(),
 			  value.hashCode()));
     this.nameClass = nameClass;
+    this.compiledNameClass = CompiledNameClass.compile(nameClass);
     this.p = value;
     this.loc = loc;
     this.defaultValue = defaultValue;
@@ -84,6 +87,15 @@ class AttributePattern extends Pattern {
     return nameClass;
   }
 
+  /**
+   * Equivalent to getNameClass().contains(name), but faster for name classes that are not a single name.
+   */
+  boolean nameClassContains(Name name) {
+    if (compiledNameClass == null)
+      return nameClass.contains(name);
+    return compiledNameClass.contains(name);
+  }
+
   Locator getLocator() {
     return loc;
   }
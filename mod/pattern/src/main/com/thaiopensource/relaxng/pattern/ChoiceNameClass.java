@@ -12,6 +12,14 @@ class ChoiceNameClass implements NameClass {
     this.nameClass2 = nameClass2;
   }
 
+  NameClass getNameClass1() {
+    return nameClass1;
+  }
+
+  NameClass getNameClass2() {
+    return nameClass2;
+  }
+
   public boolean contains(Name name) {
     return (nameClass1.contains(name)
 	    || nameClass2.contains(name));
@@ -0,0 +1,38 @@
+package com.thaiopensource.relaxng.pattern;
+
+import com.thaiopensource.xml.util.Name;
+
+/**
+ * Tests whether a name class that is not a single name contains a name. This uses the
+ * normalized form of the name class, which tests a name with a few hash lookups, however many choices
+ * and exceptions the name class has. The normalized form is computed when it is first needed.
+ */
+final class CompiledNameClass {
+  private final NameClass nameClass;
+  /**
+   * null until computed; a NormalizedNameClass is immutable, so it is safe to compute it more than once
+   * in different threads
+   */
+  private NormalizedNameClass normalized;
+
+  private CompiledNameClass(NameClass nameClass) {
+    this.nameClass = nameClass;
+  }
+
+  /**
+   * Returns null if the name class is a single name; such a name class is as fast to test directly,
+   * and there are too many of them in a large schema to allocate a CompiledNameClass for each.
+   */
+  static CompiledNameClass compile(NameClass nameClass) {
+    if (nameClass instanceof SimpleNameClass)
+      return null;
+    return new CompiledNameClass(nameClass);
+  }
+
+  boolean contains(Name name) {
+    NormalizedNameClass nnc = normalized;
+    if (nnc == null)
+      normalized = nnc = new NameClassNormalizer(nameClass).normalize();
+    return nnc.contains(name);
+  }
+}
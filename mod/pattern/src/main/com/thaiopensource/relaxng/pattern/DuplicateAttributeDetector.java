@@ -1,10 +1,24 @@
 package com.thaiopensource.relaxng.pattern;
 
+import com.thaiopensource.xml.util.Name;
+
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 class DuplicateAttributeDetector {
   private final List<NameClass> nameClasses = new ArrayList<NameClass>();
+  /**
+   * Maps each name that is the name class of an attribute to the indexes in nameClasses of those attributes.
+   * An attribute with a single name can only overlap the attributes with the same name and the attributes
+   * whose name classes are not single names, so only these need to be checked.
+   */
+  private final Map<Name, List<Integer>> nameIndexes = new HashMap<Name, List<Integer>>();
+  /**
+   * The indexes in nameClasses of the attributes whose name classes are not single names.
+   */
+  private final List<Integer> otherIndexes = new ArrayList<Integer>();
   private Alternative alternatives = null;
 
   private static class Alternative {
@@ -20,24 +34,59 @@ class DuplicateAttributeDetector {
   }
 
   void addAttribute(NameClass nc) throws RestrictionViolationException {
-    int lim = nameClasses.size();
-    for (Alternative a = alternatives; a != null; a = a.parent) {
-      for (int i = a.endIndex; i < lim; i++)
-	checkAttributeOverlap(nc, nameClasses.get(i));
-      lim = a.startIndex;
+    int index = nameClasses.size();
+    if (nc instanceof SimpleNameClass) {
+      Name name = ((SimpleNameClass)nc).getName();
+      List<Integer> indexes = nameIndexes.get(name);
+      if (indexes == null) {
+        indexes = new ArrayList<Integer>(1);
+        nameIndexes.put(name, indexes);
+      }
+      else
+        checkAttributeOverlap(nc, indexes);
+      checkAttributeOverlap(nc, otherIndexes);
+      indexes.add(index);
+    }
+    else {
+      int lim = index;
+      for (Alternative a = alternatives; a != null; a = a.parent) {
+        for (int i = a.endIndex; i < lim; i++)
+          checkAttributeOverlap(nc, nameClasses.get(i));
+        lim = a.startIndex;
+      }
+      for (int i = 0; i < lim; i++)
+        checkAttributeOverlap(nc, nameClasses.get(i));
+      otherIndexes.add(index);
     }
-    for (int i = 0; i < lim; i++)
-      checkAttributeOverlap(nc, nameClasses.get(i));
     nameClasses.add(nc);
   }
 
+  private void checkAttributeOverlap(NameClass nc, List<Integer> indexes) throws RestrictionViolationException {
+    for (int i : indexes)
+      if (!inEarlierAlternative(i))
+        checkAttributeOverlap(nc, nameClasses.get(i));
+  }
+
+  /**
+   * Returns true if the attribute with the specified index is in an earlier alternative of a choice
+   * whose current alternative is being checked; such an attribute cannot occur together with the
+   * attributes that are being added.
+   */
+  private boolean inEarlierAlternative(int index) {
+    // the alternatives of enclosing choices have lower indexes
+    for (Alternative a = alternatives; a != null && index < a.endIndex; a = a.parent)
+      if (index >= a.startIndex)
+        return true;
+    return false;
+  }
+
   static private void checkAttributeOverlap(NameClass nc1, NameClass nc2) throws RestrictionViolationException {
     OverlapDetector.checkOverlap(nc1, nc2,
                                  "duplicate_attribute_name",
                                  "duplicate_attribute_ns",
                                  "duplicate_attribute");
   }
-  
+
   void startChoice() {
     alternatives = new Alternative(nameClasses.size(), alternatives);
   }
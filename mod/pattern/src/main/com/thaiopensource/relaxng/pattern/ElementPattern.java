@@ -1,5 +1,6 @@
 package com.thaiopensource.relaxng.pattern;
 
+import com.thaiopensource.xml.util.Name;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 
@@ -7,6 +8,7 @@ class ElementPattern extends Pattern {
   private Pattern p;
   private final NameClass origNameClass;
   private NameClass nameClass;
+  private CompiledNameClass compiledNameClass;
   private boolean expanded = false;
   private boolean checkedRestrictions = false;
   private final Locator loc;
@@ -18,6 +20,7 @@ class ElementPattern extends Pattern {
 			  nameClass.hashCode(),
 			  p.hashCode()));
     this.nameClass = nameClass;
+    this.compiledNameClass = CompiledNameClass.compile(nameClass);
     this.origNameClass = nameClass;
     this.p = p;
     this.loc = loc;
@@ -52,8 +55,10 @@ class ElementPattern extends Pattern {
     if (!expanded) {
       expanded = true;
       p = p.expand(b);
-      if (p.isNotAllowed())
+      if (p.isNotAllowed()) {
 	nameClass = new NullNameClass();
+	compiledNameClass = CompiledNameClass.compile(nameClass);
+      }
     }
     return this;
   }
@@ -85,6 +90,15 @@ class ElementPattern extends Pattern {
     return nameClass;
   }
 
+  /**
+   * Equivalent to getNameClass().contains(name), but faster for name classes that are not a single name.
+   */
+  boolean nameClassContains(Name name) {
+    if (compiledNameClass == null)
+      return nameClass.contains(name);
+    return compiledNameClass.contains(name);
+  }
+
   Locator getLocator() {
     return loc;
   }
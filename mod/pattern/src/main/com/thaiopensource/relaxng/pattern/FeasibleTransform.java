@@ -42,6 +42,8 @@ public class FeasibleTransform {
   }
 
   public static Pattern transform(SchemaPatternBuilder spb, Pattern p) {
-    return p.apply(new FeasiblePatternFunction(spb));
+    Pattern start = p.apply(new FeasiblePatternFunction(spb));
+    spb.retainReachable(start);
+    return start;
   }
 }
@@ -2,23 +2,15 @@ package com.thaiopensource.relaxng.pattern;
 
 import com.thaiopensource.xml.util.Name;
 
+import java.util.ArrayList;
+import java.util.List;
+
 class OverlapDetector implements NameClassVisitor {
-  private final NameClass nc1;
-  private final NameClass nc2;
-  private Name overlapExample = null;
+  private final List<Name> probes = new ArrayList<Name>();
 
   private static final String IMPOSSIBLE = "\u0000";
 
-  private OverlapDetector(NameClass nc1, NameClass nc2) {
-    this.nc1 = nc1;
-    this.nc2 = nc2;
-    nc1.accept(this);
-    nc2.accept(this);      
-  }
-
-  private void probe(Name name) {
-    if (nc1.contains(name) && nc2.contains(name))
-      overlapExample = name;
+  private OverlapDetector() {
   }
 
   public void visitChoice(NameClass nc1, NameClass nc2) {
@@ -27,25 +19,25 @@ class OverlapDetector implements NameClassVisitor {
   }
 
   public void visitNsName(String ns) {
-    probe(new Name(ns, IMPOSSIBLE));
+    probes.add(new Name(ns, IMPOSSIBLE));
   }
 
   public void visitNsNameExcept(String ns, NameClass ex) {
-    probe(new Name(ns, IMPOSSIBLE));
+    probes.add(new Name(ns, IMPOSSIBLE));
     ex.accept(this);
   }
 
   public void visitAnyName() {
-    probe(new Name(IMPOSSIBLE, IMPOSSIBLE));
+    probes.add(new Name(IMPOSSIBLE, IMPOSSIBLE));
   }
 
   public void visitAnyNameExcept(NameClass ex) {
-    probe(new Name(IMPOSSIBLE, IMPOSSIBLE));
+    probes.add(new Name(IMPOSSIBLE, IMPOSSIBLE));
     ex.accept(this);
   }
 
   public void visitName(Name name) {
-    probe(name);
+    probes.add(name);
   }
 
   public void visitNull() {
@@ -54,6 +46,16 @@ class OverlapDetector implements NameClassVisitor {
   public void visitError() {
   }
 
+  /**
+   * Returns the names to test for whether a name class overlaps another name class.
+   * Two name classes overlap if and only if both contain one of the names returned for either of them.
+   */
+  static List<Name> probes(NameClass nc) {
+    OverlapDetector detector = new OverlapDetector();
+    nc.accept(detector);
+    return detector.probes;
+  }
+
   static void checkOverlap(NameClass nc1, NameClass nc2,
                            String messageForName,
                            String messageForNs,
@@ -69,19 +71,34 @@ class OverlapDetector implements NameClassVisitor {
         throw new RestrictionViolationException(messageForName, snc.getName());
     }
     else {
-      Name name = new OverlapDetector(nc1, nc2).overlapExample;
-      if (name != null) {
-        String localName = name.getLocalName();
-        if (localName == IMPOSSIBLE) {
-          String ns = name.getNamespaceUri();
-          if (ns == IMPOSSIBLE)
-            throw new RestrictionViolationException(messageForOther);
-          else
-            throw new RestrictionViolationException(messageForNs, ns);
-        }
-        else
-          throw new RestrictionViolationException(messageForName, name);
-      }
+      Name overlapExample = null;
+      for (Name name : probes(nc1))
+        if (nc1.contains(name) && nc2.contains(name))
+          overlapExample = name;
+      for (Name name : probes(nc2))
+        if (nc1.contains(name) && nc2.contains(name))
+          overlapExample = name;
+      if (overlapExample != null)
+        throw overlapException(overlapExample, messageForName, messageForNs, messageForOther);
+    }
+  }
+
+  /**
+   * Returns the exception for two name classes that both contain a name returned by <code>probes</code>.
+   */
+  static RestrictionViolationException overlapException(Name overlapExample,
+                                                        String messageForName,
+                                                        String messageForNs,
+                                                        String messageForOther) {
+    String localName = overlapExample.getLocalName();
+    if (localName == IMPOSSIBLE) {
+      String ns = overlapExample.getNamespaceUri();
+      if (ns == IMPOSSIBLE)
+        return new RestrictionViolationException(messageForOther);
+      else
+        return new RestrictionViolationException(messageForNs, ns);
     }
+    else
+      return new RestrictionViolationException(messageForName, overlapExample);
   }
 }
@@ -1,5 +1,6 @@
 package com.thaiopensource.relaxng.pattern;
 
+import java.util.Set;
 
 final class PatternInterner {
   private static final int INIT_SIZE = 256;
@@ -58,6 +59,34 @@ final class PatternInterner {
     return p;
   }
 
+  /**
+   * Removes the patterns that are not in the specified set, and shrinks the table to the size
+   * it would have had if only the remaining patterns had been interned.
+   */
+  void retainAll(Set<Pattern> patterns) {
+    if (table == null)
+      return;
+    Pattern[] oldTable = table;
+    int n = 0;
+    for (Pattern p : oldTable)
+      if (p != null && patterns.contains(p))
+        n++;
+    int size = INIT_SIZE;
+    while (n >= (int)(size * LOAD_FACTOR))
+      size <<= 1;
+    table = new Pattern[size];
+    for (Pattern p : oldTable) {
+      if (p != null && patterns.contains(p)) {
+        int j;
+        for (j = firstIndex(p); table[j] != null; j = nextIndex(j))
+          ;
+        table[j] = p;
+      }
+    }
+    used = n;
+    usedLimit = (int)(size * LOAD_FACTOR);
+  }
+
   private int firstIndex(Pattern p) {
     return p.patternHashCode() & (table.length - 1);
   }
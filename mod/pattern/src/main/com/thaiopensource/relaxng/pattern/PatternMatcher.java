@@ -3,7 +3,6 @@ package com.thaiopensource.relaxng.pattern;
 import com.thaiopensource.datatype.Datatype2;
 import com.thaiopensource.relaxng.match.MatchContext;
 import com.thaiopensource.relaxng.match.Matcher;
-import com.thaiopensource.util.Equal;
 import com.thaiopensource.util.Localizer;
 import com.thaiopensource.xml.util.Name;
 import org.relaxng.datatype.Datatype;
@@ -43,10 +42,24 @@ public class PatternMatcher implements Cloneable, Matcher {
   private boolean textTyped;
   private boolean hadError;
   private boolean ignoreNextEndTagOrAttributeValue;
+  private ErrorMessage error;
+  private MatchContext errorContext;
   private String errorMessage;
   private final Shared shared;
   private List<DataDerivFailure> dataDerivFailureList = new ArrayList<DataDerivFailure>();
 
+  /**
+   * Describes an error. The message is constructed only when it is requested, because
+   * describing what was expected can be expensive. The state needed to describe the error
+   * must be captured when the error occurs, since the matcher goes on to recover from it.
+   */
+  private static abstract class ErrorMessage {
+    /**
+     * @param context a context with the namespace declarations in scope where the error occurred
+     */
+    abstract String format(MatchContext context);
+  }
+
   public PatternMatcher(Pattern start, ValidatorPatternBuilder builder) {
     shared = new Shared(start, builder);
     memo = builder.getPatternMemo(start);
@@ -67,9 +80,10 @@ public class PatternMatcher implements Cloneable, Matcher {
     PatternMatcher other = (PatternMatcher)obj;
     // don't need to test equality of shared, because the memos can only be ==
     // if the shareds are ==.
+    // errorMessage only describes an error that has already been reported, and hadError
+    // only affects future matching through ignoreError(), when memo is notAllowed.
     return (memo == other.memo
-            && hadError == other.hadError
-            && Equal.equal(errorMessage, other.errorMessage)
+            && (hadError == other.hadError || !memo.isNotAllowed())
             && ignoreNextEndTagOrAttributeValue == other.ignoreNextEndTagOrAttributeValue
             && textTyped == other.textTyped);
   }
@@ -104,55 +118,106 @@ public class PatternMatcher implements Cloneable, Matcher {
     return true;
   }
 
-  public boolean matchStartTagOpen(Name name, String qName, MatchContext context) {
+  public boolean matchStartTagOpen(final Name name, final String qName, MatchContext context) {
     if (setMemo(memo.startTagOpenDeriv(name)))
       return true;
     PatternMemo next = memo.startTagOpenRecoverDeriv(name);
     boolean ok = ignoreError();
+    final PatternMemo errorMemo = memo;
     if (!next.isNotAllowed()) {
       if (!ok) {
-        Set<Name> missing = requiredElementNames();
-        if (!missing.isEmpty())
-          error(missing.size() == 1
-                ? "unexpected_element_required_element_missing"
-                : "unexpected_element_required_elements_missing",
-                errorArgQName(qName, name, context, false),
-                formatNames(missing, FORMAT_NAMES_ELEMENT|FORMAT_NAMES_AND, context));
-        else
-          error("element_not_allowed_yet",
-                errorArgQName(qName, name, context, false),
-                expectedContent(context));
+        error(new ErrorMessage() {
+          String format(MatchContext context) {
+            Set<Name> missing = requiredElementNames(errorMemo);
+            if (!missing.isEmpty())
+              return message(missing.size() == 1
+                             ? "unexpected_element_required_element_missing"
+                             : "unexpected_element_required_elements_missing",
+                             errorArgQName(qName, name, context, false),
+                             formatNames(missing, FORMAT_NAMES_ELEMENT|FORMAT_NAMES_AND, context));
+            return message("element_not_allowed_yet",
+                           errorArgQName(qName, name, context, false),
+                           expectedContent(errorMemo, context));
+          }
+        }, context);
       }
     }
     else {
       final ValidatorPatternBuilder builder = shared.builder;
       next = builder.getPatternMemo(builder.makeAfter(shared.findElement(name), memo.getPattern()));
-      if (!ok)
-        error(next.isNotAllowed() ? "unknown_element" : "out_of_context_element",
-              errorArgQName(qName, name, context, false),
-              expectedContent(context));
+      if (!ok) {
+        final String key = next.isNotAllowed() ? "unknown_element" : "out_of_context_element";
+        error(new ErrorMessage() {
+          String format(MatchContext context) {
+            return message(key, errorArgQName(qName, name, context, false), expectedContent(errorMemo, context));
+          }
+        }, context);
+      }
     }
     memo = next;
     return ok;
   }
 
-  public boolean matchAttributeName(Name name, String qName, MatchContext context) {
+  /**
+   * Matches a complete element without matching its attributes or content, which must instead
+   * be matched by the matcher returned by <code>startElementSeparately</code>.
+   * This is possible only if the element's start-tag is allowed here and
+   * the element would be matched here by the specified element pattern alone.
+   * @param name the name of the element
+   * @param element the element pattern, as returned by <code>SingleTypeGrammar.getElement</code>
+   * @return true if the element was matched; false if it must be matched in the usual way,
+   * in which case this matcher is unchanged
+   * @see SingleTypeGrammar
+   */
+  public boolean matchElementSeparately(Name name, Pattern element) {
+    PatternMemo next = memo.startTagOpenDeriv(name);
+    if (next.isNotAllowed() || !isAfterContent(next.getPattern(), ((ElementPattern)element).getContent()))
+      return false;
+    memo = next.recoverAfter();
+    textTyped = false;
+    return true;
+  }
+
+  /**
+   * Returns a matcher for an element that was matched by <code>matchElementSeparately</code>.
+   * The returned matcher expects the start-tag of the element next, and
+   * the end-tag of the element last; it uses the same pattern builder as this matcher.
+   * @param element the element pattern that was passed to <code>matchElementSeparately</code>
+   */
+  public Matcher startElementSeparately(Pattern element) {
+    return new PatternMatcher(shared.builder.getPatternMemo(element), shared);
+  }
+
+  private static boolean isAfterContent(Pattern p, Pattern content) {
+    if (p instanceof AfterPattern)
+      return ((AfterPattern)p).getOperand1() == content;
+    if (p instanceof ChoicePattern)
+      return (isAfterContent(((ChoicePattern)p).getOperand1(), content)
+              && isAfterContent(((ChoicePattern)p).getOperand2(), content));
+    return false;
+  }
+
+  public boolean matchAttributeName(final Name name, final String qName, MatchContext context) {
     if (setMemo(memo.startAttributeDeriv(name)))
       return true;
     ignoreNextEndTagOrAttributeValue = true;
     boolean ok = ignoreError();
     if (ok)
       return true;
-    qName = errorArgQName(qName, name, context, true);
-    NormalizedNameClass nnc = memo.possibleAttributeNames();
-    if (nnc.isEmpty())
-      error("no_attributes_allowed", qName);
-    else
-      error("invalid_attribute_name", qName, expectedAttributes(context));
-    return false;
+    final PatternMemo errorMemo = memo;
+    return error(new ErrorMessage() {
+      String format(MatchContext context) {
+        String arg = errorArgQName(qName, name, context, true);
+        NormalizedNameClass nnc = errorMemo.possibleAttributeNames();
+        if (nnc.isEmpty())
+          return message("no_attributes_allowed", arg);
+        return message("invalid_attribute_name", arg, expectedAttributes(errorMemo, context));
+      }
+    }, context);
   }
 
-  public boolean matchAttributeValue(String value, Name name, String qName, MatchContext context) {
+  public boolean matchAttributeValue(final String value, final Name name, final String qName,
+                                     MatchContext context) {
     if (ignoreNextEndTagOrAttributeValue) {
       ignoreNextEndTagOrAttributeValue = false;
       return true;
@@ -160,28 +225,40 @@ public class PatternMatcher implements Cloneable, Matcher {
     dataDerivFailureList.clear();
     if (setMemo(memo.dataDeriv(value, context, dataDerivFailureList)))
       return true;
-    boolean ok = error("invalid_attribute_value", errorArgQName(qName, name, context, true),
-                       formatDataDerivFailures(value, context));
+    boolean ok = ignoreError();
+    if (!ok) {
+      final List<DataDerivFailure> failures = takeDataDerivFailures();
+      error(new ErrorMessage() {
+        String format(MatchContext context) {
+          return message("invalid_attribute_value", errorArgQName(qName, name, context, true),
+                         formatDataDerivFailures(failures, value, context));
+        }
+      }, context);
+    }
     memo = memo.recoverAfter();
     return ok;
   }
 
-  public boolean matchStartTagClose(Name name, String qName, MatchContext context) {
+  public boolean matchStartTagClose(final Name name, final String qName, MatchContext context) {
     boolean ok;
     if (setMemo(memo.endAttributes()))
       ok = true;
     else {
       ok = ignoreError();
       if (!ok) {
-        Set<Name> missing = requiredAttributeNames();
-        if (missing.isEmpty())
-          error("required_attributes_missing_expected",
-                errorArgQName(qName, name, context, false),
-                expectedAttributes(context));
-        else
-          error(missing.size() == 1 ? "required_attribute_missing" : "required_attributes_missing",
-                errorArgQName(qName, name, context, false),
-                formatNames(missing, FORMAT_NAMES_ATTRIBUTE|FORMAT_NAMES_AND, context));
+        final PatternMemo errorMemo = memo;
+        error(new ErrorMessage() {
+          String format(MatchContext context) {
+            Set<Name> missing = requiredAttributeNames(errorMemo);
+            if (missing.isEmpty())
+              return message("required_attributes_missing_expected",
+                             errorArgQName(qName, name, context, false),
+                             expectedAttributes(errorMemo, context));
+            return message(missing.size() == 1 ? "required_attribute_missing" : "required_attributes_missing",
+                           errorArgQName(qName, name, context, false),
+                           formatNames(missing, FORMAT_NAMES_ATTRIBUTE|FORMAT_NAMES_AND, context));
+          }
+        }, context);
       }
       memo = memo.ignoreMissingAttributes();
     }
@@ -211,14 +288,21 @@ public class PatternMatcher implements Cloneable, Matcher {
   public boolean matchUntypedText(MatchContext context) {
     if (setMemo(memo.mixedTextDeriv()))
       return true;
-    return error("text_not_allowed", expectedContent(context));
+    if (ignoreError())
+      return true;
+    final PatternMemo errorMemo = memo;
+    return error(new ErrorMessage() {
+      String format(MatchContext context) {
+        return message("text_not_allowed", expectedContent(errorMemo, context));
+      }
+    }, context);
   }
 
   public boolean isTextTyped() {
     return textTyped;
   }
 
-  private boolean setDataDeriv(String string, Name name, String qName, MatchContext context) {
+  private boolean setDataDeriv(final String string, final Name name, final String qName, MatchContext context) {
     textTyped = false;
     PatternMemo textOnlyMemo = memo.textOnly();
     dataDerivFailureList.clear();
@@ -228,20 +312,25 @@ public class PatternMatcher implements Cloneable, Matcher {
     boolean ok = ignoreError();
     if (!ok && (!next.isNotAllowed()
                 || textOnlyMemo.emptyAfter().dataDeriv(string, context).isNotAllowed())) {
-      NormalizedNameClass nnc = memo.possibleStartTagNames();
-      if (!nnc.isEmpty() && DataDerivFunction.isBlank(string))
-        error("blank_not_allowed",
-              errorArgQName(qName, name, context, false),
-              expectedContent(context));
-      else
-        error("invalid_element_value", errorArgQName(qName, name, context, false),
-              formatDataDerivFailures(string, context));
+      final PatternMemo errorMemo = memo;
+      final List<DataDerivFailure> failures = takeDataDerivFailures();
+      error(new ErrorMessage() {
+        String format(MatchContext context) {
+          NormalizedNameClass nnc = errorMemo.possibleStartTagNames();
+          if (!nnc.isEmpty() && DataDerivFunction.isBlank(string))
+            return message("blank_not_allowed",
+                           errorArgQName(qName, name, context, false),
+                           expectedContent(errorMemo, context));
+          return message("invalid_element_value", errorArgQName(qName, name, context, false),
+                         formatDataDerivFailures(failures, string, context));
+        }
+      }, context);
     }
     memo = next;
     return ok;
   }
 
-  public boolean matchEndTag(Name name, String qName, MatchContext context) {
+  public boolean matchEndTag(final Name name, final String qName, MatchContext context) {
     if (ignoreNextEndTagOrAttributeValue) {
       ignoreNextEndTagOrAttributeValue = false;
       return true;
@@ -257,24 +346,44 @@ public class PatternMatcher implements Cloneable, Matcher {
     if (!ok && (!next.isNotAllowed()
                 // Retry computing the deriv on a pattern where the after is OK (not notAllowed)
                 || memo.emptyAfter().endTagDeriv().isNotAllowed())) {
-      Set<Name> missing = requiredElementNames();
-      if (!missing.isEmpty())
-        error(missing.size() == 1
-              ? "incomplete_element_required_element_missing"
-              : "incomplete_element_required_elements_missing",
-              errorArgQName(qName, name, context, false),
-              formatNames(missing, FORMAT_NAMES_ELEMENT|FORMAT_NAMES_AND, context));
-      else
-        // XXX  Could do better here and describe what is required instead of what is possible
-        error("incomplete_element_required_elements_missing_expected",
-              errorArgQName(qName, name, context, false),
-              expectedContent(context));
+      final PatternMemo errorMemo = memo;
+      error(new ErrorMessage() {
+        String format(MatchContext context) {
+          Set<Name> missing = requiredElementNames(errorMemo);
+          if (!missing.isEmpty())
+            return message(missing.size() == 1
+                           ? "incomplete_element_required_element_missing"
+                           : "incomplete_element_required_elements_missing",
+                           errorArgQName(qName, name, context, false),
+                           formatNames(missing, FORMAT_NAMES_ELEMENT|FORMAT_NAMES_AND, context));
+          // XXX  Could do better here and describe what is required instead of what is possible
+          return message("incomplete_element_required_elements_missing_expected",
+                         errorArgQName(qName, name, context, false),
+                         expectedContent(errorMemo, context));
+        }
+      }, context);
     }
     memo = next;
     return ok;
   }
 
   public String getErrorMessage() {
+    if (errorMessage == null && error != null)
+      errorMessage = error.format(errorContext);
+    return errorMessage;
+  }
+
+  /**
+   * Returns the current error message, as <code>getErrorMessage</code> does, but constructs it using
+   * a different context. This allows the message to be requested after the context that was passed
+   * to the method that returned false has changed.
+   * @param context a context with the same namespace declarations as the context that was passed
+   * to the method that returned false
+   * @return a string with the current error message, or null if there has not yet been an error
+   */
+  public String getErrorMessage(MatchContext context) {
+    if (errorMessage == null && error != null)
+      errorMessage = error.format(context);
     return errorMessage;
   }
 
@@ -291,10 +400,18 @@ public class PatternMatcher implements Cloneable, Matcher {
   }
 
   public Set<Name> requiredElementNames() {
-    return memo.getPattern().apply(shared.builder.getRequiredElementsFunction());
+    return requiredElementNames(memo);
   }
 
   public Set<Name> requiredAttributeNames() {
+    return requiredAttributeNames(memo);
+  }
+
+  private Set<Name> requiredElementNames(PatternMemo memo) {
+    return memo.getPattern().apply(shared.builder.getRequiredElementsFunction());
+  }
+
+  private Set<Name> requiredAttributeNames(PatternMemo memo) {
     return memo.getPattern().apply(shared.builder.getRequiredAttributesFunction());
   }
 
@@ -314,33 +431,42 @@ public class PatternMatcher implements Cloneable, Matcher {
   /*
    * Return true if the error was ignored, false otherwise.
    */
-  private boolean error(String key) {
-    return error(key, new String[] { });
+  private boolean error(final String key) {
+    return error(new ErrorMessage() {
+      String format(MatchContext context) {
+        return localizer().message(key);
+      }
+    }, null);
   }
 
-  private boolean error(String key, String arg) {
-    return error(key, new String[] { arg });
+  private boolean error(ErrorMessage error, MatchContext context) {
+    if (ignoreError())
+      return true;
+    hadError = true;
+    this.error = error;
+    errorContext = context;
+    errorMessage = null;
+    return false;
   }
 
-  private boolean error(String key, String arg1, String arg2) {
-    return error(key, new String[] { arg1, arg2 });
+  /**
+   * Returns the failures from the last call of dataDeriv, so that they can be described later.
+   */
+  private List<DataDerivFailure> takeDataDerivFailures() {
+    List<DataDerivFailure> failures = dataDerivFailureList;
+    dataDerivFailureList = new ArrayList<DataDerivFailure>();
+    return failures;
   }
 
-  private boolean error(String key, String arg1, String arg2, String arg3) {
-    return error(key, new String[] { arg1, arg2, arg3 });
+  private static String message(String key, String arg) {
+    return localizer().message(key, arg);
   }
 
-  private boolean error(String key, String[] args) {
-    if (ignoreError())
-      return true;
-    hadError = true;
-    errorMessage = localizer().message(key, args);
-    return false;
+  private static String message(String key, String arg1, String arg2) {
+    return localizer().message(key, arg1, arg2);
   }
-   
-  private String errorArgQName(String qName, Name name, MatchContext context, boolean isAttribute) {
-    if (ignoreError())
-      return null;
+
+  private static String errorArgQName(String qName, Name name, MatchContext context, boolean isAttribute) {
     if (qName == null || qName.length() == 0) {
       final String ns = name.getNamespaceUri();
       final String localName = name.getLocalName();
@@ -361,9 +487,8 @@ public class PatternMatcher implements Cloneable, Matcher {
   static private final int UNDEFINED_TOKEN_INDEX = -3;
   static private final int INCONSISTENT_TOKEN_INDEX = -2;
   
-  private String formatDataDerivFailures(String str, MatchContext context) {
-    if (ignoreError())
-      return null;
+  private static String formatDataDerivFailures(List<DataDerivFailure> dataDerivFailureList, String str,
+                                                MatchContext context) {
     if (dataDerivFailureList.size() == 0)
       return "";
     if (dataDerivFailureList.size() > 1) {
@@ -444,15 +569,13 @@ public class PatternMatcher implements Cloneable, Matcher {
     return localizer().message("data_failures", arg);
   }
 
-  private String quoteValue(String str) {
+  private static String quoteValue(String str) {
     StringBuilder buf = new StringBuilder();
     appendAttributeValue(buf, str);
     return buf.toString();
   }
 
-  private String expectedAttributes(MatchContext context) {
-    if (ignoreError())
-      return null;
+  private static String expectedAttributes(PatternMemo memo, MatchContext context) {
     NormalizedNameClass nnc = memo.possibleAttributeNames();
     if (nnc.isEmpty())
       return "";
@@ -466,9 +589,7 @@ public class PatternMatcher implements Cloneable, Matcher {
     return "";
   }
 
-  private String expectedContent(MatchContext context) {
-    if (ignoreError())
-      return null;
+  private static String expectedContent(PatternMemo memo, MatchContext context) {
     List<String> expected = new ArrayList<String>();
     if (!memo.endTagDeriv().isNotAllowed())
       expected.add(localizer().message("element_end_tag"));
@@ -136,8 +136,10 @@ public class SchemaBuilderImpl extends AnnotationsImpl implements
         pattern.checkRecursion(0);
         pattern = pattern.expand(pb);
         pattern.checkRestrictions(Pattern.START_CONTEXT, null, null);
-        if (!hadError)
+        if (!hadError) {
+          pb.retainReachable(pattern);
           return pattern;
+        }
       }
       catch (SAXParseException e) {
         error(e);
@@ -807,7 +809,7 @@ public class SchemaBuilderImpl extends AnnotationsImpl implements
     return ns;
   }
 
-  private class LocatorImpl implements Locator {
+  private static class LocatorImpl implements Locator {
     private final String systemId;
     private final int lineNumber;
     private final int columnNumber;
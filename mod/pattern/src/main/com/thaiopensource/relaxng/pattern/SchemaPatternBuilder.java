@@ -1,10 +1,14 @@
 package com.thaiopensource.relaxng.pattern;
 
+import com.thaiopensource.util.VoidValue;
 import com.thaiopensource.xml.util.Name;
 import org.relaxng.datatype.Datatype;
 import org.xml.sax.Locator;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class SchemaPatternBuilder extends PatternBuilder {
   private boolean idTypes;
@@ -89,6 +93,86 @@ public class SchemaPatternBuilder extends PatternBuilder {
     return makeInterleave(text, p);
   }
 
+  /**
+   * Stops interning the patterns that are not reachable from the start pattern of the schema,
+   * so that the patterns that were only needed while the schema was being built can be
+   * garbage collected.
+   */
+  void retainReachable(Pattern start) {
+    Set<Pattern> reachable = new ReachablePatternsFunction().reachable(start);
+    interner.retainAll(reachable);
+    schemaInterner.retainAll(reachable);
+  }
+
+  private static class ReachablePatternsFunction extends AbstractPatternFunction<VoidValue> {
+    private final Set<Pattern> reachable = new HashSet<Pattern>();
+    // patterns can be deeply nested, so use an explicit stack rather than recursion
+    private final List<Pattern> stack = new ArrayList<Pattern>();
+
+    Set<Pattern> reachable(Pattern start) {
+      add(start);
+      while (!stack.isEmpty())
+        stack.remove(stack.size() - 1).apply(this);
+      return reachable;
+    }
+
+    private void add(Pattern p) {
+      if (reachable.add(p))
+        stack.add(p);
+    }
+
+    private VoidValue caseBinary(BinaryPattern p) {
+      add(p.getOperand1());
+      add(p.getOperand2());
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseGroup(GroupPattern p) {
+      return caseBinary(p);
+    }
+
+    public VoidValue caseInterleave(InterleavePattern p) {
+      return caseBinary(p);
+    }
+
+    public VoidValue caseChoice(ChoicePattern p) {
+      return caseBinary(p);
+    }
+
+    public VoidValue caseAfter(AfterPattern p) {
+      return caseBinary(p);
+    }
+
+    public VoidValue caseOneOrMore(OneOrMorePattern p) {
+      add(p.getOperand());
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseElement(ElementPattern p) {
+      add(p.getContent());
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseAttribute(AttributePattern p) {
+      add(p.getContent());
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseDataExcept(DataExceptPattern p) {
+      add(p.getExcept());
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseList(ListPattern p) {
+      add(p.getOperand());
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseOther(Pattern p) {
+      return VoidValue.VOID;
+    }
+  }
+
   private void noteDatatype(Datatype dt) {
     if (dt.getIdType() != Datatype.ID_TYPE_NULL)
       idTypes = true;
@@ -0,0 +1,140 @@
+package com.thaiopensource.relaxng.pattern;
+
+import com.thaiopensource.util.VoidValue;
+import com.thaiopensource.xml.util.Name;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The element patterns of a schema in which the name of an element alone determines
+ * the pattern for its attributes and content, indexed by name. This holds when the name
+ * class of every element pattern contains only specific names (no anyName or nsName), and all
+ * the element patterns whose name classes contain the same name have the same content.
+ * Schemas converted from DTDs always have this property.
+ * <p>
+ * In such a schema the attributes and content of an element can be validated separately from
+ * the rest of the document, starting from the element pattern for its name.
+ * Instances are immutable and can be used by multiple threads concurrently.
+ */
+public class SingleTypeGrammar {
+  private final Map<Name, Pattern> elements;
+
+  private SingleTypeGrammar(Map<Name, Pattern> elements) {
+    this.elements = elements;
+  }
+
+  /**
+   * Analyzes a schema.
+   * @param start the start pattern of the schema
+   * @return the element patterns of the schema indexed by name, or null if the name of an element
+   * does not determine its content
+   */
+  static public SingleTypeGrammar analyze(Pattern start) {
+    AnalyzeFunction f = new AnalyzeFunction();
+    start.apply(f);
+    if (f.failed)
+      return null;
+    return new SingleTypeGrammar(f.elements);
+  }
+
+  /**
+   * Returns the element pattern for elements with a specific name.
+   * @param name the name of the element
+   * @return the element pattern, or null if the schema does not allow elements with the name
+   */
+  public Pattern getElement(Name name) {
+    return elements.get(name);
+  }
+
+  static private class AnalyzeFunction extends AbstractPatternFunction<VoidValue> implements NameClassVisitor {
+    private final Map<Name, Pattern> elements = new HashMap<Name, Pattern>();
+    private final Set<Pattern> processed = new HashSet<Pattern>();
+    private ElementPattern current;
+    private boolean failed = false;
+
+    private boolean haveProcessed(Pattern p) {
+      if (failed || processed.contains(p))
+        return true;
+      processed.add(p);
+      return false;
+    }
+
+    private VoidValue caseBinary(BinaryPattern p) {
+      if (!haveProcessed(p)) {
+        p.getOperand1().apply(this);
+        p.getOperand2().apply(this);
+      }
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseGroup(GroupPattern p) {
+      return caseBinary(p);
+    }
+
+    public VoidValue caseInterleave(InterleavePattern p) {
+      return caseBinary(p);
+    }
+
+    public VoidValue caseChoice(ChoicePattern p) {
+      return caseBinary(p);
+    }
+
+    public VoidValue caseOneOrMore(OneOrMorePattern p) {
+      if (!haveProcessed(p))
+        p.getOperand().apply(this);
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseElement(ElementPattern p) {
+      if (!haveProcessed(p)) {
+        current = p;
+        p.getNameClass().accept(this);
+        p.getContent().apply(this);
+      }
+      return VoidValue.VOID;
+    }
+
+    public VoidValue caseOther(Pattern p) {
+      return VoidValue.VOID;
+    }
+
+    public void visitName(Name name) {
+      Pattern p = elements.get(name);
+      if (p == null)
+        elements.put(name, current);
+      else if (((ElementPattern)p).getContent() != current.getContent())
+        failed = true;
+    }
+
+    public void visitChoice(NameClass nc1, NameClass nc2) {
+      nc1.accept(this);
+      nc2.accept(this);
+    }
+
+    public void visitNull() {
+    }
+
+    public void visitNsName(String ns) {
+      failed = true;
+    }
+
+    public void visitNsNameExcept(String ns, NameClass nc) {
+      failed = true;
+    }
+
+    public void visitAnyName() {
+      failed = true;
+    }
+
+    public void visitAnyNameExcept(NameClass nc) {
+      failed = true;
+    }
+
+    public void visitError() {
+      failed = true;
+    }
+  }
+}
@@ -28,7 +28,7 @@ class StartAttributeDerivFunction extends StartTagOpenDerivFunction {
   }
 
   public Pattern caseAttribute(AttributePattern p) {
-    if (!p.getNameClass().contains(getName()))
+    if (!p.nameClassContains(getName()))
       return getPatternBuilder().makeNotAllowed();
     return getPatternBuilder().makeAfter(p.getContent(),
 					 getPatternBuilder().makeEmpty());
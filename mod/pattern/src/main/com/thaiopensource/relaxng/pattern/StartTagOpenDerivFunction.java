@@ -65,7 +65,7 @@ class StartTagOpenDerivFunction extends AbstractPatternFunction<Pattern> {
 
 
   public Pattern caseElement(ElementPattern p) {
-    if (!p.getNameClass().contains(name))
+    if (!p.nameClassContains(name))
       return builder.makeNotAllowed();
     return builder.makeAfter(p.getContent(), builder.makeEmpty());
   }
@@ -11,6 +11,15 @@ public class Context extends DtdContext implements MatchContext {
   public Context() {
   }
 
+  /**
+   * Creates a context that initially has the same namespace declarations as another context
+   * and that shares the notations and unparsed entities declared in its DTD.
+   */
+  Context(Context context) {
+    super(context);
+    this.prefixMapping = context.prefixMapping;
+  }
+
   public void startPrefixMapping(String prefix, String uri) throws SAXException {
     prefixMapping = new PrefixMapping(prefix, "".equals(uri) ? null : uri, prefixMapping);
   }
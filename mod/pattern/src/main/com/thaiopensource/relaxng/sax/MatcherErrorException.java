@@ -0,0 +1,53 @@
+package com.thaiopensource.relaxng.sax;
+
+import com.thaiopensource.relaxng.match.MatchContext;
+import com.thaiopensource.relaxng.pattern.PatternMatcher;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXParseException;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * A SAXParseException reporting the current error of a PatternMatcher, whose message is
+ * constructed only if it is requested.
+ * <p>
+ * The copy of the matcher shares the ValidatorPatternBuilder of the matcher from which it was copied,
+ * which is not safe for concurrent use. So the message must be requested on the thread that reported
+ * the error, before that matcher is used by another thread; code that keeps the exception for longer
+ * than the call that reported it should call <code>getMessage</code> first.
+ */
+class MatcherErrorException extends SAXParseException {
+  /**
+   * null once the message has been constructed
+   */
+  private transient PatternMatcher matcher;
+  private transient MatchContext context;
+  private String message;
+
+  /**
+   * @param matcher a PatternMatcher, which must not be used to match anything further
+   * @param context a context with the namespace declarations in scope where the error occurred,
+   * which must not be changed
+   * @param locator the location of the error
+   */
+  MatcherErrorException(PatternMatcher matcher, MatchContext context, Locator locator) {
+    super(null, locator);
+    this.matcher = matcher;
+    this.context = context;
+  }
+
+  public synchronized String getMessage() {
+    if (matcher != null) {
+      message = matcher.getErrorMessage(context);
+      matcher = null;
+      context = null;
+    }
+    return message;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    getMessage();
+    out.defaultWriteObject();
+  }
+}
@@ -0,0 +1,630 @@
+package com.thaiopensource.relaxng.sax;
+
+import com.thaiopensource.relaxng.match.Matcher;
+import com.thaiopensource.relaxng.pattern.Pattern;
+import com.thaiopensource.relaxng.pattern.PatternMatcher;
+import com.thaiopensource.relaxng.pattern.SchemaPatternBuilder;
+import com.thaiopensource.relaxng.pattern.SingleTypeGrammar;
+import com.thaiopensource.relaxng.pattern.ValidatorPatternBuilder;
+import com.thaiopensource.xml.util.Name;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A validator that validates the elements of a document on worker threads, for a schema
+ * in which the name of an element determines its content.
+ * <p>
+ * The document element and its start-tags and end-tags are matched on the thread delivering
+ * the events. Each child of the document element is matched there as a whole, using
+ * <code>PatternMatcher.matchElementSeparately</code>; the events from its start-tag to its end-tag
+ * are copied together with their location, and the attributes and content of the element are
+ * validated on a worker thread, starting from the element pattern for its name.
+ * Consecutive elements are collected into chunks, so that each worker validates many small elements
+ * at a time. When a single element has too many events, it is validated on the thread delivering the
+ * events after all, and its children are validated separately instead.
+ * <p>
+ * Errors are reported in document order, as soon as all the errors that precede them are known.
+ * Each worker has its own pattern builder, because pattern builders are not thread-safe.
+ */
+public class ParallelPatternValidator extends PatternValidator {
+  /**
+   * The number of events in a chunk after which the chunk is given to a worker.
+   */
+  private static final int CHUNK_SIZE = 4096;
+
+  /**
+   * The number of events of a single element after which the element is validated
+   * on the thread delivering the events.
+   */
+  private static final int MAX_ELEMENT_SIZE = 64*1024;
+
+  private static final int WARNING = 0;
+  private static final int ERROR = 1;
+  private static final int FATAL_ERROR = 2;
+
+  /**
+   * Shared by all start tags without attributes.
+   */
+  private static final Attributes NO_ATTRIBUTES = new AttributesImpl();
+
+  /**
+   * Threads running the workers.
+   */
+  private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "rng-element-validator");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /**
+   * A content handler event together with the location where it occurred.
+   */
+  static private abstract class Event {
+    String publicId;
+    String systemId;
+    int lineNumber = -1;
+    int columnNumber = -1;
+
+    abstract void deliver(ContentHandler handler) throws SAXException;
+  }
+
+  static private class StartPrefixMappingEvent extends Event {
+    private final String prefix;
+    private final String uri;
+
+    StartPrefixMappingEvent(String prefix, String uri) {
+      this.prefix = prefix;
+      this.uri = uri;
+    }
+
+    void deliver(ContentHandler handler) throws SAXException {
+      handler.startPrefixMapping(prefix, uri);
+    }
+  }
+
+  static private class EndPrefixMappingEvent extends Event {
+    private final String prefix;
+
+    EndPrefixMappingEvent(String prefix) {
+      this.prefix = prefix;
+    }
+
+    void deliver(ContentHandler handler) throws SAXException {
+      handler.endPrefixMapping(prefix);
+    }
+  }
+
+  static private class StartElementEvent extends Event {
+    private final String uri;
+    private final String localName;
+    private final String qName;
+    private final Attributes attributes;
+
+    StartElementEvent(String uri, String localName, String qName, Attributes attributes) {
+      this.uri = uri;
+      this.localName = localName;
+      this.qName = qName;
+      this.attributes = attributes;
+    }
+
+    void deliver(ContentHandler handler) throws SAXException {
+      handler.startElement(uri, localName, qName, attributes);
+    }
+  }
+
+  static private class EndElementEvent extends Event {
+    private final String uri;
+    private final String localName;
+    private final String qName;
+
+    EndElementEvent(String uri, String localName, String qName) {
+      this.uri = uri;
+      this.localName = localName;
+      this.qName = qName;
+    }
+
+    void deliver(ContentHandler handler) throws SAXException {
+      handler.endElement(uri, localName, qName);
+    }
+  }
+
+  static private class CharactersEvent extends Event {
+    private final char[] ch;
+
+    CharactersEvent(char[] ch) {
+      this.ch = ch;
+    }
+
+    void deliver(ContentHandler handler) throws SAXException {
+      handler.characters(ch, 0, ch.length);
+    }
+  }
+
+  /**
+   * An error reported by a validator, which is reported to the error handler later.
+   */
+  static private class Report {
+    final int severity;
+    final SAXParseException exception;
+
+    Report(int severity, SAXParseException exception) {
+      this.severity = severity;
+      this.exception = exception;
+      // the message may depend on the matcher that reported the error, which will be reused
+      exception.getMessage();
+    }
+  }
+
+  /**
+   * An element whose attributes and content are validated separately.
+   */
+  static private class Subtree {
+    final Pattern element;
+    /**
+     * The context of the element, including the namespace declarations on the element.
+     */
+    final Context context;
+    /**
+     * The namespace declarations on the element, as pairs of prefix and URI.
+     */
+    final List<String[]> mappings;
+    /**
+     * The matcher of the validator as it was before the element was matched.
+     */
+    final Matcher saved;
+    /**
+     * The events from the start-tag of the element up to its end-tag.
+     */
+    final List<Event> events = new ArrayList<Event>();
+    int depth = 0;
+
+    Subtree(Pattern element, Context context, List<String[]> mappings, Matcher saved) {
+      this.element = element;
+      this.context = context;
+      this.mappings = mappings;
+      this.saved = saved;
+    }
+  }
+
+  /**
+   * Consecutive elements validated together by a worker.
+   */
+  private class Chunk implements Callable<Object>, ErrorHandler, Locator {
+    private List<Subtree> subtrees = new ArrayList<Subtree>();
+    private int size = 0;
+    private final List<Report> reports = new ArrayList<Report>();
+    private Event current;
+    Future<Object> future;
+
+    void add(Subtree subtree) {
+      subtrees.add(subtree);
+      size += subtree.events.size();
+    }
+
+    public Object call() throws SAXException, InterruptedException {
+      PatternMatcher matcher = matchers.take();
+      try {
+        for (Subtree subtree : subtrees) {
+          PatternValidator validator = new PatternValidator(matcher.startElementSeparately(subtree.element),
+                                                            this,
+                                                            subtree.context);
+          validator.setDocumentLocator(this);
+          for (Event event : subtree.events) {
+            current = event;
+            event.deliver(validator);
+          }
+        }
+      }
+      finally {
+        matchers.add(matcher);
+        subtrees = null;
+        current = null;
+      }
+      return null;
+    }
+
+    public void warning(SAXParseException exception) {
+      reports.add(new Report(WARNING, exception));
+    }
+
+    public void error(SAXParseException exception) {
+      reports.add(new Report(ERROR, exception));
+    }
+
+    public void fatalError(SAXParseException exception) {
+      reports.add(new Report(FATAL_ERROR, exception));
+    }
+
+    public String getPublicId() {
+      return current.publicId;
+    }
+
+    public String getSystemId() {
+      return current.systemId;
+    }
+
+    public int getLineNumber() {
+      return current.lineNumber;
+    }
+
+    public int getColumnNumber() {
+      return current.columnNumber;
+    }
+  }
+
+  /**
+   * The error handler used on the thread delivering the events.
+   */
+  static private class MainErrorHandler implements ErrorHandler {
+    private ParallelPatternValidator validator;
+
+    public void warning(SAXParseException exception) throws SAXException {
+      validator.report(new Report(WARNING, exception));
+    }
+
+    public void error(SAXParseException exception) throws SAXException {
+      validator.report(new Report(ERROR, exception));
+    }
+
+    public void fatalError(SAXParseException exception) throws SAXException {
+      validator.report(new Report(FATAL_ERROR, exception));
+    }
+  }
+
+  /**
+   * The locator used on the thread delivering the events: gives the location of the event
+   * being replayed, if any, and otherwise the location of the document locator.
+   */
+  private final Locator mainLocator = new Locator() {
+    public String getPublicId() {
+      if (replaying != null)
+        return replaying.publicId;
+      return locator == null ? null : locator.getPublicId();
+    }
+
+    public String getSystemId() {
+      if (replaying != null)
+        return replaying.systemId;
+      return locator == null ? null : locator.getSystemId();
+    }
+
+    public int getLineNumber() {
+      if (replaying != null)
+        return replaying.lineNumber;
+      return locator == null ? -1 : locator.getLineNumber();
+    }
+
+    public int getColumnNumber() {
+      if (replaying != null)
+        return replaying.columnNumber;
+      return locator == null ? -1 : locator.getColumnNumber();
+    }
+  };
+
+  private final Pattern start;
+  private final SchemaPatternBuilder spb;
+  private final SingleTypeGrammar grammar;
+  private final int threads;
+  private final ErrorHandler eh;
+  /**
+   * The matchers of the workers that are not in use, each with its own pattern builder.
+   */
+  private final BlockingQueue<PatternMatcher> matchers = new LinkedBlockingQueue<PatternMatcher>();
+  private int matcherCount = 0;
+  /**
+   * The chunks and the errors not yet reported, in document order.
+   */
+  private final LinkedList<Object> pending = new LinkedList<Object>();
+  /**
+   * The number of chunks in pending that have been given to a worker.
+   */
+  private int submittedCount = 0;
+  /**
+   * The chunk being collected; this is also the last member of pending.
+   */
+  private Chunk chunk;
+  /**
+   * The element being copied, or null if the events are being validated on this thread.
+   */
+  private Subtree subtree;
+  /**
+   * The namespace declarations for the next start-tag, as pairs of prefix and URI.
+   */
+  private final List<String[]> mappings = new ArrayList<String[]>();
+  /**
+   * The number of elements open on this thread.
+   */
+  private int depth = 0;
+  /**
+   * The number of endPrefixMapping events that belong to the last element validated separately.
+   */
+  private int skipEndPrefixMappings = 0;
+  private Locator locator;
+  /**
+   * The event being replayed, or null.
+   */
+  private Event replaying;
+
+  /**
+   * Creates a validator.
+   * @param start the start pattern of the schema
+   * @param spb the pattern builder of the schema, from which the pattern builders of
+   * this validator and of its workers are created
+   * @param grammar the result of <code>SingleTypeGrammar.analyze(start)</code>; must not be null
+   * @param threads the maximum number of workers
+   * @param eh the error handler
+   */
+  public ParallelPatternValidator(Pattern start, SchemaPatternBuilder spb, SingleTypeGrammar grammar,
+                                  int threads, ErrorHandler eh) {
+    this(start, spb, grammar, threads, eh, new MainErrorHandler());
+  }
+
+  private ParallelPatternValidator(Pattern start, SchemaPatternBuilder spb, SingleTypeGrammar grammar,
+                                   int threads, ErrorHandler eh, MainErrorHandler meh) {
+    super(start, new ValidatorPatternBuilder(spb), meh);
+    meh.validator = this;
+    this.start = start;
+    this.spb = spb;
+    this.grammar = grammar;
+    this.threads = threads;
+    this.eh = eh;
+  }
+
+  public void setDocumentLocator(Locator locator) {
+    this.locator = locator;
+    super.setDocumentLocator(mainLocator);
+  }
+
+  public void endDocument() throws SAXException {
+    closeChunk();
+    reportPending(true);
+    super.endDocument();
+  }
+
+  public void startPrefixMapping(String prefix, String uri) throws SAXException {
+    if (subtree != null)
+      add(new StartPrefixMappingEvent(prefix, uri));
+    else
+      mappings.add(new String[] { prefix, uri });
+  }
+
+  public void endPrefixMapping(String prefix) throws SAXException {
+    if (subtree != null)
+      add(new EndPrefixMappingEvent(prefix));
+    else if (skipEndPrefixMappings > 0)
+      --skipEndPrefixMappings;
+    else
+      super.endPrefixMapping(prefix);
+  }
+
+  public void startElement(String namespaceURI, String localName, String qName, Attributes atts)
+          throws SAXException {
+    if (subtree != null) {
+      subtree.depth++;
+      add(new StartElementEvent(namespaceURI, localName, qName,
+                                atts.getLength() == 0 ? NO_ATTRIBUTES : new AttributesImpl(atts)));
+      return;
+    }
+    skipEndPrefixMappings = 0;
+    // never validate the document element separately, since that would leave nothing to do in parallel
+    Pattern element = depth == 0 ? null : grammar.getElement(new Name(namespaceURI, localName));
+    if (element != null) {
+      Matcher saved = matchElementSeparately(namespaceURI, localName, element);
+      if (saved != null) {
+        Context context = new Context(this);
+        for (String[] mapping : mappings)
+          context.startPrefixMapping(mapping[0], mapping[1]);
+        subtree = new Subtree(element, context, new ArrayList<String[]>(mappings), saved);
+        mappings.clear();
+        subtree.depth = 1;
+        add(new StartElementEvent(namespaceURI, localName, qName,
+                                  atts.getLength() == 0 ? NO_ATTRIBUTES : new AttributesImpl(atts)));
+        return;
+      }
+    }
+    startElementHere(namespaceURI, localName, qName, atts);
+  }
+
+  private void startElementHere(String namespaceURI, String localName, String qName, Attributes atts)
+          throws SAXException {
+    for (String[] mapping : mappings)
+      super.startPrefixMapping(mapping[0], mapping[1]);
+    mappings.clear();
+    depth++;
+    super.startElement(namespaceURI, localName, qName, atts);
+  }
+
+  public void endElement(String namespaceURI, String localName, String qName) throws SAXException {
+    if (subtree != null) {
+      Subtree s = subtree;
+      add(new EndElementEvent(namespaceURI, localName, qName));
+      // if the element was validated here instead, replaying its events has dealt with this event
+      if (subtree == s && --s.depth == 0)
+        endSubtree();
+      return;
+    }
+    skipEndPrefixMappings = 0;
+    depth--;
+    super.endElement(namespaceURI, localName, qName);
+  }
+
+  public void characters(char ch[], int start, int length) throws SAXException {
+    if (subtree != null) {
+      char[] copy = new char[length];
+      System.arraycopy(ch, start, copy, 0, length);
+      add(new CharactersEvent(copy));
+    }
+    else
+      super.characters(ch, start, length);
+  }
+
+  public void reset() {
+    super.reset();
+    // a validation that was abandoned leaves its remaining errors unreported
+    for (Object obj : pending) {
+      if (obj instanceof Chunk && ((Chunk)obj).future != null)
+        ((Chunk)obj).future.cancel(false);
+    }
+    pending.clear();
+    submittedCount = 0;
+    chunk = null;
+    subtree = null;
+    mappings.clear();
+    depth = 0;
+    skipEndPrefixMappings = 0;
+    locator = null;
+    replaying = null;
+  }
+
+  private void add(Event event) throws SAXException {
+    Locator loc = mainLocator;
+    event.publicId = loc.getPublicId();
+    event.systemId = loc.getSystemId();
+    event.lineNumber = loc.getLineNumber();
+    event.columnNumber = loc.getColumnNumber();
+    subtree.events.add(event);
+    if (subtree.events.size() > MAX_ELEMENT_SIZE)
+      validateHere();
+  }
+
+  private void endSubtree() throws SAXException {
+    Subtree s = subtree;
+    subtree = null;
+    skipEndPrefixMappings = s.mappings.size();
+    if (chunk == null) {
+      chunk = new Chunk();
+      pending.add(chunk);
+    }
+    chunk.add(s);
+    if (chunk.size >= CHUNK_SIZE)
+      closeChunk();
+  }
+
+  /**
+   * Validates the element being copied on this thread after all, by replaying its events;
+   * its children are then validated separately.
+   */
+  private void validateHere() throws SAXException {
+    Subtree s = subtree;
+    subtree = null;
+    restoreMatcher(s.saved);
+    Event saved = replaying;
+    try {
+      Iterator<Event> iter = s.events.iterator();
+      StartElementEvent event = (StartElementEvent)iter.next();
+      replaying = event;
+      mappings.addAll(s.mappings);
+      startElementHere(event.uri, event.localName, event.qName, event.attributes);
+      while (iter.hasNext()) {
+        replaying = iter.next();
+        replaying.deliver(this);
+      }
+    }
+    finally {
+      replaying = saved;
+    }
+  }
+
+  private void closeChunk() throws SAXException {
+    if (chunk == null)
+      return;
+    if (matchers.isEmpty() && matcherCount < threads) {
+      matchers.add(new PatternMatcher(start, new ValidatorPatternBuilder(spb)));
+      matcherCount++;
+    }
+    chunk.future = executor.submit(chunk);
+    chunk = null;
+    submittedCount++;
+    reportPending(false);
+  }
+
+  private void report(Report report) throws SAXException {
+    // a chunk must not contain elements that follow the error
+    closeChunk();
+    if (pending.isEmpty())
+      deliver(report);
+    else
+      pending.add(report);
+  }
+
+  /**
+   * Reports the errors in pending that can be reported in document order.
+   * @param all true if this should wait until all the chunks have been validated; otherwise
+   * this waits only while too many chunks have been given to workers
+   */
+  private void reportPending(boolean all) throws SAXException {
+    while (!pending.isEmpty()) {
+      Object obj = pending.getFirst();
+      if (obj instanceof Chunk) {
+        Chunk c = (Chunk)obj;
+        if (c.future == null)
+          break;
+        if (!all && !c.future.isDone() && submittedCount <= threads * 2)
+          break;
+        waitFor(c.future);
+        pending.removeFirst();
+        submittedCount--;
+        for (Report report : c.reports)
+          deliver(report);
+      }
+      else {
+        pending.removeFirst();
+        deliver((Report)obj);
+      }
+    }
+  }
+
+  private void deliver(Report report) throws SAXException {
+    switch (report.severity) {
+    case WARNING:
+      eh.warning(report.exception);
+      break;
+    case ERROR:
+      eh.error(report.exception);
+      break;
+    default:
+      eh.fatalError(report.exception);
+      break;
+    }
+  }
+
+  private static void waitFor(Future<Object> future) throws SAXException {
+    try {
+      future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SAXException(e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SAXException)
+        throw (SAXException)cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      if (cause instanceof Error)
+        throw (Error)cause;
+      throw new SAXException((Exception)cause);
+    }
+  }
+}
@@ -24,10 +24,7 @@ public class PatternValidator extends Context implements ContentHandler, DTDHand
 			   String localName,
 			   String qName,
 			   Attributes atts) throws SAXException {
-    if (bufferingCharacters) {
-      bufferingCharacters = false;
-      check(matcher.matchTextBeforeStartTag(charBuf.toString(), this));
-    }
+    flushCharacters();
     Name name = new Name(namespaceURI, localName);
     check(matcher.matchStartTagOpen(name, qName, this));
     int len = atts.getLength();
@@ -92,11 +89,34 @@ public class PatternValidator extends Context implements ContentHandler, DTDHand
   public void ignorableWhitespace(char[] ch, int start, int len) { }
 
   public void startPrefixMapping(String prefix, String uri) throws SAXException {
+    flushCharacters();
+    super.startPrefixMapping(prefix, uri);
+  }
+
+  private void flushCharacters() throws SAXException {
     if (bufferingCharacters) {
       bufferingCharacters = false;
       check(matcher.matchTextBeforeStartTag(charBuf.toString(), this));
     }
-    super.startPrefixMapping(prefix, uri);
+  }
+
+  /**
+   * Matches an element whose attributes and content are validated separately.
+   * @return a copy of the matcher as it was before the element was matched, which can be passed
+   * to <code>restoreMatcher</code> to validate the element in the usual way after all; or null if
+   * the element cannot be validated separately, in which case the element has not been matched
+   * @see PatternMatcher#matchElementSeparately
+   */
+  Matcher matchElementSeparately(String namespaceURI, String localName, Pattern element) throws SAXException {
+    flushCharacters();
+    Matcher saved = matcher.copy();
+    if (!((PatternMatcher)matcher).matchElementSeparately(new Name(namespaceURI, localName), element))
+      return null;
+    return saved;
+  }
+
+  void restoreMatcher(Matcher saved) {
+    matcher = saved;
   }
 
   public PatternValidator(Pattern pattern, ValidatorPatternBuilder builder, ErrorHandler eh) {
@@ -104,6 +124,18 @@ public class PatternValidator extends Context implements ContentHandler, DTDHand
     this.eh = eh;
   }
 
+  /**
+   * Creates a validator for part of a document.
+   * @param matcher the matcher in the state for the start of the part
+   * @param eh the error handler
+   * @param context the context in which the part occurs
+   */
+  PatternValidator(Matcher matcher, ErrorHandler eh, Context context) {
+    super(context);
+    this.matcher = matcher;
+    this.eh = eh;
+  }
+
   public void reset() {
     super.reset();
     bufferingCharacters = false;
@@ -112,7 +144,9 @@ public class PatternValidator extends Context implements ContentHandler, DTDHand
   }
 
   private void check(boolean ok) throws SAXException {
+    // the message is constructed only if the ErrorHandler asks for it, from a copy of the matcher
+    // and of the namespace declarations, since both change as validation continues
     if (!ok)
-      eh.error(new SAXParseException(matcher.getErrorMessage(), locator));
+      eh.error(new MatcherErrorException((PatternMatcher)matcher.copy(), new Context(this), locator));
   }
 }
@@ -0,0 +1,119 @@
+package com.thaiopensource.relaxng.pattern;
+
+import com.thaiopensource.relaxng.match.IncrementalValidator;
+import com.thaiopensource.relaxng.sax.Context;
+import com.thaiopensource.xml.util.Name;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.xml.sax.Locator;
+import org.xml.sax.helpers.LocatorImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test IncrementalValidator.
+ */
+public class IncrementalValidatorTest extends SchemaPatternBuilder {
+  static private final Name doc = new Name("", "doc");
+  static private final Name a = new Name("", "a");
+  static private final Name b = new Name("", "b");
+  static private final int CHILDREN = 100;
+  private final Context context = new Context();
+
+  private IncrementalValidator createValidator() {
+    final Locator loc = new LocatorImpl();
+    // element doc { (element a { empty } | element b { empty })* }
+    Pattern start = makeElement(new SimpleNameClass(doc),
+                                makeOptional(makeOneOrMore(makeChoice(makeElement(new SimpleNameClass(a), makeEmpty(), loc),
+                                                                      makeElement(new SimpleNameClass(b), makeEmpty(), loc)))),
+                                loc);
+    return new IncrementalValidator(new PatternMatcher(start, new ValidatorPatternBuilder(this)), 4);
+  }
+
+  private List<IncrementalValidator.Event> element(Name name) {
+    List<IncrementalValidator.Event> events = new ArrayList<IncrementalValidator.Event>();
+    events.add(IncrementalValidator.startTagOpen(name, name.getLocalName(), context));
+    events.add(IncrementalValidator.startTagClose(name, name.getLocalName(), context));
+    events.add(IncrementalValidator.endTag(name, name.getLocalName(), context));
+    return events;
+  }
+
+  private List<IncrementalValidator.Event> document(List<Name> children) {
+    List<IncrementalValidator.Event> events = new ArrayList<IncrementalValidator.Event>();
+    events.add(IncrementalValidator.startTagOpen(doc, "doc", context));
+    events.add(IncrementalValidator.startTagClose(doc, "doc", context));
+    for (Name name : children)
+      events.addAll(element(name));
+    events.add(IncrementalValidator.endTag(doc, "doc", context));
+    return events;
+  }
+
+  private List<IncrementalValidator.Event> document() {
+    return document(children());
+  }
+
+  private static List<Name> children() {
+    List<Name> children = new ArrayList<Name>();
+    for (int i = 0; i < CHILDREN; i++)
+      children.add(i % 2 == 0 ? a : b);
+    return children;
+  }
+
+  /**
+   * Returns the index of the first event of a child of the document element.
+   */
+  private static int child(int i) {
+    return 2 + 3*i;
+  }
+
+  @Test
+  public void testValidate() {
+    IncrementalValidator v = createValidator();
+    List<IncrementalValidator.Event> events = document();
+    Assert.assertEquals(v.replace(0, 0, events), events.size());
+    Assert.assertEquals(v.getErrorCount(), 0);
+    Assert.assertEquals(v.getEvents(), events);
+  }
+
+  @Test
+  public void testEdit() {
+    IncrementalValidator v = createValidator();
+    v.replace(0, 0, document());
+    int child = child(CHILDREN/2);
+    // matching stops soon after the replaced events
+    Assert.assertTrue(v.replace(child, child + 3, element(doc)) < 20);
+    Assert.assertEquals(v.getErrorCount(), 1);
+    Assert.assertEquals(v.getEvents().get(child).getErrors().size(), 1);
+    // and also when the replacement corrects an error
+    Assert.assertTrue(v.replace(child, child + 3, element(b)) < 20);
+    Assert.assertEquals(v.getErrorCount(), 0);
+    Assert.assertTrue(v.replace(child, child + 3, Collections.<IncrementalValidator.Event>emptyList()) < 20);
+    Assert.assertEquals(v.getErrorCount(), 0);
+  }
+
+  @Test
+  public void testSameAsValidatingAgain() {
+    IncrementalValidator v = createValidator();
+    List<Name> children = children();
+    v.replace(0, 0, document(children));
+    v.replace(child(6), child(7), element(doc));
+    children.set(6, doc);
+    v.replace(child(10), child(11), element(doc));
+    children.set(10, doc);
+    v.replace(child(13), child(13), element(doc));
+    children.add(13, doc);
+    v.replace(child(6), child(7), element(a));
+    children.set(6, a);
+    v.replace(child(0), child(1), Collections.<IncrementalValidator.Event>emptyList());
+    children.remove(0);
+    IncrementalValidator full = createValidator();
+    full.replace(0, 0, document(children));
+    Assert.assertEquals(v.getErrorCount(), 2);
+    Assert.assertEquals(full.getErrorCount(), 2);
+    Assert.assertEquals(v.getEvents().size(), full.getEvents().size());
+    for (int i = 0; i < v.getEvents().size(); i++)
+      Assert.assertEquals(v.getEvents().get(i).getErrors(), full.getEvents().get(i).getErrors());
+  }
+}
@@ -53,6 +53,28 @@ public class NameClassNormalizerTest {
     Assert.assertEquals(new NameClassNormalizer(nc).normalize(), nnc);
   }
 
+  @Test
+  public void testContains() {
+    final String[] namespaces = { "", "http://www.example.com/1", "http://www.example.com/2", "http://www.example.com/3" };
+    final String[] localNames = { "a", "b", "c", "d" };
+    // anyName - (ns1:* - ns1:a | ns2:* | b) | ns2:c | ns3:* - (ns3:d | ns3:a)
+    NameClass nc
+            = new ChoiceNameClass(new AnyNameExceptNameClass(new ChoiceNameClass(new NsNameExceptNameClass(namespaces[1],
+                                                                                                           new SimpleNameClass(new Name(namespaces[1], "a"))),
+                                                                                 new ChoiceNameClass(new NsNameClass(namespaces[2]),
+                                                                                                     new SimpleNameClass(new Name("", "b"))))),
+                                  new ChoiceNameClass(new SimpleNameClass(new Name(namespaces[2], "c")),
+                                                      new NsNameExceptNameClass(namespaces[3],
+                                                                                new ChoiceNameClass(new SimpleNameClass(new Name(namespaces[3], "d")),
+                                                                                                    new SimpleNameClass(new Name(namespaces[3], "a"))))));
+    NormalizedNameClass nnc = new NameClassNormalizer(nc).normalize();
+    for (String ns : namespaces)
+      for (String localName : localNames) {
+        Name name = new Name(ns, localName);
+        Assert.assertEquals(nnc.contains(name), nc.contains(name), name.toString());
+      }
+  }
+
   static private Set<Name> emptyNameSet() {
     return Collections.emptySet();
   }
@@ -0,0 +1,102 @@
+package com.thaiopensource.relaxng.pattern;
+
+import com.thaiopensource.xml.util.Name;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test DuplicateAttributeDetector and Alphabet.
+ */
+public class OverlapTest {
+  static private final String ns = "http://www.example.com/1";
+  static private final Name a = new Name("", "a");
+  static private final Name b = new Name("", "b");
+  static private final Name c = new Name("", "c");
+  static private final Name nsA = new Name(ns, "a");
+
+  static private NameClass name(Name name) {
+    return new SimpleNameClass(name);
+  }
+
+  static private RestrictionViolationException addAttribute(DuplicateAttributeDetector dad, NameClass nc) {
+    try {
+      dad.addAttribute(nc);
+      return null;
+    }
+    catch (RestrictionViolationException e) {
+      return e;
+    }
+  }
+
+  @Test
+  public void testDuplicateName() {
+    DuplicateAttributeDetector dad = new DuplicateAttributeDetector();
+    Assert.assertNull(addAttribute(dad, name(a)));
+    Assert.assertNull(addAttribute(dad, name(b)));
+    RestrictionViolationException e = addAttribute(dad, name(a));
+    Assert.assertNotNull(e);
+    Assert.assertEquals(e.getMessageId(), "duplicate_attribute_name");
+    Assert.assertEquals(e.getName(), a);
+  }
+
+  @Test
+  public void testChoice() {
+    // (a | (b | a) | b), c, a
+    DuplicateAttributeDetector dad = new DuplicateAttributeDetector();
+    dad.startChoice();
+    Assert.assertNull(addAttribute(dad, name(a)));
+    dad.alternative();
+    dad.startChoice();
+    Assert.assertNull(addAttribute(dad, name(b)));
+    dad.alternative();
+    Assert.assertNull(addAttribute(dad, name(a)));
+    dad.endChoice();
+    dad.alternative();
+    Assert.assertNull(addAttribute(dad, name(b)));
+    dad.endChoice();
+    Assert.assertNull(addAttribute(dad, name(c)));
+    Assert.assertEquals(addAttribute(dad, name(a)).getName(), a);
+  }
+
+  @Test
+  public void testWildcard() {
+    DuplicateAttributeDetector dad = new DuplicateAttributeDetector();
+    Assert.assertNull(addAttribute(dad, new NsNameExceptNameClass(ns, name(nsA))));
+    Assert.assertNull(addAttribute(dad, name(a)));
+    Assert.assertNull(addAttribute(dad, name(nsA)));
+    Assert.assertEquals(addAttribute(dad, name(new Name(ns, "b"))).getName(), new Name(ns, "b"));
+    RestrictionViolationException e = addAttribute(dad, new NsNameClass(ns));
+    Assert.assertEquals(e.getMessageId(), "duplicate_attribute_ns");
+    Assert.assertEquals(e.getNamespaceUri(), ns);
+  }
+
+  static private Alphabet alphabet(NameClass... nameClasses) {
+    Alphabet alphabet = new Alphabet();
+    for (NameClass nc : nameClasses)
+      alphabet.addElement(nc);
+    return alphabet;
+  }
+
+  static private RestrictionViolationException checkOverlap(Alphabet a1, Alphabet a2) {
+    try {
+      a1.checkOverlap(a2);
+      return null;
+    }
+    catch (RestrictionViolationException e) {
+      return e;
+    }
+  }
+
+  @Test
+  public void testAlphabet() {
+    Assert.assertNull(checkOverlap(alphabet(name(a), name(b)), alphabet(name(c), name(nsA))));
+    Assert.assertEquals(checkOverlap(alphabet(name(a), name(b)), alphabet(name(c), name(b))).getName(), b);
+    Alphabet merged = alphabet(name(a));
+    merged.addAlphabet(alphabet(name(b), new NsNameClass(ns)));
+    Assert.assertNull(checkOverlap(merged, alphabet(name(c))));
+    Assert.assertEquals(checkOverlap(merged, alphabet(name(c), name(nsA))).getName(), nsA);
+    RestrictionViolationException e = checkOverlap(merged, alphabet(name(c), new NsNameExceptNameClass(ns, name(nsA))));
+    Assert.assertEquals(e.getMessageId(), "interleave_element_overlap_ns");
+    Assert.assertEquals(e.getNamespaceUri(), ns);
+  }
+}
@@ -120,4 +120,101 @@ public class PatternMatcherTest extends SchemaPatternBuilder {
     Assert.assertEquals(matcher.getErrorMessage(), 
         "element \"root\" missing required attribute \"ns:foo\" (with xmlns:ns=\"http://example.com/\")");
   }
+
+  @Test
+  public void testErrorMessageAfterMatchingContinues() throws SAXException {
+    final Name foo = new Name("http://example.com/", "foo");
+    final Name a = new Name("", "a");
+    final Locator loc = new LocatorImpl();
+    PatternMatcher matcher
+            = (PatternMatcher)rootMatcher(makeElement(new SimpleNameClass(root),
+                                                      makeGroup(makeAttribute(new SimpleNameClass(foo), makeText(), loc),
+                                                                makeElement(new SimpleNameClass(a), makeEmpty(), loc)),
+                                                      loc));
+    Context context = new Context();
+    context.startPrefixMapping("ex", "http://example.com/");
+    Assert.assertTrue(matcher.matchStartTagOpen(root, "", context));
+    Assert.assertFalse(matcher.matchStartTagClose(root, "", context));
+    PatternMatcher copy = (PatternMatcher)matcher.copy();
+    Context declarations = new Context();
+    declarations.startPrefixMapping("ex", "http://example.com/");
+    // the original matcher goes on to another error, and the context changes
+    Assert.assertFalse(matcher.matchEndTag(root, "", context));
+    context.endPrefixMapping("ex");
+    Assert.assertEquals(copy.getErrorMessage(declarations), "element \"root\" missing required attribute \"ex:foo\"");
+    Assert.assertEquals(matcher.getErrorMessage(),
+                        "element \"root\" incomplete; missing required element \"a\"");
+  }
+
+  private PatternMatcher contentMatcher(Pattern content) {
+    Pattern start = makeElement(new SimpleNameClass(root), content, new LocatorImpl());
+    PatternMatcher matcher = (PatternMatcher)rootMatcher(start);
+    Assert.assertTrue(matcher.matchStartTagOpen(root, "", new Context()));
+    Assert.assertTrue(matcher.matchStartTagClose(root, "", new Context()));
+    return matcher;
+  }
+
+  @Test
+  public void testMatchElementSeparately() {
+    final Name a = new Name("", "a");
+    final Name b = new Name("", "b");
+    final Locator loc = new LocatorImpl();
+    Pattern aElement = makeElement(new SimpleNameClass(a), makeEmpty(), loc);
+    Pattern bElement = makeElement(new SimpleNameClass(b), makeText(), loc);
+    PatternMatcher matcher = contentMatcher(makeGroup(aElement, makeOptional(bElement)));
+    // not allowed here
+    PatternMatcher copy = (PatternMatcher)matcher.copy();
+    Assert.assertFalse(matcher.matchElementSeparately(b, bElement));
+    Assert.assertEquals(matcher, copy);
+    Assert.assertTrue(matcher.matchElementSeparately(a, aElement));
+    Assert.assertTrue(matcher.matchElementSeparately(b, bElement));
+    Assert.assertTrue(matcher.matchEndTag(root, "", new Context()));
+    Assert.assertTrue(matcher.matchEndDocument());
+  }
+
+  @Test
+  public void testMatchElementSeparatelyOtherPattern() {
+    final Name a = new Name("", "a");
+    final Name b = new Name("", "b");
+    final Locator loc = new LocatorImpl();
+    Pattern emptyElement = makeElement(new SimpleNameClass(a), makeEmpty(), loc);
+    Pattern otherElement = makeElement(new SimpleNameClass(a),
+                                       makeElement(new SimpleNameClass(b), makeEmpty(), loc),
+                                       loc);
+    // the start-tag is allowed, but the element would not be matched by the element pattern alone
+    PatternMatcher matcher = contentMatcher(makeChoice(emptyElement, otherElement));
+    PatternMatcher copy = (PatternMatcher)matcher.copy();
+    Assert.assertFalse(matcher.matchElementSeparately(a, emptyElement));
+    Assert.assertEquals(matcher, copy);
+    Assert.assertFalse(matcher.matchElementSeparately(a, otherElement));
+    Assert.assertEquals(matcher, copy);
+    Assert.assertTrue(matcher.matchStartTagOpen(a, "", new Context()));
+  }
+
+  @Test
+  public void testStartElementSeparately() {
+    final Name a = new Name("", "a");
+    final Name b = new Name("", "b");
+    final Locator loc = new LocatorImpl();
+    Pattern bElement = makeElement(new SimpleNameClass(b), makeEmpty(), loc);
+    Pattern aElement = makeElement(new SimpleNameClass(a), makeOneOrMore(bElement), loc);
+    PatternMatcher matcher = contentMatcher(makeZeroOrMore(aElement));
+    Assert.assertTrue(matcher.matchElementSeparately(a, aElement));
+    Matcher element = matcher.startElementSeparately(aElement);
+    Context context = new Context();
+    Assert.assertTrue(element.matchStartTagOpen(a, "", context));
+    Assert.assertTrue(element.matchStartTagClose(a, "", context));
+    Assert.assertTrue(element.matchStartTagOpen(b, "", context));
+    Assert.assertTrue(element.matchStartTagClose(b, "", context));
+    Assert.assertTrue(element.matchEndTag(b, "", context));
+    Assert.assertTrue(element.matchEndTag(a, "", context));
+    // the content of the element is validated as usual
+    element = matcher.startElementSeparately(aElement);
+    Assert.assertTrue(element.matchStartTagOpen(a, "", context));
+    Assert.assertTrue(element.matchStartTagClose(a, "", context));
+    Assert.assertFalse(element.matchEndTag(a, "", context));
+    Assert.assertEquals(element.getErrorMessage(), "element \"a\" incomplete; missing required element \"b\"");
+    // the matcher that matched the element separately is not affected
+    Assert.assertTrue(matcher.matchEndTag(root, "", context));
+  }
 }
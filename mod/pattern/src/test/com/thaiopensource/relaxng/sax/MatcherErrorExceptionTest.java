@@ -0,0 +1,110 @@
+package com.thaiopensource.relaxng.sax;
+
+import com.thaiopensource.relaxng.match.MatchablePattern;
+import com.thaiopensource.relaxng.match.MatchablePatternLoader;
+import com.thaiopensource.resolver.Input;
+import com.thaiopensource.resolver.xml.sax.SAXResolver;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test that the message of a MatcherErrorException does not depend on what the matcher that
+ * reported it does afterwards.
+ */
+public class MatcherErrorExceptionTest {
+  static private final String SCHEMA = "element doc { element a { empty }, element b { empty }* }";
+
+  static private class RecordingErrorHandler implements ErrorHandler {
+    final List<SAXParseException> errors = new ArrayList<SAXParseException>();
+
+    public void warning(SAXParseException exception) {
+      errors.add(exception);
+    }
+
+    public void error(SAXParseException exception) {
+      errors.add(exception);
+    }
+
+    public void fatalError(SAXParseException exception) {
+      errors.add(exception);
+    }
+  }
+
+  static private MatchablePattern load() throws Exception {
+    Input input = new Input();
+    input.setCharacterStream(new StringReader(SCHEMA));
+    return new MatchablePatternLoader().load(input, new SAXResolver(), null, null,
+                                             MatchablePatternLoader.COMPACT_SYNTAX_FLAG);
+  }
+
+  static private void validate(PatternValidator validator, String... children) throws SAXException {
+    AttributesImpl atts = new AttributesImpl();
+    validator.startDocument();
+    validator.startElement("", "doc", "doc", atts);
+    for (String child : children) {
+      validator.startElement("", child, child, atts);
+      validator.endElement("", child, child);
+    }
+    validator.endElement("", "doc", "doc");
+    validator.endDocument();
+    validator.reset();
+  }
+
+  @Test
+  public void testMessageAfterReuse() throws Exception {
+    MatchablePattern pattern = load();
+    RecordingErrorHandler eh = new RecordingErrorHandler();
+    PatternValidator validator = new PatternValidator(pattern.createMatcher(), eh, new Context());
+    validate(validator, "b");
+    Assert.assertEquals(eh.errors.size(), 1);
+    SAXParseException first = eh.errors.get(0);
+    // reuse the matcher, whose ValidatorPatternBuilder the copy in the exception shares
+    validate(validator, "a", "b", "c");
+    validate(validator, "c", "a");
+    // the same errors reported by a fresh matcher, whose messages are read at once
+    RecordingErrorHandler fresh = new RecordingErrorHandler();
+    validate(new PatternValidator(pattern.createMatcher(), fresh, new Context()), "b");
+    String expected = fresh.errors.get(0).getMessage();
+    Assert.assertNotNull(expected);
+    Assert.assertEquals(first.getMessage(), expected);
+    // the message is constructed only once
+    Assert.assertSame(first.getMessage(), first.getMessage());
+  }
+
+  @Test
+  public void testSerializable() throws Exception {
+    RecordingErrorHandler eh = new RecordingErrorHandler();
+    validate(new PatternValidator(load().createMatcher(), eh, new Context()), "c");
+    SAXParseException exception = eh.errors.get(0);
+    Assert.assertTrue(exception instanceof MatcherErrorException);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(exception);
+    out.close();
+    SAXParseException copy = (SAXParseException)read(bytes.toByteArray());
+    Assert.assertEquals(copy.getMessage(), exception.getMessage());
+  }
+
+  static private Object read(byte[] bytes) throws IOException, ClassNotFoundException {
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return in.readObject();
+    }
+    finally {
+      in.close();
+    }
+  }
+}
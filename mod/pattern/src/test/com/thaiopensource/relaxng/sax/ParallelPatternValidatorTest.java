@@ -0,0 +1,241 @@
+package com.thaiopensource.relaxng.sax;
+
+import com.thaiopensource.datatype.DatatypeLibraryLoader;
+import com.thaiopensource.relaxng.parse.compact.CompactParseable;
+import com.thaiopensource.relaxng.pattern.AnnotationsImpl;
+import com.thaiopensource.relaxng.pattern.CommentListImpl;
+import com.thaiopensource.relaxng.pattern.NameClass;
+import com.thaiopensource.relaxng.pattern.Pattern;
+import com.thaiopensource.relaxng.pattern.SchemaBuilderImpl;
+import com.thaiopensource.relaxng.pattern.SchemaPatternBuilder;
+import com.thaiopensource.relaxng.pattern.SingleTypeGrammar;
+import com.thaiopensource.relaxng.pattern.ValidatorPatternBuilder;
+import com.thaiopensource.resolver.Input;
+import com.thaiopensource.resolver.xml.sax.SAXResolver;
+import com.thaiopensource.util.VoidValue;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test that ParallelPatternValidator reports the same errors in the same order as PatternValidator.
+ */
+public class ParallelPatternValidatorTest {
+  static private final String SCHEMA
+    = "start = element doc { (item | big | bad)* }\n"
+    + "item = element item { attribute n { \"1\" | \"2\" }, sub* }\n"
+    + "sub = element sub { text }\n"
+    + "big = element big { item* }\n"
+    + "bad = element bad { empty }\n";
+  static private final int THREADS = 4;
+  /**
+   * Enough items for the events of the document element to fill several chunks.
+   */
+  static private final int ITEMS = 5000;
+  /**
+   * Enough items for the events of a single big element to exceed the maximum size of an element
+   * validated separately.
+   */
+  static private final int BIG_ITEMS = 40000;
+
+  static private class Schema {
+    final Pattern start;
+    final SchemaPatternBuilder spb;
+
+    Schema(Pattern start, SchemaPatternBuilder spb) {
+      this.start = start;
+      this.spb = spb;
+    }
+  }
+
+  static private class RecordingErrorHandler implements ErrorHandler {
+    final List<String> errors = new ArrayList<String>();
+
+    public void warning(SAXParseException exception) {
+      record("warning", exception);
+    }
+
+    public void error(SAXParseException exception) {
+      record("error", exception);
+    }
+
+    public void fatalError(SAXParseException exception) {
+      record("fatal", exception);
+    }
+
+    private void record(String severity, SAXParseException exception) {
+      errors.add(exception.getLineNumber() + ":" + exception.getColumnNumber() + ": "
+                 + severity + ": " + exception.getMessage());
+    }
+  }
+
+  static private Schema load(String schema) throws Exception {
+    Input input = new Input();
+    input.setCharacterStream(new StringReader(schema));
+    RecordingErrorHandler eh = new RecordingErrorHandler();
+    SchemaPatternBuilder spb = new SchemaPatternBuilder();
+    Pattern start = SchemaBuilderImpl.parse(
+            new CompactParseable<Pattern, NameClass, Locator, VoidValue, CommentListImpl, AnnotationsImpl>(
+                    input, new SAXResolver().getResolver(), eh),
+            eh, new DatatypeLibraryLoader(), spb, false);
+    Assert.assertTrue(eh.errors.isEmpty(), eh.errors.toString());
+    return new Schema(start, spb);
+  }
+
+  static private void parse(ContentHandler handler, String document) throws Exception {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    XMLReader xr = factory.newSAXParser().getXMLReader();
+    xr.setContentHandler(handler);
+    xr.parse(new InputSource(new StringReader(document)));
+  }
+
+  static private void appendItem(StringBuilder doc, int i, int count) {
+    boolean first = i == 0;
+    boolean last = i == count - 1;
+    if (first)
+      doc.append("<item>");
+    else if (last)
+      doc.append("<item n='3'>");
+    else if (i % 50 == 0)
+      doc.append("<item n='1' xmlns:p='urn:p' p:x='1'>");
+    else
+      doc.append("<item n='").append(1 + i % 2).append("'>");
+    doc.append("\n");
+    for (int j = 0; j < i % 3; j++)
+      doc.append("<sub>").append(i).append("</sub>\n");
+    if (first || last || i % 97 == 0)
+      doc.append("<bad/>\n");
+    if (i % 89 == 0)
+      doc.append("text\n");
+    doc.append("</item>\n");
+  }
+
+  /**
+   * Returns a document with errors in its first and last children, in many of the other children
+   * and between them, and with a child larger than an element that can be validated separately.
+   */
+  static private String document(boolean withBig) {
+    StringBuilder doc = new StringBuilder();
+    doc.append("<doc>\n");
+    for (int i = 0; i < ITEMS; i++) {
+      if (i % 101 == 0)
+        doc.append("<bad/>\n");
+      if (i % 103 == 0)
+        doc.append("<unknown/>\n");
+      if (i % 107 == 0)
+        doc.append("text\n");
+      if (withBig && i == ITEMS/2) {
+        doc.append("<big>\n");
+        for (int j = 0; j < BIG_ITEMS; j++)
+          appendItem(doc, j, BIG_ITEMS);
+        doc.append("</big>\n");
+      }
+      appendItem(doc, i, ITEMS);
+    }
+    doc.append("</doc>\n");
+    return doc.toString();
+  }
+
+  static private List<String> serialErrors(Schema schema, String document) throws Exception {
+    RecordingErrorHandler eh = new RecordingErrorHandler();
+    parse(new PatternValidator(schema.start, new ValidatorPatternBuilder(schema.spb), eh), document);
+    return eh.errors;
+  }
+
+  static private void assertSameErrors(List<String> actual, List<String> expected) {
+    for (int i = 0; i < actual.size() && i < expected.size(); i++)
+      Assert.assertEquals(actual.get(i), expected.get(i), "error " + i);
+    Assert.assertEquals(actual.size(), expected.size());
+  }
+
+  @DataProvider(name = "documents")
+  Object[][] documents() {
+    return new Object[][] {
+      { "<doc/>" },
+      { "<doc><item n='1'/></doc>" },
+      { "<doc><item/></doc>" },
+      { "<doc xmlns:p='urn:p'><p:item n='1'/><item n='1' p:n='2'/>x<item n='2'><sub/></item></doc>" },
+      { "<item n='1'/>" },
+      { document(false) },
+      { document(true) }
+    };
+  }
+
+  @Test(dataProvider = "documents")
+  public void testSameErrors(String document) throws Exception {
+    Schema schema = load(SCHEMA);
+    SingleTypeGrammar grammar = SingleTypeGrammar.analyze(schema.start);
+    Assert.assertNotNull(grammar);
+    List<String> expected = serialErrors(schema, document);
+    RecordingErrorHandler eh = new RecordingErrorHandler();
+    ParallelPatternValidator validator = new ParallelPatternValidator(schema.start, schema.spb, grammar,
+                                                                      THREADS, eh);
+    parse(validator, document);
+    assertSameErrors(eh.errors, expected);
+    // a validator that has been reset gives the same errors again
+    eh.errors.clear();
+    validator.reset();
+    parse(validator, document);
+    assertSameErrors(eh.errors, expected);
+  }
+
+  static private boolean hasErrorOnLine(List<String> errors, int line) {
+    for (String error : errors) {
+      if (error.startsWith(line + ":"))
+        return true;
+    }
+    return false;
+  }
+
+  @Test
+  public void testErrorsInFirstAndLastChunk() throws Exception {
+    String document = document(true);
+    String[] lines = document.split("\n");
+    int firstItem = -1;
+    int lastItem = -1;
+    for (int i = 0; i < lines.length; i++) {
+      if (lines[i].equals("<item>") && firstItem < 0)
+        firstItem = i + 1;
+      if (lines[i].equals("<item n='3'>"))
+        lastItem = i + 1;
+    }
+    // the first and the last item of the document element each have a bad attribute
+    List<String> errors = serialErrors(load(SCHEMA), document);
+    Assert.assertTrue(hasErrorOnLine(errors, firstItem), "line " + firstItem);
+    Assert.assertTrue(hasErrorOnLine(errors, lastItem), "line " + lastItem);
+    Assert.assertTrue(errors.size() > (ITEMS + BIG_ITEMS) / 50);
+  }
+
+  @DataProvider(name = "notSingleType")
+  Object[][] notSingleType() {
+    return new Object[][] {
+      { "element doc { element * { empty }* }" },
+      { "element doc { element * - bad { empty }* }" },
+      { "namespace p = \"urn:p\"\nelement doc { element p:* { empty }* }" },
+      { "element doc { element a { empty }, element b { element a { text } } }" }
+    };
+  }
+
+  @Test(dataProvider = "notSingleType")
+  public void testNotSingleType(String schema) throws Exception {
+    Assert.assertNull(SingleTypeGrammar.analyze(load(schema).start));
+  }
+
+  @Test
+  public void testSameContentIsSingleType() throws Exception {
+    Schema schema = load("start = element doc { a, element b { a } }\na = element a { empty }");
+    Assert.assertNotNull(SingleTypeGrammar.analyze(schema.start));
+  }
+}
@@ -0,0 +1,416 @@
+package com.thaiopensource.resolver;
+
+import com.thaiopensource.resolver.xml.ExternalIdentifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A Resolver that keeps the content of the resources it opens, so that
+ * schema modules, DTDs and external entities that are referenced many times
+ * are only fetched once.
+ * Resolving identifiers is left to another Resolver. A resource whose
+ * content is not kept is opened by the other Resolver, or by this Resolver
+ * if the other Resolver does not open it; its content is then kept in memory,
+ * and optionally in a directory, keyed by URI.
+ * The memory used is bounded; the least recently used content is discarded first.
+ * <p>
+ * The content of a file is fetched again when the modification time or
+ * the length of the file has changed. Content kept in the directory is
+ * stored with a SHA-1 hash of the content and is discarded if the hash does
+ * not match when it is read back. The content of other resources is kept
+ * until it is discarded to bound the memory or <code>clear</code> is called.
+ * <p>
+ * External entities and DTDs are opened by the XML parser after the
+ * identifier has been resolved, so this Resolver opens them when it
+ * resolves them. It should therefore be given any other Resolver as its delegate,
+ * rather than being followed by one.
+ * <p>
+ * This Resolver can be used by multiple threads concurrently;
+ * a thread that opens a resource that another thread is fetching waits
+ * for that fetch rather than fetching the resource again.
+ * It can be specified using <code>ValidateProperty.RESOLVER</code>.
+ */
+public class CachingResolver implements Resolver {
+  static private final String DIGEST_ALGORITHM = "SHA-1";
+  static private final String FILE_SUFFIX = ".cache";
+  static private final long NO_TIMESTAMP = -1;
+  /**
+   * The encoding used to keep the content of a resource that the other Resolver opens as a character stream.
+   */
+  static private final String CHARACTER_STREAM_ENCODING = "UTF-8";
+
+  static private class Entry {
+    final String uri;
+    final String encoding;
+    final long lastModified;
+    final long length;
+    final byte[] content;
+
+    Entry(String uri, String encoding, long lastModified, long length, byte[] content) {
+      this.uri = uri;
+      this.encoding = encoding;
+      this.lastModified = lastModified;
+      this.length = length;
+      this.content = content;
+    }
+  }
+
+  private final Resolver resolver;
+  private final long maxMemory;
+  private final File directory;
+  /**
+   * Access must be synchronized on this map.
+   */
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private long memoryUsed = 0;
+  /**
+   * The URIs of the resources being fetched. Access must be synchronized on entries.
+   */
+  private final Set<String> fetching = new HashSet<String>();
+
+  /**
+   * Creates a CachingResolver that keeps content only in memory.
+   * @param resolver the Resolver used to resolve identifiers; may be null
+   * @param maxMemory the maximum total number of bytes of content kept in memory
+   */
+  public CachingResolver(Resolver resolver, long maxMemory) {
+    this(resolver, maxMemory, null);
+  }
+
+  /**
+   * Creates a CachingResolver that keeps content in memory and in a directory.
+   * Content that is discarded from memory to bound the memory used
+   * remains in the directory.
+   * @param resolver the Resolver used to resolve identifiers; may be null
+   * @param maxMemory the maximum total number of bytes of content kept in memory
+   * @param directory the directory in which to keep content; may be null
+   */
+  public CachingResolver(Resolver resolver, long maxMemory, File directory) {
+    this.resolver = resolver == null ? new AbstractResolver() : resolver;
+    this.maxMemory = maxMemory;
+    this.directory = directory;
+  }
+
+  public void resolve(Identifier id, Input input) throws IOException, ResolverException {
+    resolver.resolve(id, input);
+    if (!input.isResolved()) {
+      // otherwise the caller would open the resource itself, without its content being kept
+      String uri = BasicResolver.resolveUri(id);
+      if (!isAbsolute(uri))
+        return;
+      input.setUri(uri);
+    }
+    if (id instanceof ExternalIdentifier)
+      open(input);
+  }
+
+  public void open(Input input) throws IOException, ResolverException {
+    if (!input.isUriDefinitive())
+      return;
+    String uri = input.getUri();
+    if (!isAbsolute(uri)) {
+      resolver.open(input);
+      return;
+    }
+    File file = toFile(uri);
+    Entry entry = lookupOrStartFetching(uri, file);
+    if (entry == null) {
+      try {
+        entry = fetch(uri, file);
+        store(entry);
+      }
+      finally {
+        synchronized (entries) {
+          fetching.remove(uri);
+          entries.notifyAll();
+        }
+      }
+    }
+    if (entry.encoding != null)
+      input.setEncoding(entry.encoding);
+    input.setByteStream(new ByteArrayInputStream(entry.content));
+  }
+
+  /**
+   * Discards all content kept in memory and in the directory.
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+      memoryUsed = 0;
+    }
+    if (directory != null) {
+      File[] files = directory.listFiles();
+      if (files != null) {
+        for (int i = 0; i < files.length; i++)
+          if (files[i].getName().endsWith(FILE_SUFFIX))
+            files[i].delete();
+      }
+    }
+  }
+
+  /**
+   * Returns the content kept for uri, waiting for it if another thread is fetching it.
+   * Returns null if the calling thread is to fetch it.
+   */
+  private Entry lookupOrStartFetching(String uri, File file) throws InterruptedIOException {
+    for (;;) {
+      Entry entry = lookup(uri, file);
+      if (entry != null)
+        return entry;
+      synchronized (entries) {
+        if (fetching.add(uri))
+          return null;
+        // the other fetch might fail or the content might not be kept, so look again afterwards
+        try {
+          while (fetching.contains(uri))
+            entries.wait();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+    }
+  }
+
+  private Entry lookup(String uri, File file) {
+    Entry entry;
+    synchronized (entries) {
+      entry = entries.get(uri);
+    }
+    if (entry == null) {
+      entry = read(uri);
+      if (entry == null)
+        return null;
+      if (isValid(entry, file))
+        addToMemory(entry);
+    }
+    if (isValid(entry, file))
+      return entry;
+    synchronized (entries) {
+      if (entries.get(uri) == entry) {
+        entries.remove(uri);
+        memoryUsed -= entry.content.length;
+      }
+    }
+    return null;
+  }
+
+  private static boolean isValid(Entry entry, File file) {
+    if (file == null)
+      return true;
+    return file.lastModified() == entry.lastModified && file.length() == entry.length;
+  }
+
+  private Entry fetch(String uri, File file) throws IOException, ResolverException {
+    long lastModified = NO_TIMESTAMP;
+    long length = NO_TIMESTAMP;
+    if (file != null) {
+      // get these before reading, so that a concurrent change causes the content to be fetched again
+      lastModified = file.lastModified();
+      length = file.length();
+    }
+    Input tem = new Input();
+    tem.setUri(uri);
+    resolver.open(tem);
+    if (!tem.isOpen())
+      BasicResolver.getInstance().open(tem);
+    InputStream in = tem.getByteStream();
+    if (in != null) {
+      try {
+        return new Entry(uri, tem.getEncoding(), lastModified, length, readAll(in));
+      }
+      finally {
+        in.close();
+      }
+    }
+    Reader r = tem.getCharacterStream();
+    try {
+      return new Entry(uri, CHARACTER_STREAM_ENCODING, lastModified, length, readAll(r));
+    }
+    finally {
+      r.close();
+    }
+  }
+
+  private void store(Entry entry) {
+    addToMemory(entry);
+    write(entry);
+  }
+
+  private void addToMemory(Entry entry) {
+    if (entry.content.length > maxMemory)
+      return;
+    synchronized (entries) {
+      Entry old = entries.put(entry.uri, entry);
+      if (old != null)
+        memoryUsed -= old.content.length;
+      memoryUsed += entry.content.length;
+      for (Iterator<Entry> iter = entries.values().iterator(); memoryUsed > maxMemory && iter.hasNext();) {
+        memoryUsed -= iter.next().content.length;
+        iter.remove();
+      }
+    }
+  }
+
+  private Entry read(String uri) {
+    if (directory == null)
+      return null;
+    File file = cacheFile(uri);
+    if (!file.exists())
+      return null;
+    try {
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try {
+        if (!in.readUTF().equals(uri))
+          return null;
+        String encoding = in.readUTF();
+        long lastModified = in.readLong();
+        long length = in.readLong();
+        byte[] hash = new byte[in.readInt()];
+        in.readFully(hash);
+        byte[] content = new byte[in.readInt()];
+        in.readFully(content);
+        if (!Arrays.equals(hash, digest(content))) {
+          in.close();
+          file.delete();
+          return null;
+        }
+        return new Entry(uri, encoding.length() == 0 ? null : encoding, lastModified, length, content);
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      // the directory is only a cache: treat an unreadable file as missing
+      return null;
+    }
+  }
+
+  private void write(Entry entry) {
+    if (directory == null)
+      return;
+    File file = cacheFile(entry.uri);
+    try {
+      // write to a temporary file first, so that other readers never see a partial file
+      File tem = File.createTempFile("resolver", ".tmp", directory);
+      DataOutputStream out = new DataOutputStream(new FileOutputStream(tem));
+      try {
+        out.writeUTF(entry.uri);
+        out.writeUTF(entry.encoding == null ? "" : entry.encoding);
+        out.writeLong(entry.lastModified);
+        out.writeLong(entry.length);
+        byte[] hash = digest(entry.content);
+        out.writeInt(hash.length);
+        out.write(hash);
+        out.writeInt(entry.content.length);
+        out.write(entry.content);
+      }
+      finally {
+        out.close();
+      }
+      file.delete();
+      if (!tem.renameTo(file))
+        tem.delete();
+    }
+    catch (IOException e) {
+      // the directory is only a cache: just don't keep the content there
+    }
+  }
+
+  private File cacheFile(String uri) {
+    try {
+      return new File(directory, toHex(digest(uri.getBytes("UTF-8"))) + FILE_SUFFIX);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException("UTF-8 not supported");
+    }
+  }
+
+  private static File toFile(String uri) {
+    try {
+      URI u = new URI(uri);
+      if (!"file".equals(u.getScheme()) || u.isOpaque() || u.getAuthority() != null)
+        return null;
+      return new File(u);
+    }
+    catch (URISyntaxException e) {
+      return null;
+    }
+    catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static boolean isAbsolute(String uri) {
+    try {
+      return new URI(uri).isAbsolute();
+    }
+    catch (URISyntaxException e) {
+      return false;
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[8192];
+    int n;
+    while ((n = in.read(buf)) > 0)
+      out.write(buf, 0, n);
+    return out.toByteArray();
+  }
+
+  private static byte[] readAll(Reader in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Writer w = new OutputStreamWriter(out, CHARACTER_STREAM_ENCODING);
+    char[] buf = new char[4096];
+    int n;
+    while ((n = in.read(buf)) > 0)
+      w.write(buf, 0, n);
+    w.close();
+    return out.toByteArray();
+  }
+
+  private static byte[] digest(byte[] bytes) {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(bytes);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(DIGEST_ALGORITHM + " not supported");
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < bytes.length; i++) {
+      buf.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+      buf.append(Character.forDigit(bytes[i] & 0xF, 16));
+    }
+    return buf.toString();
+  }
+}
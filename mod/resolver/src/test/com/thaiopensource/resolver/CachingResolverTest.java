@@ -0,0 +1,291 @@
+package com.thaiopensource.resolver;
+
+import com.thaiopensource.resolver.xml.ExternalIdentifier;
+import com.thaiopensource.resolver.xml.sax.SAX;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests CachingResolver.
+ */
+public class CachingResolverTest {
+  private File dir;
+  private File cacheDir;
+
+  /**
+   * A Resolver that opens resources like BasicResolver and records the URIs it opens.
+   */
+  static private class CountingResolver extends AbstractResolver {
+    final List<String> opened = new ArrayList<String>();
+
+    public void open(Input input) throws IOException, ResolverException {
+      if (input.isUriDefinitive())
+        opened.add(input.getUri());
+      BasicResolver.getInstance().open(input);
+    }
+  }
+
+  @BeforeMethod
+  public void createDirectories() throws IOException {
+    dir = File.createTempFile("resolver", "");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+    cacheDir = new File(dir, "cache");
+    Assert.assertTrue(cacheDir.mkdir());
+  }
+
+  @AfterMethod
+  public void deleteDirectories() {
+    delete(dir);
+  }
+
+  static private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files)
+        delete(f);
+    }
+    file.delete();
+  }
+
+  private String write(String name, String content) throws IOException {
+    File file = new File(dir, name);
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    }
+    finally {
+      out.close();
+    }
+    return file.toURI().toString();
+  }
+
+  static private String open(Resolver resolver, String uri) throws IOException, ResolverException {
+    Input input = new Input();
+    input.setUri(uri);
+    resolver.open(input);
+    return read(input);
+  }
+
+  static private String read(Input input) throws IOException {
+    InputStream in = input.getByteStream();
+    Assert.assertNotNull(in);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[1024];
+      int n;
+      while ((n = in.read(buf)) > 0)
+        out.write(buf, 0, n);
+      return out.toString("UTF-8");
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  static private String repeat(char c, int n) {
+    StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < n; i++)
+      buf.append(c);
+    return buf.toString();
+  }
+
+  @Test
+  public void testMemoryHit() throws Exception {
+    String uri = write("a.rnc", "element a { empty }");
+    CountingResolver counter = new CountingResolver();
+    Resolver resolver = new CachingResolver(counter, 1024);
+    Assert.assertEquals(open(resolver, uri), "element a { empty }");
+    Assert.assertEquals(open(resolver, uri), "element a { empty }");
+    Assert.assertEquals(counter.opened.size(), 1);
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvicted() throws Exception {
+    String a = write("a.txt", repeat('a', 100));
+    String b = write("b.txt", repeat('b', 100));
+    String c = write("c.txt", repeat('c', 100));
+    CountingResolver counter = new CountingResolver();
+    Resolver resolver = new CachingResolver(counter, 250);
+    open(resolver, a);
+    open(resolver, b);
+    // makes b the least recently used
+    open(resolver, a);
+    open(resolver, c);
+    Assert.assertEquals(counter.opened.size(), 3);
+    Assert.assertEquals(open(resolver, a), repeat('a', 100));
+    Assert.assertEquals(open(resolver, c), repeat('c', 100));
+    Assert.assertEquals(counter.opened.size(), 3);
+    Assert.assertEquals(open(resolver, b), repeat('b', 100));
+    Assert.assertEquals(counter.opened.size(), 4);
+    Assert.assertEquals(counter.opened.get(3), b);
+  }
+
+  @Test
+  public void testLargerThanMemoryNotKept() throws Exception {
+    String uri = write("a.txt", repeat('a', 100));
+    CountingResolver counter = new CountingResolver();
+    Resolver resolver = new CachingResolver(counter, 99);
+    open(resolver, uri);
+    Assert.assertEquals(open(resolver, uri), repeat('a', 100));
+    Assert.assertEquals(counter.opened.size(), 2);
+  }
+
+  @Test
+  public void testFileModified() throws Exception {
+    String uri = write("a.rnc", "element a { empty }");
+    File file = new File(dir, "a.rnc");
+    CountingResolver counter = new CountingResolver();
+    Resolver resolver = new CachingResolver(counter, 1024);
+    open(resolver, uri);
+    // a change of length
+    write("a.rnc", "element a { text }");
+    Assert.assertEquals(open(resolver, uri), "element a { text }");
+    Assert.assertEquals(counter.opened.size(), 2);
+    // a change of modification time only
+    write("a.rnc", "element b { text }");
+    Assert.assertTrue(file.setLastModified(file.lastModified() - 10000));
+    Assert.assertEquals(open(resolver, uri), "element b { text }");
+    Assert.assertEquals(counter.opened.size(), 3);
+    Assert.assertEquals(open(resolver, uri), "element b { text }");
+    Assert.assertEquals(counter.opened.size(), 3);
+  }
+
+  @Test
+  public void testDirectoryHit() throws Exception {
+    String uri = write("a.rnc", "element a { empty }");
+    CountingResolver counter = new CountingResolver();
+    open(new CachingResolver(counter, 1024, cacheDir), uri);
+    // another resolver sharing the directory, as another process would
+    Assert.assertEquals(open(new CachingResolver(counter, 1024, cacheDir), uri), "element a { empty }");
+    Assert.assertEquals(counter.opened.size(), 1);
+  }
+
+  @Test
+  public void testDirectoryHashMismatchDiscarded() throws Exception {
+    String uri = write("a.rnc", "element a { empty }");
+    CountingResolver counter = new CountingResolver();
+    open(new CachingResolver(counter, 1024, cacheDir), uri);
+    File[] files = cacheDir.listFiles();
+    Assert.assertEquals(files.length, 1);
+    // change the last byte of the content
+    RandomAccessFile raf = new RandomAccessFile(files[0], "rw");
+    try {
+      raf.seek(raf.length() - 1);
+      raf.write('X');
+    }
+    finally {
+      raf.close();
+    }
+    Assert.assertEquals(open(new CachingResolver(counter, 1024, cacheDir), uri), "element a { empty }");
+    Assert.assertEquals(counter.opened.size(), 2);
+  }
+
+  @Test
+  public void testWrapBasicResolver() throws Exception {
+    String uri = write("a.rnc", "element a { empty }");
+    Resolver resolver = new CachingResolver(BasicResolver.getInstance(), 1024, cacheDir);
+    Assert.assertEquals(open(resolver, uri), "element a { empty }");
+    Assert.assertEquals(cacheDir.listFiles().length, 1);
+    Input input = new Input();
+    input.setUri(uri);
+    resolver.open(input);
+    // the content kept, rather than a stream opened by BasicResolver
+    Assert.assertTrue(input.getByteStream() instanceof ByteArrayInputStream);
+    Assert.assertEquals(read(input), "element a { empty }");
+  }
+
+  @Test
+  public void testResolveExternalIdentifierThroughEntityResolver() throws Exception {
+    String uri = write("a.ent", "<a/>");
+    final List<String> resolved = new ArrayList<String>();
+    Resolver sax = SAX.createResolver(new EntityResolver() {
+      public InputSource resolveEntity(String publicId, String systemId) {
+        resolved.add(systemId);
+        return null;
+      }
+    }, false);
+    Resolver resolver = new CachingResolver(sax, 1024, cacheDir);
+    for (int i = 0; i < 2; i++) {
+      Input input = new Input();
+      resolver.resolve(new ExternalIdentifier("a.ent", dir.toURI().toString(), null), input);
+      Assert.assertEquals(input.getUri(), uri);
+      Assert.assertEquals(read(input), "<a/>");
+    }
+    Assert.assertEquals(resolved.size(), 2);
+    Assert.assertEquals(cacheDir.listFiles().length, 1);
+  }
+
+  /**
+   * An identifier that the other Resolver does not resolve, such as a module included by a schema
+   * in the compact syntax when there is no catalog, is also opened only once.
+   */
+  @Test
+  public void testUnresolvedIdentifierKept() throws Exception {
+    String uri = write("a.rnc", "element a { empty }");
+    CountingResolver counting = new CountingResolver();
+    Resolver resolver = new CachingResolver(counting, 1024);
+    for (int i = 0; i < 2; i++) {
+      Input input = new Input();
+      resolver.resolve(new Identifier("a.rnc", dir.toURI().toString()), input);
+      Assert.assertEquals(input.getUri(), uri);
+      Assert.assertFalse(input.isOpen());
+      resolver.open(input);
+      Assert.assertEquals(read(input), "element a { empty }");
+    }
+    Assert.assertEquals(counting.opened.size(), 1);
+  }
+
+  /**
+   * Threads that open a resource while another thread is fetching it wait for that fetch.
+   */
+  @Test
+  public void testConcurrentOpenFetchedOnce() throws Exception {
+    final String uri = write("a.rng", "<a/>");
+    final CountingResolver counting = new CountingResolver() {
+      public synchronized void open(Input input) throws IOException, ResolverException {
+        super.open(input);
+        try {
+          Thread.sleep(200);
+        }
+        catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    final Resolver resolver = new CachingResolver(counting, 1024);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> results = new ArrayList<Future<String>>();
+      for (int i = 0; i < 4; i++)
+        results.add(executor.submit(new Callable<String>() {
+          public String call() throws Exception {
+            return open(resolver, uri);
+          }
+        }));
+      for (Future<String> result : results)
+        Assert.assertEquals(result.get(), "<a/>");
+    }
+    finally {
+      executor.shutdown();
+    }
+    Assert.assertEquals(counting.opened.size(), 1);
+  }
+}
@@ -0,0 +1,246 @@
+package com.thaiopensource.relaxng.parse;
+
+import com.thaiopensource.resolver.Identifier;
+import com.thaiopensource.resolver.Input;
+import com.thaiopensource.resolver.Resolver;
+import com.thaiopensource.resolver.ResolverException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Resolver for loading a single schema, which fetches the modules referenced by include and
+ * externalRef concurrently, before the parser gets to them.
+ * Each module that has been fetched is scanned for the references that it contains, and the modules
+ * that these refer to are fetched in turn. The parser still parses the modules one at a time in the
+ * required order, but when it opens a module that has already been fetched, it reads the content from memory.
+ * <p>
+ * The parser resolves and opens each module exactly as it would without this Resolver; only the time at which
+ * the content is fetched differs. If fetching a module fails, the parser opens it again itself, so that the error
+ * is reported in the same way and at the same point. The Resolver used to fetch modules must therefore be safe
+ * to use from multiple threads.
+ * <p>
+ * Subclasses scan modules in a particular syntax.
+ * <code>close</code> should be called when the schema has been loaded.
+ */
+public abstract class PrefetchingResolver implements Resolver {
+  static private class Module {
+    final String encoding;
+    final byte[] content;
+
+    Module(String encoding, byte[] content) {
+      this.encoding = encoding;
+      this.content = content;
+    }
+  }
+
+  static private final long KEEP_ALIVE_SECONDS = 1;
+
+  private final Resolver resolver;
+  private final ExecutorService executor;
+  /**
+   * Maps the URI of each module that has been prefetched to its content.
+   * Access must be synchronized on this map.
+   */
+  private final Map<String, Future<Module>> modules = new HashMap<String, Future<Module>>();
+
+  /**
+   * @param resolver the Resolver used to resolve references and to fetch modules
+   * @param threads the maximum number of modules fetched at the same time
+   */
+  protected PrefetchingResolver(Resolver resolver, int threads) {
+    this.resolver = resolver;
+    ThreadPoolExecutor executor
+            = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                                     new LinkedBlockingQueue<Runnable>(),
+                                     new ThreadFactory() {
+                                       public Thread newThread(Runnable r) {
+                                         Thread thread = new Thread(r, "rng-module-prefetch");
+                                         thread.setDaemon(true);
+                                         return thread;
+                                       }
+                                     });
+    // so that the threads go away even if close is not called
+    executor.allowCoreThreadTimeOut(true);
+    this.executor = executor;
+  }
+
+  public void resolve(Identifier id, Input input) throws IOException, ResolverException {
+    resolver.resolve(id, input);
+  }
+
+  public void open(Input input) throws IOException, ResolverException {
+    if (input.isUriDefinitive()) {
+      Module module = getModule(input.getUri());
+      if (module != null) {
+        if (module.encoding != null)
+          input.setEncoding(module.encoding);
+        input.setByteStream(new ByteArrayInputStream(module.content));
+        return;
+      }
+    }
+    resolver.open(input);
+  }
+
+  /**
+   * Starts fetching a module, and the modules that it references, in the background.
+   * @param uri the absolute URI of the module, as it will be opened by the parser
+   */
+  public void prefetch(String uri) {
+    Input input = new Input();
+    input.setUri(uri);
+    fetch(input);
+  }
+
+  /**
+   * Starts fetching the module referenced by a module that is being scanned, and the modules that it
+   * references, in the background.
+   * @param href the value of the href attribute of the reference
+   * @param base the base URI of the reference
+   */
+  protected void prefetch(String href, String base) {
+    Input input = new Input();
+    try {
+      resolver.resolve(createIdentifier(href, base), input);
+    }
+    catch (IOException e) {
+      // the parser will report the error when it gets to the reference
+      return;
+    }
+    catch (ResolverException e) {
+      return;
+    }
+    fetch(input);
+  }
+
+  /**
+   * Stops fetching modules.
+   */
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Returns the Identifier that the parser resolves for a reference.
+   */
+  protected abstract Identifier createIdentifier(String href, String base);
+
+  /**
+   * Scans a module that has been fetched, and calls <code>prefetch(String, String)</code> for each reference
+   * that it contains. Scanning may stop at an error, which the parser will report when it parses the module.
+   * @param input the module, which has a URI and a byte stream
+   */
+  protected abstract void scan(Input input) throws IOException;
+
+  private void fetch(final Input input) {
+    // if the input was opened when it was resolved, the parser will not open it
+    if (!input.isUriDefinitive())
+      return;
+    final String uri = input.getUri();
+    synchronized (modules) {
+      if (modules.containsKey(uri))
+        return;
+      try {
+        modules.put(uri, executor.submit(new Callable<Module>() {
+          public Module call() throws IOException, ResolverException {
+            Module module = read(input);
+            submitScan(uri, module);
+            return module;
+          }
+        }));
+      }
+      catch (RejectedExecutionException e) {
+        // closed
+      }
+    }
+  }
+
+  /**
+   * Scans a module separately, so that the parser need not wait for the scan before reading the module.
+   */
+  private void submitScan(final String uri, final Module module) {
+    try {
+      executor.execute(new Runnable() {
+        public void run() {
+          Input input = new Input();
+          input.setUri(uri);
+          input.setEncoding(module.encoding);
+          input.setByteStream(new ByteArrayInputStream(module.content));
+          try {
+            scan(input);
+          }
+          catch (IOException e) {
+            // the parser will report the error when it parses the module
+          }
+          catch (RuntimeException e) {
+            // likewise
+          }
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      // closed
+    }
+  }
+
+  private Module read(Input input) throws IOException, ResolverException {
+    resolver.open(input);
+    InputStream in = input.getByteStream();
+    if (in == null) {
+      if (input.getCharacterStream() != null)
+        input.getCharacterStream().close();
+      throw new ResolverException("no byte stream");
+    }
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) > 0)
+        out.write(buf, 0, n);
+      return new Module(input.getEncoding(), out.toByteArray());
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Returns the content of a module that has been prefetched, waiting if it has not yet been fetched.
+   * Returns null if the module has not been prefetched or could not be fetched.
+   */
+  private Module getModule(String uri) {
+    Future<Module> future;
+    synchronized (modules) {
+      future = modules.get(uri);
+    }
+    if (future == null)
+      return null;
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    catch (ExecutionException e) {
+      return null;
+    }
+    catch (CancellationException e) {
+      return null;
+    }
+  }
+}
@@ -28,7 +28,7 @@ public class CompactParseable<P, NC, L, EA, CL extends CommentList<L>, A extends
   private final Input in;
   private final Resolver resolver;
   private final ErrorHandler eh;
-  private static final String MEDIA_TYPE = "application/relax-ng-compact-syntax";
+  static final String MEDIA_TYPE = "application/relax-ng-compact-syntax";
 
   public CompactParseable(Input in, Resolver resolver, ErrorHandler eh) {
     this.in = in;
@@ -73,20 +73,7 @@ public class CompactParseable<P, NC, L, EA, CL extends CommentList<L>, A extends
   private Reader makeReader(Input in) throws BuildException {
     try {
       resolver.open(in);
-      Reader reader = in.getCharacterStream();
-      if (reader == null) {
-        InputStream byteStream = in.getByteStream();
-        if (byteStream == null)
-          throw new IllegalArgumentException("invalid input for CompactParseable");
-        String encoding = in.getEncoding();
-        if (encoding == null) {
-          PushbackInputStream pb = new PushbackInputStream(byteStream, 2);
-          encoding = detectEncoding(pb);
-          byteStream = pb;
-        }
-        reader = new InputStreamReader(byteStream, encoding);
-      }
-      return reader;
+      return createReader(in);
     }
     catch (ResolverException e) {
       throw BuildException.fromResolverException(e);
@@ -96,6 +83,23 @@ public class CompactParseable<P, NC, L, EA, CL extends CommentList<L>, A extends
     }
   }
 
+  static Reader createReader(Input in) throws IOException {
+    Reader reader = in.getCharacterStream();
+    if (reader == null) {
+      InputStream byteStream = in.getByteStream();
+      if (byteStream == null)
+        throw new IllegalArgumentException("invalid input for CompactParseable");
+      String encoding = in.getEncoding();
+      if (encoding == null) {
+        PushbackInputStream pb = new PushbackInputStream(byteStream, 2);
+        encoding = detectEncoding(pb);
+        byteStream = pb;
+      }
+      reader = new InputStreamReader(byteStream, encoding);
+    }
+    return reader;
+  }
+
   static private String detectEncoding(PushbackInputStream in) throws IOException {
     String encoding = UTF8;
     int b1 = in.read();
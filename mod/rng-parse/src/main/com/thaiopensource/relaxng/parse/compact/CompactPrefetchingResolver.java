@@ -0,0 +1,70 @@
+package com.thaiopensource.relaxng.parse.compact;
+
+import com.thaiopensource.relaxng.parse.PrefetchingResolver;
+import com.thaiopensource.resolver.Identifier;
+import com.thaiopensource.resolver.Input;
+import com.thaiopensource.resolver.MediaTypedIdentifier;
+import com.thaiopensource.resolver.Resolver;
+
+import java.io.IOException;
+
+/**
+ * A PrefetchingResolver for schemas in the compact syntax.
+ */
+public class CompactPrefetchingResolver extends PrefetchingResolver {
+  /**
+   * @param resolver the Resolver used to resolve references and to fetch modules
+   * @param threads the maximum number of modules fetched at the same time
+   */
+  public CompactPrefetchingResolver(Resolver resolver, int threads) {
+    super(resolver, threads);
+  }
+
+  protected Identifier createIdentifier(String href, String base) {
+    // as in CompactParseable
+    return new MediaTypedIdentifier(href, base, CompactParseable.MEDIA_TYPE);
+  }
+
+  /**
+   * Looks for an include or external keyword followed by a literal. This finds every reference,
+   * but does not parse the module; a keyword used as a name is never followed by a literal.
+   */
+  protected void scan(Input input) throws IOException {
+    CompactSyntaxTokenManager tokenManager
+            = new CompactSyntaxTokenManager(new JavaCharStream(CompactParseable.createReader(input)));
+    try {
+      Token t = tokenManager.getNextToken();
+      while (t.kind != CompactSyntaxConstants.EOF) {
+        if (t.kind == CompactSyntaxConstants.LITERAL
+            || !(t.image.equals("include") || t.image.equals("external"))) {
+          t = tokenManager.getNextToken();
+          continue;
+        }
+        t = tokenManager.getNextToken();
+        if (t.kind != CompactSyntaxConstants.LITERAL)
+          continue;
+        StringBuilder href = new StringBuilder(unquote(t.image));
+        for (t = tokenManager.getNextToken(); t.image.equals("~"); t = tokenManager.getNextToken()) {
+          t = tokenManager.getNextToken();
+          if (t.kind != CompactSyntaxConstants.LITERAL)
+            break;
+          href.append(unquote(t.image));
+        }
+        prefetch(href.toString(), input.getUri());
+      }
+    }
+    catch (TokenMgrError e) {
+      // the parser will report the error when it parses the module
+    }
+  }
+
+  // as in CompactSyntax
+  private static String unquote(String s) {
+    if (s.length() >= 6 && s.charAt(0) == s.charAt(1)) {
+      s = s.replace('\u0000', '\n');
+      return s.substring(3, s.length() - 3);
+    }
+    else
+      return s.substring(1, s.length() - 1);
+  }
+}
@@ -11,6 +11,13 @@ import java.io.IOException;
 /**
  * An implementation of interface CharStream, where the stream is assumed to
  * contain 16-bit unicode characters.
+ * <p>
+ * Characters are read from the underlying Reader in blocks. A character that needs no
+ * special treatment (which is almost every character) is taken directly from the block;
+ * only newlines, tabs, surrogates, control characters and backslashes go through
+ * the full checks, so escapes cost nothing unless there is a backslash.
+ * Short token images are shared, so that a name used many times in a schema
+ * is represented by a single String.
  */
 public final class JavaCharStream {
   public static final boolean staticFlag = false;
@@ -82,6 +89,14 @@ public final class JavaCharStream {
   private int inBuf = 0;
   private int tabSize = 8;
 
+  static private final int READ_SIZE = 8192;
+  static private final int MAX_SHARED_IMAGE_LENGTH = 32;
+  static private final int SHARED_IMAGES_SIZE = 1024;
+  /**
+   * A cache of token images, indexed by the hash code of the image.
+   */
+  private final String[] sharedImages = new String[SHARED_IMAGES_SIZE];
+
   protected void setTabSize(int i) { tabSize = i; }
   protected int getTabSize(int i) { return tabSize; }
 
@@ -125,13 +140,13 @@ public final class JavaCharStream {
 
   private final void FillBuff() throws EOFException {
     int i;
-    if (maxNextCharInd == 4096)
+    if (maxNextCharInd == READ_SIZE)
       maxNextCharInd = nextCharInd = 0;
 
     if (closed)
       throw new EOFException();
     try {
-      if ((i = inputStream.read(nextCharBuf, maxNextCharInd, 4096 - maxNextCharInd)) == -1) {
+      if ((i = inputStream.read(nextCharBuf, maxNextCharInd, READ_SIZE - maxNextCharInd)) == -1) {
         closed = true;
         inputStream.close();
         throw new EOFException();
@@ -190,6 +205,17 @@ public final class JavaCharStream {
       available = tokenBegin;
   }
 
+  /**
+   * Moves bufpos to where the next character read goes. bufpos can reach the end of the buffer
+   * without reaching available when an escape has been backed up across the end of the buffer.
+   */
+  private void nextBufpos() {
+    if (++bufpos == available)
+      AdjustBuffSize();
+    else if (bufpos == bufsize)
+      bufpos = 0;
+  }
+
   private final void UpdateLineColumn(char c) {
     column++;
 
@@ -225,6 +251,21 @@ public final class JavaCharStream {
       return buffer[bufpos];
     }
 
+    if (nextCharInd + 1 < maxNextCharInd && bufpos + 1 < available && !prevCharIsLF) {
+      char c = nextCharBuf[nextCharInd + 1];
+      // the same as the general case below for any character in these ranges
+      if (c < 0xD800 && c >= 0x20 && c != '\\') {
+        ++nextCharInd;
+        buffer[++bufpos] = c;
+        bufline[bufpos] = line;
+        bufcolumn[bufpos] = ++column;
+        return c;
+      }
+    }
+    return readCharGeneral();
+  }
+
+  private char readCharGeneral() throws EOFException {
     char c;
     try {
       c = ReadChar();
@@ -248,8 +289,7 @@ public final class JavaCharStream {
           if (Utf16.isSurrogate(c)) {
             if (Utf16.isSurrogate2(c))
               throw new EscapeSyntaxException("illegal_surrogate_pair", line, column + 1);
-            if (++bufpos == available)
-              AdjustBuffSize();
+            nextBufpos();
             buffer[bufpos] = c;
             // UpdateLineColumn(c);
             try {
@@ -278,8 +318,7 @@ public final class JavaCharStream {
       }
       throw e;
     }
-    if (++bufpos == available)
-      AdjustBuffSize();
+    nextBufpos();
     buffer[bufpos] = c;
     UpdateLineColumn(c);
     try {
@@ -293,8 +332,7 @@ public final class JavaCharStream {
     int xCnt = 1;
     for (;;) {
       ReadChar();
-      if (++bufpos == available)
-        AdjustBuffSize();
+      nextBufpos();
       buffer[bufpos] = 'x';
       UpdateLineColumn('x');
       try {
@@ -355,12 +393,12 @@ public final class JavaCharStream {
       }
       c = Utf16.surrogate1(scalarValue);
       buffer[bufpos] = c;
-      int bufpos1 = bufpos;
-      if (++bufpos == bufsize)
-        bufpos = 0;
+      int surrogateLine = bufline[bufpos];
+      int surrogateColumn = bufcolumn[bufpos];
+      nextBufpos();
       buffer[bufpos] = Utf16.surrogate2(scalarValue);
-      bufline[bufpos] = bufline[bufpos1];
-      bufcolumn[bufpos] = bufcolumn[bufpos1];
+      bufline[bufpos] = surrogateLine;
+      bufcolumn[bufpos] = surrogateColumn;
       backup(1);
       return c;
     }
@@ -420,7 +458,7 @@ public final class JavaCharStream {
     buffer = new char[buffersize];
     bufline = new int[buffersize];
     bufcolumn = new int[buffersize];
-    nextCharBuf = new char[4096];
+    nextCharBuf = new char[READ_SIZE];
     skipBOM();
   }
 
@@ -445,7 +483,7 @@ public final class JavaCharStream {
       buffer = new char[buffersize];
       bufline = new int[buffersize];
       bufcolumn = new int[buffersize];
-      nextCharBuf = new char[4096];
+      nextCharBuf = new char[READ_SIZE];
     }
     prevCharIsLF = false;
     tokenBegin = inBuf = maxNextCharInd = 0;
@@ -541,13 +579,33 @@ public final class JavaCharStream {
   }
 
   public final String GetImage() {
-    if (bufpos >= tokenBegin)
-      return new String(buffer, tokenBegin, bufpos - tokenBegin + 1);
+    if (bufpos >= tokenBegin) {
+      int len = bufpos - tokenBegin + 1;
+      if (len > MAX_SHARED_IMAGE_LENGTH)
+        return new String(buffer, tokenBegin, len);
+      int h = 0;
+      for (int i = tokenBegin; i <= bufpos; i++)
+        h = 31*h + buffer[i];
+      int index = h & (SHARED_IMAGES_SIZE - 1);
+      String image = sharedImages[index];
+      if (image == null || image.length() != len || !imageEquals(image)) {
+        image = new String(buffer, tokenBegin, len);
+        sharedImages[index] = image;
+      }
+      return image;
+    }
     else
       return new String(buffer, tokenBegin, bufsize - tokenBegin) +
               new String(buffer, 0, bufpos + 1);
   }
 
+  private boolean imageEquals(String image) {
+    for (int i = 0, j = tokenBegin; j <= bufpos; i++, j++)
+      if (image.charAt(i) != buffer[j])
+        return false;
+    return true;
+  }
+
   public final char[] GetSuffix(int len) {
     char[] ret = new char[len];
 
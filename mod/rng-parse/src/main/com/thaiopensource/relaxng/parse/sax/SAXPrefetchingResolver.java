@@ -0,0 +1,80 @@
+package com.thaiopensource.relaxng.parse.sax;
+
+import com.thaiopensource.relaxng.parse.PrefetchingResolver;
+import com.thaiopensource.resolver.Identifier;
+import com.thaiopensource.resolver.Input;
+import com.thaiopensource.resolver.xml.XMLDocumentIdentifier;
+import com.thaiopensource.resolver.xml.sax.SAXResolver;
+import com.thaiopensource.xml.sax.XmlBaseHandler;
+import com.thaiopensource.xml.util.WellKnownNamespaces;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+
+/**
+ * A PrefetchingResolver for schemas in the XML syntax.
+ */
+public class SAXPrefetchingResolver extends PrefetchingResolver {
+  private final SAXResolver saxResolver;
+
+  /**
+   * @param saxResolver the SAXResolver used to resolve references, to fetch modules and to create XMLReaders
+   * for scanning them
+   * @param threads the maximum number of modules fetched at the same time
+   */
+  public SAXPrefetchingResolver(SAXResolver saxResolver, int threads) {
+    super(saxResolver.getResolver(), threads);
+    this.saxResolver = saxResolver;
+  }
+
+  protected Identifier createIdentifier(String href, String base) {
+    // as in SAXSubParser
+    return new XMLDocumentIdentifier(href, base, WellKnownNamespaces.RELAX_NG);
+  }
+
+  protected void scan(Input input) throws IOException {
+    InputSource inputSource = new InputSource(input.getByteStream());
+    inputSource.setSystemId(input.getUri());
+    inputSource.setEncoding(input.getEncoding());
+    try {
+      XMLReader xr = saxResolver.createXMLReader();
+      xr.setContentHandler(new ReferenceHandler());
+      // errors are left to the parser; without an ErrorHandler, the XMLReader might print them itself
+      xr.setErrorHandler(new DefaultHandler());
+      xr.parse(inputSource);
+    }
+    catch (SAXException e) {
+      // the parser will report the error when it parses the module
+    }
+  }
+
+  private class ReferenceHandler extends DefaultHandler {
+    private final XmlBaseHandler xmlBaseHandler = new XmlBaseHandler();
+
+    public void setDocumentLocator(Locator locator) {
+      xmlBaseHandler.setLocator(locator);
+    }
+
+    public void startElement(String uri, String localName, String qName, Attributes atts) {
+      xmlBaseHandler.startElement();
+      String xmlBase = atts.getValue(WellKnownNamespaces.XML, "base");
+      if (xmlBase != null)
+        xmlBaseHandler.xmlBaseAttribute(xmlBase);
+      if (uri.equals(WellKnownNamespaces.RELAX_NG)
+          && (localName.equals("include") || localName.equals("externalRef"))) {
+        String href = atts.getValue("", "href");
+        if (href != null)
+          prefetch(href, xmlBaseHandler.getBaseUri());
+      }
+    }
+
+    public void endElement(String uri, String localName, String qName) {
+      xmlBaseHandler.endElement();
+    }
+  }
+}
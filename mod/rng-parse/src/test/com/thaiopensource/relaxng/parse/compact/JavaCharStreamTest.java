@@ -0,0 +1,112 @@
+package com.thaiopensource.relaxng.parse.compact;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test the tokens read through JavaCharStream, and the locations of the errors that it reports,
+ * in particular when an escape comes just where the buffer wraps around.
+ */
+public class JavaCharStreamTest {
+  /**
+   * Lengths of a comment before an escape that put the escape near where the buffer wraps around
+   * or near the end of a block read from the Reader.
+   */
+  static private final int[][] COMMENT_LENGTH_RANGES = { { 4000, 4200 }, { 8100, 8300 } };
+
+  static private String comment(int length) {
+    StringBuilder buf = new StringBuilder("#");
+    for (int i = 1; i < length; i++)
+      buf.append('c');
+    return buf.append('\n').toString();
+  }
+
+  /**
+   * Returns the image and location of each token, with the line numbers increased by lineOffset.
+   */
+  static private List<String> tokenize(String input, int lineOffset) {
+    CompactSyntaxTokenManager tm = new CompactSyntaxTokenManager(new JavaCharStream(new StringReader(input)));
+    List<String> tokens = new ArrayList<String>();
+    for (Token t = tm.getNextToken(); t.kind != CompactSyntaxConstants.EOF; t = tm.getNextToken())
+      tokens.add(t.image + "@" + (t.beginLine + lineOffset) + ":" + t.beginColumn
+                 + "-" + (t.endLine + lineOffset) + ":" + t.endColumn);
+    return tokens;
+  }
+
+  @DataProvider(name = "escapes")
+  Object[][] createEscapes() {
+    return new Object[][] {
+      { "element \\x{61}b { empty }", "[element@1:1-1:7, ab@1:9-1:15, {@1:17-1:17, empty@1:19-1:23, }@1:25-1:25]" },
+      { "a\\xx{62}\t\\x{63}", "[ab@1:1-1:2, c@1:17-1:17]" },
+      { "\"\\x{10000}\\x{10FFFF}\"",
+        "[\"\ud800\udc00\udbff\udfff\"@1:1-1:21]" },
+      { "\"\ud800\udc00\\x{41}\"", "[\"\ud800\udc00A\"@1:1-1:9]" },
+      { "a\\xb", "[a@1:1-1:1, \\xb@1:2-1:4]" },
+    };
+  }
+
+  @Test(dataProvider = "escapes")
+  public void testEscape(String input, String expected) {
+    Assert.assertEquals(tokenize(input, 0).toString(), expected);
+  }
+
+  /**
+   * An escape that was backed up across the end of the buffer after the buffer had wrapped around
+   * used to cause an ArrayIndexOutOfBoundsException.
+   */
+  @Test(dataProvider = "escapes")
+  public void testEscapeAfterLongComment(String input, String expected) {
+    for (int[] range : COMMENT_LENGTH_RANGES)
+      for (int length = range[0]; length <= range[1]; length++)
+        Assert.assertEquals(tokenize(comment(length) + input, -1).toString(), expected,
+                            "after a comment of length " + length);
+  }
+
+  @DataProvider(name = "errors")
+  Object[][] createErrors() {
+    return new Object[][] {
+      { "element a { \"\\x{6g}\" }", "illegal_hex_digit", 18 },
+      { "element a { \"\\x{}\" }", "illegal_hex_digit", 17 },
+      { "element a { \"\\x{110000}\" }", "char_code_too_big", 22 },
+      { "element a { \"\\x{D800}\" }", "illegal_char_code_ref", 21 },
+      { "element a { \"\\x{FFFE}\" }", "illegal_char_code_ref", 21 },
+      { "element a { \"\\x{41", "incomplete_escape", 18 },
+      { "element a { \"\udc00\" }", "illegal_surrogate_pair", 14 },
+      { "element a { \"\ud800a\" }", "illegal_surrogate_pair", 15 },
+      { "element a { \"\ud800", "illegal_surrogate_pair", 14 },
+      { "element a { \"\u0001\" }", "illegal_char_code", 14 },
+      { "\telement\t\\x{g}", "illegal_hex_digit", 20 },
+      { "\t\t\"\ud800\"", "illegal_surrogate_pair", 19 },
+      { "a\tb\t\"\\xx{7}\"", "illegal_char_code_ref", 23 },
+    };
+  }
+
+  static private void checkError(String input, String key, int line, int column) {
+    try {
+      tokenize(input, 0);
+      Assert.fail("no error for " + input);
+    }
+    catch (EscapeSyntaxException e) {
+      Assert.assertEquals(e.getKey(), key);
+      Assert.assertEquals(e.getLineNumber(), line);
+      Assert.assertEquals(e.getColumnNumber(), column);
+    }
+  }
+
+  @Test(dataProvider = "errors")
+  public void testErrorLocation(String input, String key, int column) {
+    checkError(input, key, 1, column);
+  }
+
+  @Test(dataProvider = "errors")
+  public void testErrorLocationAfterLongComment(String input, String key, int column) {
+    for (int[] range : COMMENT_LENGTH_RANGES)
+      for (int length = range[0]; length <= range[1]; length++)
+        checkError(comment(length) + input, key, 2, column);
+  }
+}
@@ -8,8 +8,15 @@ import java.io.File;
 import java.io.OutputStreamWriter;
 import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
 
 public class LocalOutputDirectory implements OutputDirectory {
   private final File mainOutputFile;
@@ -18,10 +25,13 @@ public class LocalOutputDirectory implements OutputDirectory {
   private String defaultEncoding;
   private boolean alwaysUseDefaultEncoding;
   private int lineLength;
-  // maps URIs to filenames
+  // maps URIs to filenames; access must be synchronized, since documents may be output concurrently
   private final Map<String, String> uriMap = new HashMap<String, String>();
   private final String mainInputExtension;
   private int indent;
+  private boolean keepUnchangedFiles;
+  // the files that have been opened; access must be synchronized
+  private final List<File> outputFiles = new ArrayList<File>();
 
   public LocalOutputDirectory(String mainSourceUri, File mainOutputFile, String extension,
                               String encoding, int lineLength, int indent) {
@@ -42,13 +52,38 @@ public class LocalOutputDirectory implements OutputDirectory {
     alwaysUseDefaultEncoding = true;
   }
 
+  /**
+   * Specifies whether a file whose existing content is the same as the output
+   * should be left untouched, rather than being written again.
+   * If so, the content of each file is kept in memory until the file is closed.
+   */
+  public void setKeepUnchangedFiles(boolean keepUnchangedFiles) {
+    this.keepUnchangedFiles = keepUnchangedFiles;
+  }
+
+  /**
+   * Returns the files that have been opened, in the order in which they were opened.
+   */
+  public List<File> getOutputFiles() {
+    synchronized (outputFiles) {
+      return new ArrayList<File>(outputFiles);
+    }
+  }
+
   public OutputDirectory.Stream open(String sourceUri, String encoding) throws IOException {
     if (encoding == null || alwaysUseDefaultEncoding)
       encoding = defaultEncoding;
     String javaEncoding = EncodingMap.getJavaName(encoding);
     File file = new File(mainOutputFile.getParentFile(), mapFilename(sourceUri));
-    return new OutputDirectory.Stream(new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file)),
-							     javaEncoding),
+    synchronized (outputFiles) {
+      outputFiles.add(file);
+    }
+    OutputStream out;
+    if (keepUnchangedFiles)
+      out = new UnchangedFileOutputStream(file);
+    else
+      out = new BufferedOutputStream(new FileOutputStream(file));
+    return new OutputDirectory.Stream(new OutputStreamWriter(out, javaEncoding),
 				      encoding,
 				      CharRepertoire.getInstance(javaEncoding));
   }
@@ -57,7 +92,7 @@ public class LocalOutputDirectory implements OutputDirectory {
     return mapFilename(toSourceUri);
   }
 
-  private String mapFilename(String sourceUri) {
+  private synchronized String mapFilename(String sourceUri) {
     String filename = uriMap.get(sourceUri);
     if (filename == null) {
       filename = chooseFilename(sourceUri);
@@ -79,6 +114,55 @@ public class LocalOutputDirectory implements OutputDirectory {
     return filename;
   }
 
+  /**
+   * Keeps the content in memory and writes it to the file when closed,
+   * unless the file already has the same content.
+   */
+  static private class UnchangedFileOutputStream extends ByteArrayOutputStream {
+    private final File file;
+    private boolean closed = false;
+
+    UnchangedFileOutputStream(File file) {
+      this.file = file;
+    }
+
+    public void close() throws IOException {
+      if (closed)
+        return;
+      closed = true;
+      byte[] content = toByteArray();
+      if (hasContent(file, content))
+        return;
+      OutputStream out = new FileOutputStream(file);
+      try {
+        out.write(content);
+      }
+      finally {
+        out.close();
+      }
+    }
+
+    static private boolean hasContent(File file, byte[] content) throws IOException {
+      if (!file.isFile() || file.length() != content.length)
+        return false;
+      byte[] buf = new byte[content.length];
+      InputStream in = new FileInputStream(file);
+      try {
+        int off = 0;
+        while (off < buf.length) {
+          int n = in.read(buf, off, buf.length - off);
+          if (n < 0)
+            return false;
+          off += n;
+        }
+      }
+      finally {
+        in.close();
+      }
+      return Arrays.equals(buf, content);
+    }
+  }
+
   public String getLineSeparator() {
     return lineSeparator;
   }
@@ -0,0 +1,110 @@
+package com.thaiopensource.relaxng.output.common;
+
+import com.thaiopensource.relaxng.edit.SchemaCollection;
+import com.thaiopensource.relaxng.edit.SchemaDocument;
+import com.thaiopensource.relaxng.output.OutputDirectory;
+import com.thaiopensource.relaxng.translate.util.IntegerParam;
+import com.thaiopensource.relaxng.translate.util.ParamProcessor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Outputs each document of a schema collection separately, using a pool of threads
+ * when more than one thread is allowed. This can only be used when any analysis that
+ * depends on more than one document has been completed before the documents are output,
+ * so that the output of each document depends only on that document.
+ * <p>
+ * The filenames of all the documents are chosen, in order of URI, before any document
+ * is output, so that the filenames do not depend on the order in which the documents
+ * are output.
+ */
+public abstract class DocumentOutput {
+  private static final int MAX_THREADS = 256;
+  private int threads = 1;
+
+  /**
+   * Outputs a single document.
+   * @param sd the document
+   * @param sourceUri the URI of the document
+   * @param od the OutputDirectory to which the document is output
+   */
+  protected abstract void output(SchemaDocument sd, String sourceUri, OutputDirectory od) throws IOException;
+
+  /**
+   * Declares a <code>threads</code> parameter that specifies the maximum number of threads to use.
+   */
+  public void declareParams(ParamProcessor pp) {
+    pp.declare("threads",
+               new IntegerParam(1, MAX_THREADS) {
+                 protected void setInteger(int value) {
+                   threads = value;
+                 }
+               });
+  }
+
+  public void output(final SchemaCollection sc, final OutputDirectory od) throws IOException {
+    List<String> uris = new ArrayList<String>(sc.getSchemaDocumentMap().keySet());
+    Collections.sort(uris);
+    for (String uri : uris)
+      od.reference(sc.getMainUri(), uri);
+    int nThreads = Math.min(threads, uris.size());
+    if (nThreads <= 1) {
+      for (String uri : uris)
+        output(sc.getSchemaDocumentMap().get(uri), uri, od);
+      return;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "trang-output");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>();
+      for (final String uri : uris) {
+        final SchemaDocument sd = sc.getSchemaDocumentMap().get(uri);
+        futures.add(executor.submit(new Callable<Object>() {
+          public Object call() throws IOException {
+            output(sd, uri, od);
+            return null;
+          }
+        }));
+      }
+      for (Future<Object> future : futures)
+        waitFor(future);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void waitFor(Future<Object> future) throws IOException {
+    try {
+      future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted");
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException)cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      if (cause instanceof Error)
+        throw (Error)cause;
+      throw new RuntimeException(cause);
+    }
+  }
+}
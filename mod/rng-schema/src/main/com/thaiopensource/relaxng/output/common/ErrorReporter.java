@@ -9,7 +9,7 @@ import com.thaiopensource.util.Localizer;
 public class ErrorReporter {
   private final Localizer localizer;
   private final ErrorHandler eh;
-  private boolean hadError = false;
+  private volatile boolean hadError = false;
 
   static public class WrappedSAXException extends RuntimeException {
     private final SAXException exception;
@@ -28,7 +28,7 @@ public class ErrorReporter {
     this.localizer = new Localizer(cls);
   }
 
-  public void error(String key, SourceLocation loc) {
+  public synchronized void error(String key, SourceLocation loc) {
     hadError = true;
     if (eh == null)
       return;
@@ -40,7 +40,7 @@ public class ErrorReporter {
     }
   }
 
-  public void error(String key, String arg, SourceLocation loc) {
+  public synchronized void error(String key, String arg, SourceLocation loc) {
     hadError = true;
     if (eh == null)
       return;
@@ -52,7 +52,7 @@ public class ErrorReporter {
     }
   }
 
-  public void error(String key, String arg1, String arg2, SourceLocation loc) {
+  public synchronized void error(String key, String arg1, String arg2, SourceLocation loc) {
     hadError = true;
     if (eh == null)
       return;
@@ -64,7 +64,7 @@ public class ErrorReporter {
     }
   }
 
-  public void warning(String key, SourceLocation loc) {
+  public synchronized void warning(String key, SourceLocation loc) {
     if (eh == null)
       return;
     try {
@@ -75,7 +75,7 @@ public class ErrorReporter {
     }
   }
 
-  public void warning(String key, String arg, SourceLocation loc) {
+  public synchronized void warning(String key, String arg, SourceLocation loc) {
     if (eh == null)
       return;
     try {
@@ -86,7 +86,7 @@ public class ErrorReporter {
     }
   }
 
-  public void warning(String key, String arg1, String arg2, SourceLocation loc) {
+  public synchronized void warning(String key, String arg1, String arg2, SourceLocation loc) {
     if (eh == null)
       return;
     try {
@@ -6,23 +6,29 @@ import com.thaiopensource.relaxng.output.OutputDirectory;
 import com.thaiopensource.relaxng.output.OutputDirectoryParamProcessor;
 import com.thaiopensource.relaxng.output.OutputFailedException;
 import com.thaiopensource.relaxng.output.OutputFormat;
+import com.thaiopensource.relaxng.output.common.DocumentOutput;
 import com.thaiopensource.relaxng.output.common.ErrorReporter;
 import com.thaiopensource.relaxng.translate.util.InvalidParamsException;
+import com.thaiopensource.relaxng.translate.util.ParamProcessor;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
-import java.util.Map;
 
 public class RncOutputFormat implements OutputFormat {
   public void output(SchemaCollection sc, OutputDirectory od, String[] params, String inputFormat, ErrorHandler eh)
           throws SAXException, IOException, OutputFailedException, InvalidParamsException {
-    new OutputDirectoryParamProcessor(od).process(params, eh);
-    try {
-      ErrorReporter er = new ErrorReporter(eh, RncOutputFormat.class);
-      for (Map.Entry<String, SchemaDocument> entry : sc.getSchemaDocumentMap().entrySet()) {
-        outputPattern(entry.getValue(), entry.getKey(), od, er);
+    final ErrorReporter er = new ErrorReporter(eh, RncOutputFormat.class);
+    DocumentOutput documentOutput = new DocumentOutput() {
+      protected void output(SchemaDocument sd, String sourceUri, OutputDirectory od) throws IOException {
+        outputPattern(sd, sourceUri, od, er);
       }
+    };
+    ParamProcessor pp = new OutputDirectoryParamProcessor(od);
+    documentOutput.declareParams(pp);
+    pp.process(params, eh);
+    try {
+      documentOutput.output(sc, od);
     }
     catch (ErrorReporter.WrappedSAXException e) {
       throw e.getException();
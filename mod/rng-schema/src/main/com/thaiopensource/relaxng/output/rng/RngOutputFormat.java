@@ -5,20 +5,26 @@ import com.thaiopensource.relaxng.edit.SchemaDocument;
 import com.thaiopensource.relaxng.output.OutputDirectory;
 import com.thaiopensource.relaxng.output.OutputDirectoryParamProcessor;
 import com.thaiopensource.relaxng.output.OutputFormat;
+import com.thaiopensource.relaxng.output.common.DocumentOutput;
 import com.thaiopensource.relaxng.translate.util.InvalidParamsException;
+import com.thaiopensource.relaxng.translate.util.ParamProcessor;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
-import java.util.Map;
 
 public class RngOutputFormat implements OutputFormat {
   public void output(SchemaCollection sc, OutputDirectory od, String[] params, String inputFormat, ErrorHandler eh)
           throws IOException, InvalidParamsException, SAXException {
-    new OutputDirectoryParamProcessor(od).process(params, eh);
-    for (Map.Entry<String, SchemaDocument> entry : sc.getSchemaDocumentMap().entrySet()) {
-      outputPattern(entry.getValue(), entry.getKey(), od);
-    }
+    DocumentOutput documentOutput = new DocumentOutput() {
+      protected void output(SchemaDocument sd, String sourceUri, OutputDirectory od) throws IOException {
+        outputPattern(sd, sourceUri, od);
+      }
+    };
+    ParamProcessor pp = new OutputDirectoryParamProcessor(od);
+    documentOutput.declareParams(pp);
+    pp.process(params, eh);
+    documentOutput.output(sc, od);
   }
 
   private static void outputPattern(SchemaDocument sd, String sourceUri, OutputDirectory od) throws IOException {
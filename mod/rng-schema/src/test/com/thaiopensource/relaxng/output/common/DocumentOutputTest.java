@@ -0,0 +1,109 @@
+package com.thaiopensource.relaxng.output.common;
+
+import com.thaiopensource.relaxng.edit.SchemaCollection;
+import com.thaiopensource.relaxng.input.parse.compact.CompactParseInputFormat;
+import com.thaiopensource.relaxng.output.LocalOutputDirectory;
+import com.thaiopensource.relaxng.output.OutputFormat;
+import com.thaiopensource.relaxng.output.rnc.RncOutputFormat;
+import com.thaiopensource.relaxng.output.rng.RngOutputFormat;
+import com.thaiopensource.xml.sax.DraconianErrorHandler;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Test that the filenames and the content of the output do not depend on the number of threads
+ * used to output the documents, even when documents in different directories have the same name.
+ */
+public class DocumentOutputTest {
+  static private final int THREADS = 4;
+  static private final String[] DIRECTORIES = { "a", "b", "c" };
+
+  private File dir;
+  private SchemaCollection sc;
+  private String mainUri;
+
+  @BeforeClass
+  public void load() throws Exception {
+    dir = File.createTempFile("document-output", "");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+    StringBuilder main = new StringBuilder();
+    StringBuilder start = new StringBuilder();
+    for (String name : DIRECTORIES) {
+      Assert.assertTrue(new File(dir, name).mkdir());
+      write(name + "/x.rnc", name + " = element " + name + " { " + name + "-content }\n"
+                             + name + "-content = attribute id { text }?\n");
+      main.append("include \"").append(name).append("/x.rnc\"\n");
+      start.append(start.length() == 0 ? "start = element doc { (" : " | ").append(name);
+    }
+    main.append(start).append(")* }\n");
+    write("main.rnc", main.toString());
+    mainUri = new File(dir, "main.rnc").toURI().toString();
+    sc = new CompactParseInputFormat().load(mainUri, new String[0], "rng", new DraconianErrorHandler(), null);
+  }
+
+  @AfterClass
+  public void deleteFiles() {
+    delete(dir);
+  }
+
+  static private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files)
+        delete(f);
+    }
+    file.delete();
+  }
+
+  private void write(String name, String content) throws IOException {
+    Files.write(new File(dir, name).toPath(), content.getBytes("UTF-8"));
+  }
+
+  /**
+   * Returns the content of each file output, by filename.
+   */
+  private Map<String, String> output(OutputFormat format, String extension, int threads, String outName)
+          throws Exception {
+    File out = new File(dir, outName);
+    Assert.assertTrue(out.mkdir());
+    LocalOutputDirectory od = new LocalOutputDirectory(mainUri, new File(out, "main" + extension), extension,
+                                                       "UTF-8", 72, 2);
+    format.output(sc, od, new String[] { "threads=" + threads }, "rnc", new DraconianErrorHandler());
+    Map<String, String> files = new TreeMap<String, String>();
+    for (File file : out.listFiles())
+      files.put(file.getName(), new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+    return files;
+  }
+
+  @DataProvider(name = "formats")
+  Object[][] formats() {
+    return new Object[][] {
+      { new RngOutputFormat(), ".rng" },
+      { new RncOutputFormat(), ".rnc" },
+    };
+  }
+
+  @Test(dataProvider = "formats")
+  public void testSameAsSingleThread(OutputFormat format, String extension) throws Exception {
+    Map<String, String> expected = output(format, extension, 1, "single" + extension);
+    // documents get filenames in order of URI
+    Assert.assertEquals(expected.keySet().toString(),
+                        "[main" + extension + ", x" + extension + ", x1" + extension + ", x2" + extension + "]");
+    for (int i = 0; i < DIRECTORIES.length; i++) {
+      String filename = (i == 0 ? "x" : "x" + i) + extension;
+      Assert.assertTrue(expected.get("main" + extension).contains(filename), filename);
+      Assert.assertTrue(expected.get(filename).contains(DIRECTORIES[i] + "-content"), filename);
+    }
+    for (int i = 0; i < 3; i++)
+      Assert.assertEquals(output(format, extension, THREADS, "multi" + i + extension), expected);
+  }
+}
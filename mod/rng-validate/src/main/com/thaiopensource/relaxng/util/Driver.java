@@ -3,6 +3,7 @@ package com.thaiopensource.relaxng.util;
 import com.thaiopensource.resolver.catalog.CatalogResolver;
 import com.thaiopensource.util.Localizer;
 import com.thaiopensource.util.OptionParser;
+import com.thaiopensource.util.PropertyMap;
 import com.thaiopensource.util.PropertyMapBuilder;
 import com.thaiopensource.util.UriOrFile;
 import com.thaiopensource.util.Version;
@@ -17,15 +18,19 @@ import com.thaiopensource.validate.auto.AutoSchemaReader;
 import com.thaiopensource.validate.prop.rng.RngProperty;
 import com.thaiopensource.validate.rng.CompactSchemaReader;
 import com.thaiopensource.xml.sax.ErrorHandlerImpl;
+import com.thaiopensource.xml.tok.sax.TokenizerXMLReaderCreator;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
 
 class Driver {
   static private String usageKey = "usage";
+  static private final int MAX_THREADS = 256;
+  static private final String OPTION_SPEC = "itcdfFe:j:p:sxC:S:D:";
 
   static public void setUsageKey(String key) {
     usageKey = key;
@@ -38,17 +43,37 @@ class Driver {
   private boolean timing = false;
   private String encoding = null;
   private Localizer localizer = new Localizer(Driver.class);
+  private final PrintStream out;
+  private final ValidationDaemon daemon;
+
+  Driver() {
+    this(System.out, null);
+  }
+
+  /**
+   * Creates a Driver that handles a request forwarded to a daemon.
+   *
+   * @param out the stream to which the output for the request is written
+   * @param daemon the daemon that keeps the schemas loaded
+   */
+  Driver(PrintStream out, ValidationDaemon daemon) {
+    this.out = out;
+    this.daemon = daemon;
+  }
 
   public int doMain(String[] args) {
-    ErrorHandlerImpl eh = new ErrorHandlerImpl(System.out);
-    OptionParser op = new OptionParser("itcdfe:p:sC:", args);
+    ErrorHandlerImpl eh = new ErrorHandlerImpl(out);
+    OptionParser op = new OptionParser(OPTION_SPEC, args);
     PropertyMapBuilder properties = new PropertyMapBuilder();
     properties.put(ValidateProperty.ERROR_HANDLER, eh);
     RngProperty.CHECK_ID_IDREF.add(properties);
     SchemaReader sr = null;
     boolean compact = false;
     boolean outputSimplifiedSchema = false;
+    boolean builtinParser = false;
     List<String> catalogUris = new ArrayList<String>();
+    int servePort = -1;
+    int daemonPort = -1;
 
     try {
       while (op.moveToNextOption()) {
@@ -83,9 +108,55 @@ class Driver {
         case 'f':
           RngProperty.FEASIBLE.add(properties);
           break;
+        case 'F':
+          ValidateProperty.FAIL_FAST.add(properties);
+          break;
         case 's':
           outputSimplifiedSchema = true;
           break;
+        case 'x':
+          builtinParser = true;
+          break;
+        case 'j':
+          {
+            int threads;
+            try {
+              threads = Integer.parseInt(op.getOptionArg());
+            }
+            catch (NumberFormatException e) {
+              threads = 0;
+            }
+            if (threads < 1 || threads > MAX_THREADS) {
+              eh.print(localizer.message("invalid_threads", op.getOptionArg()));
+              return 2;
+            }
+            properties.put(RngProperty.THREADS, threads);
+          }
+          break;
+        case 'S':
+          // a daemon does not start another daemon
+          if (daemon != null)
+            throw new OptionParser.InvalidOptionException();
+          // fall through
+        case 'D':
+          {
+            int port;
+            try {
+              port = Integer.parseInt(op.getOptionArg());
+            }
+            catch (NumberFormatException e) {
+              port = 0;
+            }
+            if (port < 1 || port > 65535) {
+              eh.print(localizer.message("invalid_port", op.getOptionArg()));
+              return 2;
+            }
+            if (op.getOptionChar() == 'S')
+              servePort = port;
+            else
+              daemonPort = port;
+          }
+          break;
         case 'p':
           {
             if (sr == null)
@@ -115,6 +186,21 @@ class Driver {
       eh.print(localizer.message("option_missing_argument", op.getOptionCharString()));
       return 2;
     }
+    if (servePort > 0) {
+      try {
+        new ValidationDaemon().serve(servePort);
+      }
+      catch (IOException e) {
+        eh.printException(e);
+      }
+      return 2;
+    }
+    if (daemonPort > 0 && op.getRemainingArgs().length > 0) {
+      int status = ValidationDaemon.forward(daemonPort, forwardedArgs(args), out);
+      // if no daemon is listening, validate here
+      if (status >= 0)
+        return status;
+    }
     if (!catalogUris.isEmpty()) {
       try {
         properties.put(ValidateProperty.RESOLVER, new CatalogResolver(catalogUris));
@@ -126,6 +212,7 @@ class Driver {
     }
     if (compact)
       sr = CompactSchemaReader.getInstance();
+    String[] optionArgs = args;
     args = op.getRemainingArgs();
     if (args.length < 1) {
       eh.print(localizer.message(usageKey, Version.getVersion(Driver.class)));
@@ -134,12 +221,33 @@ class Driver {
     long startTime = System.currentTimeMillis();
     long loadedPatternTime = -1;
     boolean hadError = false;
+    ValidationDaemon.CachedDriver cachedDriver = null;
     try {
-      ValidationDriver driver = new ValidationDriver(properties.toPropertyMap(), sr);
+      PropertyMap schemaProperties = properties.toPropertyMap();
+      PropertyMap instanceProperties = schemaProperties;
+      if (builtinParser) {
+        // schemas may depend on their DTDs, so only instances use the built-in parser
+        properties.put(ValidateProperty.XML_READER_CREATOR, new TokenizerXMLReaderCreator());
+        instanceProperties = properties.toPropertyMap();
+      }
       InputSource in = ValidationDriver.uriOrFileInputSource(args[0]);
       if (encoding != null)
         in.setEncoding(encoding);
-      if (driver.loadSchema(in)) {
+      ValidationDriver driver;
+      if (daemon != null) {
+        // the options and the schema determine the loaded schema
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i <= optionArgs.length - args.length; i++)
+          key.append(optionArgs[i]).append('\u0000');
+        cachedDriver = daemon.getDriver(key.toString(), schemaProperties, instanceProperties, sr, in, eh);
+        driver = cachedDriver == null ? null : cachedDriver.getDriver();
+      }
+      else {
+        driver = new ValidationDriver(schemaProperties, instanceProperties, sr);
+        if (!driver.loadSchema(in))
+          driver = null;
+      }
+      if (driver != null) {
         loadedPatternTime = System.currentTimeMillis();
         if (outputSimplifiedSchema) {
           String simplifiedSchema = driver.getSchemaProperties().get(RngProperty.SIMPLIFIED_SCHEMA);
@@ -148,7 +256,7 @@ class Driver {
             hadError = true;
           }
           else
-            System.out.print(simplifiedSchema);
+            out.print(simplifiedSchema);
         }
 	for (int i = 1; i < args.length; i++) {
 	  if (!driver.validate(ValidationDriver.uriOrFileInputSource(args[i])))
@@ -166,6 +274,10 @@ class Driver {
       hadError = true;
       eh.printException(e);
     }
+    finally {
+      if (cachedDriver != null)
+        daemon.releaseDriver(cachedDriver);
+    }
     if (timing) {
       long endTime = System.currentTimeMillis();
       if (loadedPatternTime < 0)
@@ -182,4 +294,33 @@ class Driver {
     return 0;
   }
 
+  /**
+   * Returns the arguments to forward to a daemon: the arguments other than the -D option,
+   * with files converted to absolute URIs, since the daemon has a different current directory.
+   * The arguments must be valid.
+   */
+  static private String[] forwardedArgs(String[] args) {
+    OptionParser op = new OptionParser(OPTION_SPEC, args);
+    List<String> result = new ArrayList<String>();
+    try {
+      while (op.moveToNextOption()) {
+        if (op.getOptionChar() == 'D')
+          continue;
+        result.add("-" + op.getOptionChar());
+        String arg = op.getOptionArg();
+        if (arg != null)
+          result.add(op.getOptionChar() == 'C' ? UriOrFile.toUri(arg) : arg);
+      }
+    }
+    catch (OptionParser.InvalidOptionException e) {
+      throw new IllegalArgumentException();
+    }
+    catch (OptionParser.MissingArgumentException e) {
+      throw new IllegalArgumentException();
+    }
+    for (String arg : op.getRemainingArgs())
+      result.add(UriOrFile.toUri(arg));
+    return result.toArray(new String[result.size()]);
+  }
+
 }
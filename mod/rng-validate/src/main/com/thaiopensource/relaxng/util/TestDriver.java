@@ -1,12 +1,14 @@
 package com.thaiopensource.relaxng.util;
 
 import com.thaiopensource.util.OptionParser;
+import com.thaiopensource.util.PropertyMap;
 import com.thaiopensource.util.PropertyMapBuilder;
 import com.thaiopensource.util.Localizer;
 import com.thaiopensource.validate.ValidateProperty;
 import com.thaiopensource.validate.ValidationDriver;
 import com.thaiopensource.validate.prop.rng.RngProperty;
 import com.thaiopensource.xml.sax.ErrorHandlerImpl;
+import com.thaiopensource.xml.tok.sax.TokenizerXMLReaderCreator;
 import com.thaiopensource.datatype.DatatypeLibraryLoader;
 import org.xml.sax.SAXException;
 
@@ -29,17 +31,21 @@ class TestDriver {
   public int doMain(String[] args) throws IOException {
     long startTime = System.currentTimeMillis();
     eh = new ErrorHandlerImpl(System.out);
-    OptionParser op = new OptionParser("i", args);
+    OptionParser op = new OptionParser("ix", args);
     PropertyMapBuilder properties = new PropertyMapBuilder();
     // This is an optimization.  It ensures that all SchemaReaders share a
     // single DatatypeLibraryLoader.
     properties.put(RngProperty.DATATYPE_LIBRARY_FACTORY, new DatatypeLibraryLoader());
+    boolean builtinParser = false;
     try {
       while (op.moveToNextOption()) {
         switch (op.getOptionChar()) {
         case 'i':
           RngProperty.CHECK_ID_IDREF.add(properties);
           break;
+        case 'x':
+          builtinParser = true;
+          break;
         }
       }
     }
@@ -54,7 +60,14 @@ class TestDriver {
     args = op.getRemainingArgs();
     eh = new ErrorHandlerImpl(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[0]))));
     properties.put(ValidateProperty.ERROR_HANDLER, eh);
-    driver = new ValidationDriver(properties.toPropertyMap());
+    PropertyMap schemaProperties = properties.toPropertyMap();
+    PropertyMap instanceProperties = schemaProperties;
+    if (builtinParser) {
+      // as in Driver, only instances use the built-in parser
+      properties.put(ValidateProperty.XML_READER_CREATOR, new TokenizerXMLReaderCreator());
+      instanceProperties = properties.toPropertyMap();
+    }
+    driver = new ValidationDriver(schemaProperties, instanceProperties);
     int result = 0;
     for (int i = 1; i < args.length; i++) {
       int n = runTestSuite(new File(args[i]));
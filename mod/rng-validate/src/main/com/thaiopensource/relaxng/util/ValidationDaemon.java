@@ -0,0 +1,480 @@
+package com.thaiopensource.relaxng.util;
+
+import com.thaiopensource.resolver.Identifier;
+import com.thaiopensource.resolver.Input;
+import com.thaiopensource.resolver.Resolver;
+import com.thaiopensource.resolver.ResolverException;
+import com.thaiopensource.util.Localizer;
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.SchemaReader;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.validate.ValidationDriver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates on behalf of Driver, so that schemas stay loaded and validators stay warm between
+ * invocations of the command line. The daemon listens on a port of the loopback address.
+ * A request consists of the arguments of the command line; the response consists of the exit status
+ * and the output.
+ * <p>
+ * The loaded schemas are kept for each combination of options and schema. Before a loaded schema is used,
+ * the files from which it was loaded are checked, and the schema is loaded again if any of them has been
+ * modified. Only files that are loaded using <code>file:</code> URIs are checked.
+ * <p>
+ * When the daemon starts listening, it writes a random token to a file in the home directory of the user
+ * that only the user can read; see <code>tokenFile</code>. A request must contain the token, so only processes
+ * that can read that file can have the daemon read the files that a request names.
+ * <p>
+ * Requests are handled by a fixed number of threads. A connection that arrives when too many
+ * connections are already waiting for a thread is closed at once, so that the client validates by itself
+ * instead of waiting.
+ */
+class ValidationDaemon {
+  static private final String PROTOCOL = "jing-daemon-1";
+  /**
+   * The status of a response for a request that the daemon does not handle.
+   */
+  static private final int NOT_HANDLED = -1;
+  static private final int MAX_ARGS = 65536;
+  /**
+   * The maximum number of combinations of options and schema for which loaded schemas are kept.
+   */
+  static private final int MAX_SCHEMAS = 64;
+  /**
+   * The maximum number of idle drivers kept for each combination of options and schema.
+   */
+  static private final int MAX_IDLE_DRIVERS = 8;
+  /**
+   * The maximum number of connections waiting for a thread, for each thread.
+   */
+  static private final int MAX_QUEUED_PER_THREAD = 4;
+  static private final int TOKEN_BYTES = 16;
+  static private final String TOKEN_FILE_PREFIX = ".jing-daemon-";
+  static private final int CONNECT_TIMEOUT_MILLIS = 1000;
+  static private final int READ_TIMEOUT_MILLIS = 60000;
+
+  /**
+   * Maps each key to the idle drivers for it, least recently used key first.
+   * Access must be synchronized on this map.
+   */
+  private final Map<String, List<CachedDriver>> idleDrivers
+    = new LinkedHashMap<String, List<CachedDriver>>(16, 0.75f, true) {
+    protected boolean removeEldestEntry(Map.Entry<String, List<CachedDriver>> eldest) {
+      return size() > MAX_SCHEMAS;
+    }
+  };
+  private final Localizer localizer = new Localizer(ValidationDaemon.class);
+  private String token;
+
+  /**
+   * A ValidationDriver that has loaded a schema. Its ErrorHandler forwards to the ErrorHandler of
+   * the request that is using it.
+   */
+  static class CachedDriver {
+    private final String key;
+    private final ValidationDriver driver;
+    private final ForwardingErrorHandler eh = new ForwardingErrorHandler();
+    /**
+     * Maps each file from which the schema was loaded to its modification time when it was loaded.
+     * Access must be synchronized on this map until the schema has been loaded.
+     */
+    private final Map<File, Long> files = new HashMap<File, Long>();
+
+    private CachedDriver(String key, PropertyMap schemaProperties, PropertyMap instanceProperties,
+                         SchemaReader sr) {
+      this.key = key;
+      PropertyMapBuilder builder = new PropertyMapBuilder(schemaProperties);
+      builder.put(ValidateProperty.ERROR_HANDLER, eh);
+      builder.put(ValidateProperty.RESOLVER,
+                  new RecordingResolver(schemaProperties.get(ValidateProperty.RESOLVER), files));
+      schemaProperties = builder.toPropertyMap();
+      builder = new PropertyMapBuilder(instanceProperties);
+      builder.put(ValidateProperty.ERROR_HANDLER, eh);
+      instanceProperties = builder.toPropertyMap();
+      driver = new ValidationDriver(schemaProperties, instanceProperties, sr);
+    }
+
+    ValidationDriver getDriver() {
+      return driver;
+    }
+
+    private boolean isModified() {
+      synchronized (files) {
+        for (Map.Entry<File, Long> entry : files.entrySet())
+          if (entry.getKey().lastModified() != entry.getValue())
+            return true;
+      }
+      return false;
+    }
+  }
+
+  static private class ForwardingErrorHandler implements ErrorHandler {
+    private ErrorHandler eh;
+
+    public void warning(SAXParseException exception) throws SAXException {
+      eh.warning(exception);
+    }
+
+    public void error(SAXParseException exception) throws SAXException {
+      eh.error(exception);
+    }
+
+    public void fatalError(SAXParseException exception) throws SAXException {
+      eh.fatalError(exception);
+    }
+  }
+
+  /**
+   * A Resolver that records the file and modification time of each resource that is opened,
+   * and otherwise behaves like the Resolver that it wraps.
+   */
+  static private class RecordingResolver implements Resolver {
+    private final Resolver resolver;
+    private final Map<File, Long> files;
+
+    RecordingResolver(Resolver resolver, Map<File, Long> files) {
+      this.resolver = resolver;
+      this.files = files;
+    }
+
+    public void resolve(Identifier id, Input input) throws IOException, ResolverException {
+      if (resolver != null)
+        resolver.resolve(id, input);
+    }
+
+    public void open(Input input) throws IOException, ResolverException {
+      File file = toFile(input.getUri());
+      // record the time before opening, so that a modification while loading is noticed
+      if (file != null) {
+        synchronized (files) {
+          files.put(file, file.lastModified());
+        }
+      }
+      if (resolver != null)
+        resolver.open(input);
+    }
+  }
+
+  /**
+   * Returns the File for a file: URI, or null if the URI is not a file: URI.
+   */
+  static private File toFile(String uri) {
+    if (uri == null)
+      return null;
+    try {
+      URI u = new URI(uri);
+      if (!"file".equals(u.getScheme()))
+        return null;
+      return new File(u);
+    }
+    catch (URISyntaxException e) {
+      return null;
+    }
+    catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns a driver that has loaded a schema, reusing an idle driver with the same key if
+   * there is one whose files have not been modified.
+   *
+   * @param key a String that identifies the options and the schema
+   * @param eh the ErrorHandler for the request
+   * @return the driver, which must be released with <code>releaseDriver</code>; or <code>null</code>
+   * if the schema could not be loaded
+   */
+  CachedDriver getDriver(String key, PropertyMap schemaProperties, PropertyMap instanceProperties,
+                         SchemaReader sr, InputSource in, ErrorHandler eh) throws SAXException, IOException {
+    for (;;) {
+      CachedDriver cached;
+      synchronized (idleDrivers) {
+        List<CachedDriver> drivers = idleDrivers.get(key);
+        if (drivers == null || drivers.isEmpty())
+          break;
+        cached = drivers.remove(drivers.size() - 1);
+      }
+      if (!cached.isModified()) {
+        cached.eh.eh = eh;
+        return cached;
+      }
+    }
+    CachedDriver cached = new CachedDriver(key, schemaProperties, instanceProperties, sr);
+    cached.eh.eh = eh;
+    if (!cached.driver.loadSchema(in))
+      return null;
+    return cached;
+  }
+
+  /**
+   * Makes a driver returned by <code>getDriver</code> available for reuse.
+   */
+  void releaseDriver(CachedDriver cached) {
+    cached.eh.eh = null;
+    synchronized (idleDrivers) {
+      List<CachedDriver> drivers = idleDrivers.get(cached.key);
+      if (drivers == null) {
+        drivers = new ArrayList<CachedDriver>();
+        idleDrivers.put(cached.key, drivers);
+      }
+      if (drivers.size() < MAX_IDLE_DRIVERS)
+        drivers.add(cached);
+    }
+  }
+
+  /**
+   * Returns the file containing the token of the daemon listening on a port of the loopback address.
+   */
+  static File tokenFile(int port) {
+    return new File(System.getProperty("user.home"), TOKEN_FILE_PREFIX + port);
+  }
+
+  /**
+   * Starts listening for requests and writes the token for the requests.
+   *
+   * @param port the port of the loopback address on which to listen, or 0 for any free port
+   * @return the socket on which to accept requests using <code>serve</code>
+   * @throws IOException if the port cannot be listened on or the token cannot be written
+   */
+  ServerSocket listen(int port) throws IOException {
+    ServerSocket serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+    try {
+      byte[] bytes = new byte[TOKEN_BYTES];
+      new SecureRandom().nextBytes(bytes);
+      token = toHex(bytes);
+      writeToken(tokenFile(serverSocket.getLocalPort()), token);
+    }
+    catch (IOException e) {
+      serverSocket.close();
+      throw e;
+    }
+    System.err.println(localizer.message("daemon_listening", Integer.toString(serverSocket.getLocalPort())));
+    return serverSocket;
+  }
+
+  /**
+   * Writes a token to a file that only the owner can read.
+   */
+  static private void writeToken(File file, String token) throws IOException {
+    file.delete();
+    if (!file.createNewFile())
+      throw new IOException("could not create " + file);
+    file.deleteOnExit();
+    // restrict access before the token is written
+    if (!(file.setReadable(false, false) && file.setReadable(true, true)
+          && file.setWritable(false, false) && file.setWritable(true, true))) {
+      file.delete();
+      throw new IOException("could not restrict access to " + file);
+    }
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(token.getBytes("UTF-8"));
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Returns the token in a file written by <code>writeToken</code>, or null if it cannot be read.
+   */
+  static private String readToken(File file) {
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        byte[] bytes = new byte[TOKEN_BYTES * 2];
+        int len = 0;
+        for (int n; len < bytes.length && (n = in.read(bytes, len, bytes.length - len)) > 0;)
+          len += n;
+        return new String(bytes, 0, len, "UTF-8");
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  static private String toHex(byte[] bytes) {
+    StringBuilder buf = new StringBuilder();
+    for (int i = 0; i < bytes.length; i++) {
+      buf.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+      buf.append(Character.forDigit(bytes[i] & 0xF, 16));
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Accepts and handles requests until an I/O error occurs.
+   *
+   * @param port the port of the loopback address on which to listen
+   * @throws IOException if the port cannot be listened on
+   */
+  void serve(int port) throws IOException {
+    serve(listen(port));
+  }
+
+  /**
+   * Accepts and handles requests until an I/O error occurs, for example because the socket is closed.
+   * The socket is closed and the token file deleted on return.
+   *
+   * @param serverSocket a socket returned by <code>listen</code>
+   */
+  void serve(ServerSocket serverSocket) throws IOException {
+    int threads = Runtime.getRuntime().availableProcessors();
+    ExecutorService executor
+      = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                               new ArrayBlockingQueue<Runnable>(threads * MAX_QUEUED_PER_THREAD),
+                               new RejectedExecutionHandler() {
+                                 public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                                   // the client validates by itself when the connection is closed
+                                   close(((ConnectionHandler)r).socket);
+                                 }
+                               });
+    try {
+      for (;;)
+        executor.execute(new ConnectionHandler(serverSocket.accept()));
+    }
+    finally {
+      executor.shutdown();
+      serverSocket.close();
+      tokenFile(serverSocket.getLocalPort()).delete();
+    }
+  }
+
+  private class ConnectionHandler implements Runnable {
+    private final Socket socket;
+
+    ConnectionHandler(Socket socket) {
+      this.socket = socket;
+    }
+
+    public void run() {
+      handle(socket);
+    }
+  }
+
+  static private void close(Socket socket) {
+    try {
+      socket.close();
+    }
+    catch (IOException e) {
+      // ignore
+    }
+  }
+
+  private void handle(Socket socket) {
+    try {
+      socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      int status = NOT_HANDLED;
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      if (in.readUTF().equals(PROTOCOL) && isToken(in.readUTF())) {
+        int nArgs = in.readInt();
+        if (nArgs >= 0 && nArgs <= MAX_ARGS) {
+          String[] args = new String[nArgs];
+          for (int i = 0; i < nArgs; i++)
+            args[i] = in.readUTF();
+          PrintStream ps = new PrintStream(output);
+          status = new Driver(ps, this).doMain(args);
+          ps.flush();
+        }
+      }
+      out.writeInt(status);
+      out.writeInt(output.size());
+      output.writeTo(out);
+      out.flush();
+    }
+    catch (IOException e) {
+      // the client has gone away
+    }
+    catch (RuntimeException e) {
+      e.printStackTrace();
+    }
+    finally {
+      close(socket);
+    }
+  }
+
+  private boolean isToken(String str) throws IOException {
+    return MessageDigest.isEqual(str.getBytes("UTF-8"), token.getBytes("UTF-8"));
+  }
+
+  /**
+   * Forwards a request to the daemon listening on a port of the loopback address.
+   *
+   * @param port the port
+   * @param args the arguments of the request; files must be specified by absolute URIs
+   * @param out the stream to which to write the output of the request
+   * @return the exit status of the request, or a negative number if no daemon could handle the request
+   */
+  static int forward(int port, String[] args, OutputStream out) {
+    String token = readToken(tokenFile(port));
+    if (token == null)
+      return NOT_HANDLED;
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+      DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      request.writeUTF(PROTOCOL);
+      request.writeUTF(token);
+      request.writeInt(args.length);
+      for (String arg : args)
+        request.writeUTF(arg);
+      request.flush();
+      DataInputStream response = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      int status = response.readInt();
+      byte[] output = new byte[response.readInt()];
+      response.readFully(output);
+      if (status >= 0) {
+        out.write(output);
+        out.flush();
+      }
+      return status;
+    }
+    catch (IOException e) {
+      return NOT_HANDLED;
+    }
+    finally {
+      close(socket);
+    }
+  }
+}
@@ -1,7 +1,9 @@
 package com.thaiopensource.validate.rng;
 
 import com.thaiopensource.relaxng.parse.Parseable;
+import com.thaiopensource.relaxng.parse.PrefetchingResolver;
 import com.thaiopensource.relaxng.parse.compact.CompactParseable;
+import com.thaiopensource.relaxng.parse.compact.CompactPrefetchingResolver;
 import com.thaiopensource.relaxng.pattern.Pattern;
 import com.thaiopensource.relaxng.pattern.NameClass;
 import com.thaiopensource.relaxng.pattern.CommentListImpl;
@@ -30,4 +32,8 @@ public class CompactSchemaReader extends SchemaReaderImpl {
   protected Parseable<Pattern, NameClass, Locator, VoidValue, CommentListImpl, AnnotationsImpl> createParseable(SAXSource source, SAXResolver saxResolver, ErrorHandler eh, PropertyMap properties) {
     return new CompactParseable<Pattern, NameClass, Locator, VoidValue, CommentListImpl, AnnotationsImpl>(SAX.createInput(source.getInputSource()), saxResolver.getResolver(), eh);
   }
+
+  protected PrefetchingResolver createPrefetchingResolver(SAXResolver resolver, int threads) {
+    return new CompactPrefetchingResolver(resolver.getResolver(), threads);
+  }
 }
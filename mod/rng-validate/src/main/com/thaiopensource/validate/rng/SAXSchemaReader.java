@@ -1,7 +1,9 @@
 package com.thaiopensource.validate.rng;
 
 import com.thaiopensource.relaxng.parse.Parseable;
+import com.thaiopensource.relaxng.parse.PrefetchingResolver;
 import com.thaiopensource.relaxng.parse.sax.SAXParseable;
+import com.thaiopensource.relaxng.parse.sax.SAXPrefetchingResolver;
 import com.thaiopensource.relaxng.pattern.Pattern;
 import com.thaiopensource.relaxng.pattern.NameClass;
 import com.thaiopensource.relaxng.pattern.CommentListImpl;
@@ -32,4 +34,8 @@ public class SAXSchemaReader extends SchemaReaderImpl {
       source = new SAXSource(resolver.createXMLReader(), source.getInputSource());
     return new SAXParseable<Pattern, NameClass, Locator, VoidValue, CommentListImpl, AnnotationsImpl>(source, resolver, eh);
   }
+
+  protected PrefetchingResolver createPrefetchingResolver(SAXResolver resolver, int threads) {
+    return new SAXPrefetchingResolver(resolver, threads);
+  }
 }
@@ -1,6 +1,8 @@
 package com.thaiopensource.validate.rng;
 
+import com.thaiopensource.relaxng.parse.PrefetchingResolver;
 import com.thaiopensource.relaxng.parse.sax.SAXParseReceiver;
+import com.thaiopensource.relaxng.parse.sax.SAXPrefetchingResolver;
 import com.thaiopensource.resolver.xml.sax.SAXResolver;
 import com.thaiopensource.util.PropertyMap;
 import com.thaiopensource.validate.Option;
@@ -9,6 +11,7 @@ import com.thaiopensource.validate.ValidateProperty;
 import com.thaiopensource.validate.auto.SchemaReceiver;
 import com.thaiopensource.validate.auto.SchemaReceiverFactory;
 import com.thaiopensource.validate.prop.rng.RngProperty;
+import com.thaiopensource.validate.rng.impl.SchemaReaderImpl;
 import com.thaiopensource.validate.rng.impl.SchemaReceiverImpl;
 import com.thaiopensource.xml.util.WellKnownNamespaces;
 import org.xml.sax.ErrorHandler;
@@ -21,7 +24,13 @@ public class SAXSchemaReceiverFactory implements SchemaReceiverFactory {
       return null;
     SAXResolver resolver = ResolverFactory.createResolver(properties);
     ErrorHandler eh = properties.get(ValidateProperty.ERROR_HANDLER);
-    return new SchemaReceiverImpl(new SAXParseReceiver(resolver, eh), properties);
+    PrefetchingResolver prefetcher = null;
+    Integer threads = properties.get(RngProperty.THREADS);
+    if (threads != null && threads > 1) {
+      prefetcher = new SAXPrefetchingResolver(resolver, threads);
+      resolver = SchemaReaderImpl.createResolver(prefetcher, properties);
+    }
+    return new SchemaReceiverImpl(new SAXParseReceiver(resolver, eh), prefetcher, properties);
   }
 
   public Option getOption(String uri) {
@@ -5,6 +5,7 @@ import com.thaiopensource.util.PropertyMap;
 import com.thaiopensource.validate.AbstractSchema;
 import com.thaiopensource.validate.ValidateProperty;
 import com.thaiopensource.validate.Validator;
+import com.thaiopensource.xml.sax.FailFastErrorHandler;
 import org.xml.sax.ErrorHandler;
 
 public class FeasibleIdTypeMapSchema extends AbstractSchema {
@@ -17,6 +18,8 @@ public class FeasibleIdTypeMapSchema extends AbstractSchema {
 
   public Validator createValidator(PropertyMap properties) {
     ErrorHandler eh = properties.get(ValidateProperty.ERROR_HANDLER);
+    if (properties.contains(ValidateProperty.FAIL_FAST))
+      eh = new FailFastErrorHandler(eh);
     return new IdValidator(idTypeMap, eh) {
       public void endDocument() {
          setComplete();
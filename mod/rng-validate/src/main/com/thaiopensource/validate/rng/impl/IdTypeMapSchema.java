@@ -5,6 +5,7 @@ import com.thaiopensource.validate.AbstractSchema;
 import com.thaiopensource.validate.ValidateProperty;
 import com.thaiopensource.validate.Validator;
 import com.thaiopensource.relaxng.pattern.IdTypeMap;
+import com.thaiopensource.xml.sax.FailFastErrorHandler;
 import org.xml.sax.ErrorHandler;
 
 public class IdTypeMapSchema extends AbstractSchema {
@@ -17,6 +18,8 @@ public class IdTypeMapSchema extends AbstractSchema {
 
   public Validator createValidator(PropertyMap properties) {
     ErrorHandler eh = properties.get(ValidateProperty.ERROR_HANDLER);
+    if (properties.contains(ValidateProperty.FAIL_FAST))
+      eh = new FailFastErrorHandler(eh);
     return new IdValidator(idTypeMap, eh);
   }
 }
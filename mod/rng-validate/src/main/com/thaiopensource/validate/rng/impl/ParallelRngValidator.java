@@ -0,0 +1,25 @@
+package com.thaiopensource.validate.rng.impl;
+
+import com.thaiopensource.relaxng.pattern.Pattern;
+import com.thaiopensource.relaxng.pattern.SchemaPatternBuilder;
+import com.thaiopensource.relaxng.pattern.SingleTypeGrammar;
+import com.thaiopensource.relaxng.sax.ParallelPatternValidator;
+import com.thaiopensource.validate.Validator;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.ErrorHandler;
+
+public class ParallelRngValidator extends ParallelPatternValidator implements Validator {
+  public ParallelRngValidator(Pattern pattern, SchemaPatternBuilder spb, SingleTypeGrammar grammar,
+                              int threads, ErrorHandler eh) {
+    super(pattern, spb, grammar, threads, eh);
+  }
+
+  public ContentHandler getContentHandler() {
+    return this;
+  }
+
+  public DTDHandler getDTDHandler() {
+    return this;
+  }
+}
@@ -2,25 +2,38 @@ package com.thaiopensource.validate.rng.impl;
 
 import com.thaiopensource.relaxng.pattern.Pattern;
 import com.thaiopensource.relaxng.pattern.SchemaPatternBuilder;
+import com.thaiopensource.relaxng.pattern.SingleTypeGrammar;
 import com.thaiopensource.relaxng.pattern.ValidatorPatternBuilder;
 import com.thaiopensource.util.PropertyMap;
 import com.thaiopensource.validate.AbstractSchema;
 import com.thaiopensource.validate.ValidateProperty;
 import com.thaiopensource.validate.Validator;
+import com.thaiopensource.validate.prop.rng.RngProperty;
+import com.thaiopensource.xml.sax.FailFastErrorHandler;
 import org.xml.sax.ErrorHandler;
 
 public class PatternSchema extends AbstractSchema {
   private final SchemaPatternBuilder spb;
   private final Pattern start;
+  private final int threads;
+  // null unless validating in parallel
+  private final SingleTypeGrammar grammar;
 
   public PatternSchema(SchemaPatternBuilder spb, Pattern start, PropertyMap properties) {
     super(properties);
     this.spb = spb;
     this.start = start;
+    Integer threads = properties.get(RngProperty.THREADS);
+    this.threads = threads == null ? 1 : threads;
+    this.grammar = this.threads > 1 ? SingleTypeGrammar.analyze(start) : null;
   }
 
   public Validator createValidator(PropertyMap properties) {
     ErrorHandler eh = properties.get(ValidateProperty.ERROR_HANDLER);
+    if (properties.contains(ValidateProperty.FAIL_FAST))
+      eh = new FailFastErrorHandler(eh);
+    if (grammar != null)
+      return new ParallelRngValidator(start, spb, grammar, threads, eh);
     return new RngValidator(start, new ValidatorPatternBuilder(spb), eh);
   }
 }
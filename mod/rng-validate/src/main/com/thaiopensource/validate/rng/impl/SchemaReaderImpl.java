@@ -3,6 +3,7 @@ package com.thaiopensource.validate.rng.impl;
 import com.thaiopensource.datatype.DatatypeLibraryLoader;
 import com.thaiopensource.relaxng.parse.IllegalSchemaException;
 import com.thaiopensource.relaxng.parse.Parseable;
+import com.thaiopensource.relaxng.parse.PrefetchingResolver;
 import com.thaiopensource.relaxng.pattern.AnnotationsImpl;
 import com.thaiopensource.relaxng.pattern.CommentListImpl;
 import com.thaiopensource.relaxng.pattern.FeasibleTransform;
@@ -16,6 +17,7 @@ import com.thaiopensource.relaxng.pattern.SchemaPatternBuilder;
 import com.thaiopensource.resolver.xml.sax.SAXResolver;
 import com.thaiopensource.util.PropertyId;
 import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.util.PropertyMapBuilder;
 import com.thaiopensource.util.VoidValue;
 import com.thaiopensource.validate.AbstractSchema;
 import com.thaiopensource.validate.AbstractSchemaReader;
@@ -29,6 +31,7 @@ import com.thaiopensource.validate.prop.rng.RngProperty;
 import com.thaiopensource.validate.prop.wrap.WrapProperty;
 import org.relaxng.datatype.DatatypeLibraryFactory;
 import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 
@@ -45,6 +48,7 @@ public abstract class SchemaReaderImpl extends AbstractSchemaReader {
     RngProperty.DATATYPE_LIBRARY_FACTORY,
     RngProperty.CHECK_ID_IDREF,
     RngProperty.FEASIBLE,
+    RngProperty.THREADS,
     WrapProperty.ATTRIBUTE_OWNER,
   };
 
@@ -56,6 +60,15 @@ public abstract class SchemaReaderImpl extends AbstractSchemaReader {
     DatatypeLibraryFactory dlf = properties.get(RngProperty.DATATYPE_LIBRARY_FACTORY);
     if (dlf == null)
       dlf = new DatatypeLibraryLoader();
+    PrefetchingResolver prefetcher = null;
+    Integer threads = properties.get(RngProperty.THREADS);
+    if (threads != null && threads > 1) {
+      prefetcher = createPrefetchingResolver(resolver, threads);
+      resolver = createResolver(prefetcher, properties);
+      InputSource in = source.getInputSource();
+      if (in.getByteStream() == null && in.getCharacterStream() == null && in.getSystemId() != null)
+        prefetcher.prefetch(in.getSystemId());
+    }
     try {
       Pattern start = SchemaBuilderImpl.parse(createParseable(source, resolver, eh, properties), eh, dlf, spb,
                                               properties.contains(WrapProperty.ATTRIBUTE_OWNER));
@@ -64,6 +77,21 @@ public abstract class SchemaReaderImpl extends AbstractSchemaReader {
     catch (IllegalSchemaException e) {
       throw new IncorrectSchemaException();
     }
+    finally {
+      if (prefetcher != null)
+        prefetcher.close();
+    }
+  }
+
+  /**
+   * Creates a SAXResolver that opens schema modules using a PrefetchingResolver.
+   * The PrefetchingResolver must have been created with a SAXResolver for the same properties.
+   */
+  public static SAXResolver createResolver(PrefetchingResolver prefetcher, PropertyMap properties) {
+    PropertyMapBuilder builder = new PropertyMapBuilder(properties);
+    // the other resolvers are left in place, but the prefetcher will already have resolved and opened the input
+    builder.put(ValidateProperty.RESOLVER, prefetcher);
+    return ResolverFactory.createResolver(builder.toPropertyMap());
   }
 
   public Option getOption(String uri) {
@@ -125,4 +153,10 @@ public abstract class SchemaReaderImpl extends AbstractSchemaReader {
   protected abstract Parseable<Pattern, NameClass, Locator, VoidValue, CommentListImpl, AnnotationsImpl> createParseable(SAXSource source, SAXResolver resolver, ErrorHandler eh, PropertyMap properties)
           throws SAXException;
 
+  /**
+   * Creates a PrefetchingResolver for loading a schema using more than one thread.
+   * @param resolver the SAXResolver that would otherwise be used to load the schema
+   */
+  protected abstract PrefetchingResolver createPrefetchingResolver(SAXResolver resolver, int threads);
+
 }
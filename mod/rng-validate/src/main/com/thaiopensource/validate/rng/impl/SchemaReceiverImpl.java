@@ -8,15 +8,18 @@ import com.thaiopensource.validate.prop.rng.RngProperty;
 import com.thaiopensource.validate.prop.wrap.WrapProperty;
 import com.thaiopensource.validate.auto.SchemaFuture;
 import com.thaiopensource.relaxng.parse.ParseReceiver;
+import com.thaiopensource.relaxng.parse.PrefetchingResolver;
 import com.thaiopensource.relaxng.parse.BuildException;
 import com.thaiopensource.relaxng.parse.IllegalSchemaException;
 import com.thaiopensource.relaxng.pattern.SchemaPatternBuilder;
 import com.thaiopensource.relaxng.pattern.PatternFuture;
 import com.thaiopensource.relaxng.pattern.SchemaBuilderImpl;
 import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.xml.sax.DelegatingContentHandler;
 import com.thaiopensource.datatype.DatatypeLibraryLoader;
 import org.relaxng.datatype.DatatypeLibraryFactory;
 import org.xml.sax.ErrorHandler;
+import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
@@ -24,10 +27,19 @@ import java.io.IOException;
 
 public class SchemaReceiverImpl implements SchemaReceiver {
   private final ParseReceiver parser;
+  private final PrefetchingResolver prefetcher;
   private final PropertyMap properties;
 
   public SchemaReceiverImpl(ParseReceiver parser, PropertyMap properties) {
+    this(parser, null, properties);
+  }
+
+  /**
+   * @param prefetcher the PrefetchingResolver used by parser, or null
+   */
+  public SchemaReceiverImpl(ParseReceiver parser, PrefetchingResolver prefetcher, PropertyMap properties) {
     this.parser = parser;
+    this.prefetcher = prefetcher;
     this.properties = properties;
   }
 
@@ -38,6 +50,23 @@ public class SchemaReceiverImpl implements SchemaReceiver {
     if (dlf == null)
       dlf = new DatatypeLibraryLoader();
     final PatternFuture pf = SchemaBuilderImpl.installHandlers(parser, xr, eh, dlf, pb);
+    if (prefetcher != null) {
+      // the document is already being parsed, so it is fetched again to be scanned for references
+      xr.setContentHandler(new DelegatingContentHandler(xr.getContentHandler()) {
+        private Locator locator;
+
+        public void setDocumentLocator(Locator locator) {
+          this.locator = locator;
+          super.setDocumentLocator(locator);
+        }
+
+        public void startDocument() throws SAXException {
+          if (locator != null && locator.getSystemId() != null)
+            prefetcher.prefetch(locator.getSystemId());
+          super.startDocument();
+        }
+      });
+    }
     return new SchemaFuture() {
       public Schema getSchema() throws IncorrectSchemaException, SAXException, IOException {
         try {
@@ -47,6 +76,10 @@ public class SchemaReceiverImpl implements SchemaReceiver {
         catch (IllegalSchemaException e) {
           throw new IncorrectSchemaException();
         }
+        finally {
+          if (prefetcher != null)
+            prefetcher.close();
+        }
       }
       public RuntimeException unwrapException(RuntimeException e) throws SAXException, IOException, IncorrectSchemaException {
         if (e instanceof BuildException) {
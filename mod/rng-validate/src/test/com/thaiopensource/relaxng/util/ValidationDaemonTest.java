@@ -0,0 +1,186 @@
+package com.thaiopensource.relaxng.util;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Tests that requests forwarded to a ValidationDaemon give the same results as validating locally.
+ */
+public class ValidationDaemonTest {
+  private File dir;
+  private String savedHome;
+  private ServerSocket serverSocket;
+  private int port;
+  private String schema;
+  private File schemaFile;
+  private String valid;
+  private String invalid;
+
+  @BeforeClass
+  public void startDaemon() throws IOException {
+    dir = File.createTempFile("daemon", "");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+    // keep the token file out of the real home directory
+    savedHome = System.getProperty("user.home");
+    System.setProperty("user.home", dir.getPath());
+    schemaFile = new File(dir, "schema.rnc");
+    write(schemaFile, "element doc { element a { empty }* }");
+    schema = schemaFile.toURI().toString();
+    valid = write(new File(dir, "valid.xml"), "<doc><a/></doc>").toURI().toString();
+    invalid = write(new File(dir, "invalid.xml"), "<doc><a/><b/></doc>").toURI().toString();
+    final ValidationDaemon daemon = new ValidationDaemon();
+    serverSocket = daemon.listen(0);
+    port = serverSocket.getLocalPort();
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        try {
+          daemon.serve(serverSocket);
+        }
+        catch (IOException e) {
+          // the socket was closed
+        }
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @AfterClass
+  public void stopDaemon() throws IOException {
+    serverSocket.close();
+    System.setProperty("user.home", savedHome);
+    for (File file : dir.listFiles())
+      file.delete();
+    dir.delete();
+  }
+
+  static private File write(File file, String content) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    }
+    finally {
+      out.close();
+    }
+    return file;
+  }
+
+  static private class Result {
+    final int status;
+    final String output;
+
+    Result(int status, ByteArrayOutputStream output) throws IOException {
+      this.status = status;
+      this.output = output.toString("UTF-8");
+    }
+  }
+
+  static private Result local(String... args) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PrintStream ps = new PrintStream(output, true, "UTF-8");
+    int status = new Driver(ps, null).doMain(args);
+    ps.flush();
+    return new Result(status, output);
+  }
+
+  private Result forward(String... args) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    return new Result(ValidationDaemon.forward(port, args, output), output);
+  }
+
+  private void assertSameResult(String... args) throws IOException {
+    Result expected = local(args);
+    Result actual = forward(args);
+    Assert.assertEquals(actual.status, expected.status);
+    Assert.assertEquals(actual.output, expected.output);
+  }
+
+  @Test
+  public void testSameResult() throws IOException {
+    Assert.assertEquals(local("-c", schema, valid).status, 0);
+    assertSameResult("-c", schema, valid);
+    Result result = local("-c", schema, valid, invalid);
+    Assert.assertEquals(result.status, 1);
+    Assert.assertTrue(result.output.length() > 0);
+    assertSameResult("-c", schema, valid, invalid);
+    // again, with the schema already loaded
+    assertSameResult("-c", schema, valid, invalid);
+  }
+
+  @Test(dependsOnMethods = "testSameResult")
+  public void testSchemaModified() throws IOException {
+    assertSameResult("-c", schema, invalid);
+    long lastModified = schemaFile.lastModified();
+    write(schemaFile, "element doc { (element a { empty } | element b { empty })* }");
+    // make sure the modification is noticed whatever the resolution of the modification time
+    Assert.assertTrue(schemaFile.setLastModified(lastModified + 10000));
+    Assert.assertEquals(local("-c", schema, invalid).status, 0);
+    assertSameResult("-c", schema, invalid);
+  }
+
+  @Test
+  public void testTokenFileOwnerOnly() throws IOException {
+    File file = ValidationDaemon.tokenFile(port);
+    Assert.assertTrue(file.exists());
+    Assert.assertEquals(file.getParentFile(), dir);
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file.toPath());
+      permissions.removeAll(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+      Assert.assertTrue(permissions.isEmpty(), permissions.toString());
+    }
+  }
+
+  @Test
+  public void testRequestWithoutTokenRejected() throws IOException {
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    try {
+      DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      request.writeUTF("jing-daemon-1");
+      request.writeUTF("not the token");
+      request.writeInt(3);
+      request.writeUTF("-c");
+      request.writeUTF(schema);
+      request.writeUTF(valid);
+      request.flush();
+      DataInputStream response = new DataInputStream(socket.getInputStream());
+      Assert.assertTrue(response.readInt() < 0);
+      Assert.assertEquals(response.readInt(), 0);
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testNoTokenFile() throws IOException {
+    ServerSocket other = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      Assert.assertTrue(ValidationDaemon.forward(other.getLocalPort(), new String[] { "-c", schema, valid },
+                                                 output) < 0);
+      Assert.assertEquals(output.size(), 0);
+    }
+    finally {
+      other.close();
+    }
+  }
+}
@@ -0,0 +1,298 @@
+package com.thaiopensource.validate;
+
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.rng.CompactSchemaReader;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test that SchemaRegistry loads a schema again when a file that it includes changes.
+ */
+public class SchemaRegistryTest {
+  static private final String MAIN = "start = element doc { a* }\ninclude \"inc.rnc\"\n";
+  static private final String INC = "a = element a { empty }\n";
+  static private final String CHANGED_INC = "a = element a { empty } | element b { empty }\n";
+  /**
+   * How long to wait for a schema to be loaded again.
+   */
+  static private final long TIMEOUT_MILLIS = 10000;
+
+  private File dir;
+  private File inc;
+  private String uri;
+  private RecordingErrorHandler eh;
+  private SchemaRegistry registry;
+
+  static private class RecordingErrorHandler implements ErrorHandler {
+    final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+    public void warning(SAXParseException exception) {
+    }
+
+    public void error(SAXParseException exception) {
+      errors.add(exception.getMessage());
+    }
+
+    public void fatalError(SAXParseException exception) {
+      errors.add(exception.getMessage());
+    }
+  }
+
+  /**
+   * A SchemaReader that changes the included file once, just after it has been read.
+   */
+  private class ChangingSchemaReader extends AbstractSchemaReader {
+    private boolean changed = false;
+
+    public Schema createSchema(SAXSource source, PropertyMap properties)
+            throws IOException, SAXException, IncorrectSchemaException {
+      Schema schema = CompactSchemaReader.getInstance().createSchema(source, properties);
+      if (!changed) {
+        changed = true;
+        write(inc, CHANGED_INC);
+      }
+      return schema;
+    }
+
+    public Option getOption(String uri) {
+      return null;
+    }
+  }
+
+  /**
+   * A SchemaReader that takes a while to load a schema, and records how many loads overlapped.
+   */
+  static private class SlowSchemaReader extends AbstractSchemaReader {
+    private final AtomicInteger active = new AtomicInteger();
+    final AtomicInteger maxActive = new AtomicInteger();
+
+    public Schema createSchema(SAXSource source, PropertyMap properties)
+            throws IOException, SAXException, IncorrectSchemaException {
+      int n = active.incrementAndGet();
+      for (;;) {
+        int max = maxActive.get();
+        if (n <= max || maxActive.compareAndSet(max, n))
+          break;
+      }
+      try {
+        Schema schema = CompactSchemaReader.getInstance().createSchema(source, properties);
+        Thread.sleep(200);
+        return schema;
+      }
+      catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      finally {
+        active.decrementAndGet();
+      }
+    }
+
+    public Option getOption(String uri) {
+      return null;
+    }
+  }
+
+  @BeforeMethod
+  public void createFiles() throws IOException {
+    dir = File.createTempFile("registry", "");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+    File main = write(new File(dir, "main.rnc"), MAIN);
+    inc = write(new File(dir, "inc.rnc"), INC);
+    uri = main.toURI().toString();
+    eh = new RecordingErrorHandler();
+  }
+
+  @AfterMethod
+  public void deleteFiles() throws IOException {
+    if (registry != null)
+      registry.close();
+    registry = null;
+    delete(dir);
+  }
+
+  static private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files)
+        delete(f);
+    }
+    file.delete();
+  }
+
+  static private File write(File file, String content) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    }
+    finally {
+      out.close();
+    }
+    return file;
+  }
+
+  private SchemaRegistry createRegistry(SchemaReader schemaReader) throws IOException {
+    PropertyMapBuilder builder = new PropertyMapBuilder();
+    builder.put(ValidateProperty.ERROR_HANDLER, eh);
+    registry = new SchemaRegistry(builder.toPropertyMap(), schemaReader);
+    return registry;
+  }
+
+  static private boolean isValid(Schema schema, String document) throws Exception {
+    RecordingErrorHandler veh = new RecordingErrorHandler();
+    PropertyMapBuilder builder = new PropertyMapBuilder();
+    builder.put(ValidateProperty.ERROR_HANDLER, veh);
+    Validator validator = schema.createValidator(builder.toPropertyMap());
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    XMLReader xr = factory.newSAXParser().getXMLReader();
+    xr.setContentHandler(validator.getContentHandler());
+    xr.parse(new InputSource(new StringReader(document)));
+    return veh.errors.isEmpty();
+  }
+
+  /**
+   * Waits until the registry returns a schema other than the specified schema.
+   */
+  private Schema waitForReload(Schema schema) throws Exception {
+    long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    for (;;) {
+      Schema current = registry.getSchema(uri);
+      if (current != schema)
+        return current;
+      Assert.assertTrue(System.currentTimeMillis() < end, "schema not loaded again");
+      Thread.sleep(20);
+    }
+  }
+
+  @Test
+  public void testFirstLoad() throws Exception {
+    Schema schema = createRegistry(CompactSchemaReader.getInstance()).getSchema(uri);
+    Assert.assertNotNull(schema);
+    Assert.assertSame(registry.getSchema(uri), schema);
+    Assert.assertTrue(isValid(schema, "<doc><a/></doc>"));
+    Assert.assertFalse(isValid(schema, "<doc><b/></doc>"));
+    Assert.assertTrue(eh.errors.isEmpty(), eh.errors.toString());
+  }
+
+  @Test
+  public void testIncludeModified() throws Exception {
+    Schema schema = createRegistry(CompactSchemaReader.getInstance()).getSchema(uri);
+    write(inc, CHANGED_INC);
+    Schema reloaded = waitForReload(schema);
+    Assert.assertTrue(isValid(reloaded, "<doc><b/></doc>"));
+    // the schema that was returned before is unchanged
+    Assert.assertFalse(isValid(schema, "<doc><b/></doc>"));
+    Assert.assertTrue(eh.errors.isEmpty(), eh.errors.toString());
+  }
+
+  @Test
+  public void testIncludeModifiedWhileLoading() throws Exception {
+    Schema schema = createRegistry(new ChangingSchemaReader()).getSchema(uri);
+    Assert.assertFalse(isValid(schema, "<doc><b/></doc>"));
+    Assert.assertTrue(isValid(waitForReload(schema), "<doc><b/></doc>"));
+  }
+
+  @Test
+  public void testFailedReloadKeepsSchema() throws Exception {
+    Schema schema = createRegistry(CompactSchemaReader.getInstance()).getSchema(uri);
+    write(inc, "a = element a {\n");
+    long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (eh.errors.isEmpty()) {
+      Assert.assertTrue(System.currentTimeMillis() < end, "no error reported");
+      Thread.sleep(20);
+    }
+    Assert.assertSame(registry.getSchema(uri), schema);
+    // the schema is loaded again when the error is corrected
+    write(inc, CHANGED_INC);
+    Assert.assertTrue(isValid(waitForReload(schema), "<doc><b/></doc>"));
+  }
+
+  /**
+   * When the first load has failed, a reload in the background and a load by getSchema
+   * must not both be in progress.
+   */
+  @Test
+  public void testReloadDoesNotOverlapLoad() throws Exception {
+    write(inc, "a = element a {\n");
+    SlowSchemaReader schemaReader = new SlowSchemaReader();
+    createRegistry(schemaReader);
+    try {
+      registry.getSchema(uri);
+      Assert.fail("incorrect schema loaded");
+    }
+    catch (IncorrectSchemaException e) {
+    }
+    write(inc, CHANGED_INC);
+    long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    Schema schema = null;
+    // keep loading, so that some load is in progress when the file change causes a reload
+    while (System.currentTimeMillis() < end) {
+      try {
+        Schema s = registry.getSchema(uri);
+        if (schema == null)
+          schema = s;
+        else if (s != schema)
+          break;
+      }
+      catch (IncorrectSchemaException e) {
+      }
+      // wait for the reload that follows the change
+      if (schema != null)
+        Thread.sleep(20);
+    }
+    Assert.assertNotNull(schema);
+    Assert.assertTrue(isValid(registry.getSchema(uri), "<doc><b/></doc>"));
+    Assert.assertEquals(schemaReader.maxActive.get(), 1);
+  }
+
+  @Test
+  public void testUnusedDirectoryUnwatched() throws Exception {
+    File sub = new File(dir, "sub");
+    Assert.assertTrue(sub.mkdir());
+    write(new File(sub, "other.rnc"), INC);
+    File main = new File(dir, "main.rnc");
+    write(main, MAIN.replace("inc.rnc", "sub/other.rnc"));
+    Schema schema = createRegistry(CompactSchemaReader.getInstance()).getSchema(uri);
+    Assert.assertTrue(registry.isWatching(dir.toPath()));
+    Assert.assertTrue(registry.isWatching(sub.toPath()));
+    // no longer includes anything from sub
+    write(main, MAIN);
+    waitForReload(schema);
+    Assert.assertTrue(registry.isWatching(dir.toPath()));
+    Assert.assertFalse(registry.isWatching(sub.toPath()));
+    // and is watched again when it is included again
+    schema = registry.getSchema(uri);
+    write(main, MAIN.replace("inc.rnc", "sub/other.rnc"));
+    waitForReload(schema);
+    Assert.assertTrue(registry.isWatching(sub.toPath()));
+    Assert.assertTrue(eh.errors.isEmpty(), eh.errors.toString());
+  }
+
+  @Test
+  public void testCloseStopsWatching() throws Exception {
+    Schema schema = createRegistry(CompactSchemaReader.getInstance()).getSchema(uri);
+    registry.close();
+    write(inc, CHANGED_INC);
+    Thread.sleep(1000);
+    Assert.assertSame(registry.getSchema(uri), schema);
+  }
+}
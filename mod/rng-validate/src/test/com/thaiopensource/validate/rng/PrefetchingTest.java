@@ -0,0 +1,222 @@
+package com.thaiopensource.validate.rng;
+
+import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.IncorrectSchemaException;
+import com.thaiopensource.validate.Schema;
+import com.thaiopensource.validate.SchemaReader;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.validate.Validator;
+import com.thaiopensource.validate.prop.rng.RngProperty;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test that loading a schema whose modules are fetched on several threads gives the same schema
+ * and reports the same errors as loading it on a single thread.
+ */
+public class PrefetchingTest {
+  static private final int THREADS = 4;
+  static private final String[] DOCUMENTS = {
+    "<doc><a/><b/><c/><e/></doc>",
+    "<doc><a/><a/></doc>",
+    "<doc><b><x/></b><d/></doc>",
+    "<doc><e>text</e></doc>",
+  };
+
+  private File dir;
+
+  @BeforeClass
+  public void createFiles() throws IOException {
+    dir = File.createTempFile("prefetch", "");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+    Assert.assertTrue(new File(dir, "sub").mkdir());
+    // XML syntax
+    write("main.rng", "<grammar xmlns='http://relaxng.org/ns/structure/1.0'>\n"
+                      + "  <include href='a.rng'/>\n"
+                      + "  <include href='sub/b.rng'/>\n"
+                      + "  <start><element name='doc'><zeroOrMore><choice>\n"
+                      + "    <ref name='a'/><ref name='b'/><ref name='c'/>\n"
+                      + "    <externalRef href='e.rng'/>\n"
+                      + "  </choice></zeroOrMore></element></start>\n"
+                      + "</grammar>\n");
+    write("a.rng", "<grammar xmlns='http://relaxng.org/ns/structure/1.0'>\n"
+                   + "  <define name='a'><element name='a'><empty/></element></define>\n"
+                   + "</grammar>\n");
+    write("sub/b.rng", "<grammar xmlns='http://relaxng.org/ns/structure/1.0'>\n"
+                       + "  <include href='c.rng'/>\n"
+                       + "  <define name='b'><element name='b'><empty/></element></define>\n"
+                       + "</grammar>\n");
+    write("sub/c.rng", "<grammar xmlns='http://relaxng.org/ns/structure/1.0'>\n"
+                       + "  <define name='c'><element name='c'><empty/></element></define>\n"
+                       + "</grammar>\n");
+    write("e.rng", "<element name='e' xmlns='http://relaxng.org/ns/structure/1.0'><empty/></element>\n");
+    write("missing.rng", "<grammar xmlns='http://relaxng.org/ns/structure/1.0'>\n"
+                         + "  <include href='a.rng'/>\n"
+                         + "  <include href='none.rng'/>\n"
+                         + "  <start><element name='doc'><ref name='a'/></element></start>\n"
+                         + "</grammar>\n");
+    write("malformed.rng", "<grammar xmlns='http://relaxng.org/ns/structure/1.0'>\n"
+                           + "  <include href='a.rng'/>\n"
+                           + "  <include href='broken.rng'/>\n"
+                           + "  <start><element name='doc'><ref name='a'/></element></start>\n"
+                           + "</grammar>\n");
+    write("broken.rng", "<grammar xmlns='http://relaxng.org/ns/structure/1.0'>\n"
+                        + "  <define name='b'><element name='b'>\n");
+    // compact syntax
+    write("main.rnc", "include \"a.rnc\"\n"
+                      + "include \"sub/b.rnc\"\n"
+                      + "start = element doc { (a | b | c | external \"e.rnc\")* }\n");
+    write("a.rnc", "a = element a { empty }\n");
+    write("sub/b.rnc", "include \"c.rnc\"\n"
+                       + "b = element b { empty }\n");
+    write("sub/c.rnc", "c = element c { empty }\n");
+    write("e.rnc", "element e { empty }\n");
+    write("missing.rnc", "include \"a.rnc\"\n"
+                         + "include \"none.rnc\"\n"
+                         + "start = element doc { a }\n");
+    write("malformed.rnc", "include \"a.rnc\"\n"
+                           + "include \"broken.rnc\"\n"
+                           + "start = element doc { a }\n");
+    write("broken.rnc", "b = element b {\n");
+  }
+
+  @AfterClass
+  public void deleteFiles() {
+    delete(dir);
+  }
+
+  static private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files)
+        delete(f);
+    }
+    file.delete();
+  }
+
+  private void write(String name, String content) throws IOException {
+    Files.write(new File(dir, name).toPath(), content.getBytes("UTF-8"));
+  }
+
+  static private class RecordingErrorHandler implements ErrorHandler {
+    final List<String> errors = new ArrayList<String>();
+
+    public void warning(SAXParseException exception) {
+      record("warning", exception);
+    }
+
+    public void error(SAXParseException exception) {
+      record("error", exception);
+    }
+
+    public void fatalError(SAXParseException exception) {
+      record("fatal", exception);
+    }
+
+    private void record(String severity, SAXParseException exception) {
+      errors.add(exception.getSystemId() + ":" + exception.getLineNumber() + ":" + exception.getColumnNumber()
+                 + ": " + severity + ": " + exception.getMessage());
+    }
+  }
+
+  /**
+   * The result of loading a schema: the errors reported and the exception thrown, if any, followed by
+   * anything written to System.err, and the errors reported when validating each document.
+   */
+  private List<String> load(SchemaReader reader, String name, int threads) throws Exception {
+    RecordingErrorHandler eh = new RecordingErrorHandler();
+    PropertyMapBuilder builder = new PropertyMapBuilder();
+    builder.put(ValidateProperty.ERROR_HANDLER, eh);
+    builder.put(RngProperty.THREADS, threads);
+    InputSource in = new InputSource(new File(dir, name).toURI().toString());
+    ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+    PrintStream savedStderr = System.err;
+    Schema schema = null;
+    String exception = null;
+    System.setErr(new PrintStream(stderr, true, "UTF-8"));
+    try {
+      schema = reader.createSchema(in, builder.toPropertyMap());
+    }
+    catch (IncorrectSchemaException e) {
+      exception = "incorrect schema";
+    }
+    catch (IOException e) {
+      exception = e.getClass().getName() + ": " + e.getMessage();
+    }
+    catch (SAXException e) {
+      exception = e.getClass().getName() + ": " + e.getMessage();
+    }
+    finally {
+      System.setErr(savedStderr);
+    }
+    List<String> result = new ArrayList<String>(eh.errors);
+    if (exception != null)
+      result.add("exception: " + exception);
+    result.add("stderr: " + stderr.toString("UTF-8"));
+    if (schema != null) {
+      for (String document : DOCUMENTS)
+        result.add(document + ": " + validate(schema, document));
+    }
+    return result;
+  }
+
+  static private List<String> validate(Schema schema, String document) throws Exception {
+    RecordingErrorHandler eh = new RecordingErrorHandler();
+    PropertyMapBuilder builder = new PropertyMapBuilder();
+    builder.put(ValidateProperty.ERROR_HANDLER, eh);
+    Validator validator = schema.createValidator(builder.toPropertyMap());
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    XMLReader xr = factory.newSAXParser().getXMLReader();
+    xr.setContentHandler(validator.getContentHandler());
+    xr.parse(new InputSource(new StringReader(document)));
+    return eh.errors;
+  }
+
+  @DataProvider(name = "schemas")
+  Object[][] schemas() {
+    return new Object[][] {
+      { SAXSchemaReader.getInstance(), "main.rng", true },
+      { SAXSchemaReader.getInstance(), "missing.rng", false },
+      { SAXSchemaReader.getInstance(), "malformed.rng", false },
+      { CompactSchemaReader.getInstance(), "main.rnc", true },
+      { CompactSchemaReader.getInstance(), "missing.rnc", false },
+      { CompactSchemaReader.getInstance(), "malformed.rnc", false },
+    };
+  }
+
+  @Test(dataProvider = "schemas")
+  public void testSameAsSingleThread(SchemaReader reader, String name, boolean correct) throws Exception {
+    List<String> expected = load(reader, name, 1);
+    if (correct) {
+      // no errors, nothing printed, and each document validated
+      Assert.assertEquals(expected.get(0), "stderr: ", expected.toString());
+      Assert.assertEquals(expected.size(), 1 + DOCUMENTS.length);
+    }
+    else {
+      // errors reported to the ErrorHandler only
+      Assert.assertFalse(expected.get(0).startsWith("stderr: "), expected.toString());
+      Assert.assertEquals(expected.get(expected.size() - 1), "stderr: ", expected.toString());
+    }
+    for (int i = 0; i < 3; i++)
+      Assert.assertEquals(load(reader, name, THREADS), expected);
+  }
+}
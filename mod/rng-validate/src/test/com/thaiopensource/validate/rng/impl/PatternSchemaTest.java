@@ -0,0 +1,125 @@
+package com.thaiopensource.validate.rng.impl;
+
+import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.Schema;
+import com.thaiopensource.validate.ValidateProperty;
+import com.thaiopensource.validate.Validator;
+import com.thaiopensource.validate.prop.rng.RngProperty;
+import com.thaiopensource.validate.rng.CompactSchemaReader;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test that a PatternSchema validates in parallel only when the name of an element determines its content,
+ * and that it reports the same errors either way.
+ */
+public class PatternSchemaTest {
+  static private final String SINGLE_TYPE
+    = "start = element doc { (item | bad)* }\n"
+    + "item = element item { attribute n { \"1\" | \"2\" }, element sub { text }* }\n"
+    + "bad = element bad { empty }\n";
+  static private final String NOT_SINGLE_TYPE
+    = "start = element doc { (item | bad)* }\n"
+    + "item = element item { attribute n { \"1\" | \"2\" }, element * - bad { text }* }\n"
+    + "bad = element bad { empty }\n";
+  static private final int THREADS = 4;
+  static private final int ITEMS = 5000;
+
+  static private class RecordingErrorHandler implements ErrorHandler {
+    final List<String> errors = new ArrayList<String>();
+
+    public void warning(SAXParseException exception) {
+      record("warning", exception);
+    }
+
+    public void error(SAXParseException exception) {
+      record("error", exception);
+    }
+
+    public void fatalError(SAXParseException exception) {
+      record("fatal", exception);
+    }
+
+    private void record(String severity, SAXParseException exception) {
+      errors.add(exception.getLineNumber() + ":" + exception.getColumnNumber() + ": "
+                 + severity + ": " + exception.getMessage());
+    }
+  }
+
+  static private Schema createSchema(String schema, int threads) throws Exception {
+    PropertyMapBuilder builder = new PropertyMapBuilder();
+    RecordingErrorHandler eh = new RecordingErrorHandler();
+    builder.put(ValidateProperty.ERROR_HANDLER, eh);
+    builder.put(RngProperty.THREADS, threads);
+    Schema result = CompactSchemaReader.getInstance().createSchema(new InputSource(new StringReader(schema)),
+                                                                   builder.toPropertyMap());
+    Assert.assertTrue(eh.errors.isEmpty(), eh.errors.toString());
+    return result;
+  }
+
+  /**
+   * Returns a document with errors in its first and last children and in many of the other children.
+   */
+  static private String document() {
+    StringBuilder doc = new StringBuilder();
+    doc.append("<doc>\n");
+    for (int i = 0; i < ITEMS; i++) {
+      if (i == 0)
+        doc.append("<item>\n");
+      else if (i == ITEMS - 1)
+        doc.append("<item n='3'>\n");
+      else
+        doc.append("<item n='").append(1 + i % 2).append("'>\n");
+      for (int j = 0; j < i % 3; j++)
+        doc.append("<sub>").append(i).append("</sub>\n");
+      if (i % 97 == 0 || i == ITEMS - 1)
+        doc.append("<bad/>\n");
+      doc.append("</item>\n");
+      if (i % 101 == 0)
+        doc.append("<unknown/>\n");
+    }
+    doc.append("</doc>\n");
+    return doc.toString();
+  }
+
+  static private List<String> errors(Schema schema, String document, Class<?> validatorClass) throws Exception {
+    RecordingErrorHandler eh = new RecordingErrorHandler();
+    PropertyMapBuilder builder = new PropertyMapBuilder();
+    builder.put(ValidateProperty.ERROR_HANDLER, eh);
+    Validator validator = schema.createValidator(builder.toPropertyMap());
+    Assert.assertEquals(validator.getClass(), validatorClass);
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    XMLReader xr = factory.newSAXParser().getXMLReader();
+    xr.setContentHandler(validator.getContentHandler());
+    xr.parse(new InputSource(new StringReader(document)));
+    return eh.errors;
+  }
+
+  @DataProvider(name = "schemas")
+  Object[][] schemas() {
+    return new Object[][] {
+      { SINGLE_TYPE, ParallelRngValidator.class },
+      // falls back to validating serially
+      { NOT_SINGLE_TYPE, RngValidator.class }
+    };
+  }
+
+  @Test(dataProvider = "schemas")
+  public void testSameErrors(String schema, Class<?> parallelValidatorClass) throws Exception {
+    String document = document();
+    List<String> expected = errors(createSchema(schema, 1), document, RngValidator.class);
+    Assert.assertTrue(expected.size() > ITEMS / 100);
+    Assert.assertEquals(errors(createSchema(schema, THREADS), document, parallelValidatorClass), expected);
+  }
+}
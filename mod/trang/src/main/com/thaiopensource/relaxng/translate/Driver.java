@@ -5,10 +5,10 @@ import com.thaiopensource.relaxng.input.InputFailedException;
 import com.thaiopensource.relaxng.input.InputFormat;
 import com.thaiopensource.relaxng.input.MultiInputFormat;
 import com.thaiopensource.relaxng.output.LocalOutputDirectory;
-import com.thaiopensource.relaxng.output.OutputDirectory;
 import com.thaiopensource.relaxng.output.OutputFailedException;
 import com.thaiopensource.relaxng.output.OutputFormat;
 import com.thaiopensource.relaxng.translate.util.InvalidParamsException;
+import com.thaiopensource.resolver.CachingResolver;
 import com.thaiopensource.resolver.Resolver;
 import com.thaiopensource.resolver.catalog.CatalogResolver;
 import com.thaiopensource.util.Localizer;
@@ -18,10 +18,25 @@ import com.thaiopensource.util.Version;
 import com.thaiopensource.xml.sax.ErrorHandlerImpl;
 import org.xml.sax.SAXException;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class Driver {
   static private final Localizer localizer = new Localizer(Driver.class);
@@ -31,13 +46,31 @@ public class Driver {
   private static final String DEFAULT_OUTPUT_ENCODING = "UTF-8";
   private static final int DEFAULT_LINE_LENGTH = 72;
   private static final int DEFAULT_INDENT = 2;
+  private static final String OPTION_SPEC = "C:I:O:i:o:U:";
+  private static final String BATCH_OPTION_SPEC = OPTION_SPEC + "B:j:";
+  /**
+   * The maximum number of bytes of content of schema modules, DTDs and external entities
+   * that are kept in memory by each Resolver shared between the jobs of a batch.
+   */
+  private static final long BATCH_CACHE_MEMORY = 64L*1024*1024;
+  /**
+   * When running a job in a batch, maps each list of catalog URIs to a Resolver shared by all
+   * the jobs in the batch that use that list; null when not running a job in a batch.
+   * Access must be synchronized on the map.
+   */
+  private final Map<List<String>, Resolver> sharedResolvers;
 
   public Driver() {
     this(new ErrorHandlerImpl());
   }
 
   public Driver(ErrorHandlerImpl eh) {
+    this(eh, null);
+  }
+
+  private Driver(ErrorHandlerImpl eh, Map<List<String>, Resolver> sharedResolvers) {
     this.eh = eh;
+    this.sharedResolvers = sharedResolvers;
   }
 
   static public void main(String[] args) {
@@ -48,10 +81,39 @@ public class Driver {
     List<String> inputParams = new ArrayList<String>();
     List<String> outputParams = new ArrayList<String>();
     List<String> catalogUris = new ArrayList<String>();
+    // the options to be used as defaults for each job in a batch
+    List<String> jobOptions = new ArrayList<String>();
+    String manifest = null;
+    String stateFile = null;
+    int nThreads = Runtime.getRuntime().availableProcessors();
+    boolean threadsSpecified = false;
     try {
-      OptionParser op = new OptionParser("C:I:O:i:o:", args);
+      OptionParser op = new OptionParser(sharedResolvers == null ? BATCH_OPTION_SPEC : OPTION_SPEC, args);
       try {
         while (op.moveToNextOption()) {
+          switch (op.getOptionChar()) {
+          case 'B':
+            manifest = op.getOptionArg();
+            continue;
+          case 'j':
+            try {
+              nThreads = Integer.parseInt(op.getOptionArg());
+            }
+            catch (NumberFormatException e) {
+              nThreads = 0;
+            }
+            if (nThreads < 1) {
+              error(localizer.message("invalid_thread_count", op.getOptionArg()));
+              return 2;
+            }
+            threadsSpecified = true;
+            continue;
+          case 'U':
+            stateFile = op.getOptionArg();
+            continue;
+          }
+          jobOptions.add("-" + op.getOptionCharString());
+          jobOptions.add(op.getOptionArg());
           switch (op.getOptionChar()) {
           case 'C':
             catalogUris.add(UriOrFile.toUri(op.getOptionArg()));
@@ -80,11 +142,36 @@ public class Driver {
         return 2;
       }
       args = op.getRemainingArgs();
+      if (manifest != null) {
+        if (args.length > 0) {
+          error(localizer.message("batch_arguments"));
+          return 2;
+        }
+        if (stateFile != null) {
+          error(localizer.message("batch_incremental"));
+          return 2;
+        }
+        return runBatch(manifest, jobOptions, nThreads);
+      }
+      if (threadsSpecified) {
+        error(localizer.message("threads_without_batch"));
+        return 2;
+      }
       if (args.length < 2) {
         error(localizer.message("too_few_arguments"));
         eh.print(localizer.message("usage", Version.getVersion(Driver.class)));
         return 2;
       }
+      // the arguments that determine the result of the translation
+      List<String> stateArgs = null;
+      if (stateFile != null) {
+        stateArgs = new ArrayList<String>(jobOptions);
+        for (String arg : args)
+          stateArgs.add(arg);
+        IncrementalState state = IncrementalState.read(new File(stateFile));
+        if (state != null && state.isUpToDate(stateArgs))
+          return 0;
+      }
       if (inputType == null) {
         inputType = extension(args[0]);
         if (inputType.length() > 0)
@@ -107,16 +194,17 @@ public class Driver {
         return 2;
       }
       Resolver resolver;
-      if (catalogUris.isEmpty())
-        resolver = null;
-      else {
-        try {
-          resolver = new CatalogResolver(catalogUris);
-        }
-        catch (LinkageError e) {
-          eh.print(localizer.message("resolver_not_found"));
-          return 2;
-        }
+      try {
+        resolver = getResolver(catalogUris);
+      }
+      catch (LinkageError e) {
+        eh.print(localizer.message("resolver_not_found"));
+        return 2;
+      }
+      RecordingResolver recorder = null;
+      if (stateFile != null) {
+        recorder = new RecordingResolver(resolver);
+        resolver = recorder;
       }
       String[] inputParamArray = inputParams.toArray(new String[inputParams.size()]);
       outputType = outputType.toLowerCase();
@@ -135,13 +223,25 @@ public class Driver {
         sc = inputFormat.load(UriOrFile.toUri(args[0]), inputParamArray, outputType, eh, resolver);
       if (ext.length() == 0)
         ext = outputType;
-      OutputDirectory od = new LocalOutputDirectory(sc.getMainUri(),
-                                                    new File(args[args.length - 1]),
-                                                    ext,
-                                                    DEFAULT_OUTPUT_ENCODING,
-                                                    DEFAULT_LINE_LENGTH,
-                                                    DEFAULT_INDENT);
+      LocalOutputDirectory od = new LocalOutputDirectory(sc.getMainUri(),
+                                                         new File(args[args.length - 1]),
+                                                         ext,
+                                                         DEFAULT_OUTPUT_ENCODING,
+                                                         DEFAULT_LINE_LENGTH,
+                                                         DEFAULT_INDENT);
+      od.setKeepUnchangedFiles(stateFile != null);
       outputFormat.output(sc, od, outputParams.toArray(new String[outputParams.size()]), inputType.toLowerCase(), eh);
+      if (stateFile != null) {
+        Set<String> inputUris = new LinkedHashSet<String>(catalogUris);
+        for (int i = 0; i < args.length - 1; i++)
+          inputUris.add(UriOrFile.toUri(args[i]));
+        List<String> documentUris = new ArrayList<String>(sc.getSchemaDocumentMap().keySet());
+        Collections.sort(documentUris);
+        inputUris.addAll(documentUris);
+        // the other files read, such as the external entities of a DTD
+        inputUris.addAll(recorder.getUris());
+        IncrementalState.record(stateArgs, inputUris, od.getOutputFiles()).write(new File(stateFile));
+      }
       return 0;
     }
     catch (OutputFailedException e) {
@@ -159,6 +259,119 @@ public class Driver {
     return 1;
   }
 
+  private Resolver getResolver(List<String> catalogUris) {
+    if (sharedResolvers == null)
+      return catalogUris.isEmpty() ? null : new CatalogResolver(catalogUris);
+    synchronized (sharedResolvers) {
+      Resolver resolver = sharedResolvers.get(catalogUris);
+      if (resolver == null) {
+        resolver = new CachingResolver(catalogUris.isEmpty() ? null : new CatalogResolver(catalogUris),
+                                       BATCH_CACHE_MEMORY);
+        sharedResolvers.put(catalogUris, resolver);
+      }
+      return resolver;
+    }
+  }
+
+  /**
+   * Runs each job in a manifest as if Trang had been run with the job's arguments
+   * preceded by the specified options. The jobs are run in a pool of threads and
+   * share resolvers, so that catalogs are only parsed once and schema modules
+   * and DTDs that are used by several jobs are only read once. The messages for each job
+   * are printed together, in the order of the jobs in the manifest.
+   * @return the greatest exit status of the jobs
+   */
+  private int runBatch(String manifest, final List<String> options, int nThreads) {
+    List<List<String>> jobs;
+    try {
+      jobs = readManifest(manifest);
+    }
+    catch (IOException e) {
+      eh.printException(e);
+      return 1;
+    }
+    final Map<List<String>, Resolver> sharedResolvers = new HashMap<List<String>, Resolver>();
+    ExecutorService executor = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "trang-batch");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+      List<StringWriter> messages = new ArrayList<StringWriter>();
+      for (List<String> job : jobs) {
+        final List<String> jobArgs = new ArrayList<String>(options);
+        jobArgs.addAll(job);
+        final StringWriter jobMessages = new StringWriter();
+        messages.add(jobMessages);
+        futures.add(executor.submit(new Callable<Integer>() {
+          public Integer call() {
+            ErrorHandlerImpl jobEh = new ErrorHandlerImpl(jobMessages);
+            try {
+              return new Driver(jobEh, sharedResolvers).run(jobArgs.toArray(new String[jobArgs.size()]));
+            }
+            catch (RuntimeException e) {
+              jobEh.printException(e);
+              return 1;
+            }
+          }
+        }));
+      }
+      int status = 0;
+      for (int i = 0; i < futures.size(); i++) {
+        int jobStatus;
+        try {
+          jobStatus = futures.get(i).get();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return 1;
+        }
+        catch (ExecutionException e) {
+          eh.printException(e.getCause());
+          jobStatus = 1;
+        }
+        String text = messages.get(i).toString();
+        int len = text.length();
+        while (len > 0 && (text.charAt(len - 1) == '\n' || text.charAt(len - 1) == '\r'))
+          len--;
+        text = text.substring(0, len);
+        eh.print(text);
+        status = Math.max(status, jobStatus);
+      }
+      return status;
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Reads a manifest. Each line that is not empty and does not start with <code>#</code>
+   * specifies a job using the same arguments as on the command line, separated by white space.
+   */
+  static private List<List<String>> readManifest(String manifest) throws IOException {
+    List<List<String>> jobs = new ArrayList<List<String>>();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+    try {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        line = line.trim();
+        if (line.length() == 0 || line.charAt(0) == '#')
+          continue;
+        List<String> job = new ArrayList<String>();
+        for (String arg : line.split("\\s+"))
+          job.add(arg);
+        jobs.add(job);
+      }
+    }
+    finally {
+      reader.close();
+    }
+    return jobs;
+  }
+
   private void error(String message) {
     eh.printException(new SAXException(message));
   }
@@ -0,0 +1,161 @@
+package com.thaiopensource.relaxng.translate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The state recorded by an incremental translation: the arguments of the translation,
+ * and a hash of the content of each of the files that it read and each of the files that it wrote.
+ * A translation with the same arguments need not be performed again, if none of the files
+ * that it read or wrote has changed since.
+ */
+class IncrementalState {
+  static private final int MAGIC = 0x54726e67;
+  static private final String DIGEST_ALGORITHM = "SHA-1";
+
+  private final List<String> args;
+  // maps the URI of each file read to a hash of its content
+  private final Map<String, byte[]> inputs = new LinkedHashMap<String, byte[]>();
+  // maps the path of each file written to a hash of its content
+  private final Map<String, byte[]> outputs = new LinkedHashMap<String, byte[]>();
+
+  private IncrementalState(List<String> args) {
+    this.args = args;
+  }
+
+  /**
+   * Records the state after a translation.
+   * @param args the arguments of the translation
+   * @param inputUris the URIs of the files read by the translation
+   * @param outputFiles the files written by the translation
+   */
+  static IncrementalState record(List<String> args, Collection<String> inputUris, Collection<File> outputFiles)
+          throws IOException {
+    IncrementalState state = new IncrementalState(args);
+    for (String uri : inputUris)
+      state.inputs.put(uri, hash(new URL(uri).openStream()));
+    for (File file : outputFiles)
+      state.outputs.put(file.getAbsolutePath(), hash(new FileInputStream(file)));
+    return state;
+  }
+
+  /**
+   * Tests whether a translation with the specified arguments would give the same result
+   * as the translation that recorded this state: the arguments are the same and no file
+   * read or written by the translation has changed.
+   */
+  boolean isUpToDate(List<String> args) {
+    if (!this.args.equals(args))
+      return false;
+    try {
+      for (Map.Entry<String, byte[]> entry : inputs.entrySet())
+        if (!Arrays.equals(entry.getValue(), hash(new URL(entry.getKey()).openStream())))
+          return false;
+      for (Map.Entry<String, byte[]> entry : outputs.entrySet()) {
+        File file = new File(entry.getKey());
+        if (!file.isFile() || !Arrays.equals(entry.getValue(), hash(new FileInputStream(file))))
+          return false;
+      }
+    }
+    catch (IOException e) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Reads the state from a file.
+   * @return the state, or null if the file does not exist or does not contain a valid state
+   */
+  static IncrementalState read(File file) {
+    if (!file.isFile())
+      return null;
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        if (in.readInt() != MAGIC)
+          return null;
+        List<String> args = new ArrayList<String>();
+        for (int i = in.readInt(); i > 0; i--)
+          args.add(in.readUTF());
+        IncrementalState state = new IncrementalState(args);
+        readHashes(in, state.inputs);
+        readHashes(in, state.outputs);
+        return state;
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      // the translation will just be performed again
+      return null;
+    }
+  }
+
+  void write(File file) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(args.size());
+      for (String arg : args)
+        out.writeUTF(arg);
+      writeHashes(out, inputs);
+      writeHashes(out, outputs);
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  static private void readHashes(DataInputStream in, Map<String, byte[]> hashes) throws IOException {
+    for (int i = in.readInt(); i > 0; i--) {
+      String key = in.readUTF();
+      byte[] hash = new byte[in.readInt()];
+      in.readFully(hash);
+      hashes.put(key, hash);
+    }
+  }
+
+  static private void writeHashes(DataOutputStream out, Map<String, byte[]> hashes) throws IOException {
+    out.writeInt(hashes.size());
+    for (Map.Entry<String, byte[]> entry : hashes.entrySet()) {
+      out.writeUTF(entry.getKey());
+      out.writeInt(entry.getValue().length);
+      out.write(entry.getValue());
+    }
+  }
+
+  static private byte[] hash(InputStream in) throws IOException {
+    try {
+      MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) > 0)
+        digest.update(buf, 0, n);
+      return digest.digest();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(DIGEST_ALGORITHM + " not supported");
+    }
+    finally {
+      in.close();
+    }
+  }
+}
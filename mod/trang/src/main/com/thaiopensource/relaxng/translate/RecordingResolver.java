@@ -0,0 +1,62 @@
+package com.thaiopensource.relaxng.translate;
+
+import com.thaiopensource.resolver.BasicResolver;
+import com.thaiopensource.resolver.Identifier;
+import com.thaiopensource.resolver.Input;
+import com.thaiopensource.resolver.Resolver;
+import com.thaiopensource.resolver.ResolverException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A Resolver that records the URI of each resource that is opened, and otherwise
+ * behaves like the Resolver that it wraps, or like BasicResolver if it wraps none.
+ * Every identifier is resolved by this Resolver, so that resources that would otherwise be
+ * opened by the caller, such as the external entities of a DTD, are opened and recorded here too.
+ */
+class RecordingResolver implements Resolver {
+  private final Resolver resolver;
+  /**
+   * Access must be synchronized on this set.
+   */
+  private final Set<String> uris = new LinkedHashSet<String>();
+
+  RecordingResolver(Resolver resolver) {
+    this.resolver = resolver == null ? BasicResolver.getInstance() : resolver;
+  }
+
+  public void resolve(Identifier id, Input input) throws IOException, ResolverException {
+    resolver.resolve(id, input);
+    if (!input.isResolved())
+      BasicResolver.getInstance().resolve(id, input);
+    record(input);
+  }
+
+  public void open(Input input) throws IOException, ResolverException {
+    resolver.open(input);
+    if (!input.isOpen())
+      BasicResolver.getInstance().open(input);
+    record(input);
+  }
+
+  private void record(Input input) {
+    if (input.isOpen() && input.getUri() != null) {
+      synchronized (uris) {
+        uris.add(input.getUri());
+      }
+    }
+  }
+
+  /**
+   * Returns the URIs of the resources opened so far, in the order in which they were first opened.
+   */
+  List<String> getUris() {
+    synchronized (uris) {
+      return new ArrayList<String>(uris);
+    }
+  }
+}
@@ -0,0 +1,288 @@
+package com.thaiopensource.relaxng.translate;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.thaiopensource.xml.sax.ErrorHandlerImpl;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test running many translations from a manifest with -B.
+ */
+public class BatchTest {
+  /**
+   * How long to wait for a job to finish.
+   */
+  static private final long TIMEOUT_MILLIS = 10000;
+  static private final String SLOW = "slow.rnc";
+
+  private File dir;
+  private File out;
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private String baseUri;
+  private final ConcurrentMap<String, AtomicInteger> requestCounts = new ConcurrentHashMap<String, AtomicInteger>();
+  /**
+   * SLOW is not served until this file exists.
+   */
+  private volatile File gate;
+  private volatile boolean gateOpened;
+
+  /**
+   * Serves the files in dir, counting the requests for each.
+   */
+  private class FileHandler implements HttpHandler {
+    public void handle(HttpExchange exchange) throws IOException {
+      String name = exchange.getRequestURI().getPath().substring(1);
+      AtomicInteger count = requestCounts.get(name);
+      if (count == null) {
+        requestCounts.putIfAbsent(name, new AtomicInteger());
+        count = requestCounts.get(name);
+      }
+      count.incrementAndGet();
+      if (name.equals(SLOW))
+        waitForGate();
+      File file = new File(dir, name);
+      if (!file.isFile()) {
+        exchange.sendResponseHeaders(404, -1);
+        exchange.close();
+        return;
+      }
+      byte[] content = Files.readAllBytes(file.toPath());
+      exchange.sendResponseHeaders(200, content.length);
+      OutputStream os = exchange.getResponseBody();
+      os.write(content);
+      os.close();
+    }
+  }
+
+  private void waitForGate() {
+    long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    try {
+      while (System.currentTimeMillis() < end) {
+        if (gate != null && gate.exists()) {
+          gateOpened = true;
+          return;
+        }
+        Thread.sleep(10);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    dir = File.createTempFile("trang-batch", "");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+    out = new File(dir, "out");
+    Assert.assertTrue(out.mkdir());
+    write("good.rnc", "start = element good { empty }\n");
+    write("bad.rnc", "start = element bad {\n");
+    write(SLOW, "start = element slow {\n");
+    write("inc.rnc", "inc = element inc { empty }\n");
+    write("catalog.xml", "<catalog xmlns='urn:oasis:names:tc:entity:xmlns:xml:catalog'/>\n");
+    write("other-catalog.xml", "<catalog xmlns='urn:oasis:names:tc:entity:xmlns:xml:catalog'/>\n");
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", new FileHandler());
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.start();
+    baseUri = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+    delete(dir);
+  }
+
+  static private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files)
+        delete(f);
+    }
+    file.delete();
+  }
+
+  private File write(String name, String content) throws IOException {
+    File file = new File(dir, name);
+    Files.write(file.toPath(), content.getBytes("UTF-8"));
+    return file;
+  }
+
+  private String path(String name) {
+    return new File(dir, name).getPath();
+  }
+
+  private String output(String name) {
+    return new File(out, name).getPath();
+  }
+
+  private int requestCount(String name) {
+    AtomicInteger count = requestCounts.get(name);
+    return count == null ? 0 : count.get();
+  }
+
+  static private class Result {
+    final int status;
+    final String messages;
+
+    Result(int status, String messages) {
+      this.status = status;
+      this.messages = messages;
+    }
+  }
+
+  static private Result run(String... args) {
+    StringWriter messages = new StringWriter();
+    int status = new Driver(new ErrorHandlerImpl(messages)).run(args);
+    return new Result(status, messages.toString());
+  }
+
+  private String manifest(String... lines) throws IOException {
+    StringBuilder buf = new StringBuilder();
+    for (String line : lines)
+      buf.append(line).append('\n');
+    return write("manifest", buf.toString()).getPath();
+  }
+
+  @Test
+  public void testManifest() throws IOException {
+    String manifest = manifest("# two jobs",
+                               "",
+                               "   ",
+                               "  " + path("good.rnc") + "   " + output("good.rng") + "  ",
+                               "\t# a comment after white space",
+                               "-I\trnc\t" + path("bad.rnc") + "\t" + output("bad.rng"),
+                               "#" + path("good.rnc") + " " + output("commented.rng"));
+    write("bad.rnc", "start = element bad { text }\n");
+    Result result = run("-B", manifest, "-j", "2");
+    Assert.assertEquals(result.status, 0, result.messages);
+    Assert.assertEquals(result.messages, "");
+    Assert.assertTrue(new File(output("good.rng")).exists());
+    Assert.assertTrue(new File(output("bad.rng")).exists());
+    Assert.assertFalse(new File(output("commented.rng")).exists());
+    // options before the manifest apply to every job
+    manifest = manifest(path("good.rnc") + " " + output("good.out"));
+    result = run("-O", "rnc", "-B", manifest);
+    Assert.assertEquals(result.status, 0, result.messages);
+    Assert.assertTrue(read(output("good.out")).contains("element good"));
+    Assert.assertFalse(read(output("good.out")).contains("<"));
+  }
+
+  static private String read(String file) throws IOException {
+    return new String(Files.readAllBytes(new File(file).toPath()), "UTF-8");
+  }
+
+  /**
+   * The first job cannot finish until the third job has written its output. With two threads,
+   * the second job has finished by then, so the first job finishes last. Its messages must
+   * still come first.
+   */
+  @Test
+  public void testMessagesInManifestOrder() throws IOException {
+    gate = new File(output("good.rng"));
+    String manifest = manifest(baseUri + SLOW + " " + output("slow.rng"),
+                               path("bad.rnc") + " " + output("bad.rng"),
+                               path("good.rnc") + " " + output("good.rng"));
+    Result result = run("-B", manifest, "-j", "2");
+    Assert.assertTrue(gateOpened, "jobs did not finish out of order");
+    Assert.assertEquals(result.status, 1, result.messages);
+    String[] lines = result.messages.split("\r?\n");
+    Assert.assertEquals(lines.length, 2, result.messages);
+    Assert.assertTrue(lines[0].contains(SLOW), result.messages);
+    Assert.assertTrue(lines[1].contains("bad.rnc"), result.messages);
+  }
+
+  @Test
+  public void testExitStatus() throws IOException {
+    String good = path("good.rnc") + " " + output("good.rng");
+    String bad = path("bad.rnc") + " " + output("bad.rng");
+    String unknownType = path("good.unknown") + " " + output("unknown.rng");
+    Assert.assertEquals(run("-B", manifest(good, good.replace("good.rng", "good2.rng"))).status, 0);
+    Assert.assertEquals(run("-B", manifest(good, bad)).status, 1);
+    Assert.assertEquals(run("-B", manifest(bad, good)).status, 1);
+    Assert.assertEquals(run("-B", manifest(unknownType, bad, good)).status, 2);
+    Assert.assertEquals(run("-B", manifest(bad, unknownType)).status, 2);
+    Assert.assertEquals(run("-B", manifest()).status, 0);
+    Result result = run("-B", path("no-such-manifest"));
+    Assert.assertEquals(result.status, 1);
+    Assert.assertTrue(result.messages.contains("no-such-manifest"), result.messages);
+  }
+
+  @Test
+  public void testInvalidOptions() throws IOException {
+    String manifest = manifest(path("good.rnc") + " " + output("good.rng"));
+    Result result = run("-B", manifest, path("good.rnc"), output("extra.rng"));
+    Assert.assertEquals(result.status, 2);
+    Assert.assertTrue(result.messages.contains("-B"), result.messages);
+    result = run("-B", manifest, "-U", path("state"));
+    Assert.assertEquals(result.status, 2);
+    Assert.assertTrue(result.messages.contains("-U"), result.messages);
+    result = run("-B", manifest, "-j", "0");
+    Assert.assertEquals(result.status, 2);
+    Assert.assertTrue(result.messages.contains("\"0\""), result.messages);
+    // -j is only for a batch
+    result = run("-j", "2", path("good.rnc"), output("good.rng"));
+    Assert.assertEquals(result.status, 2);
+    Assert.assertTrue(result.messages.contains("-j"), result.messages);
+    // nor can a job in a batch specify it, or start another batch
+    result = run("-B", manifest("-j 2 " + path("good.rnc") + " " + output("j.rng"),
+                                "-B " + manifest + " " + path("good.rnc") + " " + output("b.rng")));
+    Assert.assertEquals(result.status, 2);
+    Assert.assertFalse(new File(output("good.rng")).exists());
+    Assert.assertFalse(new File(output("j.rng")).exists());
+    Assert.assertFalse(new File(output("b.rng")).exists());
+  }
+
+  /**
+   * Jobs that specify the same catalogs share a resolver, so the catalogs are loaded once, and a module
+   * included by several of them is fetched once.
+   */
+  @Test
+  public void testJobsShareResolver() throws IOException {
+    write("a.rnc", "include \"" + baseUri + "inc.rnc\"\nstart = element a { inc }\n");
+    write("b.rnc", "include \"" + baseUri + "inc.rnc\"\nstart = element b { inc }\n");
+    String catalog = "-C " + baseUri + "catalog.xml ";
+    String otherCatalog = "-C " + baseUri + "other-catalog.xml ";
+    String manifest = manifest(catalog + path("a.rnc") + " " + output("a.rng"),
+                               catalog + path("b.rnc") + " " + output("b.rng"),
+                               catalog + path("a.rnc") + " " + output("a2.rng"),
+                               otherCatalog + path("a.rnc") + " " + output("a3.rng"),
+                               otherCatalog + path("b.rnc") + " " + output("b3.rng"));
+    Result result = run("-B", manifest, "-j", "3");
+    Assert.assertEquals(result.status, 0, result.messages);
+    Assert.assertEquals(requestCount("catalog.xml"), 1);
+    Assert.assertEquals(requestCount("other-catalog.xml"), 1);
+    Assert.assertEquals(requestCount("inc.rnc"), 2);
+    for (String name : new String[] { "a.rng", "b.rng", "a2.rng", "a3.rng", "b3.rng" })
+      Assert.assertTrue(new File(output(name)).exists(), name);
+    // a catalog given before the manifest applies to every job
+    requestCounts.clear();
+    manifest = manifest(path("a.rnc") + " " + output("a4.rng"),
+                        path("b.rnc") + " " + output("b4.rng"));
+    result = run("-C", baseUri + "catalog.xml", "-B", manifest, "-j", "2");
+    Assert.assertEquals(result.status, 0, result.messages);
+    Assert.assertEquals(requestCount("catalog.xml"), 1);
+    Assert.assertEquals(requestCount("inc.rnc"), 1);
+  }
+}
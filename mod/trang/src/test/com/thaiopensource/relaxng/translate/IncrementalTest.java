@@ -0,0 +1,115 @@
+package com.thaiopensource.relaxng.translate;
+
+import com.thaiopensource.xml.sax.ErrorHandlerImpl;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+
+/**
+ * Test that a translation with -U is performed again when any file that it read changes,
+ * and only then.
+ */
+public class IncrementalTest {
+  private File dir;
+  private File stateFile;
+
+  @BeforeMethod
+  public void createDirectory() throws IOException {
+    dir = File.createTempFile("trang", "");
+    Assert.assertTrue(dir.delete() && dir.mkdir());
+    stateFile = new File(dir, "state");
+    Assert.assertTrue(new File(dir, "out").mkdir());
+  }
+
+  @AfterMethod
+  public void deleteDirectory() {
+    delete(dir);
+  }
+
+  static private void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files)
+        delete(f);
+    }
+    file.delete();
+  }
+
+  private File write(String name, String content) throws IOException {
+    File file = new File(dir, name);
+    Files.write(file.toPath(), content.getBytes("UTF-8"));
+    return file;
+  }
+
+  static private String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+  }
+
+  /**
+   * Runs trang incrementally, and returns whether the translation was performed,
+   * which is when the state file is written.
+   */
+  private boolean translate(File input, File output) throws IOException {
+    if (stateFile.exists())
+      Assert.assertTrue(stateFile.setLastModified(0));
+    StringWriter messages = new StringWriter();
+    int status = new Driver(new ErrorHandlerImpl(messages)).run(new String[] {
+      "-U", stateFile.getPath(), input.getPath(), output.getPath()
+    });
+    Assert.assertEquals(status, 0, messages.toString());
+    Assert.assertEquals(messages.toString(), "");
+    return stateFile.lastModified() != 0;
+  }
+
+  @Test
+  public void testIncludedModuleModified() throws IOException {
+    File main = write("main.rnc", "include \"inc.rnc\"\nstart = element doc { a* }\n");
+    write("inc.rnc", "a = element a { empty }\n");
+    File output = new File(dir, "out/main.rng");
+    File included = new File(dir, "out/inc.rng");
+    Assert.assertTrue(translate(main, output));
+    String before = read(included);
+    Assert.assertFalse(translate(main, output));
+    write("inc.rnc", "a = element a { text }\n");
+    Assert.assertTrue(translate(main, output));
+    Assert.assertFalse(read(included).equals(before));
+    Assert.assertFalse(translate(main, output));
+  }
+
+  /**
+   * An external parameter entity used in a content model is not translated to a module of its own,
+   * so it is only known to have been read through the resolver.
+   */
+  @Test
+  public void testExternalParameterEntityModified() throws IOException {
+    File main = write("main.dtd", "<!ENTITY % model SYSTEM \"model.ent\">\n"
+                                  + "<!ELEMENT doc (%model;)>\n"
+                                  + "<!ELEMENT a EMPTY>\n");
+    write("model.ent", "a*");
+    File output = new File(dir, "out/main.rnc");
+    Assert.assertTrue(translate(main, output));
+    String before = read(output);
+    Assert.assertFalse(translate(main, output));
+    write("model.ent", "a+");
+    Assert.assertTrue(translate(main, output));
+    Assert.assertFalse(read(output).equals(before));
+    Assert.assertFalse(translate(main, output));
+  }
+
+  @Test
+  public void testOutputModified() throws IOException {
+    File main = write("main.rnc", "element doc { empty }\n");
+    File output = new File(dir, "out/main.rng");
+    Assert.assertTrue(translate(main, output));
+    String expected = read(output);
+    Files.write(output.toPath(), "edited".getBytes("UTF-8"));
+    Assert.assertTrue(translate(main, output));
+    Assert.assertEquals(read(output), expected);
+  }
+}
@@ -0,0 +1,37 @@
+package com.thaiopensource.xml.sax;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * An ErrorHandler that stops processing at the first error. Each error is passed on to
+ * another ErrorHandler, and then the exception describing it is thrown.
+ */
+public class FailFastErrorHandler implements ErrorHandler {
+  private final ErrorHandler errorHandler;
+
+  /**
+   * @param errorHandler the ErrorHandler to which errors are passed on; may be null
+   */
+  public FailFastErrorHandler(ErrorHandler errorHandler) {
+    this.errorHandler = errorHandler;
+  }
+
+  public void warning(SAXParseException exception) throws SAXException {
+    if (errorHandler != null)
+      errorHandler.warning(exception);
+  }
+
+  public void error(SAXParseException exception) throws SAXException {
+    if (errorHandler != null)
+      errorHandler.error(exception);
+    throw exception;
+  }
+
+  public void fatalError(SAXParseException exception) throws SAXException {
+    if (errorHandler != null)
+      errorHandler.fatalError(exception);
+    throw exception;
+  }
+}
@@ -0,0 +1,434 @@
+package com.thaiopensource.validate;
+
+import com.thaiopensource.resolver.Identifier;
+import com.thaiopensource.resolver.Input;
+import com.thaiopensource.resolver.Resolver;
+import com.thaiopensource.resolver.ResolverException;
+import com.thaiopensource.util.PropertyMap;
+import com.thaiopensource.util.PropertyMapBuilder;
+import com.thaiopensource.validate.auto.AutoSchemaReader;
+import com.thaiopensource.xml.sax.ErrorHandlerImpl;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.transform.sax.SAXSource;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps schemas loaded, and loads a schema again whenever one of the files from which
+ * it was loaded changes.
+ * <p>
+ * A schema is loaded the first time it is requested with <code>getSchema</code>. The files from which it
+ * is loaded, including the files that it includes or imports, are then watched for changes. When a file changes,
+ * the schema is loaded again in the background; if it loads successfully, later calls to <code>getSchema</code>
+ * return the new schema. A schema is never changed, so a <code>Validator</code> created from a schema
+ * carries on using it, and validation never has to wait for a schema to be loaded again. If the schema
+ * cannot be loaded again, the errors are reported to the <code>ErrorHandler</code> specified by the
+ * <code>ValidateProperty.ERROR_HANDLER</code> property, and the previous schema continues to be used.
+ * <p>
+ * Only files that are loaded using <code>file:</code> URIs are watched, and a directory is watched only
+ * while some schema depends on a file in it.
+ * A <code>SchemaRegistry</code> is safe for concurrent access by multiple threads.
+ * <code>close</code> should be called when it is no longer needed.
+ */
+public class SchemaRegistry {
+  /**
+   * The time to wait after a file changes before loading again, so that a file that is changed in
+   * several steps, or several files that are changed together, cause only one load.
+   */
+  static private final long RELOAD_DELAY_MILLIS = 100;
+
+  private final SchemaReader sr;
+  private final PropertyMap schemaProperties;
+  private final ErrorHandler eh;
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+  private final WatchService watchService;
+  /**
+   * Maps each directory that is being watched to its WatchKey.
+   * Access must be synchronized on this map.
+   */
+  private final Map<Path, WatchKey> watchedDirectories = new HashMap<Path, WatchKey>();
+  private final ScheduledExecutorService reloader;
+
+  private class Entry {
+    private final String uri;
+    private final AtomicBoolean reloadPending = new AtomicBoolean();
+    private volatile Schema schema;
+    private volatile Set<Path> files = Collections.emptySet();
+    /**
+     * The files recorded so far by a load that is in progress, or null if none is.
+     */
+    private volatile Map<Path, FileTime> loading;
+
+    Entry(String uri) {
+      this.uri = uri;
+    }
+
+    Schema getSchema() throws IncorrectSchemaException, SAXException, IOException {
+      Schema s = schema;
+      if (s != null)
+        return s;
+      synchronized (this) {
+        if (schema == null)
+          load();
+        return schema;
+      }
+    }
+
+    boolean dependsOn(Path file) {
+      return files.contains(file);
+    }
+
+    boolean dependsOnDirectory(Path dir) {
+      if (inDirectory(files, dir))
+        return true;
+      Map<Path, FileTime> loadingFiles = loading;
+      if (loadingFiles != null) {
+        synchronized (loadingFiles) {
+          return inDirectory(loadingFiles.keySet(), dir);
+        }
+      }
+      return false;
+    }
+
+    void scheduleReload() {
+      if (reloadPending.compareAndSet(false, true)) {
+        try {
+          reloader.schedule(new Runnable() {
+            public void run() {
+              reloadPending.set(false);
+              reload();
+            }
+          }, RELOAD_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+          // closed
+        }
+      }
+    }
+
+    private void reload() {
+      try {
+        // so that this load does not overlap a load by getSchema, nor finish after a later load
+        synchronized (this) {
+          load();
+        }
+      }
+      catch (IncorrectSchemaException e) {
+        // errors have been reported
+      }
+      catch (SAXException e) {
+        // thrown by the ErrorHandler
+      }
+      catch (IOException e) {
+        try {
+          eh.error(new SAXParseException(e.getMessage(), null, uri, -1, -1, e));
+        }
+        catch (SAXException e2) {
+          // ignore
+        }
+      }
+    }
+
+    private void load() throws IncorrectSchemaException, SAXException, IOException {
+      // maps each file that is loaded to its modification time before it was loaded
+      Map<Path, FileTime> loaded = Collections.synchronizedMap(new HashMap<Path, FileTime>());
+      loading = loaded;
+      record(uri, loaded);
+      PropertyMapBuilder builder = new PropertyMapBuilder(schemaProperties);
+      builder.put(ValidateProperty.RESOLVER,
+                  new RecordingResolver(schemaProperties.get(ValidateProperty.RESOLVER), loaded));
+      try {
+        schema = sr.createSchema(new SAXSource(new InputSource(uri)), builder.toPropertyMap());
+      }
+      finally {
+        // keep the files even if the load failed, so that the schema is loaded again when they are corrected
+        Map<Path, FileTime> loadedFiles;
+        synchronized (loaded) {
+          loadedFiles = new HashMap<Path, FileTime>(loaded);
+        }
+        files = loadedFiles.keySet();
+        loading = null;
+        unwatchUnused();
+        // a change after a file was watched but before its entry depended on it was ignored by the watcher
+        for (Map.Entry<Path, FileTime> entry : loadedFiles.entrySet()) {
+          if (!equal(entry.getValue(), lastModified(entry.getKey()))) {
+            scheduleReload();
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * A Resolver that records the file of each resource that is opened, and otherwise
+   * behaves like the Resolver that it wraps.
+   */
+  private class RecordingResolver implements Resolver {
+    private final Resolver resolver;
+    private final Map<Path, FileTime> files;
+
+    RecordingResolver(Resolver resolver, Map<Path, FileTime> files) {
+      this.resolver = resolver;
+      this.files = files;
+    }
+
+    public void resolve(Identifier id, Input input) throws IOException, ResolverException {
+      if (resolver != null)
+        resolver.resolve(id, input);
+    }
+
+    public void open(Input input) throws IOException, ResolverException {
+      if (input.getUri() != null)
+        record(input.getUri(), files);
+      if (resolver != null)
+        resolver.open(input);
+    }
+  }
+
+  /**
+   * Creates a SchemaRegistry.
+   *
+   * @param schemaProperties a PropertyMap specifying properties controlling schema creation;
+   * must not be <code>null</code>
+   * @param schemaReader the SchemaReader to use; if this is <code>null</code>, then the schemas
+   * must be in XML, and the namespace URI of the root element will be used to determine what
+   * the schema language is
+   * @throws IOException if files cannot be watched
+   */
+  public SchemaRegistry(PropertyMap schemaProperties, SchemaReader schemaReader) throws IOException {
+    ErrorHandler seh = schemaProperties.get(ValidateProperty.ERROR_HANDLER);
+    if (seh == null) {
+      seh = new ErrorHandlerImpl();
+      PropertyMapBuilder builder = new PropertyMapBuilder(schemaProperties);
+      builder.put(ValidateProperty.ERROR_HANDLER, seh);
+      this.schemaProperties = builder.toPropertyMap();
+    }
+    else
+      this.schemaProperties = schemaProperties;
+    this.eh = seh;
+    this.sr = schemaReader == null ? new AutoSchemaReader() : schemaReader;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.reloader = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "schema-registry-reload");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    Thread watcher = new Thread(new Runnable() {
+      public void run() {
+        watch();
+      }
+    }, "schema-registry-watch");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  /**
+   * Equivalent to SchemaRegistry(schemaProperties, null).
+   *
+   * @see #SchemaRegistry(PropertyMap,SchemaReader)
+   */
+  public SchemaRegistry(PropertyMap schemaProperties) throws IOException {
+    this(schemaProperties, null);
+  }
+
+  /**
+   * Returns the current version of a schema, loading it if it has not yet been loaded.
+   * If the schema is being loaded again in the background, this returns the previous version
+   * without waiting.
+   *
+   * @param uri the absolute URI of the schema
+   * @return the schema; never <code>null</code>
+   * @throws IncorrectSchemaException if the schema has not yet been loaded successfully and is incorrect
+   * @throws IOException if the schema has not yet been loaded successfully and an I/O error occurred
+   * @throws SAXException if an XMLReader or ErrorHandler threw a SAXException
+   */
+  public Schema getSchema(String uri) throws IncorrectSchemaException, SAXException, IOException {
+    Entry entry = entries.get(uri);
+    if (entry == null) {
+      Entry newEntry = new Entry(uri);
+      entry = entries.putIfAbsent(uri, newEntry);
+      if (entry == null)
+        entry = newEntry;
+    }
+    return entry.getSchema();
+  }
+
+  /**
+   * Stops watching files. Schemas that have already been returned can still be used.
+   *
+   * @throws IOException if an I/O error occurred
+   */
+  public void close() throws IOException {
+    reloader.shutdownNow();
+    watchService.close();
+  }
+
+  private void watch() {
+    for (;;) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      }
+      catch (InterruptedException e) {
+        return;
+      }
+      catch (ClosedWatchServiceException e) {
+        return;
+      }
+      Path dir = (Path)key.watchable();
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          for (Entry entry : entries.values())
+            if (entry.dependsOnDirectory(dir))
+              entry.scheduleReload();
+        }
+        else {
+          Path file = dir.resolve((Path)event.context());
+          for (Entry entry : entries.values())
+            if (entry.dependsOn(file))
+              entry.scheduleReload();
+        }
+      }
+      key.reset();
+    }
+  }
+
+  /**
+   * Must be called with the lock on watchedDirectories held.
+   */
+  private void watch(Path dir) {
+    if (dir == null || watchedDirectories.containsKey(dir))
+      return;
+    try {
+      watchedDirectories.put(dir, dir.register(watchService,
+                                               StandardWatchEventKinds.ENTRY_CREATE,
+                                               StandardWatchEventKinds.ENTRY_MODIFY,
+                                               StandardWatchEventKinds.ENTRY_DELETE));
+    }
+    catch (IOException e) {
+      // the directory does not exist or cannot be watched
+    }
+    catch (ClosedWatchServiceException e) {
+      // closed
+    }
+  }
+
+  /**
+   * Stops watching each directory that no schema depends on any longer, because the files that it
+   * contains are no longer included or imported.
+   */
+  private void unwatchUnused() {
+    synchronized (watchedDirectories) {
+      for (Iterator<Map.Entry<Path, WatchKey>> iter = watchedDirectories.entrySet().iterator(); iter.hasNext();) {
+        Map.Entry<Path, WatchKey> watched = iter.next();
+        if (!isDependedOn(watched.getKey())) {
+          watched.getValue().cancel();
+          iter.remove();
+        }
+      }
+    }
+  }
+
+  private boolean isDependedOn(Path dir) {
+    for (Entry entry : entries.values())
+      if (entry.dependsOnDirectory(dir))
+        return true;
+    return false;
+  }
+
+  /**
+   * Tests whether a directory is being watched.
+   */
+  boolean isWatching(Path dir) {
+    synchronized (watchedDirectories) {
+      return watchedDirectories.containsKey(dir);
+    }
+  }
+
+  static private boolean inDirectory(Set<Path> files, Path dir) {
+    for (Path file : files)
+      if (dir.equals(file.getParent()))
+        return true;
+    return false;
+  }
+
+  /**
+   * Watches the file for a URI, if it is a file: URI, and records its modification time. This must be done
+   * before the file is read, so that no change after it was read is missed.
+   */
+  private void record(String uri, Map<Path, FileTime> files) {
+    Path file = toPath(uri);
+    if (file == null || files.containsKey(file))
+      return;
+    // together, so that the directory is not unwatched in between
+    synchronized (watchedDirectories) {
+      watch(file.getParent());
+      files.put(file, lastModified(file));
+    }
+  }
+
+  /**
+   * Returns the modification time of a file, or null if it does not exist.
+   */
+  static private FileTime lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  static private boolean equal(FileTime t1, FileTime t2) {
+    return t1 == null ? t2 == null : t1.equals(t2);
+  }
+
+  /**
+   * Returns the Path for a file: URI, or null if the URI is not a file: URI.
+   */
+  static private Path toPath(String uri) {
+    try {
+      URI u = new URI(uri);
+      if (!"file".equals(u.getScheme()))
+        return null;
+      return Paths.get(u);
+    }
+    catch (URISyntaxException e) {
+      return null;
+    }
+    catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+}
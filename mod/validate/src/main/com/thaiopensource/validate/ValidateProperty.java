@@ -67,4 +67,14 @@ public class ValidateProperty {
    */
   public static final PropertyId<XMLReaderCreator> XML_READER_CREATOR
           = PropertyId.newInstance("XML_READER_CREATOR", XMLReaderCreator.class);
+
+  /**
+   * Property specifying that validation should stop at the first error. The error is reported to the
+   * ErrorHandler, and the SAXParseException that describes it is then thrown.
+   * This is supported by the RELAX NG validators; <code>ValidationDriver</code> supports it for all
+   * schema languages.
+   *
+   * @see com.thaiopensource.xml.sax.FailFastErrorHandler
+   */
+  public static final FlagPropertyId FAIL_FAST = new FlagPropertyId("FAIL_FAST");
 }
@@ -6,6 +6,7 @@ import com.thaiopensource.util.UriOrFile;
 import com.thaiopensource.validate.auto.AutoSchemaReader;
 import com.thaiopensource.xml.sax.CountingErrorHandler;
 import com.thaiopensource.xml.sax.ErrorHandlerImpl;
+import com.thaiopensource.xml.sax.FailFastErrorHandler;
 import org.xml.sax.DTDHandler;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
@@ -26,6 +27,7 @@ import java.io.IOException;
 public class ValidationDriver {
   private XMLReader xr;
   private final CountingErrorHandler eh;
+  private final boolean failFast;
   private final SchemaReader sr;
   private final PropertyMap schemaProperties;
   private final PropertyMap instanceProperties;
@@ -60,7 +62,9 @@ public class ValidationDriver {
     ErrorHandler ieh = instanceProperties.get(ValidateProperty.ERROR_HANDLER);
     if (ieh == null)
       ieh = seh;
-    eh = new CountingErrorHandler(ieh);
+    failFast = instanceProperties.contains(ValidateProperty.FAIL_FAST);
+    // a validator that does not support FAIL_FAST is stopped by its ErrorHandler
+    eh = new CountingErrorHandler(failFast ? new FailFastErrorHandler(ieh) : ieh);
     builder.put(ValidateProperty.ERROR_HANDLER, eh);
     this.instanceProperties = builder.toPropertyMap();
     this.sr = schemaReader == null ? new AutoSchemaReader() : schemaReader;
@@ -135,6 +139,8 @@ public class ValidationDriver {
   /**
    * Validates a document against the currently loaded schema. This can be called
    * multiple times in order to validate multiple documents.
+   * If the instance properties contain <code>ValidateProperty.FAIL_FAST</code>, validation stops at the
+   * first error.
    *
    * @param in the InputSource for the document to be validated
    * @return <code>true</code> if the document is valid; <code>false</code> otherwise
@@ -160,6 +166,11 @@ public class ValidationDriver {
       xr.parse(in);
       return !eh.getHadErrorOrFatalError();
     }
+    catch (SAXException e) {
+      if (failFast && eh.getErrorCount() > 0)
+        return false;
+      throw e;
+    }
     finally {
       validator.reset();
     }
@@ -0,0 +1,21 @@
+package com.thaiopensource.validate.prop.nvdl;
+
+import com.thaiopensource.validate.FlagPropertyId;
+
+/**
+ * Properties for controlling validation specific to NVDL.
+ */
+public class NvdlProperty {
+  private NvdlProperty() { }
+
+  /**
+   * PropertyId that specifies that the validators for the sections of a document
+   * should each run on a separate worker thread. Events are delivered to each
+   * worker in batches and the errors reported by the workers are reported
+   * in document order when the end of the document is reached.
+   * So an ErrorHandler that throws an exception to stop validation at the first error
+   * does not stop it early: the exception is thrown only at the end of the document.
+   * This applies during validation.
+   */
+  public static final FlagPropertyId PARALLEL_SECTIONS = new FlagPropertyId("PARALLEL_SECTIONS");
+}
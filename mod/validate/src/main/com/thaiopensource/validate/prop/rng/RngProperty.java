@@ -17,6 +17,18 @@ public class RngProperty {
   public static final FlagPropertyId CHECK_ID_IDREF = new FlagPropertyId("CHECK_ID_IDREF");
   public static final FlagPropertyId FEASIBLE = new FlagPropertyId("FEASIBLE");
   public static final StringPropertyId SIMPLIFIED_SCHEMA = new StringPropertyId("SIMPLIFIED_SCHEMA");
+  /**
+   * PropertyId that specifies the maximum number of worker threads used to load a schema
+   * and to validate a document.
+   * When a schema is loaded, the modules that it references using include and externalRef are
+   * fetched concurrently; the resolvers used must then be safe to use from multiple threads.
+   * When a document is validated, this has an effect only for schemas in which the name of an element
+   * alone determines its content, such as schemas converted from DTDs; the elements of a document
+   * can then be validated in parallel.
+   * Errors are still reported in the same order.
+   * This applies when the schema is loaded.
+   */
+  public static final PropertyId<Integer> THREADS = PropertyId.newInstance("THREADS", Integer.class);
 
   public static Option getOption(String uri) {
     if (!uri.startsWith(SchemaReader.BASE_URI))